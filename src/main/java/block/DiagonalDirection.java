@@ -48,7 +48,11 @@ public class DiagonalDirection {
 
     /** Given an offset, this method returns the index. */
     public static int indexOf(Vector3i vec) {
-        int index = (vec.z + 1) + (vec.y + 1) * 3 + (vec.x + 1) * 9;
+        return indexOf(vec.x, vec.y, vec.z);
+    }
+
+    public static int indexOf(int x, int y, int z) {
+        int index = (z + 1) + (y + 1) * 3 + (x + 1) * 9;
         if (index > 13) index -= 1; // midpoint (0, 0, 0) is not included
 
         return index;
@@ -0,0 +1,196 @@
+package chunk;
+
+import java.util.Arrays;
+
+/** Palette compressed storage for the 32x32x32 block ids of a chunk.
+ * Instead of storing a byte per block, every distinct block id in the chunk is put into a palette,
+ * and the blocks store an index into that palette, packed into longs with 1, 2, 4 or 8 bits per block.
+ * A chunk that only contains one kind of block (all stone, all water, all air) has no index data at all.
+ *
+ * Example: a chunk of stone, dirt and grass only needs 2 bits per block, so 8 KB instead of 32 KB. */
+public class BlockStorage {
+
+    public static final int VOLUME = Chunk.SIZE * Chunk.SIZE * Chunk.SIZE;
+
+    /** Internal state, swapped out as a whole when the storage grows so readers never see a half-resized palette. */
+    private static final class Data {
+        final int bits;             // bits per block, 0 means every block is palette[0]
+        final int entriesPerLongLog;
+        final long mask;
+        final byte[] palette;       // capacity is 1 << bits
+        int paletteSize;
+        final long[] words;
+
+        Data(int bits, byte[] palette, int paletteSize) {
+            this.bits = bits;
+            this.palette = palette;
+            this.paletteSize = paletteSize;
+            if (bits == 0) {
+                this.entriesPerLongLog = 0;
+                this.mask = 0;
+                this.words = null;
+            } else {
+                this.entriesPerLongLog = Integer.numberOfTrailingZeros(Long.SIZE / bits);
+                this.mask = (1L << bits) - 1;
+                this.words = new long[VOLUME >> entriesPerLongLog];
+            }
+        }
+
+        int getIndex(int i) {
+            if (bits == 0) return 0;
+            long word = words[i >> entriesPerLongLog];
+            int shift = (i & ((1 << entriesPerLongLog) - 1)) * bits;
+            return (int) ((word >>> shift) & mask);
+        }
+
+        void setIndex(int i, int paletteIndex) {
+            int w = i >> entriesPerLongLog;
+            int shift = (i & ((1 << entriesPerLongLog) - 1)) * bits;
+            words[w] = (words[w] & ~(mask << shift)) | ((long) paletteIndex << shift);
+        }
+
+        int find(byte block) {
+            for (int p = 0; p < paletteSize; p++) {
+                if (palette[p] == block) return p;
+            }
+            return -1;
+        }
+    }
+
+    private volatile Data data;
+
+    /** Creates a storage where every block is `block`. */
+    public BlockStorage(byte block) {
+        this.data = new Data(0, new byte[] { block }, 1);
+    }
+
+    /** Creates a storage from a flat block array, indexed with {@link Chunk#toIndex}. */
+    public BlockStorage(byte[] blocks) {
+        set(blocks);
+    }
+
+    public byte get(int index) {
+        var d = data;
+        return d.palette[d.getIndex(index)];
+    }
+
+    /** Copies `length` blocks starting at `index` into `dest`, starting at `destPos`. */
+    public void get(int index, byte[] dest, int destPos, int length) {
+        var d = data;
+        if (d.bits == 0) {
+            Arrays.fill(dest, destPos, destPos + length, d.palette[0]);
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = d.palette[d.getIndex(index + i)];
+        }
+    }
+
+    public synchronized void set(int index, byte block) {
+        var d = data;
+        int paletteIndex = d.find(block);
+        if (paletteIndex == -1) {
+            if (d.paletteSize == d.palette.length) {
+                d = grow(d);
+            }
+            paletteIndex = d.paletteSize;
+            d.palette[paletteIndex] = block;
+            d.paletteSize++;
+
+            // the palette entry has to be visible before any index pointing at it is, so it's written first and
+            // then (re)published with the volatile write readers go through
+            this.data = d;
+        }
+
+        // the block is already correct, this also handles single value storage
+        if (d.getIndex(index) == paletteIndex) return;
+
+        d.setIndex(index, paletteIndex);
+    }
+
+    /** Replaces the contents of this storage, picking the smallest palette that fits. */
+    public synchronized void set(byte[] blocks) {
+        // find the distinct blocks
+        boolean[] seen = new boolean[256];
+        byte[] palette = new byte[256];
+        int paletteSize = 0;
+        for (byte block : blocks) {
+            if (!seen[block + 128]) {
+                seen[block + 128] = true;
+                palette[paletteSize++] = block;
+            }
+        }
+
+        int bits = bitsFor(paletteSize);
+        var d = new Data(bits, new byte[1 << bits], paletteSize);
+        System.arraycopy(palette, 0, d.palette, 0, paletteSize);
+
+        if (bits != 0) {
+            int[] lookup = new int[256];
+            for (int p = 0; p < paletteSize; p++) {
+                lookup[palette[p] + 128] = p;
+            }
+            for (int i = 0; i < VOLUME; i++) {
+                d.setIndex(i, lookup[blocks[i] + 128]);
+            }
+        }
+
+        this.data = d;
+    }
+
+    /** Returns a new flat array of all blocks in this storage. Writing to it doesn't change the storage. */
+    public byte[] toArray() {
+        var d = data;
+        byte[] blocks = new byte[VOLUME];
+        if (d.bits == 0) {
+            Arrays.fill(blocks, d.palette[0]);
+            return blocks;
+        }
+
+        for (int i = 0; i < VOLUME; i++) {
+            blocks[i] = d.palette[d.getIndex(i)];
+        }
+        return blocks;
+    }
+
+    /** Returns true if all blocks in this storage are the same block. */
+    public boolean isUniform() {
+        return data.bits == 0;
+    }
+
+    public int getBitsPerBlock() {
+        return data.bits;
+    }
+
+    /** Approximate heap usage of the block data, not counting object headers. */
+    public int getSizeInBytes() {
+        var d = data;
+        int size = d.palette.length;
+        if (d.words != null) size += d.words.length * Long.BYTES;
+        return size;
+    }
+
+    // returns a copy with twice the bits, not published yet
+    private static Data grow(Data old) {
+        int bits = old.bits == 0 ? 1 : old.bits * 2;
+        var d = new Data(bits, new byte[1 << bits], old.paletteSize);
+        System.arraycopy(old.palette, 0, d.palette, 0, old.paletteSize);
+
+        if (old.bits != 0) {
+            for (int i = 0; i < VOLUME; i++) {
+                d.setIndex(i, old.getIndex(i));
+            }
+        }
+
+        return d;
+    }
+
+    private static int bitsFor(int paletteSize) {
+        if (paletteSize <= 1)  return 0;
+        if (paletteSize <= 2)  return 1;
+        if (paletteSize <= 4)  return 2;
+        if (paletteSize <= 16) return 4;
+        return 8;
+    }
+}
@@ -9,6 +9,7 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** A chunk is a 32x32x32 ({@link #SIZE}) area of space which contains blocks.
  * */
@@ -19,6 +20,19 @@ public class Chunk extends Entity {
     public final static int SIZE = 1 << SIZE_BITS;
     public final static int MAX_LIGHT = 15;
 
+    // bits per axis in a chunk key, enough for chunk coordinates from -2^20 to 2^20-1 (about 33 million blocks)
+    private final static int KEY_BITS = 21;
+    private final static long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    /** Packs a chunk's grid position into a long, so chunks can be looked up without making a Vector3i. */
+    public static long toKey(int x, int y, int z) {
+        return (x & KEY_MASK) << (2*KEY_BITS) | (y & KEY_MASK) << KEY_BITS | (z & KEY_MASK);
+    }
+
+    public static long toKey(Vector3i chunkGridPos) {
+        return toKey(chunkGridPos.x, chunkGridPos.y, chunkGridPos.z);
+    }
+
     public static Vector3i worldPosToChunkPos(Vector3f pos) {
         return worldPosToChunkPos(new Vector3i(pos, RoundingMode.FLOOR));
     }
@@ -104,30 +118,40 @@ public class Chunk extends Entity {
     // chunk instance stuff below
 
     private final Vector3i chunkGridPos; // the chunk's position in the grid. the chunk's neighboring chunks differ from this by 1.
-    private Status status;
-    private byte[] blocks; // if isAllAir = true, then blocks = null.
+    private final long key; // see toKey
+    volatile Status status; // set through ChunkDependencies, so the neighbors' counts stay right
+    private BlockStorage blocks; // palette compressed, null until the chunk has been generated or loaded.
     private byte[] lightMap;
     private final WeakReference<Chunk>[] neighbors = new WeakReference[DiagonalDirection.COUNT]; // 26 chunk neighbors
 
-    public boolean spoiled = false;
+    public boolean spoiled = false;     // the light map and the mesh have to be regenerated
+    public boolean meshSpoiled = false; // only the mesh has to be regenerated, the light map is up to date
     private boolean isAirChunk = false; // use this to fill chunk with skylight
 
+    // which faces can see each other through this chunk, see ChunkFaceConnectivity. Until the mesh is made, all of them.
+    private volatile long faceConnections = ChunkFaceConnectivity.ALL;
+    // how coarse the chunk's mesh is, each level halves the resolution. see ChunkLoader.levelOfDetailFor
+    private volatile int levelOfDetail = 0;
+
+    final int[] neighborCounts = new int[ChunkDependencies.COUNTS]; // see ChunkDependencies, guarded by its lock
+    final AtomicBoolean updateHinted = new AtomicBoolean(false); // waiting in ChunkLoader's hint queue
+    volatile boolean queuedForMainThread = false; // spoiled close to the player, waiting for ChunkLoader.updatePriorityChunks
+
     public Chunk(Vector3i chunkGridPos) {
         super();
         this.chunkGridPos = chunkGridPos;
+        this.key = toKey(chunkGridPos);
         this.status = Status.NONE;
 
         // get all surrounding neighbors, add them as neighbor and add us as their neighbor.
         var index = 0;
-        Vector3i neighborPos = new Vector3i();
         for (var offset : DiagonalDirection.offsets) {
-            neighborPos.x = chunkGridPos.x + offset.x;
-            neighborPos.y = chunkGridPos.y + offset.y;
-            neighborPos.z = chunkGridPos.z + offset.z;
-            var neighbor = ChunkLoader.getChunkAt(neighborPos);
+            var neighbor = ChunkLoader.getChunkAt(
+                    chunkGridPos.x + offset.x,
+                    chunkGridPos.y + offset.y,
+                    chunkGridPos.z + offset.z);
             if (neighbor != null) {
-                setNeighbor(neighbor, index);
-                neighbor.setNeighbor(this, DiagonalDirection.opposite(index));
+                ChunkDependencies.link(this, neighbor, index);
             }
             index++;
         }
@@ -137,12 +161,17 @@ public class Chunk extends Entity {
         return chunkGridPos;
     }
 
+    public long getKey() {
+        return key;
+    }
+
     public Status getStatus() {
         return status;
     }
 
+    /** Sets the status, and tells the neighbors that wait for this chunk. */
     public void setStatus(Status status) {
-        this.status = status;
+        ChunkDependencies.setStatus(this, status);
     }
 
     public byte getColour(int x, int y, int z) {
@@ -202,12 +231,16 @@ public class Chunk extends Entity {
         this.lightMap[toIndex(x, y, z)] = light;
     }
 
+    public byte[] getColours() {
+        return this.lightMap;
+    }
+
     public void setColours(byte[] lightMap) {
         this.lightMap = lightMap;
     }
 
     public byte getBlock(int x, int y, int z) {
-        return blocks[toIndex(x, y, z)];
+        return blocks.get(toIndex(x, y, z));
     }
 
     public byte getBlock(Vector3i pos) {
@@ -269,15 +302,22 @@ public class Chunk extends Entity {
 
     public void setBlock(int x, int y, int z, byte block) {
         setIsAirChunk(false);
-        this.blocks[Chunk.toIndex(x, y, z)] = block;
+        this.blocks.set(Chunk.toIndex(x, y, z), block);
     }
 
+    /** Returns a copy of the blocks of this chunk, indexed with {@link #toIndex}.
+     * Changing the returned array doesn't change the chunk, use {@link #setBlocks} for that. */
     public byte[] getBlocks() {
-        return this.blocks;
+        if (this.blocks == null) return null;
+        return this.blocks.toArray();
     }
 
     public void setBlocks(byte[] blocks) {
-        this.blocks = blocks;
+        this.blocks = new BlockStorage(blocks);
+    }
+
+    public BlockStorage getBlockStorage() {
+        return this.blocks;
     }
 
     public boolean isInsideChunk(int x, int y, int z) {
@@ -296,6 +336,22 @@ public class Chunk extends Entity {
         neighbors[index] = new WeakReference<>(chunk);
     }
 
+    public long getFaceConnections() {
+        return faceConnections;
+    }
+
+    public void setFaceConnections(long faceConnections) {
+        this.faceConnections = faceConnections;
+    }
+
+    public int getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    public void setLevelOfDetail(int levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
     public boolean getIsAirChunk() {
         return this.isAirChunk;
     }
@@ -315,4 +371,9 @@ public class Chunk extends Entity {
         this.spoiled = true;
         ChunkLoader.hintChunkUpdateRequired(this);
     }
+
+    public void spoilMesh() {
+        this.meshSpoiled = true;
+        ChunkLoader.hintChunkUpdateRequired(this);
+    }
 }
@@ -0,0 +1,99 @@
+package chunk;
+
+import block.DiagonalDirection;
+
+/** Keeps count, for every chunk, of how many of its neighbors have got far enough for it to move on to its next status.
+ * The counts are updated whenever a chunk's status changes (see {@link Chunk#setStatus}), so checking if a chunk can
+ * move on doesn't have to look at its 26 neighbors. And as soon as a count is complete, or a chunk finishes some work,
+ * the chunk is handed to ChunkLoader, which only ever has to look at the chunks that something happened to.
+ *
+ * All the counts are guarded by one lock, status changes are rare enough that it doesn't matter. */
+public class ChunkDependencies {
+
+    // what is counted, the neighbors...
+    static final int BASIC_TERRAIN = 0, // with at least their basic terrain, needed to make structures
+                     BLOCKS        = 1, // with all their blocks, needed to light the chunk
+                     LIGHTS        = 2, // with their light, needed to mesh the chunk
+                     LIGHTS_ABOVE  = 3, // the 9 above with their light, needed to light the chunk
+                     LOADED        = 4; // that aren't NONE, the chunk can only be forgotten once none are
+    static final int COUNTS = 5;
+
+    static final Object lock = new Object();
+
+    /** Returns true if all of the chunk's neighbors count towards `count`.
+     * For {@link #LOADED}, true if none do. */
+    static boolean isComplete(Chunk chunk, int count) {
+        synchronized (lock) {
+            return chunk.neighborCounts[count] == target(count);
+        }
+    }
+
+    /** Sets the chunk's status, and updates the counts of its neighbors. Only call from {@link Chunk#setStatus}. */
+    static void setStatus(Chunk chunk, Chunk.Status status) {
+        synchronized (lock) {
+            var from = chunk.status;
+            if (from == status) return;
+            chunk.status = status;
+
+            for (int dir = 0; dir < DiagonalDirection.COUNT; dir++) {
+                var neighbor = chunk.getNeighbor(dir);
+                if (neighbor == null) continue;
+
+                // the chunk is above the neighbor if the neighbor is below it
+                boolean above = DiagonalDirection.offsets[dir].y == -1;
+                if (updateCounts(neighbor, from, status, above)) {
+                    ChunkLoader.hintChunkUpdateRequired(neighbor);
+                }
+            }
+        }
+
+        // done with whatever it was doing, it can move on if its neighbors are ready
+        if (!status.working) ChunkLoader.hintChunkUpdateRequired(chunk);
+    }
+
+    /** Makes the chunk and the neighbor neighbors. The neighbor is at `dir` from the chunk. */
+    static void link(Chunk chunk, Chunk neighbor, int dir) {
+        synchronized (lock) {
+            chunk.setNeighbor(neighbor, dir);
+            neighbor.setNeighbor(chunk, DiagonalDirection.opposite(dir));
+
+            // a new chunk's counts start out from what its neighbors already are.
+            // the new chunk is NONE, so it doesn't count towards anything of the neighbor
+            boolean above = DiagonalDirection.offsets[dir].y == 1;
+            updateCounts(chunk, Chunk.Status.NONE, neighbor.status, above);
+        }
+    }
+
+    // moves a neighbor's counts from `from` to `to`. returns true if a count became complete
+    private static boolean updateCounts(Chunk chunk, Chunk.Status from, Chunk.Status to, boolean neighborIsAbove) {
+        boolean completed = false;
+        for (int count = 0; count < COUNTS; count++) {
+            if (count == LIGHTS_ABOVE && !neighborIsAbove) continue;
+
+            int change = (countsTowards(count, to) ? 1 : 0) - (countsTowards(count, from) ? 1 : 0);
+            if (change == 0) continue;
+
+            chunk.neighborCounts[count] += change;
+            if (chunk.neighborCounts[count] == target(count)) completed = true;
+        }
+        return completed;
+    }
+
+    private static boolean countsTowards(int count, Chunk.Status status) {
+        return switch (count) {
+            case BASIC_TERRAIN -> status.urgency >= Chunk.Status.BASIC_TERRAIN_GENERATED.urgency;
+            case BLOCKS        -> status.urgency >= Chunk.Status.BLOCKS_GENERATED.urgency;
+            case LIGHTS, LIGHTS_ABOVE -> status.urgency >= Chunk.Status.LIGHTS_GENERATED.urgency;
+            case LOADED        -> status != Chunk.Status.NONE;
+            default -> throw new IllegalArgumentException("no such count " + count);
+        };
+    }
+
+    private static int target(int count) {
+        return switch (count) {
+            case LIGHTS_ABOVE -> DiagonalDirection.ABOVE.length;
+            case LOADED -> 0;
+            default -> DiagonalDirection.COUNT;
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package chunk;
+
+import block.CardinalDirection;
+
+import java.util.Arrays;
+
+/** Works out which of a chunk's 6 faces can see each other through the blocks that aren't opaque.
+ * The result is a 6x6 bitset in a long: bit (a * 6 + b) is set if face a can see face b.
+ * Used by {@link ChunkOcclusionCuller} to skip chunks that are hidden behind solid ground, like caves.
+ *
+ * Every region of see-through blocks that touches the chunk's border is flood filled,
+ * and all the faces a region touches can see each other.
+ * Each thread needs its own instance, the flood fill buffers are reused. */
+public class ChunkFaceConnectivity {
+
+    public static final long NONE = 0;
+    public static final long ALL = (1L << (CardinalDirection.COUNT * CardinalDirection.COUNT)) - 1;
+
+    private static final int MAX = Chunk.SIZE - 1;
+
+    private final long[] visited = new long[BlockStorage.VOLUME / Long.SIZE];
+    private final IntRingQueue queue = new IntRingQueue(BlockStorage.VOLUME);
+
+    public static boolean connects(long connections, int fromFace, int toFace) {
+        return (connections >>> (fromFace * CardinalDirection.COUNT + toFace) & 1) != 0;
+    }
+
+    /** `blocks` are indexed with {@link Chunk#toIndex}, `opaque[id + 128]` tells if block `id` can't be seen through. */
+    public long compute(byte[] blocks, boolean[] opaque) {
+        Arrays.fill(visited, 0);
+        long connections = NONE;
+
+        // regions that don't touch the border can't connect any faces, so only start from border blocks
+        for (int z = 0; z < Chunk.SIZE; z++)
+        for (int y = 0; y < Chunk.SIZE; y++)
+        {
+            boolean border = z == 0 || z == MAX || y == 0 || y == MAX;
+            int step = border ? 1 : MAX;
+            for (int x = 0; x < Chunk.SIZE; x += step) {
+                int index = Chunk.toIndex(x, y, z);
+                if (isVisited(index) || opaque[blocks[index] + 128]) continue;
+
+                connections |= connectAll(floodFill(index, blocks, opaque));
+                if (connections == ALL) return ALL;
+            }
+        }
+
+        return connections;
+    }
+
+    // returns the faces touched by the see-through region containing `start`
+    private int floodFill(int start, byte[] blocks, boolean[] opaque) {
+        int faces = 0;
+        visit(start);
+        queue.add(start);
+
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = index & MAX;
+            int y = (index >> Chunk.SIZE_BITS) & MAX;
+            int z = index >> (2 * Chunk.SIZE_BITS);
+
+            if (y == MAX) faces |= 1 << CardinalDirection.UP;    else tryAdd(Chunk.toIndex(x, y + 1, z), blocks, opaque);
+            if (x == 0)   faces |= 1 << CardinalDirection.LEFT;  else tryAdd(Chunk.toIndex(x - 1, y, z), blocks, opaque);
+            if (z == 0)   faces |= 1 << CardinalDirection.FRONT; else tryAdd(Chunk.toIndex(x, y, z - 1), blocks, opaque);
+            if (z == MAX) faces |= 1 << CardinalDirection.BACK;  else tryAdd(Chunk.toIndex(x, y, z + 1), blocks, opaque);
+            if (x == MAX) faces |= 1 << CardinalDirection.RIGHT; else tryAdd(Chunk.toIndex(x + 1, y, z), blocks, opaque);
+            if (y == 0)   faces |= 1 << CardinalDirection.DOWN;  else tryAdd(Chunk.toIndex(x, y - 1, z), blocks, opaque);
+        }
+
+        return faces;
+    }
+
+    private void tryAdd(int index, byte[] blocks, boolean[] opaque) {
+        if (isVisited(index) || opaque[blocks[index] + 128]) return;
+        visit(index);
+        queue.add(index);
+    }
+
+    private boolean isVisited(int index) {
+        return (visited[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void visit(int index) {
+        visited[index >>> 6] |= 1L << index;
+    }
+
+    // every face in `faces` can see every other face in it
+    private static long connectAll(int faces) {
+        long connections = NONE;
+        for (int from = 0; from < CardinalDirection.COUNT; from++) {
+            if ((faces & (1 << from)) == 0) continue;
+            connections |= (long) faces << (from * CardinalDirection.COUNT);
+        }
+        return connections;
+    }
+}
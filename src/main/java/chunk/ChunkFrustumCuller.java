@@ -0,0 +1,101 @@
+package chunk;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3i;
+
+import java.util.Arrays;
+
+/** Decides which chunks are inside the camera's view frustum. Doesn't need an OpenGL context.
+ *
+ * Chunks are tested hierarchically: first the whole column of chunks a chunk is in is tested,
+ * and only if the column is partly inside the frustum is the chunk itself tested.
+ * Most of the chunks behind the camera get culled with their column, and the chunks in columns
+ * fully inside the frustum don't need their own test. Column results are cached for the frame. */
+public class ChunkFrustumCuller {
+
+    private static final byte UNKNOWN = 0, OUTSIDE = 1, INSIDE = 2, INTERSECT = 3;
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final Matrix4f projectionViewMatrix = new Matrix4f();
+
+    private float columnMinY, columnMaxY;
+
+    // column results for this frame, open addressing with the column's (x, z) packed into a long as the key
+    private long[] columnKeys = new long[1024];
+    private byte[] columnResults = new byte[1024];
+    private int columnCount = 0;
+
+    /** Call at the start of every frame, before testing chunks.
+     * `minChunkY` and `maxChunkY` are the lowest and highest chunk grid y coordinates that will be tested. */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, int minChunkY, int maxChunkY) {
+        projectionMatrix.mul(viewMatrix, projectionViewMatrix);
+        frustum.set(projectionViewMatrix, false);
+
+        columnMinY = minChunkY * Chunk.SIZE;
+        columnMaxY = (maxChunkY + 1) * Chunk.SIZE;
+
+        Arrays.fill(columnResults, UNKNOWN);
+        columnCount = 0;
+    }
+
+    /** Returns true if any part of the chunk at `chunkGridPos` may be visible. */
+    public boolean isVisible(Vector3i chunkGridPos) {
+        byte column = getColumn(chunkGridPos.x, chunkGridPos.z);
+        if (column == OUTSIDE) return false;
+        if (column == INSIDE) return true;
+
+        float minX = chunkGridPos.x * Chunk.SIZE;
+        float minY = chunkGridPos.y * Chunk.SIZE;
+        float minZ = chunkGridPos.z * Chunk.SIZE;
+        return frustum.testAab(minX, minY, minZ, minX + Chunk.SIZE, minY + Chunk.SIZE, minZ + Chunk.SIZE);
+    }
+
+    private byte getColumn(int x, int z) {
+        long key = (long) x << 32 | (z & 0xFFFFFFFFL);
+
+        int mask = columnKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (columnResults[slot] != UNKNOWN) {
+            if (columnKeys[slot] == key) return columnResults[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        byte result = testColumn(x, z);
+        columnKeys[slot] = key;
+        columnResults[slot] = result;
+        if (++columnCount * 2 > columnKeys.length) growColumns();
+        return result;
+    }
+
+    private byte testColumn(int x, int z) {
+        float minX = x * Chunk.SIZE;
+        float minZ = z * Chunk.SIZE;
+        int result = frustum.intersectAab(minX, columnMinY, minZ, minX + Chunk.SIZE, columnMaxY, minZ + Chunk.SIZE);
+        if (result == FrustumIntersection.INSIDE) return INSIDE;
+        if (result == FrustumIntersection.INTERSECT) return INTERSECT;
+        return OUTSIDE;
+    }
+
+    // keep the table at most half full
+    private void growColumns() {
+        var oldKeys = columnKeys;
+        var oldResults = columnResults;
+        columnKeys = new long[oldKeys.length * 2];
+        columnResults = new byte[oldResults.length * 2];
+
+        int mask = columnKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldResults[i] == UNKNOWN) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (columnResults[slot] != UNKNOWN) slot = (slot + 1) & mask;
+            columnKeys[slot] = oldKeys[i];
+            columnResults[slot] = oldResults[i];
+        }
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -1,6 +1,7 @@
 package chunk;
 
 import block.Block;
+import block.CardinalDirection;
 import block.DiagonalDirection;
 import entity.EntityManager;
 import entity.TransformationComponent;
@@ -9,28 +10,46 @@ import org.joml.Vector3i;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** This class stores and handles the loading of chunks.
- * It loads chunks by sending the chunks to various workers to be processed. */
+ * It loads chunks by sending the chunks to various workers to be processed.
+ *
+ * Chunks aren't polled: a chunk is only looked at when it's hinted to need an update, which happens when it finishes
+ * some work, when its neighbors get far enough for it to move on (see {@link ChunkDependencies}), when it's spoiled,
+ * and when the player moving loads or unloads it. */
 public class ChunkLoader {
 
     // if these variables are to be user controlled, they should have 2-3 chunks added to them, to enable the player to always be in a fully loaded chunk.
-    private static final int HORIZONTAL_LOAD_RADIUS = 12;
-    private static final int VERTICAL_LOAD_RADIUS = 6;
-    private static final int CHUNKS_COUNT = (2*HORIZONTAL_LOAD_RADIUS+1) * (2*VERTICAL_LOAD_RADIUS) * (2*HORIZONTAL_LOAD_RADIUS+1);
+    private static final int DEFAULT_HORIZONTAL_LOAD_RADIUS = 12;
+    private static final int DEFAULT_VERTICAL_LOAD_RADIUS = 6;
+    private static final int CHUNKS_COUNT = (2*DEFAULT_HORIZONTAL_LOAD_RADIUS+1) * (2*DEFAULT_VERTICAL_LOAD_RADIUS) * (2*DEFAULT_HORIZONTAL_LOAD_RADIUS+1);
+    public static final int MIN_HORIZONTAL_LOAD_RADIUS = 2;
+    public static final int MIN_VERTICAL_LOAD_RADIUS = 3; // the top chunks aren't lit, see topChunkLevel
+
+    // the radii the update works with, only changed by the update (see changeLoadRadius). read from any thread
+    private static volatile int horizontalLoadRadius = DEFAULT_HORIZONTAL_LOAD_RADIUS;
+    private static volatile int verticalLoadRadius = DEFAULT_VERTICAL_LOAD_RADIUS;
+    // the radii asked for with setLoadRadius, picked up by the next update
+    private static volatile int requestedHorizontalLoadRadius = DEFAULT_HORIZONTAL_LOAD_RADIUS;
+    private static volatile int requestedVerticalLoadRadius = DEFAULT_VERTICAL_LOAD_RADIUS;
 
     // a chunk within this grid distance of the player's chunk will instantly get updated
     private static final float INSTANT_LOAD_DISTANCE = 2.5f;
     private static final float INSTANT_LOAD_DISTANCE_SQR = INSTANT_LOAD_DISTANCE*INSTANT_LOAD_DISTANCE;
 
-    private static final int CHUNK_UPDATE_SLICE = 400; // only even try to update this many chunks in a frame
+    // chunks further than this horizontally from the player's chunk get a coarser mesh, every ring this wide halves the resolution again.
+    private static int lodStartDistance = 6;
+    private static int lodRingWidth = 3;
+    private static volatile boolean lodDistancesChanged = false; // the next update redoes every chunk's level of detail
+    private static final int MAX_LEVEL_OF_DETAIL = 3; // 8x8x8 blocks become one
 
-    private static final HashMap<Vector3i, Chunk> chunks = new LinkedHashMap<>(CHUNKS_COUNT);
+    private static final ChunkRegistry chunks = new ChunkRegistry(CHUNKS_COUNT); // read from any thread, written by the update
     private static final Queue<Chunk> spoiledCloseQueue = new ConcurrentLinkedQueue<>();
     private static final Queue<Chunk> updateHintQueue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger updateHintCount = new AtomicInteger(); // the queue's size() walks the whole queue
 
     private static Vector3i lastPlayerChunkPos = null;
-    private static int slice = 0;
 
     // threading
     private static ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -41,20 +60,24 @@ public class ChunkLoader {
 
     public static void start(Vector3f playerPos) {
         Vector3i playerChunkPos = Chunk.worldPosToChunkPos(playerPos);
+        horizontalLoadRadius = requestedHorizontalLoadRadius;
+        verticalLoadRadius = requestedVerticalLoadRadius;
 
-        var minX = playerChunkPos.x - HORIZONTAL_LOAD_RADIUS;
-        var maxX = playerChunkPos.x + HORIZONTAL_LOAD_RADIUS;
-        var minY = playerChunkPos.y - VERTICAL_LOAD_RADIUS;
-        var maxY = playerChunkPos.y + VERTICAL_LOAD_RADIUS;
-        var minZ = playerChunkPos.z - HORIZONTAL_LOAD_RADIUS;
-        var maxZ = playerChunkPos.z + HORIZONTAL_LOAD_RADIUS;
+        var minX = playerChunkPos.x - horizontalLoadRadius;
+        var maxX = playerChunkPos.x + horizontalLoadRadius;
+        var minY = playerChunkPos.y - verticalLoadRadius;
+        var maxY = playerChunkPos.y + verticalLoadRadius;
+        var minZ = playerChunkPos.z - horizontalLoadRadius;
+        var maxZ = playerChunkPos.z + horizontalLoadRadius;
 
         for (int x = minX; x <= maxX; x++)
         for (int y = minY; y <= maxY; y++)
         for (int z = minZ; z <= maxZ; z++) {
             var pos = new Vector3i(x, y, z);
             var chunk = new Chunk(pos);
-            chunks.put(pos, chunk);
+            chunks.put(chunk);
+            chunk.setLevelOfDetail(levelOfDetailFor(horizontalDistance(pos, playerChunkPos)));
+            hintChunkUpdateRequired(chunk);
         }
 
         lastPlayerChunkPos = playerChunkPos;
@@ -64,15 +87,13 @@ public class ChunkLoader {
     public static void stop() {
         executor.shutdown();
         while (chunks.size() > 0) {
-            var it = chunks.values().iterator();
-            while (it.hasNext()) {
-                Chunk chunk = it.next();
+            chunks.forEach(chunk -> {
                 unloadChunk(chunk, true);
                 if (chunk.getStatus() == Chunk.Status.NONE
-                    && hasAllUnloadedNeighbors(chunk)) {
-                    it.remove();
+                    && ChunkDependencies.isComplete(chunk, ChunkDependencies.LOADED)) {
+                    chunks.remove(chunk);
                 }
-            }
+            });
         }
     }
 
@@ -80,11 +101,16 @@ public class ChunkLoader {
         while (!spoiledCloseQueue.isEmpty()) {
             Chunk chunk = spoiledCloseQueue.poll();
             updateNow(chunk);
+            chunk.queuedForMainThread = false;
         }
     }
 
+    /** Makes the next update look at the chunk. Thread safe. */
     public static void hintChunkUpdateRequired(Chunk chunk) {
-        updateHintQueue.add(chunk);
+        if (chunk.updateHinted.compareAndSet(false, true)) {
+            updateHintCount.incrementAndGet();
+            updateHintQueue.add(chunk);
+        }
     }
 
     public static void startUpdate(Vector3f playerPos) {
@@ -117,122 +143,289 @@ public class ChunkLoader {
         Vector3i playerChunkPos = Chunk.worldPosToChunkPos(playerPos);
         Vector3i playerDelta = playerChunkPos.sub(lastPlayerChunkPos, new Vector3i());
 
+        if (lodDistancesChanged) {
+            lodDistancesChanged = false;
+            chunks.forEach(chunk -> updateLevelOfDetail(chunk, lastPlayerChunkPos));
+        }
+
         // load new chunks and unload old chunks
         if (!playerDelta.equals(0, 0, 0)) {
-            loadNewChunks(lastPlayerChunkPos, playerDelta);
+            loadNewChunks(lastPlayerChunkPos, playerDelta, playerChunkPos);
             unloadChunks(lastPlayerChunkPos, playerDelta);
+
+            if (playerDelta.x != 0 || playerDelta.z != 0) {
+                updateLevelOfDetailAround(playerChunkPos, Math.max(Math.abs(playerDelta.x), Math.abs(playerDelta.z)));
+            }
+            if (playerDelta.y != 0) {
+                // the top chunks don't get lit (see doUpdateChunk), the chunks that just became the top can go on
+                hintLayer(topChunkLevel(playerChunkPos), playerChunkPos);
+            }
         }
         lastPlayerChunkPos = playerChunkPos;
 
+        // one ring at a time, so a big change doesn't make a single update load thousands of chunks
+        int horizontal = horizontalLoadRadius + Integer.signum(requestedHorizontalLoadRadius - horizontalLoadRadius);
+        int vertical = verticalLoadRadius + Integer.signum(requestedVerticalLoadRadius - verticalLoadRadius);
+        if (horizontal != horizontalLoadRadius || vertical != verticalLoadRadius) {
+            changeLoadRadius(playerChunkPos, horizontal, vertical);
+        }
+
         int updatedCount = 0;
 
-        var minX = playerChunkPos.x - HORIZONTAL_LOAD_RADIUS;
-        var maxX = playerChunkPos.x + HORIZONTAL_LOAD_RADIUS;
-        var minY = playerChunkPos.y - VERTICAL_LOAD_RADIUS;
-        var maxY = playerChunkPos.y + VERTICAL_LOAD_RADIUS;
-        var minZ = playerChunkPos.z - HORIZONTAL_LOAD_RADIUS;
-        var maxZ = playerChunkPos.z + HORIZONTAL_LOAD_RADIUS;
-
-        var it = chunks.values().iterator();
-
-        // skip forward to our slice
-        int i = 0;
-        while (i++ < slice && it.hasNext()) it.next();
-
-        int chunkUpdated = 0;
-        boolean hintQueueEmpty = false;
-        while (
-                (!hintQueueEmpty && !(hintQueueEmpty = updateHintQueue.isEmpty()))
-                || it.hasNext()
-        ) {
-            Chunk chunk;
-            // if the hint queue is empty, increment the count and update from iterator
-            if (hintQueueEmpty) {
-                if (chunkUpdated > CHUNK_UPDATE_SLICE) break;
-                chunkUpdated += 1;
-                chunk = it.next();
+        // only the chunks hinted since the last update, the ones hinted while this runs wait for the next one
+        for (int i = updateHintCount.get(); i > 0; i--) {
+            var chunk = updateHintQueue.poll();
+            if (chunk == null) break;
+            updateHintCount.decrementAndGet();
+            chunk.updateHinted.set(false);
+
+            if (updateChunk(chunk, playerChunkPos)) updatedCount++;
+        }
+
+        // update far away spoiled after the close spoiled have been updated
+        for (Chunk chunk : spoiledFarAway) {
+            // update multi-threaded on some future frame, skip the lighting if only the mesh is spoiled.
+            if (chunk.spoiled || chunk.getStatus().urgency < Chunk.Status.LIGHTS_GENERATED.urgency) {
+                chunk.setStatus(Chunk.Status.BLOCKS_GENERATED);
             } else {
-                chunk = updateHintQueue.poll();
+                chunk.setStatus(Chunk.Status.LIGHTS_GENERATED);
             }
+            chunk.spoiled = false;
+            chunk.meshSpoiled = false;
+        }
 
-            if (spoiledCloseQueue.contains(chunk)) {
-                // don't update a chunk that will be updated on main thread later
-                continue;
+        return updatedCount;
+    }
+
+    /** Moves the chunk along, or unloads it if it's outside of the load area. Returns true if its status changed. */
+    private static boolean updateChunk(Chunk chunk, Vector3i playerChunkPos) {
+        if (chunk.queuedForMainThread) {
+            // don't update a chunk that will be updated on main thread later
+            return false;
+        }
+
+        Vector3i chunkPos = chunk.getChunkGridPos();
+
+        // update any spoiled chunks that need updating
+        // if they're being worked on, they get hinted again once they're done.
+        // if they've not had their blocks generated something's gone wrong but still we wait.
+        if ((chunk.spoiled || chunk.meshSpoiled)
+                && !chunk.getStatus().working
+                && chunk.getStatus().urgency >= Chunk.Status.BLOCKS_GENERATED.urgency) {
+            float dx = playerChunkPos.x - chunkPos.x;
+            float dy = playerChunkPos.y - chunkPos.y;
+            float dz = playerChunkPos.z - chunkPos.z;
+            float dstSquared = dx*dx + dy*dy + dz*dz;
+            if (dstSquared < INSTANT_LOAD_DISTANCE_SQR) {
+                chunk.queuedForMainThread = true;
+                spoiledCloseQueue.add(chunk);
+            } else {
+                spoiledFarAway.add(chunk);
             }
+            return false;
+        }
 
-            Vector3i chunkPos = chunk.getChunkGridPos();
-
-            // update any spoiled chunks that need updating
-            // if they're being worked on, wait until they're ready (check again next frame)
-            // if they've not had their blocks generated something's gone wrong but still we wait.
-            if (chunk.spoiled
-                    && !chunk.getStatus().working
-                    && chunk.getStatus().urgency >= Chunk.Status.BLOCKS_GENERATED.urgency) {
-                chunk.spoiled = false;
-
-                float dx = playerChunkPos.x - chunkPos.x;
-                float dy = playerChunkPos.y - chunkPos.y;
-                float dz = playerChunkPos.z - chunkPos.z;
-                float dstSquared = dx*dx + dy*dy + dz*dz;
-                if (dstSquared < INSTANT_LOAD_DISTANCE_SQR) {
-                    spoiledCloseQueue.add(chunk);
-                } else {
-                    spoiledFarAway.add(chunk);
-                }
-                continue;
+        if (!isInLoadArea(chunkPos, playerChunkPos)) {
+            unloadChunk(chunk, true);
+            // once its neighbors are unloaded too, it's hinted again and forgotten
+            if (chunk.getStatus() == Chunk.Status.NONE
+                    && ChunkDependencies.isComplete(chunk, ChunkDependencies.LOADED)) {
+                chunks.remove(chunk);
             }
+            return false;
+        }
 
-            if (chunkPos.x < minX || chunkPos.x > maxX
-             || chunkPos.y < minY || chunkPos.y > maxY
-             || chunkPos.z < minZ || chunkPos.z > maxZ) {
-                unloadChunk(chunk, true);
-                if (chunk.getStatus() == Chunk.Status.NONE && hasAllUnloadedNeighbors(chunk)) {
-                    it.remove();
-                }
-            } else {
-                if (doUpdateChunk(chunk)) {
-                    updatedCount++;
+        return doUpdateChunk(chunk, playerChunkPos);
+    }
+
+    /** Sets how many chunks around the player's chunk are kept loaded, horizontally and vertically.
+     * The updates move the load area one ring at a time towards the new radius, only loading or unloading the chunks
+     * between the old and new load area. Thread safe. */
+    public static void setLoadRadius(int horizontal, int vertical) {
+        if (horizontal < MIN_HORIZONTAL_LOAD_RADIUS || vertical < MIN_VERTICAL_LOAD_RADIUS) {
+            throw new IllegalArgumentException("Load radius must be at least "
+                    + MIN_HORIZONTAL_LOAD_RADIUS + "x" + MIN_VERTICAL_LOAD_RADIUS + ", got " + horizontal + "x" + vertical);
+        }
+        requestedHorizontalLoadRadius = horizontal;
+        requestedVerticalLoadRadius = vertical;
+    }
+
+    /** The horizontal load radius asked for last, which may not have been applied yet. */
+    public static int getHorizontalLoadRadius() {
+        return requestedHorizontalLoadRadius;
+    }
+
+    public static int getVerticalLoadRadius() {
+        return requestedVerticalLoadRadius;
+    }
+
+    private interface ChunkPosAction {
+        void run(int x, int y, int z);
+    }
+
+    private static void changeLoadRadius(Vector3i playerChunkPos, int horizontal, int vertical) {
+        int oldHorizontal = horizontalLoadRadius;
+        int oldVertical = verticalLoadRadius;
+        horizontalLoadRadius = horizontal;
+        verticalLoadRadius = vertical;
+
+        // the chunks only in the old area go, the chunks only in the new area come.
+        // the ones that go are forgotten like any other unloaded chunk, once their neighbors are unloaded too
+        forEachOutside(playerChunkPos, oldHorizontal, oldVertical, horizontal, vertical, ChunkLoader::unloadChunkAt);
+        forEachOutside(playerChunkPos, horizontal, vertical, oldHorizontal, oldVertical,
+                (x, y, z) -> ensureChunkLoaded(x, y, z, playerChunkPos));
+
+        if (vertical != oldVertical) {
+            hintLayer(topChunkLevel(playerChunkPos), playerChunkPos);
+        }
+        // queued work for chunks that just left the load area can be dropped
+        ChunkScheduler.viewerChanged();
+    }
+
+    // runs `action` on the chunk positions inside the `horizontal` x `vertical` box around the player,
+    // but outside the `innerHorizontal` x `innerVertical` one. doesn't walk through the inner box
+    private static void forEachOutside(Vector3i playerChunkPos, int horizontal, int vertical,
+                                       int innerHorizontal, int innerVertical, ChunkPosAction action) {
+        for (int dx = -horizontal; dx <= horizontal; dx++)
+        for (int dy = -vertical; dy <= vertical; dy++)
+        {
+            int x = playerChunkPos.x + dx, y = playerChunkPos.y + dy;
+            if (Math.abs(dx) > innerHorizontal || Math.abs(dy) > innerVertical) {
+                for (int dz = -horizontal; dz <= horizontal; dz++) {
+                    action.run(x, y, playerChunkPos.z + dz);
                 }
+                continue;
+            }
+            // the column goes through the inner box, only its ends are outside
+            for (int dz = innerHorizontal + 1; dz <= horizontal; dz++) {
+                action.run(x, y, playerChunkPos.z + dz);
+                action.run(x, y, playerChunkPos.z - dz);
             }
         }
+    }
 
-        // update slice variable
-        slice += chunkUpdated;
-        if (slice >= chunks.size()) {
-            slice = 0;
+    private static void hintLayer(int y, Vector3i playerChunkPos) {
+        int horizontal = horizontalLoadRadius;
+        for (int x = playerChunkPos.x - horizontal; x <= playerChunkPos.x + horizontal; x++)
+        for (int z = playerChunkPos.z - horizontal; z <= playerChunkPos.z + horizontal; z++)
+        {
+            var chunk = getChunkAt(x, y, z);
+            if (chunk != null) hintChunkUpdateRequired(chunk);
         }
+    }
 
-        // update far away spoiled after the close spoiled have been updated
-        for (Chunk chunk : spoiledFarAway) {
-            chunk.setStatus(Chunk.Status.BLOCKS_GENERATED); // update multi-threaded on some future frame.
+    // the highest chunks can't be lit, they don't have neighbors above them
+    private static int topChunkLevel(Vector3i playerChunkPos) {
+        return playerChunkPos.y + verticalLoadRadius - 2;
+    }
+
+    private static int horizontalDistance(Vector3i chunkPos, Vector3i playerChunkPos) {
+        return Math.max(Math.abs(chunkPos.x - playerChunkPos.x), Math.abs(chunkPos.z - playerChunkPos.z));
+    }
+
+    /** Returns true if the chunk at `chunkPos` is kept loaded while the player is in the chunk at `playerChunkPos`. */
+    static boolean isInLoadArea(Vector3i chunkPos, Vector3i playerChunkPos) {
+        int horizontal = horizontalLoadRadius;
+        return Math.abs(chunkPos.x - playerChunkPos.x) <= horizontal
+            && Math.abs(chunkPos.y - playerChunkPos.y) <= verticalLoadRadius
+            && Math.abs(chunkPos.z - playerChunkPos.z) <= horizontal;
+    }
+
+    /** Returns the level of detail a chunk this many chunks away from the player horizontally should be meshed with. */
+    public static int levelOfDetailFor(int distance) {
+        if (distance < lodStartDistance) return 0;
+        return Math.min(MAX_LEVEL_OF_DETAIL, 1 + (distance - lodStartDistance) / lodRingWidth);
+    }
+
+    /** Sets how far away chunks start getting coarser meshes. A start distance past the load radius turns it off.
+     * Chunks already meshed get remeshed by the next update. */
+    public static void setLevelOfDetailDistances(int startDistance, int ringWidth) {
+        if (ringWidth < 1) throw new IllegalArgumentException("ring width must be at least 1, got " + ringWidth);
+        lodStartDistance = startDistance;
+        lodRingWidth = ringWidth;
+        lodDistancesChanged = true;
+    }
+
+    // a chunk's level of detail only changes when the player moving `step` chunks takes it across the distance
+    // where a level starts (see levelOfDetailFor), so only the rings of chunks that close to one are looked at.
+    // the chunks that just came into the load area got theirs in loadNewChunks
+    private static void updateLevelOfDetailAround(Vector3i playerChunkPos, int step) {
+        int horizontal = horizontalLoadRadius;
+        if (step > horizontal) {
+            chunks.forEach(chunk -> updateLevelOfDetail(chunk, playerChunkPos));
+            return;
         }
 
-        // skip lightmap generation for top chunks
-        int topChunkLevel = maxY - 2;
-        for (var chunk : chunks.values()) {
-            if (chunk.getChunkGridPos().y == topChunkLevel
-                && chunk.getStatus() == Chunk.Status.BLOCKS_GENERATED
-                && !chunk.getIsAirChunk()) {
-                chunk.setStatus(Chunk.Status.LIGHTS_GENERATED);
+        int lastDistance = -1; // so a ring close to two level starts is only walked once
+        for (int level = 1; level <= MAX_LEVEL_OF_DETAIL; level++) {
+            int start = lodStartDistance + (level - 1) * lodRingWidth;
+            for (int distance = Math.max(start - step, lastDistance + 1); distance < start + step && distance <= horizontal; distance++) {
+                forEachInRing(playerChunkPos, distance, (x, y, z) -> {
+                    var chunk = getChunkAt(x, y, z);
+                    if (chunk != null) updateLevelOfDetail(chunk, playerChunkPos);
+                });
+                lastDistance = distance;
             }
         }
+    }
 
-        return updatedCount;
+    // runs `action` on the chunk positions in the load area that are `distance` chunks from the player horizontally
+    private static void forEachInRing(Vector3i playerChunkPos, int distance, ChunkPosAction action) {
+        for (int y = playerChunkPos.y - verticalLoadRadius; y <= playerChunkPos.y + verticalLoadRadius; y++) {
+            if (distance == 0) {
+                action.run(playerChunkPos.x, y, playerChunkPos.z);
+                continue;
+            }
+            for (int d = -distance; d <= distance; d++) {
+                action.run(playerChunkPos.x + d, y, playerChunkPos.z - distance);
+                action.run(playerChunkPos.x + d, y, playerChunkPos.z + distance);
+            }
+            for (int d = -distance + 1; d < distance; d++) {
+                action.run(playerChunkPos.x - distance, y, playerChunkPos.z + d);
+                action.run(playerChunkPos.x + distance, y, playerChunkPos.z + d);
+            }
+        }
+    }
+
+    // remeshes the chunk if the player moved far enough to change its level of detail.
+    // the neighbors are remeshed too, since their border faces depend on it (see TerrainModelGenerator)
+    private static void updateLevelOfDetail(Chunk chunk, Vector3i playerChunkPos) {
+        int levelOfDetail = levelOfDetailFor(horizontalDistance(chunk.getChunkGridPos(), playerChunkPos));
+        if (levelOfDetail == chunk.getLevelOfDetail()) return;
+
+        chunk.setLevelOfDetail(levelOfDetail);
+        spoilMeshIfMeshed(chunk);
+        for (var offset : CardinalDirection.offsets) {
+            spoilMeshIfMeshed(chunk.getNeighbor(DiagonalDirection.indexOf(offset)));
+        }
+    }
+
+    private static void spoilMeshIfMeshed(Chunk chunk) {
+        if (chunk != null && chunk.getStatus().urgency >= Chunk.Status.MESH_GENERATING.urgency) {
+            chunk.spoilMesh();
+        }
     }
 
     public static void updateNow(Chunk chunk) {
         if (chunk.getStatus().working) return;
 
+        boolean relight = chunk.spoiled || chunk.getStatus().urgency < Chunk.Status.LIGHTS_GENERATED.urgency;
+        chunk.spoiled = false;
+        chunk.meshSpoiled = false;
+
         // unload current model
         unloadChunkNow(chunk, false);
 
-        // update lightmap
-        chunk.setStatus(Chunk.Status.LIGHTS_GENERATING);
-        LightMapGenerator.loadChunk(chunk);
+        // update lightmap, unless the light was already updated in place (see setBlockAt)
+        if (relight) {
+            chunk.setStatus(Chunk.Status.LIGHTS_GENERATING);
+            LightMapGenerator.loadChunk(chunk);
+        }
 
         // generate mesh
         chunk.setStatus(Chunk.Status.MESH_GENERATING);
-        EntityManager.removeComponent(chunk, ChunkModelDataComponent.class);
+        var staleModelData = EntityManager.removeComponent(chunk, ChunkModelDataComponent.class);
+        if (staleModelData != null) staleModelData.release();
         TerrainModelGenerator.loadChunk(chunk);
 
         chunk.setStatus(Chunk.Status.MESH_LOADING);
@@ -241,7 +434,7 @@ public class ChunkLoader {
         TerrainModelLoader.loadChunk(chunk);
 
         if (oldModel != null) {
-            oldModel.getModel().destroy();
+            oldModel.destroy(chunk);
         }
 
         assert chunk.getStatus() == Chunk.Status.FINAL;
@@ -249,7 +442,8 @@ public class ChunkLoader {
 
     /** Returns the size of the queue of all the chunk workers combined. */
     public static int getQueueSize() {
-        return TerrainGenerator.getQueueSize()
+        return updateHintCount.get()
+                + TerrainGenerator.getQueueSize()
                 + StructureGenerator.getQueueSize()
                 + TerrainModelGenerator.getQueueSize()
                 + TerrainModelLoader.getQueueSize()
@@ -260,51 +454,78 @@ public class ChunkLoader {
     public static void setBlockAt(Vector3i pos, byte block) {
         var chunkPos = Chunk.worldPosToChunkPos(pos);
         var blockPos = Chunk.worldPosToBlockPos(pos);
-        var chunk = chunks.get(chunkPos);
+        var chunk = getChunkAt(chunkPos);
         if (chunk == null || chunk.getStatus().urgency < Chunk.Status.BLOCKS_GENERATED.urgency) return;
         chunk.setBlockSafe(blockPos, block);
-        chunk.spoil();
+
+        // a chunk that hasn't been meshed yet will get its light generated from scratch anyway
+        boolean updateLightInPlace = chunk.getStatus().urgency >= Chunk.Status.MESH_GENERATING.urgency;
+
+        List<Chunk> changedChunks;
+        if (updateLightInPlace) {
+            changedChunks = LightMapGenerator.updateBlock(chunk, blockPos.x, blockPos.y, blockPos.z);
+        } else {
+            changedChunks = new ArrayList<>();
+        }
+        changedChunks.add(chunk);
 
         // setting a block at a chunk border requires the neighbor to update their mesh as well
         // TODO this might only apply with transparent blocks, maybe add a check for that?
-        if (blockPos.x == 0)            chunk.getNeighbor(DiagonalDirection.LEFT).spoil();
-        if (blockPos.x == Chunk.SIZE-1) chunk.getNeighbor(DiagonalDirection.RIGHT).spoil();
-        if (blockPos.y == 0)            chunk.getNeighbor(DiagonalDirection.DOWN).spoil();
-        if (blockPos.y == Chunk.SIZE-1) chunk.getNeighbor(DiagonalDirection.UP).spoil();
-        if (blockPos.z == 0)            chunk.getNeighbor(DiagonalDirection.FRONT).spoil();
-        if (blockPos.z == Chunk.SIZE-1) chunk.getNeighbor(DiagonalDirection.BACK).spoil();
+        if (blockPos.x == 0)            changedChunks.add(chunk.getNeighbor(DiagonalDirection.LEFT));
+        if (blockPos.x == Chunk.SIZE-1) changedChunks.add(chunk.getNeighbor(DiagonalDirection.RIGHT));
+        if (blockPos.y == 0)            changedChunks.add(chunk.getNeighbor(DiagonalDirection.DOWN));
+        if (blockPos.y == Chunk.SIZE-1) changedChunks.add(chunk.getNeighbor(DiagonalDirection.UP));
+        if (blockPos.z == 0)            changedChunks.add(chunk.getNeighbor(DiagonalDirection.FRONT));
+        if (blockPos.z == Chunk.SIZE-1) changedChunks.add(chunk.getNeighbor(DiagonalDirection.BACK));
+
+        for (Chunk changed : changedChunks) {
+            if (changed == null) continue;
+            if (updateLightInPlace) {
+                changed.spoilMesh();
+            } else {
+                changed.spoil();
+            }
+        }
     }
 
-    public static byte getBlockAt(Vector3f pos) {
-        var chunkPos = Chunk.worldPosToChunkPos(pos);
-        var chunkRemainderPos = Chunk.worldPosToBlockPos(pos);
-
-        var chunk = chunks.get(chunkPos);
+    /** Returns the id of the block at the world position, or {@link Block#INVALID} if its chunk doesn't have blocks yet.
+     * Doesn't allocate, physics and raycasts call this a lot every frame. */
+    public static byte getBlockAt(int x, int y, int z) {
+        var chunk = getChunkAt(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS);
         if (chunk == null || chunk.getStatus().urgency < Chunk.Status.BLOCKS_GENERATED.urgency) {
             return Block.INVALID.getID();
         }
-        return chunk.getBlock(chunkRemainderPos);
+        return chunk.getBlock(x & (Chunk.SIZE-1), y & (Chunk.SIZE-1), z & (Chunk.SIZE-1));
+    }
+
+    public static byte getBlockAt(float x, float y, float z) {
+        return getBlockAt((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z));
+    }
+
+    public static byte getBlockAt(Vector3f pos) {
+        return getBlockAt(pos.x, pos.y, pos.z);
     }
 
     public static byte getBlockAt(Vector3i pos) {
-        return getBlockAt(new Vector3f(pos.x, pos.y, pos.z));
+        return getBlockAt(pos.x, pos.y, pos.z);
     }
 
-    public static byte getBlockAt(int x, int y, int z) {
-        return getBlockAt(new Vector3f(x, y, z));
+    /** Returns the chunk at the chunk grid position, or null if it isn't loaded. */
+    public static Chunk getChunkAt(int x, int y, int z) {
+        return chunks.get(Chunk.toKey(x, y, z));
     }
 
     public static Chunk getChunkAt(Vector3i pos) {
-        return chunks.get(pos);
+        return getChunkAt(pos.x, pos.y, pos.z);
     }
 
     public static Chunk getChunkAt(Vector3f pos) {
         return getChunkAt(Chunk.worldPosToChunkPos(pos));
     }
 
-    private static void loadNewChunks(Vector3i lastPos, Vector3i playerMovedDelta) {
-        final int horiz = HORIZONTAL_LOAD_RADIUS;
-        final int vert = VERTICAL_LOAD_RADIUS;
+    private static void loadNewChunks(Vector3i lastPos, Vector3i playerMovedDelta, Vector3i playerChunkPos) {
+        final int horiz = horizontalLoadRadius;
+        final int vert = verticalLoadRadius;
 
         // pretend the player hasn't moved, we move it axis-by-axis
         Vector3i player = new Vector3i(lastPos);
@@ -315,7 +536,7 @@ public class ChunkLoader {
             for (int y = player.y - vert; y <= player.y + vert; y++)
             for (int z = player.z - horiz; z <= player.z + horiz; z++)
             {
-                ensureChunkLoaded(player.x + horiz + 1, y, z);
+                ensureChunkLoaded(player.x + horiz + 1, y, z, playerChunkPos);
             }
             playerDelta.x -= 1;
             player.x += 1;
@@ -326,7 +547,7 @@ public class ChunkLoader {
             for (int y = player.y - vert; y <= player.y + vert; y++)
             for (int z = player.z - horiz; z <= player.z + horiz; z++)
             {
-                ensureChunkLoaded(player.x - horiz - 1, y, z);
+                ensureChunkLoaded(player.x - horiz - 1, y, z, playerChunkPos);
             }
             playerDelta.x += 1;
             player.x -= 1;
@@ -337,7 +558,7 @@ public class ChunkLoader {
             for (int x = player.x - horiz; x <= player.x + horiz; x++)
             for (int z = player.z - horiz; z <= player.z + horiz; z++)
             {
-                ensureChunkLoaded(x, player.y + vert + 1, z);
+                ensureChunkLoaded(x, player.y + vert + 1, z, playerChunkPos);
             }
             playerDelta.y -= 1;
             player.y += 1;
@@ -348,7 +569,7 @@ public class ChunkLoader {
             for (int x = player.x - horiz; x <= player.x + horiz; x++)
             for (int z = player.z - horiz; z <= player.z + horiz; z++)
             {
-                ensureChunkLoaded(x, player.y - vert - 1, z);
+                ensureChunkLoaded(x, player.y - vert - 1, z, playerChunkPos);
             }
             playerDelta.y += 1;
             player.y -= 1;
@@ -359,7 +580,7 @@ public class ChunkLoader {
             for (int y = player.y - vert; y <= player.y + vert; y++)
             for (int x = player.x - horiz; x <= player.x + horiz; x++)
             {
-                ensureChunkLoaded(x, y, player.z + horiz + 1);
+                ensureChunkLoaded(x, y, player.z + horiz + 1, playerChunkPos);
             }
             playerDelta.z -= 1;
             player.z += 1;
@@ -370,7 +591,7 @@ public class ChunkLoader {
             for (int y = player.y - vert; y <= player.y + vert; y++)
             for (int x = player.x - horiz; x <= player.x + horiz; x++)
             {
-                ensureChunkLoaded(x, y, player.z - horiz - 1);
+                ensureChunkLoaded(x, y, player.z - horiz - 1, playerChunkPos);
             }
             playerDelta.z += 1;
             player.z -= 1;
@@ -378,8 +599,8 @@ public class ChunkLoader {
     }
 
     private static void unloadChunks(Vector3i lastPos, Vector3i playerMovedDelta) {
-        final int horiz = HORIZONTAL_LOAD_RADIUS;
-        final int vert = VERTICAL_LOAD_RADIUS;
+        final int horiz = horizontalLoadRadius;
+        final int vert = verticalLoadRadius;
 
         // pretend the player hasn't moved, we move it axis-by-axis
         Vector3i player = new Vector3i(lastPos);
@@ -452,27 +673,41 @@ public class ChunkLoader {
         }
     }
 
+    // loads the chunk if it isn't, and gives it the level of detail for where the player is now
+    private static void ensureChunkLoaded(int x, int y, int z, Vector3i playerChunkPos) {
+        boolean isNew = ensureChunkLoaded(x, y, z);
+        var chunk = getChunkAt(x, y, z);
+        if (isNew) {
+            chunk.setLevelOfDetail(levelOfDetailFor(horizontalDistance(chunk.getChunkGridPos(), playerChunkPos)));
+        } else {
+            updateLevelOfDetail(chunk, playerChunkPos); // it may have been meshed for somewhere else
+        }
+    }
+
     private static boolean ensureChunkLoaded(int x, int y, int z) {
-        Vector3i pos = new Vector3i(x, y, z);
-        if (!chunks.containsKey(pos)) {
-            var chunk = new Chunk(pos);
-            chunks.put(pos, chunk);
-            return true;
+        var chunk = getChunkAt(x, y, z);
+        if (chunk != null) {
+            // still here from before, waiting for its neighbors to unload. it's wanted again
+            hintChunkUpdateRequired(chunk);
+            return false;
         }
-        return false;
+
+        chunk = new Chunk(new Vector3i(x, y, z));
+        chunks.put(chunk);
+        hintChunkUpdateRequired(chunk);
+        return true;
     }
 
     private static boolean unloadChunkAt(int x, int y, int z) {
-        Vector3i pos = new Vector3i(x, y, z);
-        if (chunks.containsKey(pos)) {
-            var chunk = chunks.get(pos);
+        var chunk = getChunkAt(x, y, z);
+        if (chunk != null) {
             unloadChunk(chunk, true);
             return true;
         }
         return false;
     }
 
-    private static boolean doUpdateChunk(Chunk chunk) {
+    private static boolean doUpdateChunk(Chunk chunk, Vector3i playerChunkPos) {
         switch (chunk.getStatus()) {
             // if chunk has no data, load heightmap terrain
             case NONE           -> {
@@ -488,7 +723,7 @@ public class ChunkLoader {
             }
             // once chunk and all its neighbors have heightmapped terrain, load structures
             case BASIC_TERRAIN_GENERATED -> {
-                if (neighborsUrgencyAtLeast(chunk, Chunk.Status.BASIC_TERRAIN_GENERATED.urgency)) {
+                if (ChunkDependencies.isComplete(chunk, ChunkDependencies.BASIC_TERRAIN)) {
                     chunk.setStatus(Chunk.Status.STRUCTURE_GENERATING);
                     StructureGenerator.addChunk(chunk);
                     return true;
@@ -497,8 +732,14 @@ public class ChunkLoader {
             case BLOCKS_GENERATED -> {
                 // if not air chunk and can't normally generate lights, then the chunk is skipped in lightmap generation
                 if (!chunk.getIsAirChunk()) {
-                    boolean canNormallyGenerate = neighborsUrgencyAtLeast(chunk, Chunk.Status.BLOCKS_GENERATED.urgency)
-                            && aboveNeighborsUrgencyAtLeast(chunk, Chunk.Status.LIGHTS_GENERATED.urgency);
+                    // skip lightmap generation for top chunks
+                    if (chunk.getChunkGridPos().y == topChunkLevel(playerChunkPos)) {
+                        chunk.setStatus(Chunk.Status.LIGHTS_GENERATED);
+                        return true;
+                    }
+
+                    boolean canNormallyGenerate = ChunkDependencies.isComplete(chunk, ChunkDependencies.BLOCKS)
+                            && ChunkDependencies.isComplete(chunk, ChunkDependencies.LIGHTS_ABOVE);
                     if (!canNormallyGenerate) {
                         return false;
                     }
@@ -511,7 +752,7 @@ public class ChunkLoader {
 
             // once chunk has block and light data, generate block faces to form a mesh
             case LIGHTS_GENERATED -> {
-                if (neighborsUrgencyAtLeast(chunk, Chunk.Status.LIGHTS_GENERATED.urgency)) {
+                if (ChunkDependencies.isComplete(chunk, ChunkDependencies.LIGHTS)) {
                     chunk.setStatus(Chunk.Status.MESH_GENERATING);
                     TerrainModelGenerator.addChunk(chunk);
                     return true;
@@ -528,41 +769,15 @@ public class ChunkLoader {
         return false;
     }
 
-    /** Returns true if the chunk's neighbors have a status of at least `urgency`. */
-    private static boolean neighborsUrgencyAtLeast(Chunk chunk, int urgency) {
-        for (int dir = 0; dir < DiagonalDirection.COUNT; dir++) {
-            var neighbor = chunk.getNeighbor(dir);
-            if (neighbor == null || neighbor.getStatus().urgency < urgency) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static boolean aboveNeighborsUrgencyAtLeast(Chunk chunk, int urgency) {
-        for (int dir : DiagonalDirection.ABOVE) {
-            var neighbor = chunk.getNeighbor(dir);
-            if (neighbor == null || neighbor.getStatus().urgency < urgency) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    /** Returns true if all neighbors of this chunk have status NONE. */
-    private static boolean hasAllUnloadedNeighbors(Chunk chunk) {
-        for (int dir = 0; dir < DiagonalDirection.COUNT; dir++) {
-            var neighbor = chunk.getNeighbor(dir);
-            if (neighbor != null && neighbor.getStatus() != Chunk.Status.NONE) return false;
-        }
-        return true;
-    }
-
     private static void unloadChunk(Chunk chunk, boolean serialize) {
         if (chunk.getStatus().working) return; // don't want to unload a chunk that is queued somewhere.
 
         boolean hasBlocks = chunk.getStatus().urgency > Chunk.Status.BLOCKS_GENERATED.urgency;
 
+        // removeEntitySafe doesn't destroy the components, but the mesh has to give its space in the arena back,
+        // and mesh data that never got uploaded has to give its off-heap buffer back to MeshBufferPool
+        EntityManager.removeComponentSafe(chunk, ChunkModelComponent.class);
+        EntityManager.removeComponentSafe(chunk, ChunkModelDataComponent.class);
         EntityManager.removeEntitySafe(chunk);
         chunk.setStatus(Chunk.Status.NONE);
 
@@ -0,0 +1,117 @@
+package chunk;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+
+/** Shrinks the view distance when the loaded chunks take up too much memory, and grows it back when there is room.
+ * Three things are measured against their budgets: the heap still in use after the last garbage collection,
+ * the off-heap buffers chunk meshes are built in (see {@link MeshBufferPool}), and the part of the gpu's chunk vertex
+ * buffer that holds meshes (see {@link ChunkMeshArena}). Only the horizontal load radius is changed, it's what most
+ * of the chunks come from.
+ *
+ * The memory of the loaded chunks grows with the square of the radius, so when over budget the radius is shrunk by
+ * the square root of how far over it is. It only grows one ring at a time, once everything is under
+ * {@link #GROW_BELOW} of its budget and no chunks are queued. After a change, nothing more is changed until there
+ * has been a garbage collection, so the heap numbers have caught up, or until {@link #SETTLE_NANOS} have passed if
+ * nothing is allocating. Call {@link #update} every frame on the main thread. */
+public class ChunkMemoryGovernor {
+
+    private static final long CHECK_INTERVAL_NANOS = 2_000_000_000L;
+    private static final long SETTLE_NANOS = 10_000_000_000L;
+    private static final float GROW_BELOW = 0.7f; // one more ring is about 15% more chunks at the default radius
+
+    private static boolean enabled = true;
+    private static long heapBudget = Runtime.getRuntime().maxMemory() / 4 * 3; // bytes
+    private static long meshBufferBudget = 256L << 20;
+    private static long gpuBudget = 512L << 20;
+
+    private static int minHorizontalRadius = 4;
+    private static int maxHorizontalRadius = -1; // the radius the loader had the first time, until set
+
+    private static long lastCheck = 0;
+    private static long collectionsAtChange = -1;
+    private static long lastChange = 0;
+
+    public static void update() {
+        update(System.nanoTime());
+    }
+
+    // `now` is in nanoseconds, like System.nanoTime
+    static void update(long now) {
+        if (!enabled) return;
+        if (now - lastCheck < CHECK_INTERVAL_NANOS) return;
+        lastCheck = now;
+
+        if (maxHorizontalRadius == -1) maxHorizontalRadius = ChunkLoader.getHorizontalLoadRadius();
+
+        long collections = getCollectionCount();
+        if (collections == collectionsAtChange && now - lastChange < SETTLE_NANOS) return;
+
+        int radius = ChunkLoader.getHorizontalLoadRadius();
+        float pressure = getPressure();
+
+        int newRadius = radius;
+        if (pressure > 1) {
+            newRadius = Math.min(radius - 1, (int) (radius / Math.sqrt(pressure)));
+        } else if (pressure < GROW_BELOW && ChunkLoader.getQueueSize() == 0) {
+            newRadius = radius + 1;
+        }
+        newRadius = Math.max(minHorizontalRadius, Math.min(maxHorizontalRadius, newRadius));
+
+        if (newRadius != radius) {
+            System.out.printf("Memory at %.0f%% of budget, view distance %d -> %d%n", pressure * 100, radius, newRadius);
+            ChunkLoader.setLoadRadius(newRadius, ChunkLoader.getVerticalLoadRadius());
+            collectionsAtChange = collections;
+            lastChange = now;
+        }
+    }
+
+    /** How full the fullest of the budgets is, 1 is right at the budget. */
+    public static float getPressure() {
+        return Math.max(getLiveHeapBytes() / (float) heapBudget,
+               Math.max(MeshBufferPool.getAllocatedBytes() / (float) meshBufferBudget,
+                        ChunkMeshArena.getUsedBytes() / (float) gpuBudget));
+    }
+
+    /** Sets the budgets in bytes. */
+    public static void setBudgets(long heap, long meshBuffers, long gpu) {
+        heapBudget = heap;
+        meshBufferBudget = meshBuffers;
+        gpuBudget = gpu;
+    }
+
+    /** Sets how far the horizontal load radius may be shrunk and grown. */
+    public static void setRadiusRange(int min, int max) {
+        if (min < ChunkLoader.MIN_HORIZONTAL_LOAD_RADIUS || max < min) {
+            throw new IllegalArgumentException("Bad radius range " + min + " to " + max);
+        }
+        minHorizontalRadius = min;
+        maxHorizontalRadius = max;
+    }
+
+    /** Turning it off keeps the load radius where it is. */
+    public static void setEnabled(boolean enabled) {
+        ChunkMemoryGovernor.enabled = enabled;
+    }
+
+    private static long getCollectionCount() {
+        long count = 0;
+        for (var collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    // the heap in use right after the last collection, so garbage that hasn't been collected yet doesn't count.
+    // until there has been a collection, the heap in use now
+    private static long getLiveHeapBytes() {
+        long used = 0;
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            var usage = pool.getCollectionUsage();
+            if (usage != null) used += usage.getUsed();
+        }
+        if (used > 0) return used;
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,296 @@
+package chunk;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+import render.ArenaAllocator;
+import render.GLState;
+import render.QuadIndexBuffer;
+import render.StagingRing;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/** All chunk meshes live in one big vertex buffer, so all chunks share one vao and can be drawn with a single
+ * multi-draw call instead of binding every chunk's own model.
+ *
+ * Each chunk gets a range of vertices out of the buffer from an {@link ArenaAllocator}, and a slot in the origin
+ * buffer that holds its world position. A draw command points at the chunk's vertices with its base vertex, and at
+ * its origin with its base instance: the origin is an instanced attribute, so every vertex of the draw reads the
+ * origin of that chunk.
+ *
+ * When the buffer runs out of room it is compacted, or if that wouldn't free up enough space, grown.
+ * Both copy the meshes into a new buffer on the gpu. Only use this on the main thread. */
+public class ChunkMeshArena {
+
+    private static final int INITIAL_CAPACITY = 1 << 20;        // vertices, 8 MB
+    private static final int INITIAL_SLOTS = 1024;              // chunks
+    private static final float COMPACT_FRAGMENTATION = 0.5f;    // compact instead of growing if the free space is this fragmented
+
+    private static final int VERTEX_BYTES = TerrainVertex.INTS_PER_VERTEX * Integer.BYTES;
+    private static final int ORIGIN_BYTES = 3 * Float.BYTES;
+    static final int COMMAND_INTS = 5; // count, instance count, first index, base vertex, base instance
+
+    private static ArenaAllocator allocator = null;
+    private static int vao = 0;
+    private static int vbo = 0;
+    private static int originVbo = 0;
+    private static int indirectBuffer = 0;
+
+    private static int slotCapacity = 0;
+    private static int nextSlot = 0;
+    private static final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    // the mesh starting at each allocated offset, so they can be told where they moved to after compaction
+    private static final HashMap<Integer, ChunkModelComponent> meshes = new HashMap<>();
+
+    /** Copies the mesh into the arena, through the staging ring if it has room. */
+    public static ChunkModelComponent add(Chunk chunk, ChunkModelDataComponent data, StagingRing ring) {
+        if (allocator == null) init();
+
+        int vertexCount = data.getSize() / TerrainVertex.INTS_PER_VERTEX;
+        int quadCount = vertexCount / QuadIndexBuffer.VERTICES_PER_QUAD;
+
+        int offset = allocator.allocate(vertexCount);
+        if (offset == -1) {
+            makeRoom(vertexCount);
+            offset = allocator.allocate(vertexCount);
+        }
+
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, vbo);
+        long byteOffset = (long) offset * VERTEX_BYTES;
+        if (ring.hasRoom(data.getSize() * Integer.BYTES)) {
+            ring.upload(data.getVertices(), GL32.GL_COPY_WRITE_BUFFER, byteOffset);
+        } else {
+            GL30.glBufferSubData(GL32.GL_COPY_WRITE_BUFFER, byteOffset, data.getVertices());
+        }
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, 0);
+
+        int slot = takeSlot();
+        var pos = chunk.getChunkGridPos();
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, originVbo);
+        GL30.glBufferSubData(GL30.GL_ARRAY_BUFFER, (long) slot * ORIGIN_BYTES, new float[] {
+                pos.x * Chunk.SIZE, pos.y * Chunk.SIZE, pos.z * Chunk.SIZE
+        });
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+
+        // the quad index buffer may have grown, so bind the current one
+        GLState.bindVertexArray(vao);
+        GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, QuadIndexBuffer.get(quadCount));
+        GLState.bindVertexArray(0);
+
+        var mesh = new ChunkModelComponent(slot, offset, vertexCount, data.positionsIndices, data.alphaVertices);
+        meshes.put(offset, mesh);
+        return mesh;
+    }
+
+    /** Gives the mesh's space back to the arena. */
+    public static void remove(ChunkModelComponent mesh) {
+        if (allocator == null) return; // already destroyed
+        if (meshes.get(mesh.getVertexOffset()) != mesh) return; // already removed
+
+        meshes.remove(mesh.getVertexOffset());
+        allocator.free(mesh.getVertexOffset());
+        freeSlots.add(mesh.getSlot());
+    }
+
+    /** Overwrites the mesh's first vertices with `vertices`, 2 ints per vertex. Used to reorder its alpha blended faces. */
+    public static void replaceVertices(ChunkModelComponent mesh, int[] vertices) {
+        if (allocator == null) return;
+        if (meshes.get(mesh.getVertexOffset()) != mesh) return; // removed while the vertices were being made
+
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+        GL30.glBufferSubData(GL30.GL_ARRAY_BUFFER, (long) mesh.getVertexOffset() * VERTEX_BYTES, vertices);
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+    }
+
+    /** Draws `drawCount` of the commands given to {@link #setCommands}, starting from `firstCommand`.
+     * The shader and textures have to be bound already. */
+    public static void draw(int firstCommand, int drawCount) {
+        if (drawCount == 0) return;
+
+        GLState.bindVertexArray(vao);
+        GL30.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, indirectBuffer);
+        GL43.glMultiDrawElementsIndirect(GL30.GL_TRIANGLES, GL30.GL_UNSIGNED_INT,
+                (long) firstCommand * COMMAND_INTS * Integer.BYTES, drawCount, 0);
+        GL30.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+        GLState.bindVertexArray(0);
+    }
+
+    /** Uploads the commands put into `commands` this frame (position 0 to limit). Call before {@link #draw}. */
+    public static void setCommands(IntBuffer commands) {
+        GL30.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, indirectBuffer);
+        GL30.glBufferData(GL40.GL_DRAW_INDIRECT_BUFFER, commands, GL30.GL_STREAM_DRAW);
+        GL30.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    /** Adds a command that draws `count` indices of the mesh starting at index `start`.
+     * Returns `commands`, or a bigger copy of it if it was full. */
+    public static IntBuffer putCommand(IntBuffer commands, ChunkModelComponent mesh, int start, int count) {
+        if (commands == null || commands.remaining() < COMMAND_INTS) {
+            int capacity = commands == null ? 1024 * COMMAND_INTS : commands.capacity() * 2;
+            var bigger = BufferUtils.createIntBuffer(capacity);
+            if (commands != null) bigger.put(commands.flip());
+            commands = bigger;
+        }
+
+        commands.put(count)
+                .put(1)
+                .put(start)
+                .put(mesh.getVertexOffset())
+                .put(mesh.getSlot());
+        return commands;
+    }
+
+    public static boolean isEmpty() {
+        return meshes.isEmpty();
+    }
+
+    /** Bytes of the vertex buffer taken up by meshes. The buffer itself may be bigger. */
+    public static long getUsedBytes() {
+        if (allocator == null) return 0;
+        return (long) allocator.getUsed() * VERTEX_BYTES;
+    }
+
+    public static void destroy() {
+        if (allocator == null) return;
+
+        GL30.glDeleteVertexArrays(vao);
+        GLState.vertexArrayDeleted(vao);
+        GL30.glDeleteBuffers(vbo);
+        GL30.glDeleteBuffers(originVbo);
+        GL30.glDeleteBuffers(indirectBuffer);
+        allocator = null;
+        meshes.clear();
+        freeSlots.clear();
+        nextSlot = 0;
+        slotCapacity = 0;
+    }
+
+    private static void init() {
+        allocator = new ArenaAllocator(INITIAL_CAPACITY);
+        vao = GL30.glGenVertexArrays();
+        indirectBuffer = GL30.glGenBuffers();
+
+        vbo = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, (long) INITIAL_CAPACITY * VERTEX_BYTES, GL30.GL_STATIC_DRAW);
+
+        originVbo = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, originVbo);
+        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, (long) INITIAL_SLOTS * ORIGIN_BYTES, GL30.GL_STATIC_DRAW);
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+        slotCapacity = INITIAL_SLOTS;
+
+        GLState.bindVertexArray(vao);
+        bindVertices();
+        bindOrigins();
+        GL30.glEnableVertexAttribArray(0);
+        GL30.glEnableVertexAttribArray(1);
+        GL33.glVertexAttribDivisor(1, 1);
+        GLState.bindVertexArray(0);
+    }
+
+    // the vao has to be bound
+    private static void bindVertices() {
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+        GL30.glVertexAttribIPointer(0, TerrainVertex.INTS_PER_VERTEX, GL30.GL_UNSIGNED_INT, 0, 0);
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+    }
+
+    // the vao has to be bound
+    private static void bindOrigins() {
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, originVbo);
+        GL30.glVertexAttribPointer(1, 3, GL30.GL_FLOAT, false, 0, 0);
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+    }
+
+    private static int takeSlot() {
+        if (!freeSlots.isEmpty()) return freeSlots.poll();
+
+        int slot = nextSlot++;
+        if (slot >= slotCapacity) {
+            int newCapacity = slotCapacity * 2;
+            originVbo = copyIntoNewBuffer(originVbo, (long) slotCapacity * ORIGIN_BYTES, (long) newCapacity * ORIGIN_BYTES);
+            slotCapacity = newCapacity;
+
+            GLState.bindVertexArray(vao);
+            bindOrigins();
+            GLState.bindVertexArray(0);
+        }
+        return slot;
+    }
+
+    // compacts the arena, and grows it too if compacting alone wouldn't give `vertexCount` vertices of room
+    private static void makeRoom(int vertexCount) {
+        int capacity = allocator.getCapacity();
+        boolean compactOnly = allocator.getFree() >= vertexCount && allocator.getFragmentation() >= COMPACT_FRAGMENTATION;
+        if (!compactOnly) {
+            capacity *= 2;
+            while (capacity - allocator.getUsed() < vertexCount) capacity *= 2;
+        }
+
+        allocator.grow(capacity);
+        var moves = allocator.compact();
+
+        int newVbo = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, newVbo);
+        GL30.glBufferData(GL32.GL_COPY_WRITE_BUFFER, (long) capacity * VERTEX_BYTES, GL30.GL_STATIC_DRAW);
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, vbo);
+
+        // meshes that were next to each other still are, so they can be copied together
+        var moved = new HashMap<Integer, ChunkModelComponent>();
+        int runFrom = 0, runTo = 0, runSize = 0;
+        for (var move : moves) {
+            var mesh = meshes.get(move.from());
+            mesh.setVertexOffset(move.to());
+            moved.put(move.to(), mesh);
+
+            if (runSize != 0 && runFrom + runSize == move.from() && runTo + runSize == move.to()) {
+                runSize += move.size();
+                continue;
+            }
+            copyVertices(runFrom, runTo, runSize);
+            runFrom = move.from();
+            runTo = move.to();
+            runSize = move.size();
+        }
+        copyVertices(runFrom, runTo, runSize);
+
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, 0);
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, 0);
+        GL30.glDeleteBuffers(vbo);
+        vbo = newVbo;
+
+        meshes.clear();
+        meshes.putAll(moved);
+
+        GLState.bindVertexArray(vao);
+        bindVertices();
+        GLState.bindVertexArray(0);
+    }
+
+    // the old buffer is bound to copy read, the new one to copy write
+    private static void copyVertices(int from, int to, int size) {
+        if (size == 0) return;
+        GL32.glCopyBufferSubData(GL32.GL_COPY_READ_BUFFER, GL32.GL_COPY_WRITE_BUFFER,
+                (long) from * VERTEX_BYTES, (long) to * VERTEX_BYTES, (long) size * VERTEX_BYTES);
+    }
+
+    // returns a new buffer of `newSize` bytes that starts with the contents of `buffer`, and deletes `buffer`
+    private static int copyIntoNewBuffer(int buffer, long size, long newSize) {
+        int newBuffer = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, newBuffer);
+        GL30.glBufferData(GL32.GL_COPY_WRITE_BUFFER, newSize, GL30.GL_STATIC_DRAW);
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, buffer);
+        GL32.glCopyBufferSubData(GL32.GL_COPY_READ_BUFFER, GL32.GL_COPY_WRITE_BUFFER, 0, 0, size);
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, 0);
+        GL30.glBindBuffer(GL32.GL_COPY_WRITE_BUFFER, 0);
+        GL30.glDeleteBuffers(buffer);
+        return newBuffer;
+    }
+}
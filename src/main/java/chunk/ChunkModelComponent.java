@@ -1,26 +1,72 @@
 package chunk;
 
 import block.CardinalDirection;
-import entity.ModelComponent;
-import render.Model;
+import entity.Component;
+import entity.Entity;
+import render.QuadIndexBuffer;
 
-/** Contains the mesh for this chunk. Can be rendered onto the screen. */
-public class ChunkModelComponent extends ModelComponent {
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Contains the mesh for this chunk. Can be rendered onto the screen.
+ * The mesh itself lives in the {@link ChunkMeshArena}, this only knows where. */
+public class ChunkModelComponent extends Component {
+
+    private final int slot;       // where this chunk's origin is in the arena
+    private int vertexOffset;     // where this chunk's vertices start in the arena, changes when the arena is compacted
+    private final int vertexCount;
 
     /* {@see ChunkModelDataComponent#positionsIndices} for explanation */
     private final int[] positionsIndices;
+    private final int[] alphaVertices; // {@see ChunkModelDataComponent#alphaVertices}
+
+    // occlusion query state, see ChunkOcclusionQueries
+    int query = 0;
+    int queryFrame = 0;
+    boolean queryPending = false;
+    boolean occluded = false;
+
+    // transparent face sorting state, see TransparentFaceSorter
+    final AtomicReference<int[]> sortedAlphaVertices = new AtomicReference<>(); // set by the sorting thread, taken by the main thread
+    volatile boolean sortPending = false;
+    long sortedFromBlock = TransparentFaceSorter.NEVER_SORTED; // the camera's block the faces were last sorted from
 
-    public ChunkModelComponent(Model model, int[] positionsIndices) {
-        super(model);
+    public ChunkModelComponent(int slot, int vertexOffset, int vertexCount, int[] positionsIndices, int[] alphaVertices) {
+        this.slot = slot;
+        this.vertexOffset = vertexOffset;
+        this.vertexCount = vertexCount;
         this.positionsIndices = positionsIndices;
+        this.alphaVertices = alphaVertices;
+    }
+
+    @Override public void apply(Entity entity) {}
+
+    @Override public void destroy(Entity entity) {
+        ChunkMeshArena.remove(this);
+        ChunkOcclusionQueries.deleteQuery(this);
     }
 
     public int getPositionIndex(int face) {
-        if (face >= CardinalDirection.COUNT) return model.getVertexCount();
+        if (face >= CardinalDirection.COUNT) return vertexCount / QuadIndexBuffer.VERTICES_PER_QUAD * QuadIndexBuffer.INDICES_PER_QUAD;
         return positionsIndices[face];
     }
 
     public boolean hasAlphaBlendFaces() {
         return positionsIndices[0] != 0;
     }
+
+    int[] getAlphaVertices() {
+        return alphaVertices;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getVertexOffset() {
+        return vertexOffset;
+    }
+
+    void setVertexOffset(int vertexOffset) {
+        this.vertexOffset = vertexOffset;
+    }
 }
@@ -3,32 +3,57 @@ package chunk;
 import entity.Component;
 import entity.Entity;
 
+import java.nio.IntBuffer;
+
 /** Contains data that can be loaded into an OpenGL model.
  * It's stored separately, because the model loading into OpenGL must happen on the main thread,
  * but generating the data can happen in a thread pool. */
 public class ChunkModelDataComponent extends Component {
 
-    // these contain the entire position (vec3), textureCoords (vec3), and light (vec2) data of a chunk.
-    public final float[] positions;
-    public final float[] textureCoordinates;
-    public final float[] light;
+    // this contains the entire mesh of a chunk, packed into 2 ints per vertex (see TerrainVertex.java).
+    // every 4 vertices are a quad, drawn with the shared QuadIndexBuffer.
+    // the buffer is off-heap and comes from MeshBufferPool, it's null if the chunk has no faces.
+    private IntBuffer vertices;
+    private final int size; // number of ints in `vertices`
 
-    // the arrays above are "subdivided", so that they're ordered by face direction, going UP,LEFT,FRONT,BACK,RIGHT,DOWN. (CardinalDirection.java)
-    // the array below contains the start of each such subdivision
-    // Example: to render only UP faces, vertices start at positionIndices[0] and end at positionIndices[1].
+    // the array above is "subdivided", so that it's ordered by face direction, going UP,LEFT,FRONT,BACK,RIGHT,DOWN. (CardinalDirection.java)
+    // the array below contains the start of each such subdivision, as an index into the quad index buffer
+    // Example: to render only UP faces, indices start at positionIndices[0] and end at positionIndices[1].
 
     // NOTE!!! vertices from 0 to positionsIndices[0] is reserved for alpha blended faces.
     // TODO figure out storage for any number of these subdivisions
     public final int[]   positionsIndices;
 
-    public ChunkModelDataComponent(float[] positions, float[] textureCoordinates, float[] light, int[] positionsIndices) {
-        this.positions = positions;
-        this.textureCoordinates = textureCoordinates;
-        this.light = light;
+    // a copy of the alpha blended faces' vertices, kept with the model so they can be sorted by distance
+    // to the camera later (see TransparentFaceSorter). null if the chunk has no alpha blended faces.
+    public final int[]   alphaVertices;
+
+    public ChunkModelDataComponent(IntBuffer vertices, int size, int[] positionsIndices, int[] alphaVertices) {
+        this.vertices = vertices;
+        this.size = size;
         this.positionsIndices = positionsIndices;
+        this.alphaVertices = alphaVertices;
+    }
+
+    public IntBuffer getVertices() {
+        return vertices;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /** Gives the vertex buffer back to the pool. Call this once the data has been uploaded, or isn't needed anymore. */
+    public synchronized void release() {
+        if (vertices != null) {
+            MeshBufferPool.give(vertices);
+            vertices = null;
+        }
     }
 
     @Override public void apply(Entity entity) {}
 
-    @Override public void destroy(Entity entity) {}
+    @Override public void destroy(Entity entity) {
+        release();
+    }
 }
@@ -0,0 +1,81 @@
+package chunk;
+
+import block.CardinalDirection;
+import block.DiagonalDirection;
+import org.joml.Vector3i;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+
+/** Cave culling: finds the chunks the camera could possibly see, by walking the chunk grid outwards from the
+ * camera's chunk. A chunk is only walked through from the face it was entered from to the faces it can see
+ * through to, according to its {@link ChunkFaceConnectivity}, so chunks behind solid ground are never reached.
+ *
+ * The walk never turns back towards the camera, and skips chunks outside of the view frustum.
+ * Doesn't need an OpenGL context, only the chunks and their neighbors. */
+public class ChunkOcclusionCuller {
+
+    // `directions` has a bit set for every direction walked in to get here
+    private record Step(Chunk chunk, int entryFace, int directions) {}
+
+    private final HashSet<Chunk> visible = new HashSet<>();
+    private final ArrayDeque<Step> queue = new ArrayDeque<>();
+
+    /** Finds the visible chunks, starting from `cameraChunk`. `frustumCuller` may be null to not cull by frustum. */
+    public void update(Chunk cameraChunk, ChunkFrustumCuller frustumCuller) {
+        visible.clear();
+        queue.clear();
+
+        visible.add(cameraChunk);
+        queue.add(new Step(cameraChunk, -1, 0));
+
+        while (!queue.isEmpty()) {
+            var step = queue.poll();
+            long connections = step.chunk.getFaceConnections();
+
+            for (int face = 0; face < CardinalDirection.COUNT; face++) {
+                int opposite = CardinalDirection.opposite(face);
+                if ((step.directions & (1 << opposite)) != 0) continue; // don't turn back
+                if (step.entryFace != -1 && !ChunkFaceConnectivity.connects(connections, step.entryFace, face)) continue;
+
+                var neighbor = step.chunk.getNeighbor(DiagonalDirection.indexOf(CardinalDirection.offsets[face]));
+                if (neighbor == null || visible.contains(neighbor)) continue;
+                if (frustumCuller != null && !frustumCuller.isVisible(neighbor.getChunkGridPos())) continue;
+
+                visible.add(neighbor);
+                queue.add(new Step(neighbor, opposite, step.directions | (1 << face)));
+            }
+        }
+    }
+
+    public boolean isVisible(Chunk chunk) {
+        return visible.contains(chunk);
+    }
+
+    /** All the chunks found by the last update, including the ones without a mesh. */
+    public Collection<Chunk> getVisibleChunks() {
+        return visible;
+    }
+
+    public int getVisibleCount() {
+        return visible.size();
+    }
+
+    /** Walks from `start` through its neighbors to the chunk at `target`.
+     * Returns null if some chunk on the way isn't loaded. */
+    public static Chunk findChunk(Chunk start, Vector3i target) {
+        var chunk = start;
+        var offset = new Vector3i();
+        while (chunk != null && !chunk.getChunkGridPos().equals(target)) {
+            var pos = chunk.getChunkGridPos();
+            offset.set(
+                Integer.signum(target.x - pos.x),
+                Integer.signum(target.y - pos.y),
+                Integer.signum(target.z - pos.z)
+            );
+            chunk = chunk.getNeighbor(DiagonalDirection.indexOf(offset));
+        }
+        return chunk;
+    }
+}
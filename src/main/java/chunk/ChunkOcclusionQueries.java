@@ -0,0 +1,139 @@
+package chunk;
+
+import entity.Entity;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+import render.GLState;
+import render.Model;
+import shader.Shader;
+
+import java.util.List;
+import java.util.Map;
+
+/** Occlusion culling with hardware occlusion queries.
+ * After the terrain is drawn, each chunk's bounding box is drawn invisibly inside a query, which tells if any
+ * part of the box would have passed the depth test. The result is read back in a later frame without waiting for
+ * the gpu, and a chunk whose box was completely hidden isn't drawn until a query says otherwise.
+ * Hidden chunks keep getting queried, so they come back when they come into view.
+ * Only use this on the main thread. */
+public class ChunkOcclusionQueries {
+
+    // the box is a bit bigger than the chunk, so a chunk's own faces on the edge of the box don't hide it
+    private static final float BOX_PADDING = 0.5f;
+
+    private static final float[] CUBE = {
+        0,0,0, 1,1,0, 1,0,0,  0,0,0, 0,1,0, 1,1,0, // -z
+        0,0,1, 1,0,1, 1,1,1,  0,0,1, 1,1,1, 0,1,1, // +z
+        0,0,0, 1,0,0, 1,0,1,  0,0,0, 1,0,1, 0,0,1, // -y
+        0,1,0, 0,1,1, 1,1,1,  0,1,0, 1,1,1, 1,1,0, // +y
+        0,0,0, 0,0,1, 0,1,1,  0,0,0, 0,1,1, 0,1,0, // -x
+        1,0,0, 1,1,0, 1,1,1,  1,0,0, 1,1,1, 1,0,1, // +x
+    };
+
+    private static Shader shader = null;
+    private static Model box = null;
+    private static final Matrix4f transformationMatrix = new Matrix4f();
+    private static int frame = 0;
+    private static Boolean supported = null; // checked on first use, when there's an opengl context
+
+    public static void setShader(Shader boxShader) {
+        shader = boxShader;
+    }
+
+    /** Returns false if there's no box shader, or the context can't do GL_ANY_SAMPLES_PASSED queries. */
+    public static boolean isAvailable() {
+        if (shader == null) return false;
+        if (supported == null) {
+            var capabilities = GL.getCapabilities();
+            supported = capabilities.OpenGL33 || capabilities.GL_ARB_occlusion_query2;
+            if (!supported) System.out.println("Occlusion queries aren't supported, culling on the cpu instead");
+        }
+        return supported;
+    }
+
+    /** Call on frames the queries aren't used, so the results from before aren't trusted once they are again. */
+    public static void skipFrame() {
+        frame++;
+    }
+
+    /** Returns true if the chunk's last query said it is hidden. */
+    public static boolean isOccluded(Chunk chunk, ChunkModelComponent mesh, Vector3f cameraPos) {
+        // if the chunk wasn't queried last frame, the result is too old to trust
+        if (mesh.queryFrame != frame) return false;
+
+        if (mesh.query != 0 && mesh.queryPending
+                && GL30.glGetQueryObjecti(mesh.query, GL30.GL_QUERY_RESULT_AVAILABLE) == GL30.GL_TRUE) {
+            mesh.occluded = GL30.glGetQueryObjecti(mesh.query, GL30.GL_QUERY_RESULT) == 0;
+            mesh.queryPending = false;
+        }
+
+        // the box can't be seen from inside of it
+        if (isInsideBox(chunk, cameraPos)) return false;
+        return mesh.occluded;
+    }
+
+    /** Queries the boxes of `chunks`. Call after the opaque terrain has been drawn. */
+    public static void query(List<Map.Entry<Entity, ChunkModelComponent>> chunks, Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        frame++;
+        if (box == null) {
+            box = new Model()
+                .addPosition3D(CUBE)
+                .setShader(shader)
+                .end();
+        }
+
+        GLState.useProgram(shader.getProgram());
+        shader.setMatrix4f("projectionMatrix", projectionMatrix);
+        shader.setMatrix4f("viewMatrix", viewMatrix);
+
+        GLState.colorMask(false, false, false, false);
+        GLState.depthMask(false);
+        GLState.disable(GL30.GL_CULL_FACE);
+        GLState.bindVertexArray(box.getVAO());
+
+        var transformation = shader.uniform("transformationMatrix");
+        for (var entry : chunks) {
+            var chunk = (Chunk) entry.getKey();
+            var mesh = entry.getValue();
+            mesh.queryFrame = frame;
+            if (mesh.queryPending) continue; // the last one isn't done yet
+
+            if (mesh.query == 0) mesh.query = GL30.glGenQueries();
+            var pos = chunk.getChunkGridPos();
+            transformationMatrix.translation(
+                    pos.x * Chunk.SIZE - BOX_PADDING,
+                    pos.y * Chunk.SIZE - BOX_PADDING,
+                    pos.z * Chunk.SIZE - BOX_PADDING)
+                .scale(Chunk.SIZE + 2 * BOX_PADDING);
+            transformation.set(transformationMatrix);
+
+            GL30.glBeginQuery(GL33.GL_ANY_SAMPLES_PASSED, mesh.query);
+            GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, box.getVertexCount());
+            GL30.glEndQuery(GL33.GL_ANY_SAMPLES_PASSED);
+            mesh.queryPending = true;
+        }
+
+        GLState.bindVertexArray(0);
+        GLState.enable(GL30.GL_CULL_FACE);
+        GLState.depthMask(true);
+        GLState.colorMask(true, true, true, true);
+    }
+
+    public static void deleteQuery(ChunkModelComponent mesh) {
+        if (mesh.query != 0) {
+            GL30.glDeleteQueries(mesh.query);
+            mesh.query = 0;
+        }
+    }
+
+    private static boolean isInsideBox(Chunk chunk, Vector3f pos) {
+        var grid = chunk.getChunkGridPos();
+        float pad = BOX_PADDING + 1f; // a little extra for the near plane
+        return pos.x > grid.x * Chunk.SIZE - pad && pos.x < (grid.x + 1) * Chunk.SIZE + pad
+            && pos.y > grid.y * Chunk.SIZE - pad && pos.y < (grid.y + 1) * Chunk.SIZE + pad
+            && pos.z > grid.z * Chunk.SIZE - pad && pos.z < (grid.z + 1) * Chunk.SIZE + pad;
+    }
+}
@@ -0,0 +1,129 @@
+package chunk;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/** The loaded chunks, by their key (see {@link Chunk#toKey}). Looking up a chunk doesn't lock or allocate, so the main
+ * thread's physics and raycasts can read it while ChunkLoader's update thread is loading and unloading chunks.
+ *
+ * It's a hash table with linear probing. A slot only ever goes from empty to holding a chunk, and after that it only
+ * changes between chunks and {@link #REMOVED}, so a removal never cuts short the probe of a lookup running beside it.
+ * Writers lock. Once too many slots are used, the chunks are copied into a bigger table, and lookups that are already
+ * running finish on the old one. */
+public class ChunkRegistry {
+
+    private static final Object REMOVED = new Object(); // a chunk was here, keep probing
+    private static final float MAX_LOAD = 0.5f; // of chunks and REMOVED slots together, so there are always empty slots
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile AtomicReferenceArray<Object> table;
+    private volatile int size = 0; // written under the lock
+    private int usedSlots = 0; // slots that aren't empty, guarded by this
+
+    public ChunkRegistry(int expectedSize) {
+        table = new AtomicReferenceArray<>(capacityFor(expectedSize));
+    }
+
+    /** Returns the chunk with the key, or null if there isn't one. Thread safe, doesn't lock. */
+    public Chunk get(long key) {
+        var slots = table;
+        int mask = slots.length() - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            var slot = slots.get(i);
+            if (slot == null) return null;
+            if (slot instanceof Chunk chunk && chunk.getKey() == key) return chunk;
+        }
+    }
+
+    /** Adds the chunk, replacing any chunk with the same key. Returns the replaced chunk, or null. */
+    public synchronized Chunk put(Chunk chunk) {
+        var slots = table;
+        int mask = slots.length() - 1;
+        long key = chunk.getKey();
+
+        int free = -1; // the first REMOVED slot on the way, reused if the key isn't further along
+        int i = hash(key) & mask;
+        for (; ; i = (i + 1) & mask) {
+            var slot = slots.get(i);
+            if (slot == null) break;
+            if (slot == REMOVED) {
+                if (free == -1) free = i;
+            } else if (((Chunk) slot).getKey() == key) {
+                slots.set(i, chunk);
+                return (Chunk) slot;
+            }
+        }
+
+        if (free != -1) {
+            slots.set(free, chunk);
+        } else {
+            slots.set(i, chunk);
+            usedSlots++;
+        }
+        size++;
+
+        if (usedSlots > slots.length() * MAX_LOAD) {
+            rehash();
+        }
+        return null;
+    }
+
+    /** Removes the chunk, if it's still the one registered at its key. Returns true if it was removed.
+     * Never moves the chunks around, so it's fine to call from inside {@link #forEach}. */
+    public synchronized boolean remove(Chunk chunk) {
+        var slots = table;
+        int mask = slots.length() - 1;
+        long key = chunk.getKey();
+
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            var slot = slots.get(i);
+            if (slot == null) return false;
+            if (slot instanceof Chunk other && other.getKey() == key) {
+                if (other != chunk) return false;
+                slots.set(i, REMOVED);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    /** Runs `action` on every chunk. Chunks added or removed while this runs may or may not be seen. */
+    public void forEach(Consumer<Chunk> action) {
+        var slots = table;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) instanceof Chunk chunk) action.accept(chunk);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // copies the chunks into a new table, which drops the REMOVED slots too
+    private void rehash() {
+        var old = table;
+        var slots = new AtomicReferenceArray<>(capacityFor(size));
+        int mask = slots.length() - 1;
+
+        for (int j = 0; j < old.length(); j++) {
+            if (!(old.get(j) instanceof Chunk chunk)) continue;
+            int i = hash(chunk.getKey()) & mask;
+            while (slots.get(i) != null) i = (i + 1) & mask;
+            slots.set(i, chunk);
+        }
+
+        usedSlots = size;
+        table = slots;
+    }
+
+    // room for twice as many chunks before the next rehash
+    private static int capacityFor(int size) {
+        return Math.max(MIN_CAPACITY, HashCommon.nextPowerOfTwo((int) Math.ceil(2 * size / MAX_LOAD)));
+    }
+
+    private static int hash(long key) {
+        return (int) HashCommon.mix(key);
+    }
+}
@@ -6,64 +6,192 @@ import entity.EntityManager;
 import entity.TransformationComponent;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector3i;
 import org.lwjgl.opengl.GL30;
-import render.Texture;
-import shader.Shader;
+import render.DepthRaster;
+import render.GLState;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
 
 public class ChunkRenderer {
 
     /* Chunks have some special optimizations done, so they require their own render functions. */
 
+    private static IntBuffer commands = null; // indirect draw commands, reused between frames
+
+    // chunks that pass frustum and cave culling are checked against the terrain in front of them, either with
+    // occlusion queries on the gpu, or if those are turned off or can't be used, against a small depth buffer
+    // drawn on the cpu.
+    private static boolean useOcclusionQueries = true;
+    private static final int DEPTH_RASTER_WIDTH = 160, DEPTH_RASTER_HEIGHT = 90;
+    private static final int OCCLUDER_DISTANCE = 6; // chunks, only solid chunks this close are drawn into the depth raster
+
+    private static final ChunkFrustumCuller frustumCuller = new ChunkFrustumCuller();
+    private static final ChunkOcclusionCuller occlusionCuller = new ChunkOcclusionCuller();
+    private static final DepthRaster depthRaster = new DepthRaster(DEPTH_RASTER_WIDTH, DEPTH_RASTER_HEIGHT);
+    private static final ArrayList<Map.Entry<Entity, ChunkModelComponent>> visibleChunks = new ArrayList<>();
+    private static final ArrayList<Map.Entry<Entity, ChunkModelComponent>> unoccludedChunks = new ArrayList<>();
+    private static final ArrayList<Map.Entry<Entity, ChunkModelComponent>> transparentChunks = new ArrayList<>();
+
     public static int render(HashMap<Entity, ChunkModelComponent> chunks, Matrix4f viewMatrix, Matrix4f projectionMatrix, Vector3f cameraPos) {
         int vertexTally = 0; // return number of vertices rendered (for cool statistical purposes)
 
-        // assumptions:
-        // all chunks have the same shader,
-        // all chunks have the same textures
-        if (chunks.size() == 0) return 0;
-        var firstChunk = chunks.values().iterator().next();
-        var shader = firstChunk.getModel().getShader();
-        var textures = firstChunk.getModel().getTextures();
+        // all chunk meshes are in the chunk mesh arena, with the same shader and textures,
+        // so both passes are just one draw call each.
+        if (chunks.size() == 0 || ChunkMeshArena.isEmpty()) return 0;
+        var shader = TerrainModelLoader.getShader();
+        var texture = TerrainModelLoader.getChunkTexture();
 
-        GL30.glUseProgram(shader.getProgram());
-        shader.setMatrix4f("projectionMatrix", projectionMatrix);
-        shader.setMatrix4f("viewMatrix", viewMatrix);
+        // skip the chunks outside of the view frustum, and the ones hidden behind terrain
+        var cameraChunkPos = Chunk.worldPosToChunkPos(cameraPos);
+        Chunk closestChunk = null;
+        int closestDistance = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (var entity : chunks.keySet()) {
+            var pos = ((Chunk) entity).getChunkGridPos();
+            minY = Math.min(minY, pos.y);
+            maxY = Math.max(maxY, pos.y);
+
+            int distance = (int) pos.gridDistance(cameraChunkPos);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closestChunk = (Chunk) entity;
+            }
+        }
+        frustumCuller.update(projectionMatrix, viewMatrix, minY, maxY);
+
+        // the camera's chunk may not have a mesh, so walk to it from the closest chunk that does.
+        // if it isn't loaded, only the frustum is used.
+        var cameraChunk = ChunkOcclusionCuller.findChunk(closestChunk, cameraChunkPos);
+        if (cameraChunk != null) {
+            occlusionCuller.update(cameraChunk, frustumCuller);
+        }
+
+        visibleChunks.clear();
+        for (var entry : chunks.entrySet()) {
+            var chunk = (Chunk) entry.getKey();
+            boolean visible = cameraChunk != null
+                    ? occlusionCuller.isVisible(chunk)
+                    : frustumCuller.isVisible(chunk.getChunkGridPos());
+            if (visible) {
+                visibleChunks.add(entry);
+            }
+        }
 
-        // bind textures
-        int unit = 0;
-        for (Texture tex : textures) {
-            GL30.glActiveTexture(GL30.GL_TEXTURE0 + unit);
-            GL30.glBindTexture(tex.getType(), tex.getTexture());
-            shader.setInt(tex.getName(), unit);
+        boolean useQueries = useOcclusionQueries && ChunkOcclusionQueries.isAvailable();
+        if (!useQueries) {
+            ChunkOcclusionQueries.skipFrame();
+            if (cameraChunk != null) drawOccluders(cameraChunkPos, viewMatrix, projectionMatrix);
+        }
 
-            unit++;
+        unoccludedChunks.clear();
+        for (var entry : visibleChunks) {
+            var chunk = (Chunk) entry.getKey();
+            boolean occluded = useQueries
+                    ? ChunkOcclusionQueries.isOccluded(chunk, entry.getValue(), cameraPos)
+                    : cameraChunk != null && isOccludedOnCPU(chunk);
+            if (!occluded) {
+                unoccludedChunks.add(entry);
+            }
         }
 
+        // transparent faces blend with what's behind them, so they're drawn back to front:
+        // the chunks furthest away first, and each chunk's faces sorted by TransparentFaceSorter
+        transparentChunks.clear();
+        for (var entry : unoccludedChunks) {
+            if (entry.getValue().hasAlphaBlendFaces()) {
+                transparentChunks.add(entry);
+            }
+        }
+        transparentChunks.sort(Comparator.comparingDouble(entry -> -distanceSquared((Chunk) entry.getKey(), cameraPos)));
+        TransparentFaceSorter.update(transparentChunks, cameraPos);
+
+        // opaque draws go first in the command buffer, transparent ones after them
+        if (commands != null) commands.clear();
+        vertexTally += addCommands(unoccludedChunks, cameraPos, false);
+        int opaqueDraws = commandCount();
+        vertexTally += addCommands(transparentChunks, cameraPos, true);
+        int transparentDraws = commandCount() - opaqueDraws;
+
+        if (commands == null) return 0;
+        commands.flip();
+        ChunkMeshArena.setCommands(commands);
+
+        GLState.useProgram(shader.getProgram());
+        shader.setMatrix4f("projectionMatrix", projectionMatrix);
+        shader.setMatrix4f("viewMatrix", viewMatrix);
+
+        // bind texture
+        GLState.bindTexture(0, texture);
+        shader.setInt(texture.getName(), 0);
+
         // render opaque faces
         shader.setBoolean("doCullTransparent", true);
-        vertexTally += renderChunks(chunks, shader, cameraPos, false);
+        ChunkMeshArena.draw(0, opaqueDraws);
+
+        // query all the chunks that could be visible, also the hidden ones so they can come back
+        if (useQueries) {
+            ChunkOcclusionQueries.query(visibleChunks, viewMatrix, projectionMatrix);
+            GLState.useProgram(shader.getProgram());
+        }
 
         // render transparent faces
-        GL30.glEnable(GL30.GL_BLEND);
-        GL30.glBlendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.enable(GL30.GL_BLEND);
+        GLState.blendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
 
         shader.setBoolean("doCullTransparent", false);
-        vertexTally += renderChunks(chunks, shader, cameraPos, true);
+        ChunkMeshArena.draw(opaqueDraws, transparentDraws);
 
-        GL30.glDisable(GL30.GL_BLEND);
+        GLState.disable(GL30.GL_BLEND);
         return vertexTally;
     }
 
-    private static int renderChunks(
-            HashMap<Entity, ChunkModelComponent> chunks,
-            Shader shader,
+    /** Turns the gpu occlusion queries on or off, with them off the depth raster on the cpu is used instead.
+     * The depth raster is also used while the queries aren't available. */
+    public static void setUseOcclusionQueries(boolean use) {
+        useOcclusionQueries = use;
+    }
+
+    // draws the solid chunks close to the camera into the depth raster
+    private static void drawOccluders(Vector3i cameraChunkPos, Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        depthRaster.clear(projectionMatrix, viewMatrix);
+        for (var chunk : occlusionCuller.getVisibleChunks()) {
+            if (chunk.getFaceConnections() != ChunkFaceConnectivity.NONE) continue;
+
+            var pos = chunk.getChunkGridPos();
+            if (pos.gridDistance(cameraChunkPos) > OCCLUDER_DISTANCE) continue;
+
+            depthRaster.addOccluder(
+                pos.x * Chunk.SIZE, pos.y * Chunk.SIZE, pos.z * Chunk.SIZE,
+                (pos.x + 1) * Chunk.SIZE, (pos.y + 1) * Chunk.SIZE, (pos.z + 1) * Chunk.SIZE);
+        }
+    }
+
+    private static boolean isOccludedOnCPU(Chunk chunk) {
+        var pos = chunk.getChunkGridPos();
+        return depthRaster.isOccluded(
+            pos.x * Chunk.SIZE, pos.y * Chunk.SIZE, pos.z * Chunk.SIZE,
+            (pos.x + 1) * Chunk.SIZE, (pos.y + 1) * Chunk.SIZE, (pos.z + 1) * Chunk.SIZE);
+    }
+
+    // from the camera to the chunk's centre
+    private static float distanceSquared(Chunk chunk, Vector3f cameraPos) {
+        var pos = chunk.getChunkGridPos();
+        float half = Chunk.SIZE / 2f;
+        return cameraPos.distanceSquared(pos.x * Chunk.SIZE + half, pos.y * Chunk.SIZE + half, pos.z * Chunk.SIZE + half);
+    }
+
+    private static int addCommands(
+            ArrayList<Map.Entry<Entity, ChunkModelComponent>> chunks,
             Vector3f cameraPos,
             boolean renderAlphaBlendFaces) {
         int vertexTally = 0;
 
-        for (var entry : chunks.entrySet()) {
+        for (var entry : chunks) {
             var modelComp = entry.getValue();
             var entity = entry.getKey();
 
@@ -72,18 +200,10 @@ public class ChunkRenderer {
                 continue;
             }
 
-            // bind model
-            GL30.glBindVertexArray(modelComp.getModel().getVAO());
-
-            var transform = EntityManager.getComponent(entity, TransformationComponent.class);
-            var transMatrix = transform.getTransformationMatrix();
-            shader.setMatrix4f("transformationMatrix", transMatrix);
-
-            // 150 fps
-
             if (!renderAlphaBlendFaces) {
                 // render normal opaque faces
 
+                var transform = EntityManager.getComponent(entity, TransformationComponent.class);
                 var chunkPos = transform.getPosition();
 
                 // the model data is partitioned to different direction faces, so we can selectively render.
@@ -104,7 +224,7 @@ public class ChunkRenderer {
                     };
 
                     // get all sequential directions
-                    // for example, to render both up and left faces, we only need 1 draw call since they're sequential
+                    // for example, to render both up and left faces, we only need 1 draw since they're sequential
                     int startDirection = dir;
                     while (dir + 1 < CardinalDirection.COUNT && doRenderDirection[dir + 1]) dir++;
                     int endDirection = dir;
@@ -115,25 +235,29 @@ public class ChunkRenderer {
                     int count = end-start;
 
                     if (count != 0) {
-                        GL30.glDrawArrays(GL30.GL_TRIANGLES, start, count);
+                        commands = ChunkMeshArena.putCommand(commands, modelComp, start, count);
                     }
                     vertexTally += count;
                 }
             } else {
-                vertexTally += renderTransparentFace(modelComp);
+                vertexTally += addTransparentCommand(modelComp);
             }
         }
 
         return vertexTally;
     }
 
-    private static int renderTransparentFace(ChunkModelComponent modelComp) {
+    private static int addTransparentCommand(ChunkModelComponent modelComp) {
         int start = 0;
         int end = modelComp.getPositionIndex(0);
         int count = end-start;
 
         if (count == 0) return 0;
-        GL30.glDrawArrays(GL30.GL_TRIANGLES, start, count);
+        commands = ChunkMeshArena.putCommand(commands, modelComp, start, count);
         return count;
     }
+
+    private static int commandCount() {
+        return commands == null ? 0 : commands.position() / ChunkMeshArena.COMMAND_INTS;
+    }
 }
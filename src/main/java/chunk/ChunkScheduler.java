@@ -0,0 +1,192 @@
+package chunk;
+
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/** Decides the order the chunk workers work in. Every worker {@link Stage} has its own priority queue, and the chunks
+ * closest to the player and most in front of them are worked on first, instead of in the order they were queued.
+ *
+ * When the player moves to another chunk or turns far enough, the priorities of the waiting jobs are worked out again.
+ * Jobs for chunks that have left the load area by then are cancelled: the chunk is put back to the status it had before
+ * it was queued, so ChunkLoader can unload it like any other chunk. */
+public class ChunkScheduler {
+
+    // chunks this close are ordered by distance alone, the player can turn to face them in no time
+    private static final float NEAR_DISTANCE = 1.5f;
+    // a chunk right behind the player counts as this many chunks further away than one straight ahead
+    private static final float BEHIND_PENALTY = 4f;
+    // the priorities are worked out again once the view turns this far from where it was the last time
+    private static final float RESCORE_ANGLE_COS = (float) Math.cos(Math.toRadians(30));
+
+    // where the priorities are worked out from. replaced as a whole, so workers always see a matching set
+    private record Viewer(Vector3f pos, Vector3f dir, Vector3i chunkPos, int version) {}
+    private static volatile Viewer viewer = null;
+
+    /** Tells the scheduler where the player is and which way they look. Call every frame. */
+    public static synchronized void setViewer(Vector3f pos, Vector3f direction) {
+        var current = viewer;
+        var chunkPos = Chunk.worldPosToChunkPos(pos);
+        var dir = direction.lengthSquared() > 0 ? direction.normalize(new Vector3f()) : new Vector3f(0, 0, -1);
+
+        if (current == null) {
+            viewer = new Viewer(new Vector3f(pos), dir, chunkPos, 0);
+        } else if (!chunkPos.equals(current.chunkPos) || dir.dot(current.dir) < RESCORE_ANGLE_COS) {
+            viewer = new Viewer(new Vector3f(pos), dir, chunkPos, current.version + 1);
+        }
+    }
+
+    /** Makes the stages work out their priorities again and drop the jobs outside of the load area,
+     * for when the load area changes without the viewer moving. */
+    static synchronized void viewerChanged() {
+        var current = viewer;
+        if (current == null) return;
+        viewer = new Viewer(current.pos, current.dir, current.chunkPos, current.version + 1);
+    }
+
+    /** Returns how urgent working on the chunk is, lower is more urgent. Roughly the distance in chunks. */
+    static float priority(Vector3i chunkPos, Vector3f viewerPos, Vector3f viewerDir) {
+        float dx = chunkPos.x + 0.5f - viewerPos.x / Chunk.SIZE;
+        float dy = chunkPos.y + 0.5f - viewerPos.y / Chunk.SIZE;
+        float dz = chunkPos.z + 0.5f - viewerPos.z / Chunk.SIZE;
+        float distance = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+        if (distance < NEAR_DISTANCE) return distance;
+
+        float cos = (dx*viewerDir.x + dy*viewerDir.y + dz*viewerDir.z) / distance;
+        return distance + BEHIND_PENALTY * (1 - cos) / 2;
+    }
+
+    private static float priority(Chunk chunk, Viewer viewer) {
+        if (viewer == null) return 0; // nothing to go by yet, the order they came in
+        return priority(chunk.getChunkGridPos(), viewer.pos, viewer.dir);
+    }
+
+    /** A kind of chunk job, with its own threads and queue. */
+    public static class Stage {
+
+        private final String name;
+        private final Chunk.Status cancelledStatus;
+        private final Consumer<Chunk> work;
+        private final Thread[] threads;
+        private volatile boolean running = true;
+
+        private final PriorityQueue<Job> queue = new PriorityQueue<>(); // guarded by this
+        private long nextSequence = 0; // guarded by this
+        private int runningCount = 0; // guarded by this
+        private int scoredVersion = -1; // the viewer version the priorities in the queue are from, guarded by this
+
+        /** Starts `threadCount` threads that run `work` on the queued chunks.
+         * A cancelled chunk gets `cancelledStatus`, which should be the status it had before it was queued. */
+        public Stage(String name, int threadCount, Chunk.Status cancelledStatus, Consumer<Chunk> work) {
+            this.name = name;
+            this.cancelledStatus = cancelledStatus;
+            this.work = work;
+
+            threads = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                threads[i] = new Thread(this::run, name + " " + i);
+                threads[i].start();
+            }
+        }
+
+        public synchronized void add(Chunk chunk) {
+            queue.add(new Job(chunk, priority(chunk, viewer), nextSequence++));
+            notify();
+        }
+
+        /** Returns the number of chunks waiting or being worked on. */
+        public synchronized int size() {
+            return queue.size() + runningCount;
+        }
+
+        /** Stops the threads, after they finish the jobs they're on. The waiting jobs are dropped. */
+        public void stop() {
+            running = false;
+            for (var thread : threads) thread.interrupt();
+            for (var thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            synchronized (this) {
+                queue.clear();
+            }
+            System.out.println(name + " stopped");
+        }
+
+        private void run() {
+            while (running) {
+                Job job;
+                try {
+                    job = take();
+                } catch (InterruptedException e) {
+                    continue; // check if we're still running
+                }
+
+                try {
+                    work.accept(job.chunk);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    synchronized (this) {
+                        runningCount--;
+                    }
+                }
+            }
+        }
+
+        private synchronized Job take() throws InterruptedException {
+            while (true) {
+                var current = viewer;
+                if (current != null && current.version != scoredVersion) {
+                    rescore(current);
+                }
+
+                var job = queue.poll();
+                if (job != null) {
+                    runningCount++;
+                    return job;
+                }
+                wait();
+            }
+        }
+
+        // works out the priorities again for where the viewer is now, and cancels the jobs that aren't needed anymore
+        private void rescore(Viewer current) {
+            var jobs = new ArrayList<>(queue);
+            queue.clear();
+            for (var job : jobs) {
+                if (!ChunkLoader.isInLoadArea(job.chunk.getChunkGridPos(), current.chunkPos)) {
+                    job.chunk.setStatus(cancelledStatus);
+                    continue;
+                }
+                job.priority = priority(job.chunk, current);
+                queue.add(job);
+            }
+            scoredVersion = current.version;
+        }
+    }
+
+    private static class Job implements Comparable<Job> {
+        final Chunk chunk;
+        final long sequence; // jobs with the same priority are done in the order they came in
+        float priority;
+
+        Job(Chunk chunk, float priority, long sequence) {
+            this.chunk = chunk;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = Float.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
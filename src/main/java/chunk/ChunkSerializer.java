@@ -13,20 +13,28 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChunkSerializer {
 
-    private static final Path path = Path.of("src/main/resources/world");
+    private static volatile Path path = Path.of("src/main/resources/world");
 
     private static ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+    private static final AtomicInteger jobCount = new AtomicInteger(); // queued and running
+
+    /** Sets the directory chunks are saved to and loaded from, relative to the working directory unless absolute. */
+    public static void setSaveDirectory(Path directory) {
+        path = directory;
+    }
 
     public static boolean doesSaveExist(Chunk chunk) {
         var file = chunkToFile(chunk);
         return file.exists();
     }
 
+    /** The number of chunks waiting to be saved or loaded, including the one being worked on. */
     public static int getQueueSize() {
-        return executor.getQueue().size();
+        return jobCount.get();
     }
 
     public static void stop() {
@@ -49,12 +57,15 @@ public class ChunkSerializer {
         }
 
         // then on the worker thread, we write the actual chunk block data to the file
+        jobCount.incrementAndGet();
         executor.submit(() -> {
             try {
                 serializeChunk(chunk, entityData);
                 chunk.setStatus(Chunk.Status.NONE);
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                jobCount.decrementAndGet();
             }
         });
     }
@@ -102,12 +113,15 @@ public class ChunkSerializer {
     }
 
     public static void deserialize(Chunk chunk) {
+        jobCount.incrementAndGet();
         executor.submit(() -> {
             try {
                 deserializeChunk(chunk);
                 chunk.setStatus(Chunk.Status.BLOCKS_GENERATED);
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                jobCount.decrementAndGet();
             }
         });
     }
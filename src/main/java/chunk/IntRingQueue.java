@@ -0,0 +1,62 @@
+package chunk;
+
+/** A first-in first-out queue of primitive ints, backed by a ring buffer that doubles when full.
+ * Used for breadth first searches, where boxing every node would allocate. */
+public class IntRingQueue {
+
+    private int[] elements;
+    private int head = 0; // next element to poll
+    private int size = 0;
+    private long addedCount = 0;
+
+    public IntRingQueue(int initialCapacity) {
+        this.elements = new int[Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1];
+    }
+
+    public void add(int value) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+        addedCount++;
+    }
+
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("Queue is empty");
+        }
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** How many elements have been added since the queue was made, clearing doesn't reset it. */
+    public long getAddedCount() {
+        return addedCount;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int[] grown = new int[elements.length * 2];
+        // unroll the ring so that head is at index 0
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, head);
+        elements = grown;
+        head = 0;
+    }
+}
@@ -3,53 +3,377 @@ package chunk;
 import block.Block;
 import block.CardinalDirection;
 import block.DiagonalDirection;
-import org.joml.Vector3i;
-import org.joml.Vector4i;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.Function;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class LightMapGenerator {
 
-    // may only have 1 thread running
-    private static Thread thread = new Thread(LightMapGenerator::run);
-    private static boolean running = true;
-    static { thread.start(); }
-
-    private static BlockingQueue<Chunk> loadQueue = new LinkedBlockingQueue<>();
+    // lighting a chunk reads and writes the light of the 3x3x3 chunks around it (see propagateInArea),
+    // so two chunks can only be lit at the same time if those areas don't overlap.
+    // every job queues up on each of the 27 chunk positions in its area, and starts once it's first in all of them.
+    // a job is never overtaken by a later one overlapping it, so the light comes out the same as lighting
+    // the chunks one at a time in the order they were added. that goes for loadChunk and updateBlock too,
+    // they queue up the same way and run on the calling thread once it's their turn.
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    private static final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(THREAD_COUNT);
+    static { System.out.println("LightMapGenerator running with " + THREAD_COUNT + " threads"); }
+
+    private static final Object lock = new Object();
+    // the jobs waiting for or holding each chunk position, keyed by Chunk.toKey. the first one in a queue holds it.
+    // sized up front, a small map would grow and shrink back on every claim and release
+    private static final Long2ObjectOpenHashMap<ArrayDeque<Job>> areaQueues = new Long2ObjectOpenHashMap<>(1 << 12); // guarded by lock
+    private static final ArrayList<ArrayDeque<Job>> spareQueues = new ArrayList<>(); // guarded by lock, emptied ones to reuse
+    // jobs first in all their queues, waiting for a thread
+    private static final PriorityQueue<Job> readyJobs = new PriorityQueue<>(Comparator.comparingLong(job -> job.order)); // guarded by lock
+    private static int waitingCount = 0, runningCount = 0; // guarded by lock, jobs for the pool only
+    private static long nextOrder = 0; // guarded by lock
+    private static boolean stopped = false; // guarded by lock
+
+    private static class Job {
+        final Chunk chunk;
+        final long order;
+        final boolean onCaller; // runs on the thread that asked for it instead of the pool
+        int blockedCount = 0; // how many of its queues have an earlier job first
+        boolean started = false;
+
+        Job(Chunk chunk, boolean onCaller) {
+            this.chunk = chunk;
+            this.order = nextOrder++;
+            this.onCaller = onCaller;
+        }
+    }
 
     public static void addChunk(Chunk chunk) {
-        loadQueue.add(chunk);
+        synchronized (lock) {
+            if (stopped) return;
+            waitingCount++;
+            enqueue(new Job(chunk, false));
+            dispatch();
+        }
     }
 
     public static int getQueueSize() {
-        return loadQueue.size();
+        synchronized (lock) {
+            return waitingCount + runningCount; // counts the submitted ones too
+        }
     }
 
     public static void stop() {
-        running = false;
+        synchronized (lock) {
+            stopped = true;
+            // the jobs nobody has started would hold up loadChunk and updateBlock forever
+            var waiting = new HashSet<Job>();
+            for (var queue : areaQueues.values()) {
+                for (var job : queue) {
+                    if (!job.started && !job.onCaller) waiting.add(job);
+                }
+            }
+            for (var job : waiting) cancel(job);
+            readyJobs.clear();
+            waitingCount = 0;
+        }
+        executor.shutdownNow();
+        System.out.println("LightMapGenerator stopped");
+    }
+
+    /** Starts ready jobs until all threads are busy. Must hold `lock`. */
+    private static void dispatch() {
+        while (runningCount < THREAD_COUNT && !readyJobs.isEmpty() && !stopped) {
+            var job = readyJobs.poll();
+            job.started = true;
+            waitingCount--;
+            runningCount++;
+            executor.submit(() -> {
+                try {
+                    generate(job.chunk);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    synchronized (lock) {
+                        runningCount--;
+                        release(job);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Puts the job at the back of the queues of the chunk and its 26 neighbors. Must hold `lock`. */
+    private static void enqueue(Job job) {
+        var pos = job.chunk.getChunkGridPos();
+        for (int dx = -1; dx <= 1; dx++)
+        for (int dy = -1; dy <= 1; dy++)
+        for (int dz = -1; dz <= 1; dz++)
+        {
+            var queue = areaQueues.get(Chunk.toKey(pos.x + dx, pos.y + dy, pos.z + dz));
+            if (queue == null) {
+                queue = spareQueues.isEmpty() ? new ArrayDeque<>(4) : spareQueues.remove(spareQueues.size() - 1);
+                areaQueues.put(Chunk.toKey(pos.x + dx, pos.y + dy, pos.z + dz), queue);
+            } else {
+                job.blockedCount++;
+            }
+            queue.add(job);
+        }
+        if (job.blockedCount == 0) setReady(job);
+    }
+
+    /** Takes the job out of its queues. The jobs that come first in all their queues because of it
+     * are started, only the ones overlapping its area are looked at. Must hold `lock`. */
+    private static void release(Job job) {
+        var pos = job.chunk.getChunkGridPos();
+        for (int dx = -1; dx <= 1; dx++)
+        for (int dy = -1; dy <= 1; dy++)
+        for (int dz = -1; dz <= 1; dz++)
+        {
+            long key = Chunk.toKey(pos.x + dx, pos.y + dy, pos.z + dz);
+            var queue = areaQueues.get(key);
+            boolean wasFirst = queue.peek() == job;
+            queue.remove(job);
+            if (queue.isEmpty()) {
+                areaQueues.remove(key);
+                spareQueues.add(queue);
+            } else if (wasFirst && --queue.peek().blockedCount == 0) {
+                setReady(queue.peek());
+            }
+        }
+        dispatch();
+    }
+
+    /** Drops a job that hasn't started. Must hold `lock`. */
+    private static void cancel(Job job) {
+        readyJobs.remove(job);
+        release(job);
+    }
+
+    /** Must hold `lock`. */
+    private static void setReady(Job job) {
+        if (job.onCaller) {
+            job.started = true;
+            lock.notifyAll();
+        } else {
+            readyJobs.add(job);
+        }
+    }
+
+    /** Waits until every job added before it that overlaps the chunk's 3x3x3 area is done,
+     * then claims the area for the calling thread. */
+    private static Job claimArea(Chunk chunk) {
+        synchronized (lock) {
+            var job = new Job(chunk, true);
+            enqueue(job);
+            while (!job.started) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    cancel(job);
+                    throw new RuntimeException(e);
+                }
+            }
+            return job;
+        }
+    }
+
+    private static void releaseArea(Job job) {
+        synchronized (lock) {
+            release(job);
+        }
+    }
+
+    /** Generates the lightmap of a chunk on the calling thread, waiting for any worker lighting a chunk next to it. */
+    public static void loadChunk(Chunk chunk) {
+        var job = claimArea(chunk);
         try {
-            thread.interrupt();
-            thread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            generate(chunk);
+        } finally {
+            releaseArea(job);
         }
     }
 
-    private static void run() {
-        System.out.println("LightMapGenerator running");
-        while (running) {
+    /** How many nodes the light searches on the calling thread have queued so far, for benchmarks. */
+    static long getQueuedNodeCount() {
+        var area = localArea.get();
+        return area.queue.getAddedCount() + area.addQueue.getAddedCount() + area.removeQueue.getAddedCount();
+    }
+
+    /** Updates the light around a block that has just been changed, instead of relighting whole chunks.
+     * If the block stops light, the light it let through is removed with a breadth first search,
+     * and the light bordering the removed area is spread back in with a second one.
+     * If the block lets light through, the light next to it is spread into it.
+     * Like {@link #loadChunk}, the 3x3x3 chunks around the block's chunk are updated at a time. Full skylight can go
+     * straight down past the bottom of them, then the update goes on around the chunk below, until it stops.
+     * @return the chunks that have to be remeshed because the light they show has changed. */
+    public static List<Chunk> updateBlock(Chunk chunk, int x, int y, int z) {
+        var changedChunks = new ArrayList<Chunk>();
+        var area = localArea.get();
+        area.belowRemoveQueue.clear();
+        area.belowAddQueue.clear();
+
+        boolean first = true;
+        while (chunk != null) {
+            Chunk below;
+            var job = claimArea(chunk);
             try {
-                var chunk = loadQueue.take();
-                loadChunk(chunk);
-            } catch (InterruptedException e) {}
+                area.load(chunk);
+                if (area.centerLightMap == null) {
+                    area.clear();
+                    break;
+                }
+
+                area.addQueue.clear();
+                area.removeQueue.clear();
+                if (first) {
+                    seedFromBlock(area, x, y, z);
+                } else {
+                    seedFromAbove(area);
+                }
+                removeLight(area);
+                addLight(area);
+
+                for (int i = 0; i < Area.COUNT; i++) {
+                    if (area.changed[i] && area.chunks[i] != null && !changedChunks.contains(area.chunks[i])) {
+                        changedChunks.add(area.chunks[i]);
+                    }
+                }
+                below = area.chunks[Area.BELOW_CENTER];
+                area.clear();
+            } finally {
+                releaseArea(job);
+            }
+
+            if (area.belowRemoveQueue.isEmpty() && area.belowAddQueue.isEmpty()) break;
+            chunk = below;
+            first = false;
         }
-        System.out.println("LightMapGenerator stopped");
+        return changedChunks;
     }
 
-    public static void loadChunk(Chunk chunk) {
+    private static void seedFromBlock(Area area, int x, int y, int z) {
+        if (area.canLightPassThrough(x, y, z)) {
+            seedFromNeighbors(area, x, y, z);
+        } else {
+            int oldLight = area.getSky(x, y, z);
+            if (oldLight != 0) {
+                area.setSky(x, y, z, 0);
+                area.removeQueue.add(pack(x, y, z, oldLight));
+            }
+        }
+    }
+
+    /** Carries on the searches that reached past the bottom of the last area, which is one chunk higher than this one. */
+    private static void seedFromAbove(Area area) {
+        var below = area.belowRemoveQueue;
+        while (!below.isEmpty()) {
+            int node = below.poll();
+            removeFrom(area, unpackX(node), unpackY(node), unpackZ(node), unpackLight(node), CardinalDirection.DOWN);
+        }
+        below = area.belowAddQueue;
+        while (!below.isEmpty()) {
+            int node = below.poll();
+            spreadTo(area, unpackX(node), unpackY(node), unpackZ(node), unpackLight(node));
+        }
+    }
+
+    /** Gives a block the brightest light its neighbors could spread into it, and queues it to spread further. */
+    private static void seedFromNeighbors(Area area, int x, int y, int z) {
+        int light = area.getSky(x, y, z);
+        for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+            var offset = CardinalDirection.offsets[dir];
+            int nx = x + offset.x, ny = y + offset.y, nz = z + offset.z;
+            if (!Area.contains(nx, ny, nz)) continue;
+
+            int neighborLight = area.getSky(nx, ny, nz);
+            // light coming down from the neighbor above is the one case that doesn't attenuate
+            int spread = (dir == CardinalDirection.UP && neighborLight == Chunk.MAX_LIGHT) ? neighborLight : neighborLight - 1;
+            light = Math.max(light, spread);
+        }
+
+        if (light > area.getSky(x, y, z)) {
+            area.setSky(x, y, z, light);
+        }
+        if (light > 0) {
+            area.addQueue.add(pack(x, y, z, 0));
+        }
+    }
+
+    /** Darkens every block whose light came from the blocks in the remove queue.
+     * Lit blocks at the edge of the darkened area are put in the add queue to fill it back in. */
+    private static void removeLight(Area area) {
+        var queue = area.removeQueue;
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            int x = unpackX(node), y = unpackY(node), z = unpackZ(node), light = unpackLight(node);
+
+            for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+                var offset = CardinalDirection.offsets[dir];
+                int nx = x + offset.x, ny = y + offset.y, nz = z + offset.z;
+                if (!Area.contains(nx, ny, nz)) {
+                    // only full skylight going straight down gets this far, see updateBlock
+                    if (ny < -Chunk.SIZE) area.belowRemoveQueue.add(pack(nx, ny + Chunk.SIZE, nz, light));
+                    continue;
+                }
+                removeFrom(area, nx, ny, nz, light, dir);
+            }
+        }
+    }
+
+    // the light of the block next to one whose `light` is being removed, `dir` is the way from that one to this one
+    private static void removeFrom(Area area, int x, int y, int z, int light, int dir) {
+        if (!area.hasLightMap(x, y, z)) return;
+        int neighborLight = area.getSky(x, y, z);
+        if (neighborLight == 0) return;
+
+        boolean cameFromHere = neighborLight < light
+                || (dir == CardinalDirection.DOWN && light == Chunk.MAX_LIGHT && neighborLight == Chunk.MAX_LIGHT);
+        if (cameFromHere) {
+            area.setSky(x, y, z, 0);
+            area.removeQueue.add(pack(x, y, z, neighborLight));
+        } else {
+            // this light came from somewhere else, let it fill the dark area back in
+            area.addQueue.add(pack(x, y, z, 0));
+        }
+    }
+
+    /** Spreads the light of the blocks in the add queue, the same way {@link #propagateInArea} does. */
+    private static void addLight(Area area) {
+        var queue = area.addQueue;
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            int x = unpackX(node), y = unpackY(node), z = unpackZ(node);
+            int light = area.getSky(x, y, z);
+
+            for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+                var offset = CardinalDirection.offsets[dir];
+                int nx = x + offset.x, ny = y + offset.y, nz = z + offset.z;
+
+                int nl;
+                if (light == Chunk.MAX_LIGHT && dir == CardinalDirection.DOWN) {
+                    nl = light;
+                } else {
+                    nl = light - 1;
+                }
+                if (nl <= 0) continue;
+
+                if (!Area.contains(nx, ny, nz)) {
+                    if (ny < -Chunk.SIZE) area.belowAddQueue.add(pack(nx, ny + Chunk.SIZE, nz, nl));
+                    continue;
+                }
+                spreadTo(area, nx, ny, nz, nl);
+            }
+        }
+    }
+
+    private static void spreadTo(Area area, int x, int y, int z, int light) {
+        if (!area.hasLightMap(x, y, z) || area.getSky(x, y, z) >= light || !area.canLightPassThrough(x, y, z)) {
+            return;
+        }
+        area.setSky(x, y, z, light);
+        area.addQueue.add(pack(x, y, z, 0));
+    }
+
+    private static void generate(Chunk chunk) {
         if (chunk.getIsAirChunk()) {
             loadAllAirChunk(chunk);
             chunk.setStatus(Chunk.Status.LIGHTS_GENERATED);
@@ -59,18 +383,27 @@ public class LightMapGenerator {
         // lightmap generation is done in two phases
         // 1. take the skylight from chunks surrounding you and propagate them to yourself
         // 2. take the skylight from the 3x3 chunks above you, and propagate them to yourself and chunk surrounding you
-        chunk.setColours(new byte[Chunk.SIZE * Chunk.SIZE * Chunk.SIZE]);
+        // every chunk gets a light map with its blocks, so it's cleared instead of replaced
+        var lightMap = chunk.getColours();
+        if (lightMap == null) {
+            chunk.setColours(new byte[Chunk.SIZE * Chunk.SIZE * Chunk.SIZE]);
+        } else {
+            Arrays.fill(lightMap, (byte) 0);
+        }
 
-        var spoiledChunks = new ArrayList<Chunk>();
+        var area = localArea.get();
+        area.load(chunk);
 
-        propagateNeighborLight(chunk, spoiledChunks);
-        propagateAboveLight(chunk, spoiledChunks);
+        propagateNeighborLight(area);
+        propagateAboveLight(area);
 
-        for (Chunk neighbor : spoiledChunks) {
-            if (!neighbor.spoiled) {
+        for (int i = 0; i < Area.COUNT; i++) {
+            Chunk neighbor = area.chunks[i];
+            if (area.spoiled[i] && !neighbor.spoiled) {
                 neighbor.spoil();
             }
         }
+        area.clear();
         chunk.setStatus(Chunk.Status.LIGHTS_GENERATED);
     }
 
@@ -92,27 +425,27 @@ public class LightMapGenerator {
         }
     }
 
-    private static void propagateAboveLight(Chunk chunk, ArrayList<Chunk> spoiledChunks) {
-        Queue<Vector4i> lightSources = new ArrayDeque<>();
-        getAboveLightSources(chunk, lightSources);
+    private static void propagateAboveLight(Area area) {
+        area.queue.clear();
+        getAboveLightSources(area);
 
-        propagateInArea(chunk, lightSources, spoiledChunks, v -> isPositionIn3x3Grid(v.x, v.y, v.z));
+        propagateInArea(area, true);
     }
 
-    private static void propagateNeighborLight(Chunk chunk, ArrayList<Chunk> spoiledChunks) {
-        Queue<Vector4i> lightSources = new ArrayDeque<>();
-        getNeighborLightSources(chunk, lightSources);
+    private static void propagateNeighborLight(Area area) {
+        area.queue.clear();
+        getNeighborLightSources(area);
 
-        propagateInArea(chunk, lightSources, spoiledChunks, v -> chunk.isInsideChunk(v.x, v.y, v.z));
+        propagateInArea(area, false);
     }
 
-    private static void getAboveLightSources(Chunk chunk, Queue<Vector4i> locs) {
+    private static void getAboveLightSources(Area area) {
         for (int x = -Chunk.MAX_LIGHT - 1; x < Chunk.SIZE + Chunk.MAX_LIGHT; x++)
         for (int z = -Chunk.MAX_LIGHT - 1; z < Chunk.SIZE + Chunk.MAX_LIGHT; z++)
         {
             int y = Chunk.SIZE + 1;
 
-            byte light = getSkyAt(chunk, x, y, z);
+            int light = Chunk.getSky(area.getColour(x, y, z));
             if (light == 0) {
                 continue;
             }
@@ -120,7 +453,7 @@ public class LightMapGenerator {
                 light -= 1;
             }
 
-            locs.add(new Vector4i(x, y-1, z, light));
+            area.queue.add(pack(x, y-1, z, light));
         }
     }
 
@@ -130,7 +463,11 @@ public class LightMapGenerator {
             || (y < -Chunk.SIZE + 1      || y > Chunk.SIZE + 1);
     }
 
-    private static void getNeighborLightSources(Chunk chunk, Queue<Vector4i> locs) {
+    private static boolean isInsideChunk(int x, int y, int z) {
+        return ((x | y | z) & ~(Chunk.SIZE - 1)) == 0;
+    }
+
+    private static void getNeighborLightSources(Area area) {
         for (int dir = 0; dir < CardinalDirection.COUNT; dir++)
         for (int axis1 = 0; axis1 < Chunk.SIZE; axis1++)
         for (int axis2 = 0; axis2 < Chunk.SIZE; axis2++)
@@ -170,7 +507,7 @@ public class LightMapGenerator {
                     break;
             }
 
-            byte light = getSkyAt(chunk, x, y, z);
+            int light = Chunk.getSky(area.getColour(x, y, z));
             if (light == 0) {
                 continue;
             }
@@ -179,76 +516,221 @@ public class LightMapGenerator {
             }
 
             var dirOffset = CardinalDirection.offsets[dir];
-            locs.add(new Vector4i(x-dirOffset.x, y-dirOffset.y, z-dirOffset.z, light));
+            area.queue.add(pack(x-dirOffset.x, y-dirOffset.y, z-dirOffset.z, light));
         }
     }
 
-    private static void propagateInArea(Chunk chunk,
-                                        Queue<Vector4i> sources,
-                                        ArrayList<Chunk> spoiledChunks,
-                                        Function<Vector3i, Boolean> areaPredicate) {
-        while (!sources.isEmpty()) {
-            Vector4i source = sources.poll();
+    /** Breadth first search from the light sources in the area's queue.
+     * @param aboveArea if true, light may spread outside the 3x3 area above the chunk, if false it may only spread inside the chunk. */
+    private static void propagateInArea(Area area, boolean aboveArea) {
+        var queue = area.queue;
+        while (!queue.isEmpty()) {
+            int source = queue.poll();
+            int sx = unpackX(source), sy = unpackY(source), sz = unpackZ(source), sw = unpackLight(source);
 
             // set colour
-            byte light = chunk.getColourSafe(source.x, source.y, source.z);
-            if (light >= source.w) continue;
-            chunk.setColourSafe(source.x, source.y, source.z, (byte) source.w);
+            byte light = area.getColour(sx, sy, sz);
+            if (light >= sw) continue;
+            area.setColour(sx, sy, sz, (byte) sw);
 
             // propagate
             for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
                 var offset = CardinalDirection.offsets[dir];
 
-                int nx = source.x + offset.x;
-                int ny = source.y + offset.y;
-                int nz = source.z + offset.z;
-                byte nl;
-                if (source.w == Chunk.MAX_LIGHT && dir == CardinalDirection.DOWN) {
+                int nx = sx + offset.x;
+                int ny = sy + offset.y;
+                int nz = sz + offset.z;
+                if (!Area.contains(nx, ny, nz)) {
+                    continue;
+                }
+
+                int nl;
+                if (sw == Chunk.MAX_LIGHT && dir == CardinalDirection.DOWN) {
                     // skylight does not attenuate moving down if it's at full intensity
-                    nl = (byte) (source.w);
+                    nl = sw;
                 } else {
-                    nl = (byte) (source.w - 1);
+                    nl = sw - 1;
                 }
 
-                int existingSkyLight = getSkyAt(chunk, nx, ny, nz);
-                boolean isInArea = areaPredicate.apply(new Vector3i(nx, ny, nz));
-
+                int existingSkyLight = Chunk.getSky(area.getColour(nx, ny, nz));
                 if (nl <= 0 || existingSkyLight >= nl) {
                     continue;
                 }
 
                 // spoil neighboring chunks as we move through them or near their border
-                if (!chunk.isInsideChunk(nx, ny, nz)) {
-                    Chunk neighbor = getChunkAtRelativeCoords(chunk, nx, ny, nz);
-                    if (neighbor.getStatus().urgency > Chunk.Status.LIGHTS_GENERATED.urgency
-                            && !neighbor.spoiled) {
-                        spoiledChunks.add(neighbor);
-                    }
+                if (!isInsideChunk(nx, ny, nz)) {
+                    area.markSpoiledIfMeshed(nx, ny, nz);
                 }
 
-                if (!canLightPassThroughAt(chunk, nx, ny, nz) || !isInArea) {
+                boolean isInArea = aboveArea ? isPositionIn3x3Grid(nx, ny, nz) : isInsideChunk(nx, ny, nz);
+                if (!isInArea || !area.canLightPassThrough(nx, ny, nz)) {
                     continue;
                 }
 
-                sources.add(new Vector4i(nx, ny, nz, nl));
+                queue.add(pack(nx, ny, nz, nl));
             }
         }
     }
 
-    private static Chunk getChunkAtRelativeCoords(Chunk chunk, int x, int y, int z) {
-        var worldPos = Chunk.blockPosToWorldPos(new Vector3i(x, y, z), chunk);
-        var chunkPos = Chunk.worldPosToChunkPos(worldPos);
-        int dirIndex = DiagonalDirection.indexOf(chunkPos.sub(chunk.getChunkGridPos()));
-        return chunk.getNeighbor(dirIndex);
-    }
+    // queue nodes are packed into an int: 7 bits for each coordinate (offset so the 3x3x3 area starts at 0), and 4 bits of light.
+    private static final int COORD_BITS = 7, COORD_MASK = (1 << COORD_BITS) - 1, COORD_OFFSET = Chunk.SIZE;
 
-    private static boolean canLightPassThroughAt(Chunk chunk, int x, int y, int z) {
-        byte block = chunk.getBlockSafe(x, y, z);
-        return Block.getBlock(block).getHasTransparentFace();
+    private static int pack(int x, int y, int z, int light) {
+        return (x + COORD_OFFSET)
+             | (y + COORD_OFFSET) << COORD_BITS
+             | (z + COORD_OFFSET) << (2*COORD_BITS)
+             | light << (3*COORD_BITS);
     }
 
-    private static byte getSkyAt(Chunk chunk, int x, int y, int z) {
-        byte sky = Chunk.getSky(chunk.getColourSafe(x, y, z));
-        return sky;
+    private static int unpackX(int node) { return (node & COORD_MASK) - COORD_OFFSET; }
+    private static int unpackY(int node) { return ((node >> COORD_BITS) & COORD_MASK) - COORD_OFFSET; }
+    private static int unpackZ(int node) { return ((node >> (2*COORD_BITS)) & COORD_MASK) - COORD_OFFSET; }
+    private static int unpackLight(int node) { return node >>> (3*COORD_BITS); }
+
+    private static final ThreadLocal<Area> localArea = ThreadLocal.withInitial(Area::new);
+
+    /** The 3x3x3 chunks around the chunk being lit, with their light and block arrays looked up once per job.
+     * Coordinates are relative to the center chunk, so -32..63 on each axis. Missing chunks read as dark and see-through,
+     * like {@link Chunk#getColourSafe} and {@link Chunk#getBlockSafe} do. */
+    private static class Area {
+        static final int COUNT = 27;
+
+        final Chunk[] chunks = new Chunk[COUNT];
+        final byte[][] lightMaps = new byte[COUNT][];
+        final BlockStorage[] blocks = new BlockStorage[COUNT];
+        final boolean[] spoiled = new boolean[COUNT];
+        final IntRingQueue queue = new IntRingQueue(1 << 15);
+
+        // for incremental updates, see updateBlock
+        final boolean[] changed = new boolean[COUNT];
+        final IntRingQueue addQueue = new IntRingQueue(1 << 10);
+        final IntRingQueue removeQueue = new IntRingQueue(1 << 10);
+        // the nodes the searches would have gone on with below the area, relative to the chunk below the center
+        final IntRingQueue belowRemoveQueue = new IntRingQueue(1 << 6);
+        final IntRingQueue belowAddQueue = new IntRingQueue(1 << 6);
+
+        // the chunk being lit, most lookups land here
+        static final int CENTER = 13;
+        static final int BELOW_CENTER = 10;
+        byte[] centerLightMap;
+        BlockStorage centerBlocks;
+
+        private static volatile boolean warnedAboutMissingChunk = false;
+
+        void load(Chunk chunk) {
+            for (int i = 0; i < COUNT; i++) {
+                int dx = i / 9 - 1, dy = (i / 3) % 3 - 1, dz = i % 3 - 1;
+                Chunk c = (dx == 0 && dy == 0 && dz == 0)
+                        ? chunk
+                        : chunk.getNeighbor(DiagonalDirection.indexOf(dx, dy, dz));
+                chunks[i] = c;
+                lightMaps[i] = c == null ? null : c.getColours();
+                blocks[i] = c == null ? null : c.getBlockStorage();
+                spoiled[i] = false;
+                changed[i] = false;
+            }
+            centerLightMap = lightMaps[CENTER];
+            centerBlocks = blocks[CENTER];
+        }
+
+        void clear() {
+            for (int i = 0; i < COUNT; i++) {
+                chunks[i] = null;
+                lightMaps[i] = null;
+                blocks[i] = null;
+            }
+            centerLightMap = null;
+            centerBlocks = null;
+        }
+
+        static boolean contains(int x, int y, int z) {
+            return x >= -Chunk.SIZE && x < 2*Chunk.SIZE
+                && y >= -Chunk.SIZE && y < 2*Chunk.SIZE
+                && z >= -Chunk.SIZE && z < 2*Chunk.SIZE;
+        }
+
+        static int chunkIndex(int x, int y, int z) {
+            return ((x >> Chunk.SIZE_BITS) + 1) * 9 + ((y >> Chunk.SIZE_BITS) + 1) * 3 + ((z >> Chunk.SIZE_BITS) + 1);
+        }
+
+        static int blockIndex(int x, int y, int z) {
+            return Chunk.toIndex(x & (Chunk.SIZE-1), y & (Chunk.SIZE-1), z & (Chunk.SIZE-1));
+        }
+
+        byte getColour(int x, int y, int z) {
+            if (isInsideChunk(x, y, z)) return centerLightMap[Chunk.toIndex(x, y, z)];
+            var lightMap = lightMaps[chunkIndex(x, y, z)];
+            if (lightMap == null) return 0;
+            return lightMap[blockIndex(x, y, z)];
+        }
+
+        void setColour(int x, int y, int z, byte colour) {
+            if (isInsideChunk(x, y, z)) {
+                centerLightMap[Chunk.toIndex(x, y, z)] = colour;
+                return;
+            }
+            var lightMap = lightMaps[chunkIndex(x, y, z)];
+            if (lightMap == null) {
+                // happens on every light search reaching the edge of the loaded world, once is enough to know
+                if (!warnedAboutMissingChunk) {
+                    warnedAboutMissingChunk = true;
+                    System.err.println("setColour failed across chunk border at " + x + ", " + y + ", " + z
+                            + ", not reporting it again");
+                }
+                return;
+            }
+            lightMap[blockIndex(x, y, z)] = colour;
+        }
+
+        boolean hasLightMap(int x, int y, int z) {
+            return lightMaps[chunkIndex(x, y, z)] != null;
+        }
+
+        int getSky(int x, int y, int z) {
+            return Chunk.getSky(getColour(x, y, z));
+        }
+
+        /** Sets the sky light, and marks the chunks whose mesh shows this light as changed.
+         * That is the chunk itself, and the chunks next to it if the block is on the chunk border. */
+        void setSky(int x, int y, int z, int sky) {
+            byte colour = getColour(x, y, z);
+            setColour(x, y, z, (byte) ((colour & 0xF0) | sky));
+
+            markChanged(x, y, z);
+            int bx = x & (Chunk.SIZE-1), by = y & (Chunk.SIZE-1), bz = z & (Chunk.SIZE-1);
+            if (bx == 0)            markChanged(x - 1, y, z);
+            if (bx == Chunk.SIZE-1) markChanged(x + 1, y, z);
+            if (by == 0)            markChanged(x, y - 1, z);
+            if (by == Chunk.SIZE-1) markChanged(x, y + 1, z);
+            if (bz == 0)            markChanged(x, y, z - 1);
+            if (bz == Chunk.SIZE-1) markChanged(x, y, z + 1);
+        }
+
+        private void markChanged(int x, int y, int z) {
+            if (contains(x, y, z)) {
+                changed[chunkIndex(x, y, z)] = true;
+            }
+        }
+
+        boolean canLightPassThrough(int x, int y, int z) {
+            byte block;
+            if (isInsideChunk(x, y, z)) {
+                block = centerBlocks.get(Chunk.toIndex(x, y, z));
+            } else {
+                var storage = blocks[chunkIndex(x, y, z)];
+                block = storage == null ? Block.INVALID.getID() : storage.get(blockIndex(x, y, z));
+            }
+            return Block.getBlock(block).getHasTransparentFace();
+        }
+
+        void markSpoiledIfMeshed(int x, int y, int z) {
+            int i = chunkIndex(x, y, z);
+            Chunk neighbor = chunks[i];
+            if (neighbor != null
+                    && neighbor.getStatus().urgency > Chunk.Status.LIGHTS_GENERATED.urgency
+                    && !neighbor.spoiled) {
+                spoiled[i] = true;
+            }
+        }
     }
 }
@@ -0,0 +1,73 @@
+package chunk;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Off-heap buffers for chunk meshes.
+ * The mesher takes a buffer and writes the chunk's vertices into it, the buffer is handed to opengl as is,
+ * and after the upload it is given back here to be reused for the next chunk.
+ * The buffers are allocated with MemoryUtil, so the garbage collector doesn't know about them:
+ * every buffer that is taken must be given back. */
+public class MeshBufferPool {
+
+    private static final int MIN_CAPACITY = 1 << 14; // ints
+    private static final int MAX_POOLED = 16;
+
+    private static final ConcurrentLinkedQueue<IntBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledCount = new AtomicInteger();
+    private static final AtomicLong allocatedBytes = new AtomicLong(); // pooled and taken buffers together
+
+    /** Returns a buffer with position 0 and limit `size`. Thread safe. */
+    public static IntBuffer take(int size) {
+        var buf = pool.poll();
+        if (buf == null) {
+            buf = MemoryUtil.memAllocInt(Math.max(size, MIN_CAPACITY));
+            allocatedBytes.addAndGet((long) buf.capacity() * Integer.BYTES);
+        } else {
+            pooledCount.decrementAndGet();
+            if (buf.capacity() < size) {
+                int oldCapacity = buf.capacity();
+                buf = MemoryUtil.memRealloc(buf, Math.max(size, oldCapacity * 2));
+                allocatedBytes.addAndGet((long) (buf.capacity() - oldCapacity) * Integer.BYTES);
+            }
+        }
+
+        buf.clear();
+        buf.limit(size);
+        return buf;
+    }
+
+    /** Gives a buffer back to the pool, or frees it if the pool is full. Thread safe. */
+    public static void give(IntBuffer buf) {
+        if (pooledCount.incrementAndGet() > MAX_POOLED) {
+            pooledCount.decrementAndGet();
+            free(buf);
+            return;
+        }
+
+        pool.add(buf);
+    }
+
+    /** Frees all pooled buffers. Buffers that are still in use have to be given back first. */
+    public static void freeAll() {
+        IntBuffer buf;
+        while ((buf = pool.poll()) != null) {
+            pooledCount.decrementAndGet();
+            free(buf);
+        }
+    }
+
+    /** Bytes allocated for mesh buffers right now, the ones in the pool and the ones that are taken. */
+    public static long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    private static void free(IntBuffer buf) {
+        allocatedBytes.addAndGet(-(long) buf.capacity() * Integer.BYTES);
+        MemoryUtil.memFree(buf);
+    }
+}
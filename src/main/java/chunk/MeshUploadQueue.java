@@ -0,0 +1,58 @@
+package chunk;
+
+import java.util.ArrayDeque;
+
+/** Decides which chunk meshes get uploaded each frame.
+ * Chunks are uploaded in the order they were added, until the frame's byte budget is used up.
+ * The first chunk of a frame is always uploaded, so a mesh bigger than the budget can't get stuck.
+ * The actual uploading is done by the backend, so this class doesn't need an OpenGL context. */
+public class MeshUploadQueue {
+
+    public interface Backend {
+        /** Returns the number of bytes uploading this chunk's mesh takes. */
+        int getUploadSize(Chunk chunk);
+
+        /** Returns false if `bytes` can't be uploaded right now, for example if the gpu is still reading
+         * from the staging memory. The chunk is tried again next frame. */
+        boolean canUpload(int bytes);
+
+        void upload(Chunk chunk);
+
+        /** Called once at the end of every frame's uploads. */
+        void endFrame();
+    }
+
+    private final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+    private final Backend backend;
+
+    public MeshUploadQueue(Backend backend) {
+        this.backend = backend;
+    }
+
+    public void add(Chunk chunk) {
+        queue.add(chunk);
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /** Uploads as many queued chunks as fit in `budget` bytes. Returns the number of bytes uploaded. */
+    public long process(int budget) {
+        long uploaded = 0;
+        while (!queue.isEmpty()) {
+            var chunk = queue.peek();
+            int bytes = backend.getUploadSize(chunk);
+
+            if (uploaded != 0 && uploaded + bytes > budget) break;
+            if (!backend.canUpload(bytes)) break;
+
+            queue.poll();
+            backend.upload(chunk);
+            uploaded += bytes;
+        }
+
+        backend.endFrame();
+        return uploaded;
+    }
+}
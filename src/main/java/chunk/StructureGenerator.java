@@ -5,49 +5,28 @@ import entity.EntityManager;
 import org.joml.Vector3i;
 
 import java.util.Random;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class StructureGenerator {
 
     // NOTE: you can only have 1 structuregenerator running at once, as it modifies multiple chunks, and having two could overlap and break things.
     // it may be threaded but can only be 1 thread!
 
-    private static Thread thread = new Thread(StructureGenerator::run);
-    private static boolean running = true;
-    static { thread.start(); }
-
-    private static BlockingQueue<Chunk> loadQueue = new LinkedBlockingQueue<>();
+    private static final ChunkScheduler.Stage stage = new ChunkScheduler.Stage(
+            "StructureGenerator", 1, Chunk.Status.BASIC_TERRAIN_GENERATED, StructureGenerator::loadChunk);
+    static { System.out.println("StructureGenerator running"); }
 
     private static long STRUCTURE_SEED = 1349L;
 
     public static void addChunk(Chunk chunk) {
-        loadQueue.add(chunk);
+        stage.add(chunk);
     }
 
     public static int getQueueSize() {
-        return loadQueue.size();
+        return stage.size();
     }
 
     public static void stop() {
-        running = false;
-        try {
-            thread.interrupt();
-            thread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static void run() {
-        System.out.println("StructureGenerator running");
-        while (running) {
-            try {
-                var chunk = loadQueue.take();
-                loadChunk(chunk);
-            } catch (InterruptedException e) {}
-        }
-        System.out.println("StructureGenerator stopped");
+        stage.stop();
     }
 
     public static void loadChunk(Chunk chunk) {
@@ -13,7 +13,6 @@ import org.joml.Vector3f;
 import org.joml.Vector3i;
 
 import java.util.Random;
-import java.util.concurrent.*;
 
 /** Makes terrain via simplex noise. The terrain consists of a heightmap, and caves are carved with a simple noise check. */
 public class TerrainGenerator {
@@ -53,11 +52,12 @@ public class TerrainGenerator {
     private static final float LOWEST_OCTAVE_SCALE = 0.008f;
     private static final int OCTAVES = 3;
 
-    private static final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+    private static final ChunkScheduler.Stage stage = new ChunkScheduler.Stage(
+            "TerrainGenerator", 4, Chunk.Status.NONE, TerrainGenerator::loadChunk);
     static { System.out.println("TerrainGenerator running"); }
 
     public static void addChunks(Chunk chunk) {
-        executor.submit(() -> loadChunk(chunk));
+        stage.add(chunk);
     }
 
     public static void loadChunk(Chunk chunk) {
@@ -66,12 +66,11 @@ public class TerrainGenerator {
     }
 
     public static int getQueueSize() {
-        return executor.getQueue().size();
+        return stage.size();
     }
 
     public static void stop() {
-        executor.shutdownNow();
-        System.out.println("TerrainGenerator stopped");
+        stage.stop();
     }
 
     private static void generateHeightAndBiomemap(Chunk chunk, int[][] heightMap, Biome[][] biomeMap) {
@@ -3,47 +3,38 @@ package chunk;
 import block.Block;
 import block.BlockFace;
 import block.CardinalDirection;
-import block.WorldBlockFace;
+import block.DiagonalDirection;
 import entity.EntityManager;
-import it.unimi.dsi.fastutil.floats.FloatArrayList;
-import org.joml.Vector3f;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.joml.Vector3i;
+import render.QuadIndexBuffer;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /** Loads a block array into model data. */
 public class TerrainModelGenerator {
 
-    private static final float GAMMA = 2.2f;
-    private static final float MIN_LIGHT = 0.01f;
-
-    private static final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+    private static final ChunkScheduler.Stage stage = new ChunkScheduler.Stage(
+            "TerrainModelGenerator", 4, Chunk.Status.LIGHTS_GENERATED, TerrainModelGenerator::loadChunk);
     static { System.out.println("TerrainModelGenerator running"); }
 
     // lists for each cardinal direction + alpha blended faces (not culled based on direction)
     private static final ThreadLocal<GeneratorThreadLocals> localVariables = ThreadLocal.withInitial(() -> new GeneratorThreadLocals());
 
-    private static final float[] fakeBlockSideLights = new float[] {
-        1f,    // up
-        0.98f, // left
-        0.95f, // front
-        0.92f, // back
-        0.92f, // right
-        0.88f  // down
-    };
-
     // adds a chunk to the queue to be loaded in the future
     public static void addChunk(Chunk chunk) {
-        executor.submit(() -> loadChunk(chunk));
+        stage.add(chunk);
     }
 
     // loads a chunk immediately
     public static void loadChunk(Chunk chunk) {
         try {
             var modelInfoComp = generateModelData(chunk);
+            chunk.setFaceConnections(computeFaceConnections(chunk));
+            var staleModelInfoComp = EntityManager.removeComponent(chunk, ChunkModelDataComponent.class);
+            if (staleModelInfoComp != null) staleModelInfoComp.release(); // never uploaded, give its buffer back
             EntityManager.addComponent(chunk, modelInfoComp);
 
             var blockEntityInfoComp = new ChunkBlockEntityDataComponent(getBlockEntityLocations(chunk));
@@ -56,18 +47,35 @@ public class TerrainModelGenerator {
     }
 
     public static int getQueueSize() {
-        return executor.getQueue().size();
+        return stage.size();
     }
 
     public static void stop() {
-        executor.shutdownNow();
-        System.out.println("TerrainModelGenerator stopped");
+        stage.stop();
     }
 
-    private static ChunkModelDataComponent generateModelData(Chunk chunk) {
+    private static long computeFaceConnections(Chunk chunk) {
+        var blocks = chunk.getBlockStorage();
+        if (blocks.isUniform()) {
+            return isOpaque[blocks.get(0) + 128] ? ChunkFaceConnectivity.NONE : ChunkFaceConnectivity.ALL;
+        }
+
+        var locals = localVariables.get();
+        blocks.get(0, locals.blocks, 0, BlockStorage.VOLUME);
+        return locals.faceConnectivity.compute(locals.blocks, isOpaque);
+    }
+
+    static ChunkModelDataComponent generateModelData(Chunk chunk) {
         // clear thread local buffers
         var locals = localVariables.get();
         locals.clear();
+        locals.loadPadded(chunk);
+        if (chunk.getLevelOfDetail() > 0) {
+            locals.downsample(1 << chunk.getLevelOfDetail());
+        }
+
+        int[] sliceMask = locals.sliceMask;
+        int[] rowMask = locals.rowMask;
 
         // do greedy meshing on each of the 3 axis.
         for (int dir : new int[] {
@@ -81,93 +89,94 @@ public class TerrainModelGenerator {
             Vector3i tangent = CardinalDirection.tangents[dir];
             Vector3i biTangent = CardinalDirection.biTangents[dir];
 
-            WorldBlockFace[][] sliceMask = new WorldBlockFace[Chunk.SIZE][Chunk.SIZE];
+            // strides in the padded arrays for moving one block along each axis
+            int normalStride = paddedStride(normal);
+            int tangentStride = paddedStride(tangent);
+            int biTangentStride = paddedStride(biTangent);
+
+            // build a 32 bit mask for each row of each slice (including the neighbors' slices at -1 and 32),
+            // one bit per block along the tangent axis.
+            // solid blocks have at least one face, cubes only have opaque faces and hide anything they touch.
+            int[] solidRows = locals.solidRows;
+            int[] cubeRows = locals.cubeRows;
+            for (int slice = -1; slice <= Chunk.SIZE; slice++) {
+                int sliceStart = PADDED_ORIGIN + slice * normalStride;
+                for (int biTan = 0; biTan < Chunk.SIZE; biTan++) {
+                    int solid = 0, cube = 0;
+                    int cursor = sliceStart + biTan * biTangentStride;
+                    for (int tan = 0; tan < Chunk.SIZE; tan++, cursor += tangentStride) {
+                        int id = locals.paddedBlocks[cursor] + 128;
+                        if (hasFaces[id]) solid |= 1 << tan;
+                        if (isCube[id])   cube  |= 1 << tan;
+                    }
+                    solidRows[rowIndex(slice, biTan)] = solid;
+                    cubeRows[rowIndex(slice, biTan)] = cube;
+                }
+            }
 
             // run twice for both front and back faces (up and down, front and back, left and right), (+x and -x, etc.)
             for (int b = 0; b < 2; b++) {
                 dir = CardinalDirection.opposite(dir);
+                Vector3i faceOffset = CardinalDirection.offsets[dir];
+                int faceOffsetStride = paddedStride(faceOffset);
+                int facingSlice = faceOffsetStride > 0 ? 1 : -1;
 
                 for (int slice = 0; slice < Chunk.SIZE; slice++) {
-                    // cursor starts at 0,0 on our slice
-                    Vector3i cursor = new Vector3i();
-                    cursor.add(normal);
-                    cursor.mul(slice);
-
-                    // go through our slice and get all of the block faces on it
-                    for (int tan = 0; tan < Chunk.SIZE; tan++) {
-                        for (int biTan = 0; biTan < Chunk.SIZE; biTan++) {
-                            // do occlusion culling
-                            byte blockID = chunk.getBlock(cursor.x, cursor.y, cursor.z);
-                            Block block = Block.getBlock(blockID);
-                            BlockFace face = block.getFace(dir);
-                            if (shouldAddFace(chunk, cursor.x, cursor.y, cursor.z, blockID, dir, face)) {
-                                byte light = getLight(chunk, cursor.x, cursor.y, cursor.z, face);
-                                var worldFace = new WorldBlockFace(face, light);
-                                sliceMask[tan][biTan] = worldFace;
-                            } else {
-                                sliceMask[tan][biTan] = null;
-                            }
-
-                            cursor.add(biTangent); // increment
+                    // build the mask, a 2d array of all the block faces on this slice we want to render.
+                    // each face is packed into an int (see packFace), and each row has a bitmask of which cells have a face.
+                    // a cube touching another cube never has a face there, so only the remaining candidates are looked at.
+                    boolean sliceEmpty = true;
+                    int sliceStart = PADDED_ORIGIN + slice * normalStride;
+                    for (int biTan = 0; biTan < Chunk.SIZE; biTan++) {
+                        int candidates = solidRows[rowIndex(slice, biTan)]
+                                & ~(cubeRows[rowIndex(slice, biTan)] & cubeRows[rowIndex(slice + facingSlice, biTan)]);
+
+                        int row = 0;
+                        int rowStart = sliceStart + biTan * biTangentStride;
+                        while (candidates != 0) {
+                            int tan = Integer.numberOfTrailingZeros(candidates);
+                            candidates &= candidates - 1;
+
+                            int cursor = rowStart + tan * tangentStride;
+                            int face = getFace(locals, cursor, cursor + faceOffsetStride, dir);
+                            sliceMask[biTan * Chunk.SIZE + tan] = face;
+                            if (face != NO_FACE) row |= 1 << tan;
                         }
-
-                        // bitangent is at its end, set it back to 0 before we loop again
-                        cursor.mul(1 - biTangent.x, 1 - biTangent.y, 1 - biTangent.z);
-
-                        // increment tangent
-                        cursor.add(tangent);
+                        rowMask[biTan] = row;
+                        if (row != 0) sliceEmpty = false;
                     }
 
-                    // now we have a mask, or a 2d array of all the block faces on this slice we want to render
+                    if (sliceEmpty) continue;
 
                     // go through the 2d mask and try to greedily create big rectangles on it
                     // note that the x and y aren't actual coordinates in world space
                     // x and y are basically our new "cursor"
                     for (int y = 0; y < Chunk.SIZE; y++) {
-                        for (int x = 0; x < Chunk.SIZE; ) {
+                        while (rowMask[y] != 0) {
                             // iterate into the first block face
-                            if (sliceMask[x][y] == null) {
-                                x++;
-                                continue;
-                            }
+                            int x = Integer.numberOfTrailingZeros(rowMask[y]);
+                            int face = sliceMask[y * Chunk.SIZE + x];
 
                             // we are on a block face. let's try to extend it to the "right".
-                            WorldBlockFace face = sliceMask[x][y];
                             int width = 1;
-                            while (x + width < Chunk.SIZE) {
-                                var blockFace = sliceMask[x + width][y];
-                                if (blockFace == null || !blockFace.equals(face)) {
-                                    break;
-                                }
+                            while (x + width < Chunk.SIZE
+                                    && (rowMask[y] & (1 << (x + width))) != 0
+                                    && sliceMask[y * Chunk.SIZE + x + width] == face) {
                                 width++;
                             }
+                            int widthMask = (width == Chunk.SIZE ? -1 : (1 << width) - 1) << x;
 
                             // now let's try extend it down.
                             int height = 1;
-                            while (y + height < Chunk.SIZE) {
-                                // check for all of the faces on the row. if one doesn't match, we're out
-                                boolean foundBadFace = false;
-                                for (int k = x; k < x + width; k++) {
-                                    var blockFace = sliceMask[k][y + height];
-                                    if (blockFace == null || !blockFace.equals(face)) {
-                                        foundBadFace = true;
-                                    }
-                                }
-
-                                if (foundBadFace) {
-                                    break;
-                                }
-
+                            while (y + height < Chunk.SIZE && rowMatches(sliceMask, rowMask[y + height], y + height, x, width, widthMask, face)) {
                                 height++;
                             }
 
                             // we have our x,y,width,height for the quad we're making
 
                             // clear the mask in this area
-                            for (int v = y; v < y + height; v++)
-                            for (int u = x; u < x + width; u++)
-                            {
-                                sliceMask[u][v] = null;
+                            for (int v = y; v < y + height; v++) {
+                                rowMask[v] &= ~widthMask;
                             }
 
                             // convert x,y,slice into world coordinates
@@ -180,11 +189,10 @@ public class TerrainModelGenerator {
                                 worldX, worldY, worldZ,
                                 tangent, width,
                                 biTangent, height,
-                                face,
+                                unpackFaceIndex(face),
+                                unpackFaceLight(face),
                                 locals
                             );
-
-                            x += width;
                         }
                     }
                 }
@@ -194,265 +202,395 @@ public class TerrainModelGenerator {
         return wrapIntoModel(locals);
     }
 
-    private static ChunkModelDataComponent wrapIntoModel(GeneratorThreadLocals locals) {
-        // get buffers
-        var verticesBuffer = locals.getVerticesBuffers();
-        var textureCoordsBuffer = locals.getTextureCoordsBuffers();
-        var colourBuffer = locals.getColoursBuffers();
-        var alphaBlendVerticesBuffer = locals.getAlphaVerticesBuffer();
-        var alphaBlendTextureCoordsBuffer = locals.getAlphaTextureCoordsBuffer();
-        var alphaBlendColourBuffer = locals.getAlphaColoursBuffer();
+    /** Returns true if the cells x..x+width on row y all contain `face`. */
+    private static boolean rowMatches(int[] sliceMask, int row, int y, int x, int width, int widthMask, int face) {
+        if ((row & widthMask) != widthMask) return false;
+        for (int k = x; k < x + width; k++) {
+            if (sliceMask[y * Chunk.SIZE + k] != face) return false;
+        }
+        return true;
+    }
 
-        // calculate total number of vertices and texture coordinates of each face
-        int verticesSize = 0;
-        int textureCoordsSize = 0;
-        int coloursSize = 0;
-        for (int i = 0; i < CardinalDirection.COUNT; i++) {
-            verticesSize += verticesBuffer[i].size();
-            textureCoordsSize += textureCoordsBuffer[i].size();
-            coloursSize += colourBuffer[i].size();
+    /** Returns the packed face of the block at `index` in the padded arrays, in direction `dir`,
+     * or NO_FACE if the face shouldn't be rendered. `facingIndex` is the block the face is facing. */
+    private static int getFace(GeneratorThreadLocals locals, int index, int facingIndex, int dir) {
+        byte blockID = locals.paddedBlocks[index];
+        BlockFace face = blockFaces[dir][blockID + 128];
+
+        // null faces, or faces that don't exist, such as air blocks, shouldn't be added
+        if (face == null) {
+            return NO_FACE;
         }
-        verticesSize += alphaBlendVerticesBuffer.size();
-        textureCoordsSize += alphaBlendTextureCoordsBuffer.size();
-        coloursSize += alphaBlendColourBuffer.size();
-
-        // generate empty floatarraylists of that size
-        var vertices = FloatArrayList.wrap(new float[verticesSize]);
-        var textureCoords = FloatArrayList.wrap(new float[textureCoordsSize]);
-        var colours = FloatArrayList.wrap(new float[coloursSize]);
-        vertices.clear();
-        textureCoords.clear();
-        colours.clear();
-
-        // put all the vertices and texture coordinates into the combined lists
-        // addElements is a fast arraycopy because fastutil devs are geniuses
-
-        // alpha blended faces are put first
-        vertices.addElements(vertices.size(), alphaBlendVerticesBuffer.elements(), 0, alphaBlendVerticesBuffer.size());
-        textureCoords.addElements(textureCoords.size(), alphaBlendTextureCoordsBuffer.elements(), 0, alphaBlendTextureCoordsBuffer.size());
-        colours.addElements(colours.size(), alphaBlendColourBuffer.elements(), 0, alphaBlendColourBuffer.size());
-
-        // next add normal opaque faces, face by face
-        for (int i = 0; i < CardinalDirection.COUNT; i++) {
-            vertices.addElements(vertices.size(), verticesBuffer[i].elements(), 0, verticesBuffer[i].size());
-            textureCoords.addElements(textureCoords.size(), textureCoordsBuffer[i].elements(), 0, textureCoordsBuffer[i].size());
-            colours.addElements(colours.size(), colourBuffer[i].elements(), 0, colourBuffer[i].size());
+
+        byte facingBlockID = locals.paddedBlocks[facingIndex];
+        byte light;
+        if (face.isTransparent()) {
+            // cull faces that face another block of the same type
+            if (facingBlockID == blockID) return NO_FACE;
+
+            // transparent faces get their colour from inside the block, not next to it
+            light = locals.paddedLight[index];
+        } else {
+            // opaque blocks facing other opaque blocks shouldn't get their face added
+            if (hidesFace[dir][facingBlockID + 128]) return NO_FACE;
+
+            light = locals.paddedLight[facingIndex];
         }
 
-        // calculate indices (working with arrays is difficult ok?)
-        // index refers to the start position of any face list.
-        int[] indices = new int[CardinalDirection.COUNT];
-        indices[0] = alphaBlendVerticesBuffer.size() / 3; // first segment is reserved for alpha blended faces
-        indices[1] = verticesBuffer[0].size() / 3 + indices[0];
-        indices[2] = verticesBuffer[1].size() / 3 + indices[1];
-        indices[3] = verticesBuffer[2].size() / 3 + indices[2];
-        indices[4] = verticesBuffer[3].size() / 3 + indices[3];
-        indices[5] = verticesBuffer[4].size() / 3 + indices[4];
-
-        // put those two full lists into the component
-        return new ChunkModelDataComponent(
-            vertices.elements(),
-            textureCoords.elements(),
-            colours.elements(),
-            indices
-        );
+        return packFace(faceIndexOf(blockID, dir), light);
     }
 
-    private static void addFace(int x, int y, int z,
-                                Vector3i widthAxis, int w,
-                                Vector3i heightAxis, int h,
-                                WorldBlockFace worldFace,
-                                GeneratorThreadLocals locals) {
+    // a face in the slice mask is packed into an int as (face index + 1) << 8 | light, so that 0 means no face.
+    // two faces can only be merged if they have the same block face definition and the same light.
+    private static final int NO_FACE = 0;
 
-        // get local buffers
-        var verticesBuffer = locals.getVerticesBuffers();
-        var textureCoordsBuffer = locals.getTextureCoordsBuffers();
-        var colourBuffer = locals.getColoursBuffers();
-        var alphaBlendVerticesBuffer = locals.getAlphaVerticesBuffer();
-        var alphaBlendTextureCoordsBuffer = locals.getAlphaTextureCoordsBuffer();
-        var alphaBlendColourBuffer = locals.getAlphaColoursBuffer();
-
-        BlockFace face = worldFace.getBlockFaceDefinition();
-        byte faceLight = worldFace.getLight();
+    private static int packFace(int faceIndex, byte light) {
+        return (faceIndex + 1) << 8 | (light & 0xFF);
+    }
 
-        float[] vertices = face.getVertices();
-        float[] transformedVertices = new float[vertices.length];
-        Vector3f vertex = new Vector3f(); // reuse
-        for (int i = 0; i < vertices.length/3; i++) {
-            vertex.x = vertices[3*i  ];
-            vertex.y = vertices[3*i+1];
-            vertex.z = vertices[3*i+2];
+    private static int unpackFaceIndex(int face) {
+        return (face >>> 8) - 1;
+    }
 
-            // the block faces are stretched due to greedy meshing
-            stretch(vertex, widthAxis, w);
-            stretch(vertex, heightAxis, h);
+    private static byte unpackFaceLight(int face) {
+        return (byte) face;
+    }
 
-            // add the block x,y,z to the face x,y,z
-            vertex.add(x, y, z);
+    private static int faceIndexOf(byte blockID, int dir) {
+        return (blockID + 128) * CardinalDirection.COUNT + dir;
+    }
 
-            transformedVertices[3*i  ] = vertex.x;
-            transformedVertices[3*i+1] = vertex.y;
-            transformedVertices[3*i+2] = vertex.z;
-        }
+    // lookup tables indexed by block id + 128, so the inner loops don't need to go through Block.getBlock
+    private static final BlockFace[] faceTable = new BlockFace[256 * CardinalDirection.COUNT];
+    private static final float[][] faceVertices = new float[256 * CardinalDirection.COUNT][];
+    private static final float[][] faceTextureCoords = new float[256 * CardinalDirection.COUNT][];
+    private static final BlockFace[][] blockFaces = new BlockFace[CardinalDirection.COUNT][256];
+    // hasFaces[id] is true if the block has any faces, isCube[id] is true if all of its faces are opaque.
+    private static final boolean[] hasFaces = new boolean[256];
+    private static final boolean[] isCube = new boolean[256];
+    // isOpaque[id] is true if the block can't be seen through at all, for cave culling.
+    private static final boolean[] isOpaque = new boolean[256];
+    // fillsBlock[id] is true if the block takes up its whole space (it has a top face), for level of detail meshes.
+    private static final boolean[] fillsBlock = new boolean[256];
+    // hidesFace[dir][id] is true if an opaque face pointing in `dir` is hidden by block `id` in front of it.
+    private static final boolean[][] hidesFace = new boolean[CardinalDirection.COUNT][256];
+    static {
+        for (int id = 0; id < 256; id++) {
+            Block block = Block.getBlock((byte) (id - 128));
+            if (block == null) continue;
+
+            isCube[id] = !block.getHasTransparentFace();
+            for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+                BlockFace face = block.getFace(dir);
+                blockFaces[dir][id] = face;
+                if (face != null) hasFaces[id] = true;
+                faceTable[id * CardinalDirection.COUNT + dir] = face;
+                if (face != null) {
+                    faceVertices[id * CardinalDirection.COUNT + dir] = toQuad(face.getVertices());
+                    faceTextureCoords[id * CardinalDirection.COUNT + dir] = toQuad(face.getTextureCoords());
+                }
 
-        float[] textureCoords = face.getTextureCoords();
-        float[] transformedTextureCoords = new float[textureCoords.length];
-        for (int i = 0; i < textureCoords.length/3; i++) {
-            transformedTextureCoords[3*i  ] = textureCoords[3*i  ] * w;
-            transformedTextureCoords[3*i+1] = textureCoords[3*i+1] * h;
-            transformedTextureCoords[3*i+2] = textureCoords[3*i+2];
+                var oppositeFace = block.getFace(CardinalDirection.opposite(dir));
+                hidesFace[dir][id] = !block.getHasTransparentFace()
+                        || (oppositeFace != null && !oppositeFace.isTransparent());
+            }
+            isOpaque[id] = isCube[id] && hasFaces[id];
+            var top = faceVertices[id * CardinalDirection.COUNT + CardinalDirection.UP];
+            fillsBlock[id] = top != null && top.length != 0;
         }
+    }
 
-        float fakeLightMultiplier = fakeBlockSideLights[face.direction];
+    /** The block faces are 2 triangles (a, b, c) and (c, d, a), 6 vertices of 3 floats.
+     * Returns the 4 vertices of the quad (a, b, c, d), which are drawn with the shared {@link QuadIndexBuffer}. */
+    private static float[] toQuad(float[] triangles) {
+        if (triangles.length == 0) return triangles;
 
-        float[] light = new float[vertices.length / 3 * 2];
-        for (int i = 0; i < light.length / 2; i++) {
-            float blockLight = Chunk.getBlock(faceLight) / (float) Chunk.MAX_LIGHT;
-            blockLight *= fakeLightMultiplier;
-            blockLight = (float) Math.pow(blockLight, GAMMA);
-            light[2*i + 0] = blockLight; // block
+        float[] quad = new float[QuadIndexBuffer.VERTICES_PER_QUAD * 3];
+        System.arraycopy(triangles, 0, quad, 0, 9); // a, b, c
+        System.arraycopy(triangles, 12, quad, 9, 3); // d
+        return quad;
+    }
 
-            float skyLight = Chunk.getSky(faceLight) / (float) Chunk.MAX_LIGHT;
-            skyLight *= fakeLightMultiplier;
-            skyLight = (float) Math.pow(skyLight, GAMMA);
-            skyLight = Math.max(skyLight, MIN_LIGHT); // moonlight
-            light[2*i + 1] = skyLight; // sky
-        }
+    // the padded arrays are the chunk's blocks and light with a 1 block border from the 6 neighboring chunks
+    private static final int PADDED_SIZE = Chunk.SIZE + 2;
+    private static final int PADDED_VOLUME = PADDED_SIZE * PADDED_SIZE * PADDED_SIZE;
+    private static final int PADDED_ORIGIN = paddedIndex(0, 0, 0);
 
-        if (!face.isAlphaBlended()) {
-            // add normal vertices to the face direction bufferQ
-            verticesBuffer[face.direction].addAll(FloatArrayList.wrap(transformedVertices));
-            textureCoordsBuffer[face.direction].addAll(FloatArrayList.wrap(transformedTextureCoords));
-            colourBuffer[face.direction].addAll(FloatArrayList.wrap(light));
-        } else {
-            // face is alpha blended, we need to put this in the other buffer.
-            alphaBlendVerticesBuffer.addAll(FloatArrayList.wrap(transformedVertices));
-            alphaBlendTextureCoordsBuffer.addAll(FloatArrayList.wrap(transformedTextureCoords));
-            alphaBlendColourBuffer.addAll(FloatArrayList.wrap(light));
-        }
+    private static int paddedIndex(int x, int y, int z) {
+        return ((z + 1) * PADDED_SIZE + (y + 1)) * PADDED_SIZE + (x + 1);
     }
 
-    private static List<Vector3i> getBlockEntityLocations(Chunk chunk) {
-        List<Vector3i> blockEntities = new ArrayList<>();
-        for (int x = 0; x < Chunk.SIZE; x++)
-        for (int y = 0; y < Chunk.SIZE; y++)
-        for (int z = 0; z < Chunk.SIZE; z++)
-        {
-            byte blockID = chunk.getBlock(x, y, z);
-            Block block = Block.getBlock(blockID);
-            if (block.hasAttachedBlockEntity()) {
-                blockEntities.add(new Vector3i(x, y, z));
-            }
-        }
+    // index into the row masks of a slice, slice goes from -1 to 32
+    private static int rowIndex(int slice, int biTan) {
+        return (slice + 1) * Chunk.SIZE + biTan;
+    }
 
-        return blockEntities;
+    private static int paddedStride(Vector3i axis) {
+        return axis.x + axis.y * PADDED_SIZE + axis.z * PADDED_SIZE * PADDED_SIZE;
     }
 
-    private static boolean shouldAddFace(Chunk chunk, int x, int y, int z, byte blockID, int faceIndex, BlockFace face) {
-        // null faces, or faces that don't exist, such as air blocks, shouldn't be added
-        if (face == null) {
-            return false;
+    private static ChunkModelDataComponent wrapIntoModel(GeneratorThreadLocals locals) {
+        // get buffers
+        var verticesBuffer = locals.getVerticesBuffers();
+        var alphaBlendVerticesBuffer = locals.getAlphaVerticesBuffer();
+
+        // calculate total size of the packed vertices
+        int verticesSize = alphaBlendVerticesBuffer.size();
+        for (int i = 0; i < CardinalDirection.COUNT; i++) {
+            verticesSize += verticesBuffer[i].size();
         }
-        boolean isTransparent = face.isTransparent();
 
-        // opaque blocks facing other opaque blocks shouldn't get their face added
-        if (!isTransparent && !isFaceVisible(chunk, faceIndex, x, y, z)) {
-            return false;
+        // put all the vertices straight into one off-heap buffer, alpha blended faces first and then opaque faces, face by face.
+        // the buffer is uploaded to opengl as is, and goes back to the pool after that.
+        IntBuffer vertices = null;
+        if (verticesSize != 0) {
+            vertices = MeshBufferPool.take(verticesSize);
+            vertices.put(alphaBlendVerticesBuffer.elements(), 0, alphaBlendVerticesBuffer.size());
+            for (int i = 0; i < CardinalDirection.COUNT; i++) {
+                vertices.put(verticesBuffer[i].elements(), 0, verticesBuffer[i].size());
+            }
+            vertices.flip();
         }
 
-        // cull faces that face another block of the same type
-        if (isTransparent && isFacingSameBlockType(chunk, faceIndex, x, y, z, blockID)) {
-            return false;
+        // calculate indices (working with arrays is difficult ok?)
+        // index refers to the start of any face list in the shared quad index buffer.
+        int[] indices = new int[CardinalDirection.COUNT];
+        indices[0] = toIndexCount(alphaBlendVerticesBuffer.size()); // first segment is reserved for alpha blended faces
+        for (int i = 1; i < CardinalDirection.COUNT; i++) {
+            indices[i] = toIndexCount(verticesBuffer[i-1].size()) + indices[i-1];
         }
 
-        return true;
+        int[] alphaVertices = alphaBlendVerticesBuffer.isEmpty() ? null : alphaBlendVerticesBuffer.toIntArray();
+        return new ChunkModelDataComponent(vertices, verticesSize, indices, alphaVertices);
     }
 
-    private static boolean isFacingSameBlockType(Chunk chunk, int faceIndex, int x, int y, int z, byte block) {
-        Vector3i offset = CardinalDirection.offsets[faceIndex];
-        var obscuringBlock = chunk.getBlockSafe(x + offset.x, y + offset.y, z + offset.z);
-
-        return obscuringBlock == block;
+    // number of ints in the vertex buffer -> number of indices needed to draw them as quads
+    private static int toIndexCount(int vertexBufferSize) {
+        int quads = vertexBufferSize / TerrainVertex.INTS_PER_VERTEX / QuadIndexBuffer.VERTICES_PER_QUAD;
+        return quads * QuadIndexBuffer.INDICES_PER_QUAD;
     }
 
-    private static boolean isFaceVisible(Chunk chunk, int faceIndex, int x, int y, int z) {
-        Vector3i offset = CardinalDirection.offsets[faceIndex];
-        var obscuringBlock = Block.getBlock(chunk.getBlockSafe(x + offset.x, y + offset.y, z + offset.z));
+    private static void addFace(int x, int y, int z,
+                                Vector3i widthAxis, int w,
+                                Vector3i heightAxis, int h,
+                                int faceIndex,
+                                byte faceLight,
+                                GeneratorThreadLocals locals) {
+        BlockFace face = faceTable[faceIndex];
 
-        if (!obscuringBlock.getHasTransparentFace()) return false;
+        // pick the buffer, alpha blended faces go in their own buffer
+        IntArrayList verticesBuffer;
+        if (!face.isAlphaBlended()) {
+            verticesBuffer = locals.getVerticesBuffers()[face.direction];
+        } else {
+            verticesBuffer = locals.getAlphaVerticesBuffer();
+        }
 
-        var oppositeFace = obscuringBlock.getFace(CardinalDirection.opposite(faceIndex));
-        if (oppositeFace != null && !oppositeFace.isTransparent()) return false;
+        // the block faces are stretched due to greedy meshing
+        int stretchX = widthAxis.x > 0 ? w : heightAxis.x > 0 ? h : 1;
+        int stretchY = widthAxis.y > 0 ? w : heightAxis.y > 0 ? h : 1;
+        int stretchZ = widthAxis.z > 0 ? w : heightAxis.z > 0 ? h : 1;
 
-        return true;
-    }
+        // the light and texture layer are the same for the whole face
+        float[] vertices = faceVertices[faceIndex];
+        float[] textureCoords = faceTextureCoords[faceIndex];
+        if (vertices.length == 0) return; // decor blocks don't have top and bottom faces
+        int data = TerrainVertex.packData((int) textureCoords[2], faceLight, face.direction);
 
-    private static byte getLight(Chunk chunk, int x, int y, int z, BlockFace face) {
-        byte faceLight;
-        // transparent faces get their colour from inside the block, not next to it
-        if (face.isTransparent()) {
-            faceLight = chunk.getColourSafe(x, y, z);
-        } else {
-            var faceOffset = CardinalDirection.offsets[face.direction];
-            faceLight = chunk.getColourSafe(x + faceOffset.x, y + faceOffset.y, z + faceOffset.z);
+        for (int i = 0; i < vertices.length / 3; i++) {
+            // add the block x,y,z to the face x,y,z
+            int vx = (int) vertices[3*i  ] * stretchX + x;
+            int vy = (int) vertices[3*i+1] * stretchY + y;
+            int vz = (int) vertices[3*i+2] * stretchZ + z;
+            int u = (int) textureCoords[3*i  ] * w;
+            int v = (int) textureCoords[3*i+1] * h;
+
+            verticesBuffer.add(TerrainVertex.packPosition(vx, vy, vz, u, v));
+            verticesBuffer.add(data);
         }
-
-        return faceLight;
     }
 
-    private static Vector3f stretch(Vector3f source, Vector3i mask, int stretch) {
-        // multiply source by stretch, but only if mask for that axis is non-zero.
+    // read from the chunk's own blocks, not the padded array, which holds the big blocks of downsample in distant chunks
+    private static List<Vector3i> getBlockEntityLocations(Chunk chunk) {
+        var blocks = chunk.getBlockStorage();
+        List<Vector3i> blockEntities = new ArrayList<>();
+        if (blocks.isUniform() && !Block.getBlock(blocks.get(0)).hasAttachedBlockEntity()) {
+            return blockEntities;
+        }
 
-        source.x = source.x * (mask.x > 0 ? stretch : 1);
-        source.y = source.y * (mask.y > 0 ? stretch : 1);
-        source.z = source.z * (mask.z > 0 ? stretch : 1);
-        return source;
+        for (int x = 0; x < Chunk.SIZE; x++)
+        for (int y = 0; y < Chunk.SIZE; y++)
+        for (int z = 0; z < Chunk.SIZE; z++)
+        {
+            byte blockID = blocks.get(Chunk.toIndex(x, y, z));
+            Block block = Block.getBlock(blockID);
+            if (block.hasAttachedBlockEntity()) {
+                blockEntities.add(new Vector3i(x, y, z));
+            }
+        }
+
+        return blockEntities;
     }
 
     private static class GeneratorThreadLocals {
-        private FloatArrayList[] verticesBuffers, textureCoordsBuffers, coloursBuffers;
-        private FloatArrayList alphaVerticesBuffer, alphaTextureCoordsBuffer, alphaColoursBuffer;
+        private IntArrayList[] verticesBuffers;
+        private IntArrayList alphaVerticesBuffer;
+
+        private final byte[] paddedBlocks = new byte[PADDED_VOLUME];
+        private final byte[] paddedLight = new byte[PADDED_VOLUME];
+        private final int[] sliceMask = new int[Chunk.SIZE * Chunk.SIZE];
+        private final int[] rowMask = new int[Chunk.SIZE];
+        private final int[] solidRows = new int[PADDED_SIZE * Chunk.SIZE];
+        private final int[] cubeRows = new int[PADDED_SIZE * Chunk.SIZE];
+
+        private final byte[] blocks = new byte[BlockStorage.VOLUME];
+        private final ChunkFaceConnectivity faceConnectivity = new ChunkFaceConnectivity();
 
         public GeneratorThreadLocals() {
             // create buffers for each block face direction
             int count = CardinalDirection.COUNT;
-            verticesBuffers = new FloatArrayList[count];
-            textureCoordsBuffers = new FloatArrayList[count];
-            coloursBuffers = new FloatArrayList[count];
+            verticesBuffers = new IntArrayList[count];
             for (int i = 0; i < count; i++) {
-                verticesBuffers[i] = new FloatArrayList();
-                textureCoordsBuffers[i] = new FloatArrayList();
-                coloursBuffers[i] = new FloatArrayList();
+                verticesBuffers[i] = new IntArrayList();
             }
 
             // create buffers for alpha blended faces
-            alphaVerticesBuffer = new FloatArrayList();
-            alphaTextureCoordsBuffer = new FloatArrayList();
-            alphaColoursBuffer = new FloatArrayList();
+            alphaVerticesBuffer = new IntArrayList();
         }
 
-        public FloatArrayList[] getVerticesBuffers() {
-            return verticesBuffers;
+        /** Copies the chunk's blocks and light into the padded arrays, along with the layer of blocks touching
+         * each of its 6 faces. Missing neighbors are read as invalid blocks with no light,
+         * the same as {@link Chunk#getBlockSafe} and {@link Chunk#getColourSafe}.
+         * A neighbor meshed at a lower level of detail is read the way it's drawn, with the big blocks of
+         * {@link #downsample}, so every face on the border is drawn by exactly one of the two chunks. That's no holes
+         * where the two meshes don't match, and no walls buried inside the ground either. */
+        public void loadPadded(Chunk chunk) {
+            var blocks = chunk.getBlockStorage();
+            var light = chunk.getColours();
+            for (int z = 0; z < Chunk.SIZE; z++)
+            for (int y = 0; y < Chunk.SIZE; y++)
+            {
+                int index = Chunk.toIndex(0, y, z);
+                int paddedIndex = paddedIndex(0, y, z);
+                blocks.get(index, paddedBlocks, paddedIndex, Chunk.SIZE);
+                System.arraycopy(light, index, paddedLight, paddedIndex, Chunk.SIZE);
+            }
+
+            for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+                var offset = CardinalDirection.offsets[dir];
+                var neighbor = chunk.getNeighbor(DiagonalDirection.indexOf(offset));
+                var neighborBlocks = neighbor == null ? null : neighbor.getBlockStorage();
+                var neighborLight = neighbor == null ? null : neighbor.getColours();
+
+                // the layer of the neighbor touching us, for example x=31 of the left neighbor
+                for (int a = 0; a < Chunk.SIZE; a++)
+                for (int b = 0; b < Chunk.SIZE; b++)
+                {
+                    int x, y, z;
+                    if (offset.x != 0)      { x = offset.x < 0 ? -1 : Chunk.SIZE; y = a; z = b; }
+                    else if (offset.y != 0) { y = offset.y < 0 ? -1 : Chunk.SIZE; x = a; z = b; }
+                    else                    { z = offset.z < 0 ? -1 : Chunk.SIZE; x = a; y = b; }
+
+                    int index = Chunk.toIndex(x & (Chunk.SIZE-1), y & (Chunk.SIZE-1), z & (Chunk.SIZE-1));
+                    int paddedIndex = paddedIndex(x, y, z);
+                    paddedBlocks[paddedIndex] = neighborBlocks == null ? Block.INVALID.getID() : neighborBlocks.get(index);
+                    paddedLight[paddedIndex] = neighborLight == null ? 0 : neighborLight[index];
+                }
+
+                if (neighbor != null && neighbor.getLevelOfDetail() > 0) {
+                    loadDownsampledLayer(neighborBlocks, offset, 1 << neighbor.getLevelOfDetail());
+                }
+            }
         }
 
-        public FloatArrayList[] getTextureCoordsBuffers() {
-            return textureCoordsBuffers;
+        // overwrites the padding layer on the `offset` side with the neighbor's blocks as downsample makes them,
+        // each cell of the neighbor touching us is worked out once and fills cellSize x cellSize of the layer
+        private void loadDownsampledLayer(BlockStorage neighborBlocks, Vector3i offset, int cellSize) {
+            // the neighbor's cells touching us start at 0 on the side facing +offset, at SIZE-cellSize on the other
+            int layerStart = Chunk.SIZE - cellSize;
+            for (int a = 0; a < Chunk.SIZE; a += cellSize)
+            for (int b = 0; b < Chunk.SIZE; b += cellSize)
+            {
+                int cx, cy, cz;
+                if (offset.x != 0)      { cx = offset.x < 0 ? layerStart : 0; cy = a; cz = b; }
+                else if (offset.y != 0) { cy = offset.y < 0 ? layerStart : 0; cx = a; cz = b; }
+                else                    { cz = offset.z < 0 ? layerStart : 0; cx = a; cy = b; }
+                byte block = downsampledBlock(neighborBlocks, cx, cy, cz, cellSize);
+
+                for (int i = 0; i < cellSize; i++)
+                for (int j = 0; j < cellSize; j++)
+                {
+                    int x, y, z;
+                    if (offset.x != 0)      { x = offset.x < 0 ? -1 : Chunk.SIZE; y = a + i; z = b + j; }
+                    else if (offset.y != 0) { y = offset.y < 0 ? -1 : Chunk.SIZE; x = a + i; z = b + j; }
+                    else                    { z = offset.z < 0 ? -1 : Chunk.SIZE; x = a + i; y = b + j; }
+                    paddedBlocks[paddedIndex(x, y, z)] = block;
+                }
+            }
         }
 
-        public FloatArrayList[] getColoursBuffers() {
-            return coloursBuffers;
+        /** Replaces the chunk's blocks in the padded arrays with a coarser version of them: every cube of
+         * `cellSize` blocks becomes one big block, so the greedy mesher makes a lot less faces.
+         * A cell is filled if at least half of it is, with its topmost block, so the ground keeps its grass.
+         * Each cell gets the brightest light in it, so faces next to it aren't darkened by the blocks that were removed. */
+        public void downsample(int cellSize) {
+            int half = cellSize * cellSize * cellSize / 2;
+            for (int cz = 0; cz < Chunk.SIZE; cz += cellSize)
+            for (int cy = 0; cy < Chunk.SIZE; cy += cellSize)
+            for (int cx = 0; cx < Chunk.SIZE; cx += cellSize)
+            {
+                int filled = 0;
+                byte top = Block.AIR.getID();
+                int blockLight = 0, skyLight = 0;
+                for (int y = cy + cellSize - 1; y >= cy; y--)
+                for (int z = cz; z < cz + cellSize; z++)
+                for (int x = cx; x < cx + cellSize; x++)
+                {
+                    int index = paddedIndex(x, y, z);
+                    byte block = paddedBlocks[index];
+                    if (fillsBlock[block + 128]) {
+                        if (filled++ == 0) top = block;
+                    }
+                    blockLight = Math.max(blockLight, Chunk.getBlock(paddedLight[index]));
+                    skyLight = Math.max(skyLight, Chunk.getSky(paddedLight[index]));
+                }
+
+                byte block = filled >= half ? top : Block.AIR.getID(); // keep in step with downsampledBlock
+                byte light = (byte) (blockLight << 4 | skyLight);
+                for (int z = cz; z < cz + cellSize; z++)
+                for (int y = cy; y < cy + cellSize; y++)
+                for (int x = cx; x < cx + cellSize; x++)
+                {
+                    int index = paddedIndex(x, y, z);
+                    paddedBlocks[index] = block;
+                    paddedLight[index] = light;
+                }
+            }
         }
 
-        public FloatArrayList getAlphaVerticesBuffer() {
-            return alphaVerticesBuffer;
+        // the block downsample turns the cell at cx, cy, cz of `blocks` into, without touching the padded arrays
+        private static byte downsampledBlock(BlockStorage blocks, int cx, int cy, int cz, int cellSize) {
+            int half = cellSize * cellSize * cellSize / 2;
+            int filled = 0;
+            byte top = Block.AIR.getID();
+            for (int y = cy + cellSize - 1; y >= cy; y--)
+            for (int z = cz; z < cz + cellSize; z++)
+            for (int x = cx; x < cx + cellSize; x++)
+            {
+                byte block = blocks.get(Chunk.toIndex(x, y, z));
+                if (fillsBlock[block + 128]) {
+                    if (filled++ == 0) top = block;
+                }
+            }
+            return filled >= half ? top : Block.AIR.getID();
         }
 
-        public FloatArrayList getAlphaTextureCoordsBuffer() {
-            return alphaTextureCoordsBuffer;
+        public IntArrayList[] getVerticesBuffers() {
+            return verticesBuffers;
         }
 
-        public FloatArrayList getAlphaColoursBuffer() {
-            return alphaColoursBuffer;
+        public IntArrayList getAlphaVerticesBuffer() {
+            return alphaVerticesBuffer;
         }
 
         public void clear() {
@@ -460,12 +598,8 @@ public class TerrainModelGenerator {
             int count = CardinalDirection.COUNT;
             for (int i = 0; i < count; i++) {
                 verticesBuffers[i].clear();
-                textureCoordsBuffers[i].clear();
-                coloursBuffers[i].clear();
             }
             alphaVerticesBuffer.clear();
-            alphaTextureCoordsBuffer.clear();
-            alphaColoursBuffer.clear();
         }
     }
 }
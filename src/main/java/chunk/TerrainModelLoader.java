@@ -5,47 +5,81 @@ import entity.EntityManager;
 import entity.TransformationComponent;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
-import render.Model;
+import render.StagingRing;
 import render.Texture;
 import shader.Shader;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
-
 public class TerrainModelLoader {
 
-    // opengl models can only be loaded on the main thread, so no multithreading here.
-    // if you want to be fancy, you could stream the data in though...
+    // opengl models can only be loaded on the main thread, so the meshes are streamed in through a staging ring,
+    // a few megabytes per frame so that the frame time stays smooth even when lots of chunks come in at once.
 
-    private static final int DEFAULT_LOAD_LIMIT = 1;
+    private static final int DEFAULT_UPLOAD_BUDGET = 2 << 20; // bytes per frame
+    private static final int STAGING_RING_SIZE = 8 << 20;     // bytes, a few frames worth of uploads
 
-    private static final Queue<Chunk> modelLoadQueue = new ArrayDeque<>();
+    private static final MeshUploadQueue uploadQueue = new MeshUploadQueue(new GLBackend());
+    private static StagingRing stagingRing = null; // created on first use, when there's an opengl context
 
     private static Shader chunkShader = null;
     private static Texture chunkTexture = null;
 
 
     public static void addChunk(Chunk chunk) {
-        modelLoadQueue.add(chunk);
+        uploadQueue.add(chunk);
     }
 
     public static void loadChunks() {
-        loadChunks(DEFAULT_LOAD_LIMIT);
+        loadChunks(DEFAULT_UPLOAD_BUDGET);
     }
 
-    public static void loadChunks(int loadLimit) {
-        int count = 0;
-        var it = modelLoadQueue.iterator();
-        while (it.hasNext()) {
-            var chunk = it.next();
-            loadChunk(chunk);
-            it.remove();
-            if (count++ >= loadLimit) break;
-        }
+    /** Uploads queued chunk meshes, until `budget` bytes have been uploaded. */
+    public static void loadChunks(int budget) {
+        uploadQueue.process(budget);
     }
 
     public static int getQueueSize() {
-        return modelLoadQueue.size();
+        return uploadQueue.size();
+    }
+
+    public static void stop() {
+        if (stagingRing != null) {
+            stagingRing.destroy();
+            stagingRing = null;
+        }
+        ChunkMeshArena.destroy();
+    }
+
+    private static StagingRing getStagingRing() {
+        if (stagingRing == null) {
+            stagingRing = new StagingRing(STAGING_RING_SIZE);
+        }
+        return stagingRing;
+    }
+
+    private static class GLBackend implements MeshUploadQueue.Backend {
+        @Override
+        public int getUploadSize(Chunk chunk) {
+            var chunkModelData = EntityManager.getComponent(chunk, ChunkModelDataComponent.class);
+            if (chunkModelData == null) return 0;
+            return chunkModelData.getSize() * Integer.BYTES;
+        }
+
+        @Override
+        public boolean canUpload(int bytes) {
+            // meshes that would never fit in the ring are uploaded directly instead
+            var ring = getStagingRing();
+            return bytes > ring.getCapacity() || ring.hasRoom(bytes);
+        }
+
+        @Override
+        public void upload(Chunk chunk) {
+            loadChunk(chunk);
+        }
+
+        @Override
+        public void endFrame() {
+            getStagingRing().endFrame();
+        }
     }
 
     public static void loadChunk(Chunk chunk) {
@@ -57,7 +91,7 @@ public class TerrainModelLoader {
         var chunkModelData = EntityManager.removeComponent(chunk, ChunkModelDataComponent.class);
         var chunkBlockEntityData = EntityManager.removeComponent(chunk, ChunkBlockEntityDataComponent.class);
 
-        if (chunkModelData.positions.length != 0) {
+        if (chunkModelData.getSize() != 0) {
             var pos = chunk.getChunkGridPos();
             EntityManager.addComponent(chunk, new TransformationComponent(
                     new Vector3f(pos.x * Chunk.SIZE, pos.y * Chunk.SIZE, pos.z * Chunk.SIZE),
@@ -65,16 +99,13 @@ public class TerrainModelLoader {
                     new Vector3f(1, 1, 1)
             ));
 
-            var model = new Model()
-                .addPosition3D(chunkModelData.positions)
-                .addTextureCoords3D(chunkModelData.textureCoordinates)
-                .addLight2D(chunkModelData.light)
-                .setTexture(chunkTexture)
-                .setShader(chunkShader)
-                .end();
-            EntityManager.addComponent(chunk, new ChunkModelComponent(model, chunkModelData.positionsIndices));
+            // stream the mesh through the staging ring into the chunk mesh arena
+            EntityManager.addComponent(chunk, ChunkMeshArena.add(chunk, chunkModelData, getStagingRing()));
         }
 
+        // opengl has its own copy now
+        chunkModelData.release();
+
         // add all chunk block entities
         var grid = chunk.getChunkGridPos();
         for (Vector3i pos : chunkBlockEntityData.getBlockEntityLocations()) {
@@ -97,4 +128,12 @@ public class TerrainModelLoader {
         chunkTexture = texture;
     }
 
+    public static Shader getShader() {
+        return chunkShader;
+    }
+
+    public static Texture getChunkTexture() {
+        return chunkTexture;
+    }
+
 }
@@ -0,0 +1,50 @@
+package chunk;
+
+/** The packed vertex format of chunk meshes. A vertex is 2 ints (8 bytes) instead of 8 floats (32 bytes).
+ *
+ * First int:
+ *   bits 0-5   x (0-32)
+ *   bits 6-11  y (0-32)
+ *   bits 12-17 z (0-32)
+ *   bits 18-23 u texture coordinate (0-32, greedy quads repeat the texture)
+ *   bits 24-29 v texture coordinate (0-32)
+ * Second int:
+ *   bits 0-11  texture layer
+ *   bits 12-15 block light
+ *   bits 16-19 sky light
+ *   bits 20-22 face direction, used for the fake side lighting
+ *
+ * The shader (terrain_vertex.glsl) unpacks these, so keep them in sync. */
+public class TerrainVertex {
+
+    public static final int INTS_PER_VERTEX = 2;
+
+    private static final int COORD_BITS = 6, COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final int LAYER_BITS = 12, LAYER_MASK = (1 << LAYER_BITS) - 1;
+
+    public static int packPosition(int x, int y, int z, int u, int v) {
+        return x
+            | y << COORD_BITS
+            | z << COORD_BITS * 2
+            | u << COORD_BITS * 3
+            | v << COORD_BITS * 4;
+    }
+
+    public static int packData(int layer, byte light, int direction) {
+        return layer
+            | Chunk.getBlock(light) << LAYER_BITS
+            | Chunk.getSky(light) << LAYER_BITS + 4
+            | direction << LAYER_BITS + 8;
+    }
+
+    public static int unpackX(int position) { return position & COORD_MASK; }
+    public static int unpackY(int position) { return position >>> COORD_BITS & COORD_MASK; }
+    public static int unpackZ(int position) { return position >>> COORD_BITS * 2 & COORD_MASK; }
+    public static int unpackU(int position) { return position >>> COORD_BITS * 3 & COORD_MASK; }
+    public static int unpackV(int position) { return position >>> COORD_BITS * 4 & COORD_MASK; }
+
+    public static int unpackLayer(int data)      { return data & LAYER_MASK; }
+    public static int unpackBlockLight(int data) { return data >>> LAYER_BITS & 0xF; }
+    public static int unpackSkyLight(int data)   { return data >>> LAYER_BITS + 4 & 0xF; }
+    public static int unpackDirection(int data)  { return data >>> LAYER_BITS + 8 & 0x7; }
+}
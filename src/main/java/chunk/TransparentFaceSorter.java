@@ -0,0 +1,174 @@
+package chunk;
+
+import entity.Entity;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/** Sorts the alpha blended faces (water) of each chunk back to front, so they blend in the right order.
+ *
+ * A chunk's faces are sorted by the distance from their centre to the centre of the camera's block, with a radix sort
+ * on a worker thread. The sorted vertices are handed back through the chunk's model, and the main thread swaps them
+ * into the chunk's place in the {@link ChunkMeshArena} before drawing it. Until then the old order keeps being drawn.
+ *
+ * Faces only need to be sorted again when the camera moves to another block, and for chunks further away,
+ * when it moves to another chunk: small movements don't change the order of faces far away much. */
+public class TransparentFaceSorter {
+
+    static final long NEVER_SORTED = Long.MIN_VALUE;
+
+    // chunks this close to the camera's chunk are sorted whenever the camera moves to another block
+    private static final int NEAR_SORT_DISTANCE = 1;
+
+    private static final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+
+    // only used by the worker thread
+    private static final RadixSorter sorter = new RadixSorter();
+
+    /** Swaps in any finished sorts, and starts sorting the chunks that need it. Call before drawing the chunks. */
+    public static void update(ArrayList<Map.Entry<Entity, ChunkModelComponent>> chunks, Vector3f cameraPos) {
+        int blockX = (int) Math.floor(cameraPos.x);
+        int blockY = (int) Math.floor(cameraPos.y);
+        int blockZ = (int) Math.floor(cameraPos.z);
+        long cameraBlock = packBlock(blockX, blockY, blockZ);
+        var cameraChunkPos = Chunk.worldPosToChunkPos(cameraPos);
+
+        for (var entry : chunks) {
+            var mesh = entry.getValue();
+            if (!mesh.hasAlphaBlendFaces()) continue;
+
+            var sorted = mesh.sortedAlphaVertices.getAndSet(null);
+            if (sorted != null) {
+                ChunkMeshArena.replaceVertices(mesh, sorted);
+            }
+
+            var chunkPos = ((Chunk) entry.getKey()).getChunkGridPos();
+            if (mesh.sortPending || !needsSorting(mesh, chunkPos, cameraBlock, cameraChunkPos)) continue;
+
+            // sort relative to the chunk's origin
+            int x = blockX - chunkPos.x * Chunk.SIZE;
+            int y = blockY - chunkPos.y * Chunk.SIZE;
+            int z = blockZ - chunkPos.z * Chunk.SIZE;
+
+            mesh.sortedFromBlock = cameraBlock;
+            mesh.sortPending = true;
+            executor.submit(() -> {
+                try {
+                    mesh.sortedAlphaVertices.set(sorter.sort(mesh.getAlphaVertices(), x, y, z));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    mesh.sortPending = false;
+                }
+            });
+        }
+    }
+
+    public static int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public static void stop() {
+        executor.shutdownNow();
+        System.out.println("TransparentFaceSorter stopped");
+    }
+
+    private static boolean needsSorting(ChunkModelComponent mesh, Vector3i chunkPos, long cameraBlock, Vector3i cameraChunkPos) {
+        if (mesh.sortedFromBlock == cameraBlock) return false;
+        if (mesh.sortedFromBlock == NEVER_SORTED) return true;
+        if (chunkPos.gridDistance(cameraChunkPos) <= NEAR_SORT_DISTANCE) return true;
+
+        // further away, only when the camera has moved to another chunk since the last sort
+        long last = mesh.sortedFromBlock;
+        int lastX = (int) (last >> 42), lastY = (int) (last << 22 >> 43), lastZ = (int) (last << 43 >> 43);
+        return Math.floorDiv(lastX, Chunk.SIZE) != cameraChunkPos.x
+            || Math.floorDiv(lastY, Chunk.SIZE) != cameraChunkPos.y
+            || Math.floorDiv(lastZ, Chunk.SIZE) != cameraChunkPos.z;
+    }
+
+    // 22 bits for x, 21 for y and z, which is plenty for any world that fits in a float
+    private static long packBlock(int x, int y, int z) {
+        return (long) x << 42 | ((long) y & 0x1FFFFF) << 21 | ((long) z & 0x1FFFFF);
+    }
+
+    /** Sorts quads of packed vertices, with an lsd radix sort on their distance to a point. Not thread safe. */
+    static class RadixSorter {
+
+        private static final int INTS_PER_QUAD = TerrainVertex.INTS_PER_VERTEX * 4;
+        private static final int RADIX_BITS = 8, BUCKETS = 1 << RADIX_BITS;
+
+        private int[] keys = new int[0], order = new int[0];
+        private int[] swapKeys = new int[0], swapOrder = new int[0];
+        private final int[] counts = new int[BUCKETS];
+
+        /** Returns a copy of `vertices` with its quads ordered from furthest to closest to the centre of block x, y, z. */
+        int[] sort(int[] vertices, int x, int y, int z) {
+            int quadCount = vertices.length / INTS_PER_QUAD;
+            ensureCapacity(quadCount);
+
+            // everything is in quarter blocks, the sum of a quad's 4 corners is 4 times its centre
+            int cx = 4 * x + 2, cy = 4 * y + 2, cz = 4 * z + 2;
+            for (int quad = 0; quad < quadCount; quad++) {
+                int sumX = 0, sumY = 0, sumZ = 0;
+                for (int v = 0; v < 4; v++) {
+                    int position = vertices[quad * INTS_PER_QUAD + v * TerrainVertex.INTS_PER_VERTEX];
+                    sumX += TerrainVertex.unpackX(position);
+                    sumY += TerrainVertex.unpackY(position);
+                    sumZ += TerrainVertex.unpackZ(position);
+                }
+                float dx = sumX - cx, dy = sumY - cy, dz = sumZ - cz;
+
+                // positive floats sort the same as their bits do, flipped so the furthest comes first
+                keys[quad] = ~Float.floatToRawIntBits(dx*dx + dy*dy + dz*dz);
+                order[quad] = quad;
+            }
+
+            sortKeys(quadCount);
+
+            int[] sorted = new int[quadCount * INTS_PER_QUAD];
+            for (int i = 0; i < quadCount; i++) {
+                System.arraycopy(vertices, order[i] * INTS_PER_QUAD, sorted, i * INTS_PER_QUAD, INTS_PER_QUAD);
+            }
+            return sorted;
+        }
+
+        // sorts `order` by `keys` as unsigned ints, a byte at a time from the lowest
+        private void sortKeys(int count) {
+            for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < count; i++) {
+                    counts[keys[i] >>> shift & (BUCKETS - 1)]++;
+                }
+                if (counts[keys[0] >>> shift & (BUCKETS - 1)] == count) continue; // all the same, nothing to move
+
+                int total = 0;
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    int bucketCount = counts[bucket];
+                    counts[bucket] = total;
+                    total += bucketCount;
+                }
+                for (int i = 0; i < count; i++) {
+                    int to = counts[keys[i] >>> shift & (BUCKETS - 1)]++;
+                    swapKeys[to] = keys[i];
+                    swapOrder[to] = order[i];
+                }
+
+                int[] tmp = keys; keys = swapKeys; swapKeys = tmp;
+                tmp = order; order = swapOrder; swapOrder = tmp;
+            }
+        }
+
+        private void ensureCapacity(int quadCount) {
+            if (keys.length >= quadCount) return;
+            keys = new int[quadCount];
+            order = new int[quadCount];
+            swapKeys = new int[quadCount];
+            swapOrder = new int[quadCount];
+        }
+    }
+}
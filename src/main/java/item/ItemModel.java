@@ -121,15 +121,8 @@ public class ItemModel {
     }
 
     private static ByteBuffer getSpriteDataFromTexture(int index, ArrayTexture texture) {
-        var BYTES_PER_PIXEL = 4;
-        var TILE_SIZE_BYTES = texture.getTileWidth() * texture.getTileHeight() * BYTES_PER_PIXEL;
-
-        var data = texture.getImageData();
-
-        var start = index * TILE_SIZE_BYTES;
-        byte[] sprite = new byte[TILE_SIZE_BYTES];
-        data.get(start, sprite, 0, sprite.length);
-        return ByteBuffer.wrap(sprite);
+        // the texture doesn't keep its pixels after loading, read them back from opengl
+        return texture.readLayer(index);
     }
 
     // also flips y
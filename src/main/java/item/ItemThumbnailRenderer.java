@@ -5,6 +5,7 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.opengl.GL30;
 import render.BasicTexture;
+import render.GLState;
 import render.Model;
 import render.Texture;
 
@@ -27,7 +28,7 @@ public class ItemThumbnailRenderer {
 
         // create colour texture
         int colourTexture = GL30.glGenTextures();
-        GL30.glBindTexture(GL30.GL_TEXTURE_2D, colourTexture);
+        GLState.bindTexture(GL30.GL_TEXTURE_2D, colourTexture);
         GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, GL30.GL_RGBA8, SIZE, SIZE, 0, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, (ByteBuffer) null);
         GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MIN_FILTER, GL30.GL_LINEAR);
         GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MAG_FILTER, GL30.GL_NEAREST);
@@ -41,15 +42,15 @@ public class ItemThumbnailRenderer {
         GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, 0);
         GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER, GL30.GL_DEPTH_ATTACHMENT, GL30.GL_RENDERBUFFER, rbo);
 
-        GL30.glEnable(GL30.GL_DEPTH_TEST);
-        GL30.glDisable(GL30.GL_CULL_FACE); // TODO normals are inverted
+        GLState.enable(GL30.GL_DEPTH_TEST);
+        GLState.disable(GL30.GL_CULL_FACE); // TODO normals are inverted
         GL30.glClear(GL30.GL_COLOR_BUFFER_BIT | GL30.GL_DEPTH_BUFFER_BIT);
         GL30.glViewport(0, 0, SIZE, SIZE);
 
         renderItem(itemModel, transformationMatrix);
 
         GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
-        GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+        GLState.bindTexture(GL30.GL_TEXTURE_2D, 0);
 
         GL30.glDeleteFramebuffers(fbo);
 
@@ -62,8 +63,8 @@ public class ItemThumbnailRenderer {
         var shader = item.getShader();
         var textures = item.getTextures();
 
-        GL30.glUseProgram(shader.getProgram());
-        GL30.glBindVertexArray(item.getVAO());
+        GLState.useProgram(shader.getProgram());
+        GLState.bindVertexArray(item.getVAO());
 
         shader.setMatrix4f("transformationMatrix", transformationMatrix);
         shader.setMatrix4f("viewMatrix", new Matrix4f().identity());
@@ -72,8 +73,7 @@ public class ItemThumbnailRenderer {
         // bind textures
         int unit = 0;
         for (Texture tex : textures) {
-            GL30.glActiveTexture(GL30.GL_TEXTURE0 + unit);
-            GL30.glBindTexture(tex.getType(), tex.getTexture());
+            GLState.bindTexture(unit, tex);
             shader.setInt(tex.getName(), unit);
             unit++;
         }
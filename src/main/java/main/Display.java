@@ -6,6 +6,8 @@ import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GLUtil;
 import org.lwjgl.system.MemoryStack;
+import render.GLState;
+import shader.Uniform;
 
 import java.nio.IntBuffer;
 
@@ -125,7 +127,10 @@ public class Display {
                 verticesRendered/3 + " triangles : " +
                         Timer.getFps() + " fps : " +
                         "%.2f".formatted(Timer.getFrametimeMillis()) + " ms : " +
-                        ChunkLoader.getQueueSize() + " chunks queued");
+                        ChunkLoader.getQueueSize() + " chunks queued : " +
+                        ChunkLoader.getHorizontalLoadRadius() + " view distance : " +
+                        Uniform.getAvoidedUploads() + "/" + (Uniform.getUploads() + Uniform.getAvoidedUploads()) + " uniform uploads skipped : " +
+                        GLState.getElidedCalls() + "/" + (GLState.getIssuedCalls() + GLState.getElidedCalls()) + " state changes skipped");
     }
 
     public void close() {
@@ -37,10 +37,18 @@ public class Main {
 
 
     public static void main(String[] args) {
+        long startupStart = System.nanoTime();
         if (DEBUG) {
             Configuration.DEBUG_STACK.set(true);
             Configuration.DEBUG.set(true);
         }
+
+        // start decoding the textures before anything else, they only need the context once they're decoded
+        TextureLoader.preload("src/main/resources/blocks_array.png", 16);
+        TextureLoader.preload("src/main/resources/items_array.png", 16);
+        TextureLoader.preload("src/main/resources/cat_array.png", 64);
+        TextureLoader.preload("src/main/resources/ui_array.png", 16);
+
         // initializing the display also initialized glfw and creates the context.
         var displaySettings = new Display.DisplaySettings(
                 "A display",   // title
@@ -49,6 +57,7 @@ public class Main {
                 false,          // vsync
                 Display.DisplayMode.WINDOWED
         );
+        long windowStart = System.nanoTime();
         var display = new Display(displaySettings);
         GLFWErrorCallback.createPrint(System.err).set();
 
@@ -74,7 +83,6 @@ public class Main {
             "src/main/resources/shaders/terrain_vertex.glsl",
             "src/main/resources/shaders/terrain_fragment.glsl"
         )
-        .addUniform("transformationMatrix")
         .addUniform("projectionMatrix")
         .addUniform("viewMatrix")
         .addUniform("doCullTransparent");
@@ -112,6 +120,15 @@ public class Main {
                 .addUniform("viewMatrix")
                 .addUniform("colourMultiplier");
 
+        var occlusionShader = new Shader(
+                "src/main/resources/shaders/occlusion_vertex.glsl",
+                "src/main/resources/shaders/occlusion_fragment.glsl"
+        )
+                .addUniform("transformationMatrix")
+                .addUniform("projectionMatrix")
+                .addUniform("viewMatrix");
+
+        ChunkOcclusionQueries.setShader(occlusionShader);
         BlockSelection.setShader(blockSelectionShader);
         BlockSelection.setTexture(terrainTexture);
         Block.createBreakModels(terrainTexture, blockBreakShader);
@@ -121,6 +138,15 @@ public class Main {
             "arrayTexture", 16, 16, ANISOTROPIC_FILTERING);
 
         ItemModel.init(itemsShader, terrainTexture, itemsTexture);
+
+        // dropped items are drawn with instancing, one draw call per item type
+        var itemsInstancedShader = new Shader(
+            "src/main/resources/shaders/item_instanced_vertex.glsl",
+            "src/main/resources/shaders/item_fragment.glsl"
+        )
+        .addUniform("projectionMatrix")
+        .addUniform("viewMatrix");
+        InstancedModelRenderer.setInstancedShader(itemsShader, itemsInstancedShader);
         DefaultTexture.init();
 
         UIModelComponent.setUISettings(display);
@@ -136,6 +162,14 @@ public class Main {
 
         OBJFileParser.setShader(mobShader);
 
+        var mobInstancedShader = new Shader(
+                "src/main/resources/shaders/mobile_instanced_vertex.glsl",
+                "src/main/resources/shaders/mobile_fragment.glsl"
+        )
+        .addUniform("projectionMatrix")
+        .addUniform("viewMatrix");
+        InstancedModelRenderer.setInstancedShader(mobShader, mobInstancedShader);
+
         var crosshair = new Entity();
         EntityManager.addComponent(crosshair, new UIArrayModelComponent(15));
         EntityManager.addComponent(crosshair, new TransformationComponent(new Vector3f(), new Vector3f(), new Vector3f(0.05f, 0.05f, 0.05f)));
@@ -182,10 +216,16 @@ public class Main {
         renderer.render(player);
         GLFW.glfwSwapBuffers(display.getWindow());
 
+        long firstFrame = System.nanoTime();
+        TextureLoader.printTimes();
+        System.out.printf("Startup took %.1f ms, %.1f ms from creating the window to the first frame%n",
+                (firstFrame - startupStart) / 1e6, (firstFrame - windowStart) / 1e6);
+
         // remove loading screen icon
         EntityManager.removeEntity(loadingScreenIcon);
 
         System.out.println("Starting world preload");
+        ChunkScheduler.setViewer(playerStartPosition, getLookVector(player));
         ChunkLoader.start(playerStartPosition);
         while (ChunkLoader.update(playerStartPosition) > 0 || ChunkLoader.getQueueSize() > 0) {
             TerrainModelLoader.loadChunks(Integer.MAX_VALUE);
@@ -214,6 +254,8 @@ public class Main {
             } else {
                 GL30.glPolygonMode(GL30.GL_FRONT_AND_BACK, GL30.GL_FILL);
             }
+            // hold O to cull hidden chunks on the cpu instead of with occlusion queries
+            ChunkRenderer.setUseOcclusionQueries(!Keyboard.isKeyDown(GLFW.GLFW_KEY_O));
 
             // update
             GLFW.glfwPollEvents();
@@ -226,6 +268,7 @@ public class Main {
             // so component changes are less likely to muck us up
             ChunkLoader.updatePriorityChunks();
             TerrainModelLoader.loadChunks();
+            ChunkMemoryGovernor.update();
 
             // this is our component update order
             EntityManager.updateComponents(PhysicsObjectComponent.class);
@@ -246,6 +289,7 @@ public class Main {
             // start chunk loader
             {
                 var transform = EntityManager.getComponent(player, TransformationComponent.class);
+                ChunkScheduler.setViewer(transform.getPosition(), getLookVector(player));
                 ChunkLoader.startUpdate(transform.getPosition());
             }
 
@@ -265,8 +309,13 @@ public class Main {
         StructureGenerator.stop();
         LightMapGenerator.stop();
         TerrainModelGenerator.stop();
+        TerrainModelLoader.stop();
+        TransparentFaceSorter.stop();
+        TextureLoader.stop();
 
+        InstancedModelRenderer.destroy();
         Model.destroyAll();
+        MeshBufferPool.freeAll();
         terrainTexture.destroy();
         terrainShader.destroy();
 
@@ -285,4 +334,9 @@ public class Main {
         System.out.println("Thank you for playing wing commander!");
     }
 
+    private static Vector3f getLookVector(Player player) {
+        var viewMatrix = player.getViewMatrix();
+        return new Vector3f(-viewMatrix.m02(), -viewMatrix.m12(), -viewMatrix.m22());
+    }
+
 }
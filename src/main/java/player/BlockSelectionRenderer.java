@@ -5,6 +5,7 @@ import entity.EntityManager;
 import entity.TransformationComponent;
 import org.joml.Vector3f;
 import org.lwjgl.opengl.GL30;
+import render.GLState;
 import render.Player;
 
 import java.util.HashMap;
@@ -14,7 +15,7 @@ public class BlockSelectionRenderer {
     private static int render(SelectedFaceModelComponent modelComponent, TransformationComponent transform) {
         var model = modelComponent.getModel();
 
-        GL30.glBindVertexArray(model.getVAO());
+        GLState.bindVertexArray(model.getVAO());
 
         model.getShader().setMatrix4f("transformationMatrix", transform.getTransformationMatrix());
 
@@ -34,15 +35,14 @@ public class BlockSelectionRenderer {
 
         // assume shared shader
         var shader = firstSelection.getModel().getShader();
-        GL30.glUseProgram(shader.getProgram());
+        GLState.useProgram(shader.getProgram());
 
         shader.setMatrix4f("projectionMatrix", projectionMatrix);
         shader.setMatrix4f("viewMatrix", viewMatrix);
 
         // assume shared texture
         var tex = firstSelection.getModel().getTextures().get(0);
-        GL30.glActiveTexture(GL30.GL_TEXTURE0);
-        GL30.glBindTexture(tex.getType(), tex.getTexture());
+        GLState.bindTexture(0, tex);
         shader.setInt(tex.getName(), 0);
 
         /* thank you: https://learnopengl.com/Advanced-OpenGL/Stencil-testing */
@@ -59,13 +59,13 @@ public class BlockSelectionRenderer {
             shader.setFloat("colourMultiplier", BlockSelection.NORMAL_DARKNESS);
 
             // write to stencil at all times
-            GL30.glStencilOp(GL30.GL_KEEP, GL30.GL_KEEP, GL30.GL_REPLACE);
-            GL30.glStencilFunc(GL30.GL_ALWAYS, 1, 0xFF);
-            GL30.glStencilMask(0xFF);
+            GLState.stencilOp(GL30.GL_KEEP, GL30.GL_KEEP, GL30.GL_REPLACE);
+            GLState.stencilFunc(GL30.GL_ALWAYS, 1, 0xFF);
+            GLState.stencilMask(0xFF);
 
             // dont write colour and dont check depth
-            GL30.glColorMask(false, false, false, false); // don't write colour
-            GL30.glDisable(GL30.GL_DEPTH_TEST);
+            GLState.colorMask(false, false, false, false); // don't write colour
+            GLState.disable(GL30.GL_DEPTH_TEST);
 
             tally += render(modelComp, transformComp);
 
@@ -75,19 +75,19 @@ public class BlockSelectionRenderer {
             shader.setFloat("colourMultiplier", BlockSelection.OUTLINE_DARKNESS);
 
             // dont render a pixel if stencil was set by the render above
-            GL30.glStencilFunc(GL30.GL_NOTEQUAL, 1, 0xFF);
-            GL30.glStencilMask(0x00);
+            GLState.stencilFunc(GL30.GL_NOTEQUAL, 1, 0xFF);
+            GLState.stencilMask(0x00);
 
             // write colour, test depth
-            GL30.glColorMask(true, true, true, true);
-            GL30.glEnable(GL30.GL_DEPTH_TEST); // turn this to glDisable if you want outlines you can see through ground
+            GLState.colorMask(true, true, true, true);
+            GLState.enable(GL30.GL_DEPTH_TEST); // turn this to glDisable if you want outlines you can see through ground
 
             tally += render(modelComp, transformComp);
 
             // return defaults
-            GL30.glStencilMask(0xFF);
-            GL30.glStencilFunc(GL30.GL_ALWAYS, 0, 0xFF);
-            GL30.glEnable(GL30.GL_DEPTH_TEST);
+            GLState.stencilMask(0xFF);
+            GLState.stencilFunc(GL30.GL_ALWAYS, 0, 0xFF);
+            GLState.enable(GL30.GL_DEPTH_TEST);
         }
 
         return tally;
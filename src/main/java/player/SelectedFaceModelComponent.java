@@ -3,6 +3,7 @@ package player;
 import block.BlockFace;
 import entity.ModelComponent;
 import org.lwjgl.opengl.GL30;
+import render.GLState;
 import render.Model;
 import render.Texture;
 import shader.Shader;
@@ -61,7 +62,7 @@ public class SelectedFaceModelComponent extends ModelComponent {
         var vertexVBO = model.getVBO(0);
         var texVBO = model.getVBO(1);
 
-        GL30.glBindVertexArray(model.getVAO());
+        GLState.bindVertexArray(model.getVAO());
 
         GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vertexVBO);
         GL30.glBufferSubData(GL30.GL_ARRAY_BUFFER, 0, vertices);
@@ -0,0 +1,158 @@
+package render;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Sub-allocates ranges out of one big block of `capacity` units, for example vertices in one big vertex buffer.
+ * It doesn't touch any memory itself, it only does the bookkeeping of which ranges are used.
+ *
+ * Free ranges are kept in a free list, neighboring free ranges are merged when something is freed,
+ * and allocations take the smallest free range they fit in (best fit).
+ * When the free space gets too fragmented, {@link #compact} packs all allocations to the start,
+ * and returns the moves the caller has to do on the actual memory. */
+public class ArenaAllocator {
+
+    /** An allocation that moves from `from` to `to` during compaction. */
+    public record Move(int from, int to, int size) {}
+
+    private int capacity;
+
+    private final TreeMap<Integer, Integer> freeByOffset = new TreeMap<>(); // offset -> size
+    private final TreeSet<Long> freeBySize = new TreeSet<>();              // size << 32 | offset, for best fit
+    private final HashMap<Integer, Integer> allocations = new HashMap<>();  // offset -> size
+
+    private int used = 0;
+
+    public ArenaAllocator(int capacity) {
+        this.capacity = capacity;
+        if (capacity > 0) addFree(0, capacity);
+    }
+
+    /** Returns the offset of a new range of `size` units, or -1 if no free range is big enough. */
+    public int allocate(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Can't allocate " + size + " units");
+
+        var best = freeBySize.ceiling(key(size, 0));
+        if (best == null) return -1;
+
+        int offset = (int) (best & 0xFFFFFFFFL);
+        int freeSize = (int) (best >>> 32);
+        removeFree(offset, freeSize);
+        if (freeSize > size) {
+            addFree(offset + size, freeSize - size);
+        }
+
+        allocations.put(offset, size);
+        used += size;
+        return offset;
+    }
+
+    /** Frees the range starting at `offset`, which must have been returned by {@link #allocate}. */
+    public void free(int offset) {
+        Integer size = allocations.remove(offset);
+        if (size == null) throw new IllegalArgumentException("Nothing allocated at " + offset);
+        used -= size;
+
+        // merge with the free ranges before and after this one
+        int start = offset;
+        int end = offset + size;
+
+        var before = freeByOffset.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == start) {
+            removeFree(before.getKey(), before.getValue());
+            start = before.getKey();
+        }
+
+        var after = freeByOffset.ceilingEntry(end);
+        if (after != null && after.getKey() == end) {
+            removeFree(after.getKey(), after.getValue());
+            end += after.getValue();
+        }
+
+        addFree(start, end - start);
+    }
+
+    /** Makes the arena bigger. The new space is added to the end. */
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity) return;
+
+        int start = capacity;
+        int end = newCapacity;
+        var last = freeByOffset.lastEntry();
+        if (last != null && last.getKey() + last.getValue() == capacity) {
+            removeFree(last.getKey(), last.getValue());
+            start = last.getKey();
+        }
+
+        addFree(start, end - start);
+        capacity = newCapacity;
+    }
+
+    /** Packs all allocations to the start of the arena, keeping their order, so all the free space is in one range.
+     * Returns a move for every allocation in order of increasing offset, allocations that stay put have from == to. */
+    public List<Move> compact() {
+        var moves = new ArrayList<Move>();
+        var sorted = new TreeMap<>(allocations);
+
+        allocations.clear();
+        freeByOffset.clear();
+        freeBySize.clear();
+
+        int offset = 0;
+        for (Map.Entry<Integer, Integer> entry : sorted.entrySet()) {
+            int from = entry.getKey();
+            int size = entry.getValue();
+            moves.add(new Move(from, offset, size));
+            allocations.put(offset, size);
+            offset += size;
+        }
+
+        if (offset < capacity) addFree(offset, capacity - offset);
+        return moves;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getUsed() {
+        return used;
+    }
+
+    public int getFree() {
+        return capacity - used;
+    }
+
+    public int getLargestFree() {
+        return freeBySize.isEmpty() ? 0 : (int) (freeBySize.last() >>> 32);
+    }
+
+    public int getAllocationCount() {
+        return allocations.size();
+    }
+
+    /** 0 if all free space is in one range, close to 1 if it's split into many small ranges. */
+    public float getFragmentation() {
+        int free = getFree();
+        if (free == 0) return 0;
+        return 1f - getLargestFree() / (float) free;
+    }
+
+    private void addFree(int offset, int size) {
+        freeByOffset.put(offset, size);
+        freeBySize.add(key(size, offset));
+    }
+
+    private void removeFree(int offset, int size) {
+        freeByOffset.remove(offset);
+        freeBySize.remove(key(size, offset));
+    }
+
+    private static long key(int size, int offset) {
+        return (long) size << 32 | (offset & 0xFFFFFFFFL);
+    }
+}
@@ -4,6 +4,9 @@ import main.Capabilities;
 import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GL43;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
 
 public class ArrayTexture extends Texture {
 
@@ -18,9 +21,14 @@ public class ArrayTexture extends Texture {
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
 
+        // decoded on a worker thread, and mipmapped there too, if it was preloaded
+        var data = TextureLoader.take(path, tileHeight);
+        super.width = data.width;
+        super.height = data.height * data.depth;
+
         // assume one long texture.
         assert tileWidth == super.width;
-        depth = super.height / tileHeight;
+        depth = data.depth;
 
         if (depth > Capabilities.MAX_ARRAY_TEXTURE_LAYERS) {
             System.err.println("Trying to make array texture of depth " + depth
@@ -40,7 +48,7 @@ public class ArrayTexture extends Texture {
         }
 
         super.id = GL30.glGenTextures();
-        GL30.glBindTexture(type, id);
+        GLState.bindTexture(type, id);
 
         // set texture params before loading texture
         // when too small to fit on screen, use trilinear (blurry) filtering
@@ -68,23 +76,44 @@ public class ArrayTexture extends Texture {
         // working without having to resort to gl4.3. :(
         GL43.glTexStorage3D(
                 type,
-                1, // mipmaps
+                data.getLevelCount(), // mipmaps
                 GL30.GL_RGBA8, // internal format
                 tileWidth, tileHeight,
                 depth
         );
 
-        GL43.glTexSubImage3D(
-                type,
-                0,    // mipmap index
-                0, 0, 0,    // xyz index
-                tileWidth, tileHeight, depth,
-                GL30.GL_RGBA,
-                GL30.GL_UNSIGNED_BYTE,
-                super.imageData
-        );
+        // the mip chain is already built, so no glGenerateMipmap
+        for (int level = 0; level < data.getLevelCount(); level++) {
+            GL43.glTexSubImage3D(
+                    type,
+                    level,    // mipmap index
+                    0, 0, 0,    // xyz index
+                    data.getLevelWidth(level), data.getLevelHeight(level), depth,
+                    GL30.GL_RGBA,
+                    GL30.GL_UNSIGNED_BYTE,
+                    data.getLevel(level)
+            );
+        }
+
+        // opengl has its own copy now
+        data.free();
+    }
 
-        GL30.glGenerateMipmap(type);
+    /** Reads the pixels of one layer back from the texture, as RGBA bytes from the top row down.
+     * The texture doesn't keep its pixels around after loading, so this is slow: don't use it every frame. */
+    public ByteBuffer readLayer(int layer) {
+        int layerBytes = tileWidth * tileHeight * TextureData.BYTES_PER_PIXEL;
+        var pixels = MemoryUtil.memAlloc(layerBytes * depth);
+        try {
+            GLState.bindTexture(type, id);
+            GL30.glGetTexImage(type, 0, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, pixels);
+
+            byte[] layerPixels = new byte[layerBytes];
+            pixels.get(layer * layerBytes, layerPixels, 0, layerBytes);
+            return ByteBuffer.wrap(layerPixels);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
     }
 
     public int getDepth() {
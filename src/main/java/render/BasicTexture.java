@@ -8,11 +8,20 @@ public class BasicTexture extends Texture {
         super(path, name);
         super.type = GL30.GL_TEXTURE_2D;
 
+        var data = TextureLoader.take(path, TextureLoader.WHOLE_IMAGE);
+        super.width = data.width;
+        super.height = data.height;
+
         super.id = GL30.glGenTextures();
-        GL30.glBindTexture(type, id);
+        GLState.bindTexture(type, id);
 
-        GL30.glTexImage2D(type, 0, GL30.GL_RGBA8, width, height, 0, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, super.imageData);
+        // the mip chain comes with the data, instead of glGenerateMipmap
+        for (int level = 0; level < data.getLevelCount(); level++) {
+            GL30.glTexImage2D(type, level, GL30.GL_RGBA8, data.getLevelWidth(level), data.getLevelHeight(level), 0,
+                    GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, data.getLevel(level));
+        }
+        GL30.glTexParameteri(type, GL30.GL_TEXTURE_MAX_LEVEL, data.getLevelCount() - 1);
 
-        GL30.glGenerateMipmap(type);
+        data.free();
     }
 }
@@ -0,0 +1,162 @@
+package render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/** A small software depth buffer, for occlusion culling without the gpu.
+ * Boxes that are known to be solid (occluders) are drawn into it, and other boxes can then be tested against it.
+ *
+ * Everything here errs on the side of "visible": occluders only cover pixels they cover fully,
+ * and each occluder face is drawn at the depth of its farthest corner, while a tested box counts at its nearest corner.
+ * Boxes that cross the near plane are never occluders and never occluded.
+ * Depth is the view space distance along the camera's axis (clip space w). Doesn't need an OpenGL context. */
+public class DepthRaster {
+
+    private static final float NEAR = 0.01f;
+
+    // the 6 faces of a box, as indices into its 8 corners. corner i has x = i&1, y = (i>>1)&1, z = (i>>2)&1.
+    private static final int[][] FACES = {
+        {0, 1, 3, 2}, {4, 5, 7, 6}, // -z, +z
+        {0, 1, 5, 4}, {2, 3, 7, 6}, // -y, +y
+        {0, 2, 6, 4}, {1, 3, 7, 5}, // -x, +x
+    };
+
+    private final int width, height;
+    private final float[] depth;
+    private final Matrix4f projectionViewMatrix = new Matrix4f();
+
+    // screen positions and depths of the current box's corners
+    private final float[] cornerX = new float[8], cornerY = new float[8], cornerW = new float[8];
+    private final Vector4f corner = new Vector4f();
+
+    public DepthRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.depth = new float[width * height];
+    }
+
+    /** Empties the buffer, and sets the camera for this frame. */
+    public void clear(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        projectionMatrix.mul(viewMatrix, projectionViewMatrix);
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+    }
+
+    /** Draws a solid box into the buffer. */
+    public void addOccluder(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (!project(minX, minY, minZ, maxX, maxY, maxZ)) return;
+
+        for (int[] face : FACES) {
+            float faceDepth = 0;
+            for (int i : face) faceDepth = Math.max(faceDepth, cornerW[i]);
+            drawQuad(face, faceDepth);
+        }
+    }
+
+    /** Returns true if the box is fully hidden behind the occluders. */
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (!project(minX, minY, minZ, maxX, maxY, maxZ)) return false;
+
+        float nearest = Float.POSITIVE_INFINITY;
+        float left = Float.POSITIVE_INFINITY, right = Float.NEGATIVE_INFINITY;
+        float bottom = Float.POSITIVE_INFINITY, top = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            nearest = Math.min(nearest, cornerW[i]);
+            left = Math.min(left, cornerX[i]);
+            right = Math.max(right, cornerX[i]);
+            bottom = Math.min(bottom, cornerY[i]);
+            top = Math.max(top, cornerY[i]);
+        }
+
+        int x0 = Math.max(0, (int) Math.floor(left)), x1 = Math.min(width - 1, (int) Math.floor(right));
+        int y0 = Math.max(0, (int) Math.floor(bottom)), y1 = Math.min(height - 1, (int) Math.floor(top));
+        if (x0 > x1 || y0 > y1) return false; // off screen, that's for frustum culling to decide
+
+        for (int y = y0; y <= y1; y++)
+        for (int x = x0; x <= x1; x++)
+        {
+            if (depth[y * width + x] >= nearest) return false;
+        }
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Returns the depth at pixel x, y, or infinity if no occluder covers it. */
+    public float getDepth(int x, int y) {
+        return depth[y * width + x];
+    }
+
+    // projects the box's corners to the screen, returns false if the box crosses the near plane
+    private boolean project(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int i = 0; i < 8; i++) {
+            corner.set(
+                (i & 1) == 0 ? minX : maxX,
+                (i & 2) == 0 ? minY : maxY,
+                (i & 4) == 0 ? minZ : maxZ,
+                1f
+            );
+            projectionViewMatrix.transform(corner);
+            if (corner.w < NEAR) return false;
+
+            cornerX[i] = (corner.x / corner.w * 0.5f + 0.5f) * width;
+            cornerY[i] = (corner.y / corner.w * 0.5f + 0.5f) * height;
+            cornerW[i] = corner.w;
+        }
+        return true;
+    }
+
+    // fills the pixels fully inside the convex quad with `quadDepth`, if that's nearer than what's there
+    private void drawQuad(int[] face, float quadDepth) {
+        float left = Float.POSITIVE_INFINITY, right = Float.NEGATIVE_INFINITY;
+        float bottom = Float.POSITIVE_INFINITY, top = Float.NEGATIVE_INFINITY;
+        for (int i : face) {
+            left = Math.min(left, cornerX[i]);
+            right = Math.max(right, cornerX[i]);
+            bottom = Math.min(bottom, cornerY[i]);
+            top = Math.max(top, cornerY[i]);
+        }
+
+        // only pixels whose 4 corners are all inside can be fully covered
+        int x0 = Math.max(0, (int) Math.ceil(left)), x1 = Math.min(width, (int) Math.floor(right)) - 1;
+        int y0 = Math.max(0, (int) Math.ceil(bottom)), y1 = Math.min(height, (int) Math.floor(top)) - 1;
+        if (x0 > x1 || y0 > y1) return;
+
+        // the winding depends on which way the face is facing, make the inside of every edge positive
+        float area = 0;
+        for (int e = 0; e < 4; e++) {
+            int a = face[e], b = face[(e + 1) & 3];
+            area += cornerX[a] * cornerY[b] - cornerX[b] * cornerY[a];
+        }
+        if (area == 0) return; // seen edge on
+        float sign = Math.signum(area);
+
+        for (int y = y0; y <= y1; y++)
+        for (int x = x0; x <= x1; x++)
+        {
+            int index = y * width + x;
+            if (depth[index] <= quadDepth) continue;
+
+            if (isInside(face, sign, x, y) && isInside(face, sign, x + 1, y)
+                    && isInside(face, sign, x, y + 1) && isInside(face, sign, x + 1, y + 1)) {
+                depth[index] = quadDepth;
+            }
+        }
+    }
+
+    private boolean isInside(int[] face, float sign, float px, float py) {
+        for (int e = 0; e < 4; e++) {
+            int a = face[e], b = face[(e + 1) & 3];
+            float edge = (cornerX[b] - cornerX[a]) * (py - cornerY[a]) - (cornerY[b] - cornerY[a]) * (px - cornerX[a]);
+            if (edge * sign < 0) return false;
+        }
+        return true;
+    }
+}
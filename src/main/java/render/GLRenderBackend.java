@@ -0,0 +1,89 @@
+package render;
+
+import entity.Entity;
+import entity.EntityManager;
+import entity.TransformationComponent;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL30;
+import player.BlockBreakModelComponent;
+import shader.Shader;
+import shader.Uniform;
+import ui.UIArrayModelComponent;
+
+/** Draws a {@link RenderCommandList} with OpenGL. Only use this on the main thread. */
+public class GLRenderBackend implements RenderCommandList.Backend {
+
+    private Matrix4f viewMatrix, projectionMatrix;
+
+    // the current shader's per entity uniforms, null if it doesn't have them.
+    // entities are only checked for the components a uniform needs if the shader has it.
+    private Uniform transformationMatrix, uiIndex, textureIndex;
+
+    /** Sets the matrices given to every shader that has them. */
+    public void setCamera(Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        this.viewMatrix = viewMatrix;
+        this.projectionMatrix = projectionMatrix;
+    }
+
+    @Override public void useShader(Model model) {
+        var shader = model.getShader();
+        GLState.useProgram(shader.getProgram());
+        if (shader.hasUniform("projectionMatrix")) shader.setMatrix4f("projectionMatrix", projectionMatrix);
+        if (shader.hasUniform("viewMatrix")) shader.setMatrix4f("viewMatrix", viewMatrix);
+
+        transformationMatrix = getUniform(shader, "transformationMatrix");
+        uiIndex = getUniform(shader, "uiIndex");
+        textureIndex = getUniform(shader, "textureIndex");
+    }
+
+    @Override public void bindTextures(Model model) {
+        int unit = 0;
+        for (Texture tex : model.getTextures()) {
+            GLState.bindTexture(unit, tex);
+            model.getShader().setInt(tex.getName(), unit);
+
+            unit++;
+        }
+    }
+
+    private static Uniform getUniform(Shader shader, String name) {
+        return shader.hasUniform(name) ? shader.uniform(name) : null;
+    }
+
+    @Override public void bindVertexArray(Model model) {
+        GLState.bindVertexArray(model.getVAO());
+    }
+
+    @Override public int draw(Model model, Entity entity) {
+        // load possible transform
+        if (transformationMatrix != null) {
+            var transformComponent = EntityManager.getComponent(entity, TransformationComponent.class);
+            if (transformComponent != null) {
+                transformationMatrix.set(transformComponent.getTransformationMatrix());
+            }
+        }
+
+        // load possible ui texture index
+        if (uiIndex != null) {
+            var uiComponent = EntityManager.getComponent(entity, UIArrayModelComponent.class);
+            if (uiComponent != null) {
+                uiIndex.set((float) uiComponent.getTextureIndex());
+            }
+        }
+
+        // load possible block break index
+        if (textureIndex != null) {
+            var breakComponent = EntityManager.getComponent(entity, BlockBreakModelComponent.class);
+            if (breakComponent != null) {
+                textureIndex.set(breakComponent.getIndex());
+            }
+        }
+
+        if (model.hasIndexBuffer()) {
+            GL30.glDrawElements(GL30.GL_TRIANGLES, model.getVertexCount(), GL30.GL_UNSIGNED_INT, 0);
+        } else {
+            GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, model.getVertexCount());
+        }
+        return model.getVertexCount();
+    }
+}
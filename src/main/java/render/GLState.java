@@ -0,0 +1,257 @@
+package render;
+
+import org.lwjgl.opengl.GL30;
+
+import java.util.Arrays;
+
+/** Remembers the OpenGL state that the render code sets, and skips the calls that wouldn't change anything.
+ * Covers the program, vao, textures on each unit, and the blend, depth, cull and stencil settings.
+ *
+ * This only works if all of that state is set through here, so don't call the OpenGL functions for it directly.
+ * Deleted programs, vaos and textures have to be reported here too, since OpenGL reuses their ids.
+ * Until something has been set once, its state is unknown and the call is always made.
+ *
+ * The calls are made by a backend, which can be swapped out to record them instead of needing an OpenGL context.
+ * Only use this on the main thread. */
+public class GLState {
+
+    public interface Backend {
+        void useProgram(int program);
+        void bindVertexArray(int vao);
+        void activeTexture(int unit); // the unit's number, not GL_TEXTURE0 + unit
+        void bindTexture(int target, int texture);
+        void setEnabled(int capability, boolean enabled);
+        void blendFunc(int sourceFactor, int destinationFactor);
+        void depthMask(boolean write);
+        void colorMask(boolean red, boolean green, boolean blue, boolean alpha);
+        void cullFace(int face);
+        void stencilMask(int mask);
+        void stencilFunc(int function, int reference, int mask);
+        void stencilOp(int stencilFail, int depthFail, int pass);
+    }
+
+    /** Makes the calls with OpenGL. */
+    public static class OpenGLBackend implements Backend {
+        @Override public void useProgram(int program) { GL30.glUseProgram(program); }
+        @Override public void bindVertexArray(int vao) { GL30.glBindVertexArray(vao); }
+        @Override public void activeTexture(int unit) { GL30.glActiveTexture(GL30.GL_TEXTURE0 + unit); }
+        @Override public void bindTexture(int target, int texture) { GL30.glBindTexture(target, texture); }
+        @Override public void setEnabled(int capability, boolean enabled) {
+            if (enabled) GL30.glEnable(capability);
+            else         GL30.glDisable(capability);
+        }
+        @Override public void blendFunc(int sourceFactor, int destinationFactor) { GL30.glBlendFunc(sourceFactor, destinationFactor); }
+        @Override public void depthMask(boolean write) { GL30.glDepthMask(write); }
+        @Override public void colorMask(boolean red, boolean green, boolean blue, boolean alpha) { GL30.glColorMask(red, green, blue, alpha); }
+        @Override public void cullFace(int face) { GL30.glCullFace(face); }
+        @Override public void stencilMask(int mask) { GL30.glStencilMask(mask); }
+        @Override public void stencilFunc(int function, int reference, int mask) { GL30.glStencilFunc(function, reference, mask); }
+        @Override public void stencilOp(int stencilFail, int depthFail, int pass) { GL30.glStencilOp(stencilFail, depthFail, pass); }
+    }
+
+    private static final int UNKNOWN = -1;
+    private static final long UNKNOWN_LONG = Long.MIN_VALUE;
+
+    private static final int TEXTURE_UNITS = 16;
+    private static final int[] TEXTURE_TARGETS = { GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY };
+    private static final int[] CAPABILITIES = { GL30.GL_BLEND, GL30.GL_DEPTH_TEST, GL30.GL_CULL_FACE, GL30.GL_STENCIL_TEST };
+
+    private static Backend backend = new OpenGLBackend();
+
+    private static int program, vao, activeUnit;
+    private static final int[] textures = new int[TEXTURE_UNITS * TEXTURE_TARGETS.length];
+    private static final int[] enabled = new int[CAPABILITIES.length]; // 1, 0 or unknown
+    private static long blendFunc, stencilMask; // longs, so every int value is different from unknown
+    private static int depthMask, colorMask, cullFace;
+    private static int stencilFunction, stencilReference, stencilFuncMask;
+    private static int stencilFail, stencilDepthFail, stencilPass;
+
+    private static int issuedCalls = 0, elidedCalls = 0;
+
+    static { forget(); }
+
+    /** Uses `backend` from now on. The state is forgotten, since the new backend may be in any state. */
+    public static void setBackend(Backend newBackend) {
+        backend = newBackend;
+        forget();
+    }
+
+    /** Forgets all the state, so everything is set again the next time. Use after changing state without GLState. */
+    public static void forget() {
+        program = vao = activeUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(enabled, UNKNOWN);
+        blendFunc = stencilMask = UNKNOWN_LONG;
+        depthMask = colorMask = cullFace = UNKNOWN;
+        stencilFunction = stencilFail = UNKNOWN; // the other values of these can't be set without them
+    }
+
+    public static void useProgram(int newProgram) {
+        if (program == newProgram) { elidedCalls++; return; }
+        program = newProgram;
+        issue();
+        backend.useProgram(newProgram);
+    }
+
+    public static void bindVertexArray(int newVao) {
+        if (vao == newVao) { elidedCalls++; return; }
+        vao = newVao;
+        issue();
+        backend.bindVertexArray(newVao);
+    }
+
+    /** Binds the texture to the texture unit. */
+    public static void bindTexture(int unit, int target, int texture) {
+        int slot = textureSlot(unit, target);
+        if (slot != UNKNOWN && textures[slot] == texture) { elidedCalls++; return; }
+
+        activeTexture(unit);
+        if (slot != UNKNOWN) textures[slot] = texture;
+        issue();
+        backend.bindTexture(target, texture);
+    }
+
+    public static void bindTexture(int unit, Texture texture) {
+        bindTexture(unit, texture.getType(), texture.getTexture());
+    }
+
+    /** Binds the texture to whichever unit is active, for creating and changing textures. */
+    public static void bindTexture(int target, int texture) {
+        bindTexture(activeUnit == UNKNOWN ? 0 : activeUnit, target, texture);
+    }
+
+    public static void setEnabled(int capability, boolean enable) {
+        int index = indexOf(CAPABILITIES, capability);
+        int value = enable ? 1 : 0;
+        if (index != UNKNOWN) {
+            if (enabled[index] == value) { elidedCalls++; return; }
+            enabled[index] = value;
+        }
+        issue();
+        backend.setEnabled(capability, enable);
+    }
+
+    public static void enable(int capability) {
+        setEnabled(capability, true);
+    }
+
+    public static void disable(int capability) {
+        setEnabled(capability, false);
+    }
+
+    public static void blendFunc(int sourceFactor, int destinationFactor) {
+        long value = pack(sourceFactor, destinationFactor);
+        if (blendFunc == value) { elidedCalls++; return; }
+        blendFunc = value;
+        issue();
+        backend.blendFunc(sourceFactor, destinationFactor);
+    }
+
+    public static void depthMask(boolean write) {
+        int value = write ? 1 : 0;
+        if (depthMask == value) { elidedCalls++; return; }
+        depthMask = value;
+        issue();
+        backend.depthMask(write);
+    }
+
+    public static void colorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        int value = (red ? 1 : 0) | (green ? 2 : 0) | (blue ? 4 : 0) | (alpha ? 8 : 0);
+        if (colorMask == value) { elidedCalls++; return; }
+        colorMask = value;
+        issue();
+        backend.colorMask(red, green, blue, alpha);
+    }
+
+    public static void cullFace(int face) {
+        if (cullFace == face) { elidedCalls++; return; }
+        cullFace = face;
+        issue();
+        backend.cullFace(face);
+    }
+
+    public static void stencilMask(int mask) {
+        if (stencilMask == mask) { elidedCalls++; return; }
+        stencilMask = mask;
+        issue();
+        backend.stencilMask(mask);
+    }
+
+    public static void stencilFunc(int function, int reference, int mask) {
+        if (stencilFunction == function && stencilReference == reference && stencilFuncMask == mask) { elidedCalls++; return; }
+        stencilFunction = function;
+        stencilReference = reference;
+        stencilFuncMask = mask;
+        issue();
+        backend.stencilFunc(function, reference, mask);
+    }
+
+    public static void stencilOp(int fail, int depthFail, int pass) {
+        if (stencilFail == fail && stencilDepthFail == depthFail && stencilPass == pass) { elidedCalls++; return; }
+        stencilFail = fail;
+        stencilDepthFail = depthFail;
+        stencilPass = pass;
+        issue();
+        backend.stencilOp(fail, depthFail, pass);
+    }
+
+    /** Call when a program is deleted, OpenGL may give its id to a new one. */
+    public static void programDeleted(int deleted) {
+        if (program == deleted) program = UNKNOWN;
+    }
+
+    /** Call when a vao is deleted, OpenGL may give its id to a new one. */
+    public static void vertexArrayDeleted(int deleted) {
+        if (vao == deleted) vao = UNKNOWN;
+    }
+
+    /** Call when a texture is deleted, OpenGL may give its id to a new one. */
+    public static void textureDeleted(int deleted) {
+        for (int i = 0; i < textures.length; i++) {
+            if (textures[i] == deleted) textures[i] = UNKNOWN;
+        }
+    }
+
+    /** Number of calls made to the backend since the counters were reset. */
+    public static int getIssuedCalls() {
+        return issuedCalls;
+    }
+
+    /** Number of calls skipped because the state was already set, since the counters were reset. */
+    public static int getElidedCalls() {
+        return elidedCalls;
+    }
+
+    public static void resetCounters() {
+        issuedCalls = elidedCalls = 0;
+    }
+
+    private static void activeTexture(int unit) {
+        if (activeUnit == unit) return; // part of binding a texture, not counted on its own
+        activeUnit = unit;
+        issue();
+        backend.activeTexture(unit);
+    }
+
+    private static void issue() {
+        issuedCalls++;
+    }
+
+    // returns the index of the unit and target in `textures`, or UNKNOWN if the target isn't tracked
+    private static int textureSlot(int unit, int target) {
+        int targetIndex = indexOf(TEXTURE_TARGETS, target);
+        if (targetIndex == UNKNOWN || unit < 0 || unit >= TEXTURE_UNITS) return UNKNOWN;
+        return unit * TEXTURE_TARGETS.length + targetIndex;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return UNKNOWN;
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+}
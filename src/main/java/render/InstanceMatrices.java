@@ -0,0 +1,46 @@
+package render;
+
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/** Packs transformation matrices one after another into an off-heap buffer, ready to be uploaded as an instance
+ * buffer: 16 floats per instance, column by column, the way OpenGL reads a mat4 attribute.
+ * The buffer grows when it's full, and is reused after {@link #clear}. Doesn't need an OpenGL context. */
+public class InstanceMatrices {
+
+    public static final int FLOATS_PER_MATRIX = 16;
+    public static final int BYTES_PER_MATRIX = FLOATS_PER_MATRIX * Float.BYTES;
+
+    private FloatBuffer buffer;
+    private int size = 0;
+
+    public InstanceMatrices(int capacity) {
+        buffer = BufferUtils.createFloatBuffer(Math.max(1, capacity) * FLOATS_PER_MATRIX);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(Matrix4f matrix) {
+        if ((size + 1) * FLOATS_PER_MATRIX > buffer.capacity()) {
+            var bigger = BufferUtils.createFloatBuffer(buffer.capacity() * 2);
+            bigger.put(0, buffer, 0, size * FLOATS_PER_MATRIX);
+            buffer = bigger;
+        }
+        matrix.get(size * FLOATS_PER_MATRIX, buffer);
+        size++;
+    }
+
+    /** Number of matrices added since the last clear. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the buffer, with its position at 0 and its limit after the last matrix. */
+    public FloatBuffer getBuffer() {
+        return buffer.position(0).limit(size * FLOATS_PER_MATRIX);
+    }
+}
@@ -0,0 +1,177 @@
+package render;
+
+import entity.Entity;
+import entity.EntityManager;
+import entity.ModelComponent;
+import entity.TransformationComponent;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import shader.Shader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Draws all the entities that share a model with one instanced draw call, instead of one draw per entity.
+ *
+ * Every model gets an instance buffer with the transformation matrices of the entities using it this frame,
+ * attached to its vao as a per-instance mat4 attribute at {@link #MATRIX_ATTRIBUTE}. The model's own shader reads
+ * the matrix from a uniform, so the entities are drawn with the instanced version of it, see {@link #setInstancedShader}.
+ * The model can still be drawn without instancing with its own shader, the extra attribute is ignored by it.
+ * Only use this on the main thread. */
+public class InstancedModelRenderer {
+
+    public static final int MATRIX_ATTRIBUTE = 4; // a mat4 attribute takes up 4 locations, 4 to 7
+
+    private static final int INITIAL_INSTANCES = 64;
+
+    /** The instances of one model in this frame. */
+    static class Batch {
+        private final Model model;
+        private final ModelComponent component; // the first component seen with the model
+        private final InstanceMatrices matrices = new InstanceMatrices(INITIAL_INSTANCES);
+        private int vbo = 0;
+
+        private Batch(Model model, ModelComponent component) {
+            this.model = model;
+            this.component = component;
+        }
+
+        Model getModel() {
+            return model;
+        }
+
+        ModelComponent getComponent() {
+            return component;
+        }
+
+        int getInstanceCount() {
+            return matrices.size();
+        }
+
+        // uploads the matrices into the instance buffer, and attaches it to the model's vao the first time
+        private void upload() {
+            if (vbo == 0) {
+                vbo = GL30.glGenBuffers();
+                GLState.bindVertexArray(model.getVAO());
+                GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+                for (int column = 0; column < 4; column++) {
+                    int attribute = MATRIX_ATTRIBUTE + column;
+                    GL30.glVertexAttribPointer(attribute, 4, GL30.GL_FLOAT, false,
+                            InstanceMatrices.BYTES_PER_MATRIX, (long) column * 4 * Float.BYTES);
+                    GL30.glEnableVertexAttribArray(attribute);
+                    GL33.glVertexAttribDivisor(attribute, 1);
+                }
+                GLState.bindVertexArray(0);
+            }
+
+            GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+            GL30.glBufferData(GL30.GL_ARRAY_BUFFER, matrices.getBuffer(), GL30.GL_STREAM_DRAW);
+            GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+        }
+    }
+
+    private static final HashMap<Shader, Shader> instancedShaders = new HashMap<>();
+    private static final HashMap<Model, Batch> batches = new HashMap<>();
+    private static final ArrayList<Batch> activeBatches = new ArrayList<>();
+
+    /** Models using `shader` are drawn with `instancedShader`, which reads the transformation matrix from
+     * the attribute at {@link #MATRIX_ATTRIBUTE} instead of a uniform. */
+    public static void setInstancedShader(Shader shader, Shader instancedShader) {
+        instancedShaders.put(shader, instancedShader);
+    }
+
+    /** Draws the entities, one draw per model. Entities without a transformation aren't drawn. */
+    public static int render(HashMap<Entity, ? extends ModelComponent> components, Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        int vertexTally = 0;
+        Shader lastShader = null;
+
+        for (var batch : collect(components)) {
+            var model = batch.getModel();
+            var shader = getInstancedShader(model);
+            if (shader != lastShader) {
+                useShader(shader, viewMatrix, projectionMatrix);
+                lastShader = shader;
+            }
+
+            // bind textures
+            int unit = 0;
+            for (Texture tex : model.getTextures()) {
+                GLState.bindTexture(unit, tex);
+                setSampler(shader, tex, unit);
+
+                unit++;
+            }
+
+            GLState.bindVertexArray(model.getVAO());
+            if (model.hasIndexBuffer()) {
+                GL31.glDrawElementsInstanced(GL30.GL_TRIANGLES, model.getVertexCount(), GL30.GL_UNSIGNED_INT, 0, batch.getInstanceCount());
+            } else {
+                GL31.glDrawArraysInstanced(GL30.GL_TRIANGLES, 0, model.getVertexCount(), batch.getInstanceCount());
+            }
+            vertexTally += model.getVertexCount() * batch.getInstanceCount();
+        }
+
+        GLState.bindVertexArray(0);
+        return vertexTally;
+    }
+
+    /** Groups the entities by model, and uploads each model's instance matrices.
+     * Returns the models that have instances this frame, valid until the next call. */
+    static List<Batch> collect(HashMap<Entity, ? extends ModelComponent> components) {
+        for (var batch : activeBatches) {
+            batch.matrices.clear();
+        }
+        activeBatches.clear();
+
+        for (var entry : components.entrySet()) {
+            var transform = EntityManager.getComponent(entry.getKey(), TransformationComponent.class);
+            if (transform == null) continue;
+
+            var model = entry.getValue().getModel();
+            var batch = batches.get(model);
+            if (batch == null) {
+                batch = new Batch(model, entry.getValue());
+                batches.put(model, batch);
+            }
+
+            if (batch.matrices.size() == 0) activeBatches.add(batch);
+            batch.matrices.add(transform.getTransformationMatrix());
+        }
+
+        for (var batch : activeBatches) {
+            batch.upload();
+        }
+        return activeBatches;
+    }
+
+    static Shader getInstancedShader(Model model) {
+        var shader = instancedShaders.get(model.getShader());
+        if (shader == null) {
+            throw new IllegalStateException("No instanced shader for the model's shader, see InstancedModelRenderer.setInstancedShader");
+        }
+        return shader;
+    }
+
+    static void useShader(Shader shader, Matrix4f viewMatrix, Matrix4f projectionMatrix) {
+        GLState.useProgram(shader.getProgram());
+        shader.setMatrix4f("projectionMatrix", projectionMatrix);
+        shader.setMatrix4f("viewMatrix", viewMatrix);
+    }
+
+    // the model only registered its samplers with its own shader
+    static void setSampler(Shader shader, Texture texture, int unit) {
+        if (!shader.hasUniform(texture.getName())) shader.addUniform(texture.getName());
+        shader.setInt(texture.getName(), unit);
+    }
+
+    public static void destroy() {
+        for (var batch : batches.values()) {
+            if (batch.vbo != 0) GL30.glDeleteBuffers(batch.vbo);
+        }
+        batches.clear();
+        activeBatches.clear();
+    }
+}
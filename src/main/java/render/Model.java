@@ -22,15 +22,19 @@ public class Model {
     public static void destroyAll() {
         for (var vao : allVAOs) {
             GL30.glDeleteVertexArrays(vao);
+            GLState.vertexArrayDeleted(vao);
         }
 
         for (var vbo : allVBOs) {
             GL30.glDeleteBuffers(vbo);
         }
+
+        QuadIndexBuffer.destroy();
     }
 
     private int vao;
     private final ArrayList<Integer> vbos = new ArrayList<>();
+    private int ebo = 0; // only set if this model owns its index buffer
     private int vertexCount = -1;
     private boolean hasIndexBuffer = false;
 
@@ -39,7 +43,7 @@ public class Model {
 
     public Model() {
         this.vao = GL30.glGenVertexArrays();
-        GL30.glBindVertexArray(this.vao);
+        GLState.bindVertexArray(this.vao);
     }
 
     public Model setShader(Shader shader) {
@@ -118,21 +122,76 @@ public class Model {
         return this;
     }
 
-    /* TODO can re-add when figured out how to unload this without taking an attribute slot
+    // packed vertices are given to the shader as unsigned ints (uvec2, uvec3..), and unpacked there.
+    // one vertex is `size` ints, all in one attribute.
+    public Model addPackedVertices(int[] vertices, int size) {
+        int attribNum = vbos.size();
+        int vbo = makeVBO();
+        var buf = toIntBuffer(vertices);
+        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, buf, GL30.GL_STATIC_DRAW);
+        GL30.glVertexAttribIPointer(attribNum, size, GL30.GL_UNSIGNED_INT, size * Integer.BYTES, 0);
+
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+        if (this.vertexCount == -1) {
+            this.vertexCount = vertices.length/size;
+        }
+        return this;
+    }
+
+    // same as above, but uploads a direct buffer without copying it first. uploads from position to limit.
+    public Model addPackedVertices(IntBuffer vertices, int size) {
+        int attribNum = vbos.size();
+        int vbo = makeVBO();
+        int length = vertices.remaining();
+        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, vertices, GL30.GL_STATIC_DRAW);
+        GL30.glVertexAttribIPointer(attribNum, size, GL30.GL_UNSIGNED_INT, size * Integer.BYTES, 0);
+
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+        if (this.vertexCount == -1) {
+            this.vertexCount = length/size;
+        }
+        return this;
+    }
+
+    // same as above, but streams the data through a staging ring instead of glBufferData. check ring.hasRoom first.
+    public Model addPackedVertices(IntBuffer vertices, int size, StagingRing ring) {
+        int attribNum = vbos.size();
+        int vbo = makeVBO();
+        int length = vertices.remaining();
+        ring.upload(vertices, GL30.GL_ARRAY_BUFFER);
+        GL30.glVertexAttribIPointer(attribNum, size, GL30.GL_UNSIGNED_INT, size * Integer.BYTES, 0);
+
+        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+        if (this.vertexCount == -1) {
+            this.vertexCount = length/size;
+        }
+        return this;
+    }
+
     // this is a bit of a specialized method.
-    // ebo doesn't get unbinded at the end, and it doesn't need an attribute slot.
+    // ebo doesn't get unbinded at the end, and it doesn't need an attribute slot, so it isn't in the vbo list.
     public Model addIndices(int[] indices) {
         // make ebo (element buffer object)
         int ebo = GL30.glGenBuffers();
         GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, ebo);
         var buf = toIntBuffer(indices);
         GL30.glBufferData(GL30.GL_ELEMENT_ARRAY_BUFFER, buf, GL30.GL_STATIC_DRAW);
+        allVBOs.add(ebo);
 
+        this.ebo = ebo;
         this.vertexCount = indices.length;
         this.hasIndexBuffer = true;
         return this;
     }
-     */
+
+    // uses an index buffer owned by someone else, like QuadIndexBuffer. it isn't deleted with this model.
+    public Model setSharedIndices(int ebo, int indexCount) {
+        GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, ebo);
+
+        this.vertexCount = indexCount;
+        this.hasIndexBuffer = true;
+        return this;
+    }
 
     private int makeVBO() {
         int vbo = GL30.glGenBuffers();
@@ -163,7 +222,7 @@ public class Model {
         }
 
         // enable all vertex attrib arrays
-        GL30.glBindVertexArray(getVAO());
+        GLState.bindVertexArray(getVAO());
         for (int i = 0; i < getNumberOfVBOs(); i++) {
             GL30.glEnableVertexAttribArray(i);
         }
@@ -178,8 +237,15 @@ public class Model {
         }
         this.vbos.clear();
 
+        if (this.ebo != 0) {
+            allVBOs.remove((Integer) this.ebo);
+            GL30.glDeleteBuffers(this.ebo);
+            this.ebo = 0;
+        }
+
         allVAOs.remove((Integer) this.vao);
         GL30.glDeleteVertexArrays(vao);
+        GLState.vertexArrayDeleted(vao);
         this.vao = -1;
     }
 
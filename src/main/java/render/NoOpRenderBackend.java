@@ -0,0 +1,18 @@
+package render;
+
+import entity.Entity;
+
+/** A backend that draws nothing, so a {@link RenderCommandList} can be built, sorted and executed without an OpenGL
+ * context, to measure culling and batching. The list itself counts the state changes. */
+public class NoOpRenderBackend implements RenderCommandList.Backend {
+
+    @Override public void useShader(Model model) {}
+
+    @Override public void bindTextures(Model model) {}
+
+    @Override public void bindVertexArray(Model model) {}
+
+    @Override public int draw(Model model, Entity entity) {
+        return 0;
+    }
+}
@@ -0,0 +1,57 @@
+package render;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL30;
+
+/** One index buffer (ebo) shared by every model that is made out of quads of 4 vertices, like chunk meshes.
+ * Quad n uses the vertices 4n..4n+3, drawn as the triangles (4n, 4n+1, 4n+2) and (4n+2, 4n+3, 4n).
+ * The buffer grows when a model with more quads than before needs it. Only use this on the main thread. */
+public class QuadIndexBuffer {
+
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int INDICES_PER_QUAD = 6;
+
+    private static final int MIN_CAPACITY = 4096; // quads
+
+    private static int ebo = 0;
+    private static int quadCapacity = 0;
+
+    /** Returns the ebo, with room for at least `quadCount` quads. */
+    public static int get(int quadCount) {
+        if (quadCount > quadCapacity) {
+            grow(quadCount);
+        }
+        return ebo;
+    }
+
+    private static void grow(int quadCount) {
+        int capacity = Math.max(quadCapacity, MIN_CAPACITY);
+        while (capacity < quadCount) capacity *= 2;
+
+        var buf = BufferUtils.createIntBuffer(capacity * INDICES_PER_QUAD);
+        for (int quad = 0; quad < capacity; quad++) {
+            int vertex = quad * VERTICES_PER_QUAD;
+            buf.put(vertex).put(vertex + 1).put(vertex + 2);
+            buf.put(vertex + 2).put(vertex + 3).put(vertex);
+        }
+        buf.flip();
+
+        // models made with the old buffer keep using it, opengl only frees it once no vao references it anymore.
+        if (ebo != 0) {
+            GL30.glDeleteBuffers(ebo);
+        }
+
+        ebo = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, ebo);
+        GL30.glBufferData(GL30.GL_ELEMENT_ARRAY_BUFFER, buf, GL30.GL_STATIC_DRAW);
+        quadCapacity = capacity;
+    }
+
+    public static void destroy() {
+        if (ebo != 0) {
+            GL30.glDeleteBuffers(ebo);
+        }
+        ebo = 0;
+        quadCapacity = 0;
+    }
+}
@@ -0,0 +1,184 @@
+package render;
+
+import entity.Entity;
+
+import java.util.Arrays;
+
+/** A list of draws, sorted so the ones sharing a shader, textures and vao are next to each other.
+ * Rendering is split in two: first the draws are added and sorted, then {@link #execute} hands them to a backend,
+ * which only gets told about a shader, texture or vao when it changes from the draw before.
+ *
+ * The list doesn't touch OpenGL itself, so with a backend that does nothing (see {@link NoOpRenderBackend})
+ * it runs without a context, and counts how many state changes a scene needs.
+ * Once the arrays have grown big enough for a scene, adding and sorting doesn't allocate anything. */
+public class RenderCommandList {
+
+    public interface Backend {
+        /** Starts using the model's shader. */
+        void useShader(Model model);
+
+        /** Binds the model's textures. Called after every shader change too, since samplers are set per shader. */
+        void bindTextures(Model model);
+
+        void bindVertexArray(Model model);
+
+        /** Draws the entity with the model. Returns the number of vertices drawn. */
+        int draw(Model model, Entity entity);
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int RADIX_BITS = 8, BUCKETS = 1 << RADIX_BITS;
+
+    private int size = 0;
+    private int[] shaderKeys = new int[INITIAL_CAPACITY];
+    private int[] textureKeys = new int[INITIAL_CAPACITY];
+    private int[] vaoKeys = new int[INITIAL_CAPACITY];
+    private Model[] models = new Model[INITIAL_CAPACITY];
+    private Entity[] entities = new Entity[INITIAL_CAPACITY];
+
+    // sort keys and the order of the draws, with their swap buffers for the radix sort
+    private long[] sortKeys = new long[INITIAL_CAPACITY], swapSortKeys = new long[INITIAL_CAPACITY];
+    private int[] order = new int[INITIAL_CAPACITY], swapOrder = new int[INITIAL_CAPACITY];
+    private final int[] counts = new int[BUCKETS];
+
+    // state changes done by execute, until reset
+    private int shaderChanges = 0, textureChanges = 0, vaoChanges = 0, drawCount = 0;
+
+    public void clear() {
+        // drop the references, so removed entities and models can be collected
+        Arrays.fill(models, 0, size, null);
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    /** Adds a draw of the entity with the model. */
+    public void add(Model model, Entity entity) {
+        add(model.getShader().getProgram(), getTextureKey(model), model.getVAO(), model, entity);
+    }
+
+    /** Adds a draw with the given state. Draws with the same keys must use the same shader, textures or vao. */
+    public void add(int shaderKey, int textureKey, int vaoKey, Model model, Entity entity) {
+        if (size == shaderKeys.length) grow();
+
+        shaderKeys[size] = shaderKey;
+        textureKeys[size] = textureKey;
+        vaoKeys[size] = vaoKey;
+        models[size] = model;
+        entities[size] = entity;
+        size++;
+    }
+
+    /** Orders the draws by shader, then textures, then vao. Draws with the same state keep the order they were added in. */
+    public void sort() {
+        for (int i = 0; i < size; i++) {
+            // the keys are only for sorting: ids too big for their bits just sort worse, state changes compare the full keys
+            sortKeys[i] = (long) (shaderKeys[i] & 0xFFFF) << 48
+                        | (long) (textureKeys[i] & 0xFFFFFF) << 24
+                        | (vaoKeys[i] & 0xFFFFFF);
+            order[i] = i;
+        }
+
+        // lsd radix sort a byte at a time, skipping the bytes that are the same for every draw
+        for (int shift = 0; shift < Long.SIZE && size > 1; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (sortKeys[i] >>> shift) & (BUCKETS - 1)]++;
+            }
+            if (counts[(int) (sortKeys[0] >>> shift) & (BUCKETS - 1)] == size) continue;
+
+            int total = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = total;
+                total += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int to = counts[(int) (sortKeys[i] >>> shift) & (BUCKETS - 1)]++;
+                swapSortKeys[to] = sortKeys[i];
+                swapOrder[to] = order[i];
+            }
+
+            long[] keys = sortKeys; sortKeys = swapSortKeys; swapSortKeys = keys;
+            int[] tmp = order; order = swapOrder; swapOrder = tmp;
+        }
+    }
+
+    /** Gives the draws to the backend in sorted order. Call {@link #sort} first. Returns the number of vertices drawn. */
+    public int execute(Backend backend) {
+        int vertexTally = 0;
+        int lastShader = 0, lastTexture = 0, lastVao = 0;
+
+        for (int i = 0; i < size; i++) {
+            int draw = order[i];
+            var model = models[draw];
+
+            boolean shaderChanged = i == 0 || shaderKeys[draw] != lastShader;
+            if (shaderChanged) {
+                backend.useShader(model);
+                shaderChanges++;
+            }
+            if (shaderChanged || textureKeys[draw] != lastTexture) {
+                backend.bindTextures(model);
+                textureChanges++;
+            }
+            if (i == 0 || vaoKeys[draw] != lastVao) {
+                backend.bindVertexArray(model);
+                vaoChanges++;
+            }
+
+            vertexTally += backend.draw(model, entities[draw]);
+            drawCount++;
+
+            lastShader = shaderKeys[draw];
+            lastTexture = textureKeys[draw];
+            lastVao = vaoKeys[draw];
+        }
+
+        return vertexTally;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getShaderChanges() {
+        return shaderChanges;
+    }
+
+    public int getTextureChanges() {
+        return textureChanges;
+    }
+
+    public int getVaoChanges() {
+        return vaoChanges;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public void resetCounters() {
+        shaderChanges = textureChanges = vaoChanges = drawCount = 0;
+    }
+
+    // models with the same single texture share the key, others get their own key based on their vao
+    private static int getTextureKey(Model model) {
+        var textures = model.getTextures();
+        if (textures.isEmpty()) return 0;
+        if (textures.size() == 1) return textures.get(0).getTexture();
+        return -model.getVAO();
+    }
+
+    private void grow() {
+        int capacity = shaderKeys.length * 2;
+        shaderKeys = Arrays.copyOf(shaderKeys, capacity);
+        textureKeys = Arrays.copyOf(textureKeys, capacity);
+        vaoKeys = Arrays.copyOf(vaoKeys, capacity);
+        models = Arrays.copyOf(models, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+        sortKeys = new long[capacity];
+        swapSortKeys = new long[capacity];
+        order = new int[capacity];
+        swapOrder = new int[capacity];
+    }
+}
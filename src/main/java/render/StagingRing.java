@@ -0,0 +1,125 @@
+package render;
+
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+
+/** A ring buffer that vertex data is streamed through on its way to the gpu.
+ * Instead of handing the data to glBufferData, which the driver may copy or wait on synchronously,
+ * it's written into a mapped part of the ring and then copied into the final buffer on the gpu (glCopyBufferSubData).
+ *
+ * The ring is mapped unsynchronized, so we have to make sure ourselves that we don't overwrite data the gpu
+ * hasn't copied yet. After every frame a fence is put into the command stream, and the space used during that
+ * frame only becomes free again once the gpu has passed the fence.
+ * The game needs OpenGL 4.3 (see Main), and a persistently mapped ring (glBufferStorage) needs 4.4,
+ * so the ring is mapped for each upload instead.
+ * Only use this on the main thread. */
+public class StagingRing {
+
+    private static final int ALIGNMENT = 64; // bytes, keeps the mapped ranges nicely aligned
+
+    private record Frame(long fence, int bytes) {}
+
+    private final int buffer;
+    private final int capacity;
+
+    private int head = 0;       // next free byte
+    private int used = 0;       // bytes that the gpu may still be reading, including skipped space at the end
+    private int frameBytes = 0; // bytes used in the current frame
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+    public StagingRing(int capacity) {
+        this.capacity = capacity;
+        this.buffer = GL30.glGenBuffers();
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, buffer);
+        GL30.glBufferData(GL32.GL_COPY_READ_BUFFER, capacity, GL30.GL_STREAM_DRAW);
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, 0);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Returns true if `bytes` can be written into the ring right now. */
+    public boolean hasRoom(int bytes) {
+        retireFrames();
+        return skipFor(align(bytes)) + align(bytes) <= capacity - used;
+    }
+
+    /** Streams `data` (position to limit) through the ring into the buffer bound to `target`.
+     * The buffer bound to `target` is (re)allocated to exactly the size of the data.
+     * Check {@link #hasRoom} first. */
+    public void upload(IntBuffer data, int target) {
+        GL30.glBufferData(target, (long) data.remaining() * Integer.BYTES, GL30.GL_STATIC_DRAW);
+        upload(data, target, 0);
+    }
+
+    /** Streams `data` (position to limit) through the ring into the buffer bound to `target`, starting at
+     * `targetOffset` bytes. The buffer has to be big enough already. Check {@link #hasRoom} first. */
+    public void upload(IntBuffer data, int target, long targetOffset) {
+        int bytes = data.remaining() * Integer.BYTES;
+        int aligned = align(bytes);
+
+        // wrap around if it doesn't fit at the end, the skipped space counts as used until the frame retires
+        int skip = skipFor(aligned);
+        if (skip != 0) {
+            head = 0;
+            used += skip;
+            frameBytes += skip;
+        }
+
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, buffer);
+        var mapped = GL30.glMapBufferRange(GL32.GL_COPY_READ_BUFFER, head, bytes,
+                GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_UNSYNCHRONIZED_BIT | GL30.GL_MAP_INVALIDATE_RANGE_BIT);
+        mapped.asIntBuffer().put(data.duplicate());
+        GL30.glUnmapBuffer(GL32.GL_COPY_READ_BUFFER);
+
+        GL32.glCopyBufferSubData(GL32.GL_COPY_READ_BUFFER, target, head, targetOffset, bytes);
+        GL30.glBindBuffer(GL32.GL_COPY_READ_BUFFER, 0);
+
+        head += aligned;
+        used += aligned;
+        frameBytes += aligned;
+    }
+
+    /** Fences the space used this frame. Call once per frame, after the uploads. */
+    public void endFrame() {
+        if (frameBytes == 0) return;
+
+        long fence = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frames.add(new Frame(fence, frameBytes));
+        frameBytes = 0;
+    }
+
+    public void destroy() {
+        for (var frame : frames) {
+            GL32.glDeleteSync(frame.fence);
+        }
+        frames.clear();
+        GL30.glDeleteBuffers(buffer);
+    }
+
+    // frees the space of frames the gpu is done with, without waiting
+    private void retireFrames() {
+        while (!frames.isEmpty()) {
+            var frame = frames.peek();
+            int status = GL32.glClientWaitSync(frame.fence, 0, 0);
+            if (status != GL32.GL_ALREADY_SIGNALED && status != GL32.GL_CONDITION_SATISFIED) break;
+
+            GL32.glDeleteSync(frame.fence);
+            used -= frame.bytes;
+            frames.poll();
+        }
+    }
+
+    // bytes that have to be skipped at the end of the ring to fit `aligned` bytes
+    private int skipFor(int aligned) {
+        return head + aligned > capacity ? capacity - head : 0;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,109 @@
+package render;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** Compressed files of decoded textures with their mip chains, so the next start doesn't have to decode the png
+ * or build the mipmaps again. A cache file remembers the size and modification time of the png it was made from,
+ * and is ignored once the png changes. Thread safe, as long as the same texture isn't written twice at once. */
+public class TextureCache {
+
+    private static final Path path = Path.of("src/main/resources/cache/textures");
+
+    private static final int MAGIC = 0x4D495053; // "MIPS"
+    private static final int VERSION = 1;
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    /** Returns the cached texture made from the png at `sourcePath` with the tile height, or null if there isn't
+     * an up to date one. */
+    public static TextureData read(String sourcePath, int tileHeight) {
+        var source = new File(sourcePath);
+        var file = cacheFile(sourcePath, tileHeight);
+        if (!file.exists() || !source.exists()) return null;
+
+        try (var in = new DataInputStream(new GZIPInputStream(new FileInputStream(file), COPY_BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != source.length() || in.readLong() != source.lastModified()) return null;
+            if (in.readInt() != tileHeight) return null;
+
+            int width = in.readInt(), height = in.readInt(), depth = in.readInt();
+            int levelCount = in.readInt();
+            if (levelCount != TextureData.levelCount(width, height)) return null;
+
+            var levels = new ByteBuffer[levelCount];
+            var data = new TextureData(width, height, depth, levels);
+            try {
+                var copyBuffer = new byte[COPY_BUFFER_SIZE];
+                for (int level = 0; level < levels.length; level++) {
+                    int size = TextureData.BYTES_PER_PIXEL * depth * data.getLevelWidth(level) * data.getLevelHeight(level);
+                    levels[level] = MemoryUtil.memAlloc(size);
+                    while (levels[level].hasRemaining()) {
+                        int read = Math.min(levels[level].remaining(), copyBuffer.length);
+                        in.readFully(copyBuffer, 0, read);
+                        levels[level].put(copyBuffer, 0, read);
+                    }
+                    levels[level].flip();
+                }
+            } catch (IOException e) {
+                data.free();
+                throw e;
+            }
+            return data;
+        } catch (IOException e) {
+            System.err.println("Could not read texture cache file: " + file);
+            return null;
+        }
+    }
+
+    /** Writes the texture to the cache, replacing any older file for the same png and tile height. */
+    public static void write(String sourcePath, int tileHeight, TextureData data) {
+        var source = new File(sourcePath);
+        var file = cacheFile(sourcePath, tileHeight);
+        var temp = new File(file.getPath() + ".tmp");
+
+        try {
+            Files.createDirectories(path);
+            try (var out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(temp), COPY_BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeInt(tileHeight);
+
+                out.writeInt(data.width);
+                out.writeInt(data.height);
+                out.writeInt(data.depth);
+                out.writeInt(data.getLevelCount());
+
+                var copyBuffer = new byte[COPY_BUFFER_SIZE];
+                for (int level = 0; level < data.getLevelCount(); level++) {
+                    var pixels = data.getLevel(level);
+                    for (int offset = 0; offset < pixels.limit(); offset += copyBuffer.length) {
+                        int length = Math.min(pixels.limit() - offset, copyBuffer.length);
+                        pixels.get(offset, copyBuffer, 0, length);
+                        out.write(copyBuffer, 0, length);
+                    }
+                }
+            }
+            // so a half written file is never read
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not write texture cache file: " + file);
+            e.printStackTrace();
+        }
+    }
+
+    private static File cacheFile(String sourcePath, int tileHeight) {
+        // the whole path goes into the name, so pngs with the same name in different folders don't share a file
+        var name = sourcePath.replaceAll("[^A-Za-z0-9.-]", "_");
+        return path.resolve(name + "_" + tileHeight + ".mips").toFile();
+    }
+}
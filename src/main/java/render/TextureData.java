@@ -0,0 +1,119 @@
+package render;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** The RGBA pixels of a texture and its whole mip chain, ready to be handed to OpenGL.
+ * A texture is made of `depth` layers of `width` x `height` pixels, stacked one after another in each level
+ * the same way they are stacked from top to bottom in the image. A plain texture has 1 layer.
+ *
+ * The levels are allocated with MemoryUtil, so the garbage collector doesn't know about them: call {@link #free}
+ * once they have been uploaded. Doesn't need an OpenGL context, so it can be made on any thread. */
+public class TextureData {
+
+    public static final int BYTES_PER_PIXEL = 4;
+
+    public final int width, height, depth;
+    private final ByteBuffer[] levels;
+
+    TextureData(int width, int height, int depth, ByteBuffer[] levels) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.levels = levels;
+    }
+
+    /** Decodes the png at `path` and builds its mip chain. The image is cut into layers of `tileHeight` rows,
+     * or kept as one layer if `tileHeight` is 0. Each layer is mipmapped on its own, so they don't bleed into each other. */
+    public static TextureData decode(String path, int tileHeight) throws IOException {
+        try (var fis = new FileInputStream(path)) {
+            var decoder = new PNGDecoder(fis);
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            int layerHeight = tileHeight == 0 ? height : tileHeight;
+
+            var levels = new ByteBuffer[levelCount(width, layerHeight)];
+            levels[0] = MemoryUtil.memAlloc(BYTES_PER_PIXEL * width * height);
+            try {
+                decoder.decode(levels[0], width * BYTES_PER_PIXEL, PNGDecoder.Format.RGBA);
+            } catch (IOException e) {
+                MemoryUtil.memFree(levels[0]);
+                throw e;
+            }
+            levels[0].flip();
+
+            var data = new TextureData(width, layerHeight, height / layerHeight, levels);
+            data.generateMipmaps();
+            return data;
+        }
+    }
+
+    /** Number of levels in a full mip chain, down to 1x1. */
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /** The pixels of all layers at the level, with position 0. */
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public void free() {
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] != null) MemoryUtil.memFree(levels[i]);
+            levels[i] = null;
+        }
+    }
+
+    // averages each 2x2 block of the level above, like glGenerateMipmap does
+    private void generateMipmaps() {
+        for (int level = 1; level < levels.length; level++) {
+            int srcWidth = getLevelWidth(level - 1), srcHeight = getLevelHeight(level - 1);
+            int dstWidth = getLevelWidth(level), dstHeight = getLevelHeight(level);
+            var src = levels[level - 1];
+            var dst = MemoryUtil.memAlloc(BYTES_PER_PIXEL * dstWidth * dstHeight * depth);
+
+            for (int layer = 0; layer < depth; layer++) {
+                int srcLayer = layer * srcWidth * srcHeight;
+                int dstLayer = layer * dstWidth * dstHeight;
+
+                for (int y = 0; y < dstHeight; y++) {
+                    // a side that is already 1 pixel long stops halving, so it samples the same pixel twice
+                    int y0 = Math.min(2 * y, srcHeight - 1), y1 = Math.min(2 * y + 1, srcHeight - 1);
+                    for (int x = 0; x < dstWidth; x++) {
+                        int x0 = Math.min(2 * x, srcWidth - 1), x1 = Math.min(2 * x + 1, srcWidth - 1);
+                        int p00 = BYTES_PER_PIXEL * (srcLayer + y0 * srcWidth + x0);
+                        int p01 = BYTES_PER_PIXEL * (srcLayer + y0 * srcWidth + x1);
+                        int p10 = BYTES_PER_PIXEL * (srcLayer + y1 * srcWidth + x0);
+                        int p11 = BYTES_PER_PIXEL * (srcLayer + y1 * srcWidth + x1);
+                        int to = BYTES_PER_PIXEL * (dstLayer + y * dstWidth + x);
+
+                        for (int channel = 0; channel < BYTES_PER_PIXEL; channel++) {
+                            int sum = (src.get(p00 + channel) & 0xFF) + (src.get(p01 + channel) & 0xFF)
+                                    + (src.get(p10 + channel) & 0xFF) + (src.get(p11 + channel) & 0xFF);
+                            dst.put(to + channel, (byte) ((sum + 2) / 4));
+                        }
+                    }
+                }
+            }
+
+            levels[level] = dst;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package render;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Decodes textures on worker threads, so the main thread only has to upload them.
+ * {@link #preload} starts decoding a texture as early as possible, even before there is an OpenGL context,
+ * and the texture's constructor later picks it up with {@link #take}, waiting only if it isn't done yet.
+ * Textures that weren't preloaded are decoded when they are taken.
+ *
+ * A texture is read from the {@link TextureCache} if it has an up to date file there. Otherwise the png is decoded,
+ * its mip chain is built, and the result is written to the cache for the next start. */
+public class TextureLoader {
+
+    /** Tile height for a texture that is kept as one layer. */
+    public static final int WHOLE_IMAGE = 0;
+
+    private static final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+
+    private static final ConcurrentHashMap<String, Future<TextureData>> pending = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger cacheHits = new AtomicInteger(), cacheMisses = new AtomicInteger();
+    private static final AtomicLong loadNanos = new AtomicLong();
+    private static long waitNanos = 0;
+
+    /** Starts decoding the png at `path` with the tile height on a worker thread. */
+    public static void preload(String path, int tileHeight) {
+        pending.computeIfAbsent(key(path, tileHeight), key -> executor.submit(() -> load(path, tileHeight)));
+    }
+
+    /** Returns the decoded texture, waiting for its preload if there was one. Only the first call for a preloaded
+     * texture gets its preloaded data. The caller owns the data, and has to free it when it's done uploading. */
+    public static TextureData take(String path, int tileHeight) {
+        long start = System.nanoTime();
+        try {
+            var future = pending.remove(key(path, tileHeight));
+            if (future == null) return load(path, tileHeight);
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading texture " + path, e);
+        } catch (ExecutionException | IOException e) {
+            var cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IllegalStateException("Could not load texture " + path, cause);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Prints how long textures took to load, and how much of that the main thread spent waiting for them. */
+    public static void printTimes() {
+        System.out.printf("Textures: %d from cache, %d decoded, %.1f ms spent loading, main thread waited %.1f ms%n",
+                cacheHits.get(), cacheMisses.get(), loadNanos.get() / 1e6, waitNanos / 1e6);
+    }
+
+    public static int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public static void stop() {
+        executor.shutdownNow();
+        // preloads that were never taken still own their pixels
+        for (var future : pending.values()) {
+            if (!future.isDone() || future.isCancelled()) continue;
+            try {
+                future.get().free();
+            } catch (InterruptedException | ExecutionException ignored) {}
+        }
+        pending.clear();
+        System.out.println("TextureLoader stopped");
+    }
+
+    private static TextureData load(String path, int tileHeight) throws IOException {
+        long start = System.nanoTime();
+        try {
+            var data = TextureCache.read(path, tileHeight);
+            if (data != null) {
+                cacheHits.incrementAndGet();
+                return data;
+            }
+
+            data = TextureData.decode(path, tileHeight);
+            TextureCache.write(path, tileHeight, data);
+            cacheMisses.incrementAndGet();
+            return data;
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private static String key(String path, int tileHeight) {
+        return path + "@" + tileHeight;
+    }
+}
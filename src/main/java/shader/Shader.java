@@ -1,12 +1,11 @@
 package shader;
 
 import org.joml.Matrix4f;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.system.MemoryStack;
+import render.GLState;
 
 import java.io.IOException;
-import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -16,41 +15,37 @@ public class Shader {
     private int program;
     public int getProgram() { return program; }
 
-    private HashMap<String, Integer> uniforms = new HashMap<>();
+    private HashMap<String, Uniform> uniforms = new HashMap<>();
 
-    private static FloatBuffer mat4x4buf = BufferUtils.createFloatBuffer(16);
-    public void setMatrix4f(String name, Matrix4f matrix) {
-        matrix.get(mat4x4buf);
-        var id = uniforms.get(name);
-        if (id == null) {
-            throw new IllegalStateException("No uniform variable with name " + name);
+    /** Returns the handle of the uniform. Keep it around instead of looking it up by name for every upload. */
+    public Uniform uniform(String name) {
+        var uniform = uniforms.get(name);
+        if (uniform == null) {
+            throw new IllegalStateException("No uniform with name " + name);
         }
-        GL30.glUniformMatrix4fv(id, false, mat4x4buf);
+        return uniform;
+    }
+
+    public void setMatrix4f(String name, Matrix4f matrix) {
+        uniform(name).set(matrix);
     }
 
     public void setInt(String name, int value) {
-        var id = uniforms.get(name);
-        if (id == null) {
-            throw new IllegalStateException("No uniform with name " + name);
-        }
-        GL30.glUniform1i(id, value);
+        uniform(name).set(value);
     }
 
     public void setFloat(String name, float value) {
-        var id = uniforms.get(name);
-        if (id == null) {
-            throw new IllegalStateException("No uniform with name " + name);
-        }
-        GL30.glUniform1f(id, value);
+        uniform(name).set(value);
     }
 
     public void setBoolean(String name, boolean value) {
-        setInt(name, value ? 1 : 0);
+        uniform(name).set(value);
     }
 
     public Shader addUniform(String name) {
+        if (uniforms.containsKey(name)) return this; // keep the handle, and the value it knows the program has
         int id = GL30.glGetUniformLocation(program, name);
-        uniforms.put(name, id);
+        uniforms.put(name, new Uniform(name, id));
         return this;
     }
 
@@ -121,5 +116,6 @@ public class Shader {
 
     public void destroy() {
         GL30.glDeleteProgram(this.program);
+        GLState.programDeleted(this.program);
     }
 }
@@ -0,0 +1,98 @@
+package shader;
+
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.FloatBuffer;
+
+/** A handle to one uniform variable of a shader program, get it once with {@link Shader#uniform}.
+ *
+ * A uniform keeps its value in the program until it's set again, even while other programs are in use,
+ * so the handle remembers the last value it uploaded and skips uploading the same value again.
+ * The program has to be in use when setting a value, like with the plain OpenGL calls. */
+public class Uniform {
+
+    private static long uploads = 0, avoidedUploads = 0;
+
+    private static final FloatBuffer mat4x4buf = BufferUtils.createFloatBuffer(16);
+
+    private final String name;
+    private final int location;
+
+    // the last value uploaded, `isKnown` is false until the first upload
+    private boolean isKnown = false;
+    private int lastBits;
+    private Matrix4f lastMatrix;
+
+    Uniform(String name, int location) {
+        this.name = name;
+        this.location = location;
+    }
+
+    public void set(Matrix4f matrix) {
+        if (lastMatrix == null) {
+            lastMatrix = new Matrix4f();
+        } else if (isKnown && lastMatrix.equals(matrix)) {
+            avoidedUploads++;
+            return;
+        }
+
+        lastMatrix.set(matrix);
+        isKnown = true;
+        uploads++;
+        GL30.glUniformMatrix4fv(location, false, matrix.get(mat4x4buf));
+    }
+
+    public void set(int value) {
+        if (isKnown && lastBits == value) {
+            avoidedUploads++;
+            return;
+        }
+
+        lastBits = value;
+        isKnown = true;
+        uploads++;
+        GL30.glUniform1i(location, value);
+    }
+
+    public void set(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        if (isKnown && lastBits == bits) {
+            avoidedUploads++;
+            return;
+        }
+
+        lastBits = bits;
+        isKnown = true;
+        uploads++;
+        GL30.glUniform1f(location, value);
+    }
+
+    public void set(boolean value) {
+        set(value ? 1 : 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** The uniform's location in the program, -1 if the program doesn't use it. */
+    public int getLocation() {
+        return location;
+    }
+
+    /** Number of uniform uploads done, of all shaders. */
+    public static long getUploads() {
+        return uploads;
+    }
+
+    /** Number of uniform uploads skipped because the program already had the value, of all shaders. */
+    public static long getAvoidedUploads() {
+        return avoidedUploads;
+    }
+
+    public static void resetCounters() {
+        uploads = avoidedUploads = 0;
+    }
+}
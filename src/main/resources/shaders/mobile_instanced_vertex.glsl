@@ -0,0 +1,15 @@
+#version 330 core
+layout (location = 0) in vec3 pos;
+layout (location = 1) in vec2 textureCoords;
+layout (location = 4) in mat4 transformationMatrix; // one per instance, see InstancedModelRenderer
+
+out vec2 pass_textureCoords;
+
+uniform mat4 projectionMatrix;
+uniform mat4 viewMatrix;
+
+void main()
+{
+    pass_textureCoords = textureCoords;
+    gl_Position = projectionMatrix * viewMatrix * transformationMatrix * vec4(pos.xyz, 1.0);
+}
\ No newline at end of file
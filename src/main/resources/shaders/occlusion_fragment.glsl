@@ -0,0 +1,6 @@
+#version 330 core
+
+// only used for occlusion queries, colour and depth writes are turned off
+void main()
+{
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+#version 330 core
+layout (location = 0) in vec3 pos;
+
+uniform mat4 transformationMatrix;
+uniform mat4 projectionMatrix;
+uniform mat4 viewMatrix;
+
+void main()
+{
+    gl_Position = projectionMatrix * viewMatrix * transformationMatrix * vec4(pos, 1.0);
+}
\ No newline at end of file
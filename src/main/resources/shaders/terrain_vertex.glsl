@@ -1,21 +1,47 @@
 #version 330 core
-layout (location = 0) in vec3 pos;
-layout (location = 1) in vec3 textureCoords;
-layout (location = 2) in vec2 light;
+layout (location = 0) in uvec2 vertex; // packed, see TerrainVertex.java
+layout (location = 1) in vec3 chunkOrigin; // per chunk, see ChunkMeshArena.java
 
 out vec2 pass_light;
 out vec2 pass_textureCoords;
 flat out float pass_textureIndex;
 
-uniform mat4 transformationMatrix;
 uniform mat4 projectionMatrix;
 uniform mat4 viewMatrix;
 
+const float GAMMA = 2.2;
+const float MIN_LIGHT = 0.01;
+
+// fake lighting to make the sides of blocks look different, indexed by face direction
+const float fakeBlockSideLights[6] = float[6](
+    1.0,  // up
+    0.98, // left
+    0.95, // front
+    0.92, // back
+    0.92, // right
+    0.88  // down
+);
+
 void main()
 {
-    pass_textureCoords = textureCoords.xy;
-    pass_textureIndex  = textureCoords.z;
-    pass_light = light;
+    vec3 pos = vec3(
+        float( vertex.x        & 63u),
+        float((vertex.x >> 6u)  & 63u),
+        float((vertex.x >> 12u) & 63u)
+    );
+    pass_textureCoords = vec2(
+        float((vertex.x >> 18u) & 63u),
+        float((vertex.x >> 24u) & 63u)
+    );
+    pass_textureIndex = float(vertex.y & 4095u);
+
+    float blockLight = float((vertex.y >> 12u) & 15u) / 15.0;
+    float skyLight   = float((vertex.y >> 16u) & 15u) / 15.0;
+    float fakeLightMultiplier = fakeBlockSideLights[(vertex.y >> 20u) & 7u];
+
+    blockLight = pow(blockLight * fakeLightMultiplier, GAMMA);
+    skyLight   = max(pow(skyLight * fakeLightMultiplier, GAMMA), MIN_LIGHT); // moonlight
+    pass_light = vec2(blockLight, skyLight);
 
-    gl_Position = projectionMatrix * viewMatrix * transformationMatrix * vec4(pos.xyz, 1.0);
+    gl_Position = projectionMatrix * viewMatrix * vec4(chunkOrigin + pos, 1.0);
 }
\ No newline at end of file
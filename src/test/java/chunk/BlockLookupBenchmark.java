@@ -0,0 +1,66 @@
+package chunk;
+
+import org.joml.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/** What ChunkLoader.getBlockAt costs per lookup, in time and in allocated bytes, for seeded random points.
+ * Once near the player, the way physics tests points, and once across the whole load area.
+ *
+ * Terrain generation is stopped, so the chunks are all in the loader's map but have no blocks and every lookup
+ * ends at the chunk. This measures finding the chunk and the position in it; what reading the block itself
+ * costs is in {@link BlockStorageBenchmark}.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.BlockLookupBenchmark */
+public class BlockLookupBenchmark {
+
+    private static final Vector3f PLAYER = new Vector3f(1000, 105, 1000);
+    private static final long SEED = Long.getLong("seed", 1);
+    private static final int LOOKUPS = 1 << 20;
+    private static final int WARMUP_ROUNDS = 10, ROUNDS = 5;
+
+    private static long sink = 0; // so the lookups can't be optimized away
+
+    public static void main(String[] args) {
+        TerrainGenerator.stop();
+        ChunkScheduler.setViewer(PLAYER, new Vector3f(1, 0, 0));
+        ChunkLoader.start(PLAYER);
+
+        int loadWidth = (2*ChunkLoader.getHorizontalLoadRadius() + 1) * Chunk.SIZE;
+        run("within 8 blocks of the player", 16);
+        run("across the load area, " + loadWidth + " blocks wide", loadWidth);
+        System.out.println("(" + sink + ")");
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+
+    private static void run(String name, float spread) {
+        var random = new Random(SEED);
+        var points = new Vector3f[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            points[i] = new Vector3f(
+                    PLAYER.x + (random.nextFloat() - 0.5f) * spread,
+                    PLAYER.y + (random.nextFloat() - 0.5f) * spread / 2,
+                    PLAYER.z + (random.nextFloat() - 0.5f) * spread);
+        }
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long nanos = 0, bytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long sum = 0;
+            for (var point : points) sum += ChunkLoader.getBlockAt(point);
+            long time = System.nanoTime() - start;
+            sink += sum;
+
+            if (round < WARMUP_ROUNDS) continue;
+            nanos += time;
+            bytes += threads.getThreadAllocatedBytes(thread) - allocated;
+        }
+
+        long lookups = (long) LOOKUPS * ROUNDS;
+        System.out.printf("%s: %.1f ns and %.1f bytes per lookup%n", name, nanos / (double) lookups, bytes / (double) lookups);
+    }
+}
@@ -0,0 +1,147 @@
+package chunk;
+
+import org.joml.Vector3i;
+
+import java.util.Random;
+
+/** How much memory palette compressed BlockStorage saves over a byte per block, and what reading it costs.
+ * The chunks are a seeded box of generated terrain, from the sky down to the caves. Every read is done on the
+ * BlockStorage and on a plain byte[] copy of the same blocks: random single blocks, whole chunks in index order
+ * like the lighting does, and whole rows at a time like the mesher does.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.BlockStorageBenchmark */
+public class BlockStorageBenchmark {
+
+    private static final int SIZE = Integer.getInteger("size", 8); // chunks along x and z
+    private static final int HEIGHT = 6;
+    private static final long SEED = Long.getLong("seed", 42);
+    private static final int RANDOM_READS = 20_000_000;
+    private static final int WARMUP_ROUNDS = 3, ROUNDS = 5;
+
+    private static long sink = 0; // so the reads can't be optimized away
+
+    public static void main(String[] args) {
+        // blocks 0 to 192 high, from the caves up into the sky above the hills
+        var world = TestWorld.generate(new Vector3i(TestWorld.DEFAULT_ORIGIN.x, 0, TestWorld.DEFAULT_ORIGIN.z),
+                SIZE, HEIGHT, SIZE);
+        var chunks = world.getChunks();
+        var storages = new BlockStorage[chunks.length];
+        var arrays = new byte[chunks.length][];
+        for (int i = 0; i < storages.length; i++) {
+            storages[i] = chunks[i].getBlockStorage();
+            arrays[i] = storages[i].toArray();
+        }
+
+        printMemory(storages);
+
+        var random = new Random(SEED);
+        int[] chunkIndices = new int[RANDOM_READS];
+        int[] blockIndices = new int[RANDOM_READS];
+        for (int i = 0; i < RANDOM_READS; i++) {
+            chunkIndices[i] = random.nextInt(storages.length);
+            blockIndices[i] = random.nextInt(BlockStorage.VOLUME);
+        }
+
+        long storageRandom = 0, arrayRandom = 0, storageScan = 0, arrayScan = 0, storageRows = 0, arrayRows = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            randomReads(storages, chunkIndices, blockIndices);
+            long t1 = System.nanoTime();
+            randomReads(arrays, chunkIndices, blockIndices);
+            long t2 = System.nanoTime();
+            scan(storages);
+            long t3 = System.nanoTime();
+            scan(arrays);
+            long t4 = System.nanoTime();
+            rows(storages);
+            long t5 = System.nanoTime();
+            rows(arrays);
+            long t6 = System.nanoTime();
+
+            if (round < WARMUP_ROUNDS) continue;
+            storageRandom += t1 - t0;
+            arrayRandom += t2 - t1;
+            storageScan += t3 - t2;
+            arrayScan += t4 - t3;
+            storageRows += t5 - t4;
+            arrayRows += t6 - t5;
+        }
+
+        long reads = (long) ROUNDS * RANDOM_READS;
+        long scanned = (long) ROUNDS * storages.length * BlockStorage.VOLUME;
+        System.out.println("ns per block read   BlockStorage  byte[]");
+        System.out.printf("  random            %12.2f  %6.2f%n", storageRandom / (double) reads, arrayRandom / (double) reads);
+        System.out.printf("  whole chunk scan  %12.2f  %6.2f%n", storageScan / (double) scanned, arrayScan / (double) scanned);
+        System.out.printf("  rows of %d        %12.2f  %6.2f%n", Chunk.SIZE,
+                storageRows / (double) scanned, arrayRows / (double) scanned);
+        System.out.println("(" + sink + ")");
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+
+    private static void printMemory(BlockStorage[] storages) {
+        long compressed = 0;
+        int[] bitsCount = new int[9];
+        for (var storage : storages) {
+            compressed += storage.getSizeInBytes();
+            bitsCount[storage.getBitsPerBlock()]++;
+        }
+        long uncompressed = (long) storages.length * BlockStorage.VOLUME;
+        System.out.printf("%d chunks: %d KB palette compressed, %d KB as byte[], %.1f%%%n", storages.length,
+                compressed >> 10, uncompressed >> 10, 100.0 * compressed / uncompressed);
+        for (int bits = 0; bits < bitsCount.length; bits++) {
+            if (bitsCount[bits] > 0) System.out.printf("  %d bits per block: %d chunks%n", bits, bitsCount[bits]);
+        }
+    }
+
+    private static void randomReads(BlockStorage[] storages, int[] chunkIndices, int[] blockIndices) {
+        long sum = 0;
+        for (int i = 0; i < chunkIndices.length; i++) sum += storages[chunkIndices[i]].get(blockIndices[i]);
+        sink += sum;
+    }
+
+    private static void randomReads(byte[][] arrays, int[] chunkIndices, int[] blockIndices) {
+        long sum = 0;
+        for (int i = 0; i < chunkIndices.length; i++) sum += arrays[chunkIndices[i]][blockIndices[i]];
+        sink += sum;
+    }
+
+    private static void scan(BlockStorage[] storages) {
+        long sum = 0;
+        for (var storage : storages) {
+            for (int i = 0; i < BlockStorage.VOLUME; i++) sum += storage.get(i);
+        }
+        sink += sum;
+    }
+
+    private static void scan(byte[][] arrays) {
+        long sum = 0;
+        for (var array : arrays) {
+            for (int i = 0; i < BlockStorage.VOLUME; i++) sum += array[i];
+        }
+        sink += sum;
+    }
+
+    private static void rows(BlockStorage[] storages) {
+        long sum = 0;
+        byte[] row = new byte[Chunk.SIZE];
+        for (var storage : storages) {
+            for (int i = 0; i < BlockStorage.VOLUME; i += Chunk.SIZE) {
+                storage.get(i, row, 0, Chunk.SIZE);
+                for (byte block : row) sum += block;
+            }
+        }
+        sink += sum;
+    }
+
+    private static void rows(byte[][] arrays) {
+        long sum = 0;
+        byte[] row = new byte[Chunk.SIZE];
+        for (var array : arrays) {
+            for (int i = 0; i < BlockStorage.VOLUME; i += Chunk.SIZE) {
+                System.arraycopy(array, i, row, 0, Chunk.SIZE);
+                for (byte block : row) sum += block;
+            }
+        }
+        sink += sum;
+    }
+}
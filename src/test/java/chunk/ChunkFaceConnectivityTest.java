@@ -0,0 +1,106 @@
+package chunk;
+
+import block.Block;
+import block.CardinalDirection;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static block.CardinalDirection.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkFaceConnectivityTest {
+
+    private static final byte STONE = Block.STONE.getID();
+    private static final boolean[] opaque = new boolean[256];
+    static { opaque[STONE + 128] = true; }
+
+    private final ChunkFaceConnectivity connectivity = new ChunkFaceConnectivity();
+
+    @Test
+    void solidChunkConnectsNothing() {
+        assertEquals(ChunkFaceConnectivity.NONE, connectivity.compute(filled(STONE), opaque));
+    }
+
+    @Test
+    void airChunkConnectsEverything() {
+        assertEquals(ChunkFaceConnectivity.ALL, connectivity.compute(new byte[BlockStorage.VOLUME], opaque));
+    }
+
+    // the air inside doesn't touch any face
+    @Test
+    void hollowChunkConnectsNothing() {
+        var blocks = filled(STONE);
+        fill(blocks, 1, 1, 1, Chunk.SIZE - 2, Chunk.SIZE - 2, Chunk.SIZE - 2, Block.AIR.getID());
+        assertEquals(ChunkFaceConnectivity.NONE, connectivity.compute(blocks, opaque));
+    }
+
+    @Test
+    void tunnelAlongXOnlyConnectsLeftAndRight() {
+        var blocks = filled(STONE);
+        fill(blocks, 0, 16, 16, Chunk.SIZE - 1, 16, 16, Block.AIR.getID());
+
+        long connections = connectivity.compute(blocks, opaque);
+        assertEquals(faces(LEFT, RIGHT), connections);
+        assertTrue(ChunkFaceConnectivity.connects(connections, LEFT, RIGHT));
+        assertTrue(ChunkFaceConnectivity.connects(connections, RIGHT, LEFT));
+        assertFalse(ChunkFaceConnectivity.connects(connections, LEFT, UP));
+    }
+
+    // two regions that don't meet don't connect each other's faces
+    @Test
+    void separateTunnelsDontConnect() {
+        var blocks = filled(STONE);
+        fill(blocks, 0, 8, 8, Chunk.SIZE - 1, 8, 8, Block.AIR.getID());
+        fill(blocks, 24, 0, 24, 24, Chunk.SIZE - 1, 24, Block.AIR.getID());
+
+        assertEquals(faces(LEFT, RIGHT) | faces(UP, DOWN), connectivity.compute(blocks, opaque));
+    }
+
+    @Test
+    void bendConnectsItsEnds() {
+        var blocks = filled(STONE);
+        fill(blocks, 0, 16, 16, 16, 16, 16, Block.AIR.getID());
+        fill(blocks, 16, 16, 16, 16, 16, Chunk.SIZE - 1, Block.AIR.getID());
+
+        assertEquals(faces(LEFT, BACK), connectivity.compute(blocks, opaque));
+    }
+
+    // the instance is reused from chunk to chunk, the last chunk mustn't change the next one's result
+    @Test
+    void reuseGivesTheSameResult() {
+        var tunnel = filled(STONE);
+        fill(tunnel, 0, 16, 16, Chunk.SIZE - 1, 16, 16, Block.AIR.getID());
+
+        long first = connectivity.compute(tunnel, opaque);
+        connectivity.compute(new byte[BlockStorage.VOLUME], opaque);
+        assertEquals(first, connectivity.compute(tunnel, opaque));
+    }
+
+    // every face in `faces` connecting to every other one and itself
+    private static long faces(int... faces) {
+        long connections = ChunkFaceConnectivity.NONE;
+        for (int from : faces)
+        for (int to : faces)
+        {
+            connections |= 1L << (from * CardinalDirection.COUNT + to);
+        }
+        return connections;
+    }
+
+    private static byte[] filled(byte block) {
+        var blocks = new byte[BlockStorage.VOLUME];
+        Arrays.fill(blocks, block);
+        return blocks;
+    }
+
+    // fills the box from the first corner to the second, both inclusive
+    private static void fill(byte[] blocks, int x0, int y0, int z0, int x1, int y1, int z1, byte block) {
+        for (int x = x0; x <= x1; x++)
+        for (int y = y0; y <= y1; y++)
+        for (int z = z0; z <= z1; z++)
+        {
+            blocks[Chunk.toIndex(x, y, z)] = block;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package chunk;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkFrustumCullerTest {
+
+    private static final Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(70), 16 / 9f, 0.1f, 1000f);
+
+    private static Matrix4f lookAt(float x, float y, float z, float targetX, float targetY, float targetZ) {
+        return new Matrix4f().lookAt(x, y, z, targetX, targetY, targetZ, 0, 1, 0);
+    }
+
+    @Test
+    void lookingDownNegativeZ() {
+        var culler = new ChunkFrustumCuller();
+        culler.update(projection, lookAt(16, 16, 16, 16, 16, -100), -4, 4);
+
+        assertTrue(culler.isVisible(new Vector3i(0, 0, 0)), "the chunk the camera is in");
+        assertTrue(culler.isVisible(new Vector3i(0, 0, -3)), "straight ahead");
+        assertTrue(culler.isVisible(new Vector3i(1, 0, -3)), "ahead and a bit to the right");
+        assertFalse(culler.isVisible(new Vector3i(0, 0, 3)), "behind");
+        assertFalse(culler.isVisible(new Vector3i(-3, 0, 2)), "behind and to the left");
+        assertFalse(culler.isVisible(new Vector3i(10, 0, -1)), "far to the side");
+        assertFalse(culler.isVisible(new Vector3i(0, 4, -1)), "far above");
+    }
+
+    @Test
+    void turningAroundSwapsFrontAndBack() {
+        var culler = new ChunkFrustumCuller();
+        culler.update(projection, lookAt(16, 16, 16, 16, 16, 100), -4, 4);
+
+        assertTrue(culler.isVisible(new Vector3i(0, 0, 3)));
+        assertFalse(culler.isVisible(new Vector3i(0, 0, -3)));
+    }
+
+    @Test
+    void lookingStraightDown() {
+        var culler = new ChunkFrustumCuller();
+        culler.update(projection, new Matrix4f().lookAt(16, 200, 16, 16, 0, 16, 0, 0, -1), -4, 8);
+
+        assertTrue(culler.isVisible(new Vector3i(0, 0, 0)), "below the camera");
+        assertTrue(culler.isVisible(new Vector3i(1, 2, 1)));
+        assertFalse(culler.isVisible(new Vector3i(0, 7, 0)), "above the camera");
+        assertFalse(culler.isVisible(new Vector3i(20, 0, 0)), "far off to the side");
+    }
+
+    @Test
+    void resultsDontLeakIntoTheNextFrame() {
+        var culler = new ChunkFrustumCuller();
+        var chunk = new Vector3i(0, 0, -3);
+
+        culler.update(projection, lookAt(16, 16, 16, 16, 16, -100), -4, 4);
+        assertTrue(culler.isVisible(chunk));
+        culler.update(projection, lookAt(16, 16, 16, 16, 16, 100), -4, 4);
+        assertFalse(culler.isVisible(chunk));
+    }
+
+    // the column test is only a shortcut, it has to agree with testing every chunk on its own
+    @Test
+    void matchesTestingEveryChunk() {
+        var random = new Random(7);
+        var culler = new ChunkFrustumCuller();
+        var frustum = new FrustumIntersection();
+        var pos = new Vector3i();
+
+        for (int camera = 0; camera < 20; camera++) {
+            float x = random.nextFloat() * 200 - 100, y = random.nextFloat() * 100, z = random.nextFloat() * 200 - 100;
+            var view = lookAt(x, y, z, x + random.nextFloat() - 0.5f, y + random.nextFloat() - 0.5f, z + random.nextFloat() - 0.5f);
+            culler.update(projection, view, -4, 8);
+            frustum.set(new Matrix4f(projection).mul(view), false);
+
+            // more columns than the culler's table starts with, so it has to grow
+            for (int cx = -24; cx < 24; cx++)
+            for (int cy = -4; cy <= 8; cy++)
+            for (int cz = -24; cz < 24; cz++)
+            {
+                pos.set(cx, cy, cz);
+                float minX = cx * Chunk.SIZE, minY = cy * Chunk.SIZE, minZ = cz * Chunk.SIZE;
+                boolean expected = frustum.testAab(minX, minY, minZ, minX + Chunk.SIZE, minY + Chunk.SIZE, minZ + Chunk.SIZE);
+                assertEquals(expected, culler.isVisible(pos), "camera " + camera + " chunk " + pos);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package chunk;
+
+import entity.EntityManager;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// ChunkLoader is one static loader, so every test starts its own load area far away from the others'
+class ChunkLoaderTest {
+
+    @TempDir
+    static Path saveDirectory;
+
+    @BeforeAll
+    static void saveToTemporaryDirectory() {
+        ChunkSerializer.setSaveDirectory(saveDirectory);
+    }
+
+    // a chunk can leave the load area after its mesh is made but before the loader hands it to TerrainModelLoader,
+    // its mesh data still holds an off-heap buffer that has to go back to the pool
+    @Test
+    void unloadingGivesBackMeshBuffersThatWereNeverUploaded() throws InterruptedException {
+        MeshBufferPool.freeAll();
+        long bytesBefore = MeshBufferPool.getAllocatedBytes();
+
+        var position = new Vector3f(-20_000, 105, 0);
+        ChunkLoader.setLoadRadius(4, 3);
+        ChunkScheduler.setViewer(position, new Vector3f(1, 0, 0));
+        ChunkLoader.start(position);
+        loadUntilIdle(position);
+
+        // nothing uploads meshes here, so they wait in TerrainModelLoader. put them back where the mesher leaves them
+        int pending = 0;
+        for (var chunk : chunksAround(position, 4, 3)) {
+            if (chunk.getStatus() != Chunk.Status.MESH_LOADING) continue;
+            if (EntityManager.getComponent(chunk, ChunkModelDataComponent.class).getVertices() != null) pending++;
+            chunk.setStatus(Chunk.Status.MESH_GENERATED);
+        }
+        assertTrue(pending > 0, "no chunk got a mesh");
+        assertTrue(MeshBufferPool.getAllocatedBytes() > bytesBefore);
+
+        // far enough that every chunk leaves the load area in one update
+        position.x += 5 * Chunk.SIZE;
+        ChunkLoader.update(position);
+        EntityManager.update();
+        MeshBufferPool.freeAll();
+
+        assertEquals(bytesBefore, MeshBufferPool.getAllocatedBytes());
+        waitForSaves();
+    }
+
+    // the temporary directory can't be deleted while chunks are still being written to it
+    static void waitForSaves() throws InterruptedException {
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (ChunkSerializer.getQueueSize() > 0) {
+            assertTrue(System.nanoTime() < deadline, "the unloaded chunks were never saved");
+            Thread.sleep(5);
+        }
+    }
+
+    // the load radius moves one ring per update, every chunk in the new load area has to be loaded and none outside
+    @Test
+    void loadAreaMatchesTheRadiusAfterGrowingAndShrinking() throws InterruptedException {
+        var position = new Vector3f(20_000, 105, 0);
+        ChunkLoader.setLoadRadius(2, 3);
+        ChunkScheduler.setViewer(position, new Vector3f(1, 0, 0));
+        ChunkLoader.start(position);
+
+        ChunkLoader.setLoadRadius(5, 3);
+        for (int i = 0; i < 3; i++) ChunkLoader.update(position);
+        assertLoadArea(position, 5, 3);
+
+        // once nothing is working on them, nothing else hints the chunks that leave, shrinking has to unload them
+        loadUntilIdle(position);
+        for (var chunk : chunksAround(position, 5, 3)) {
+            if (chunk.getStatus() == Chunk.Status.MESH_LOADING) chunk.setStatus(Chunk.Status.MESH_GENERATED);
+        }
+        ChunkLoader.setLoadRadius(3, 3);
+        for (int i = 0; i < 2; i++) ChunkLoader.update(position);
+        waitForSaves();
+        assertLoadArea(position, 3, 3);
+    }
+
+    // only the chunks near where a level of detail starts are looked at when the player moves,
+    // every chunk in the load area still has to end up with the level for its distance
+    @Test
+    void levelOfDetailFollowsThePlayer() throws InterruptedException {
+        var position = new Vector3f(0, 105, 20_000);
+        ChunkLoader.setLoadRadius(8, 3);
+        ChunkLoader.setLevelOfDetailDistances(2, 2);
+        try {
+            ChunkScheduler.setViewer(position, new Vector3f(1, 0, 0));
+            ChunkLoader.start(position);
+            assertLevelsOfDetail(position);
+
+            int[][] moves = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}, {-2, 0}, {0, -3}, {3, 2}, {-1, -1}};
+            for (var move : moves) {
+                position.x += move[0] * Chunk.SIZE;
+                position.z += move[1] * Chunk.SIZE;
+                ChunkLoader.update(position);
+                assertLevelsOfDetail(position);
+            }
+
+            ChunkLoader.setLevelOfDetailDistances(3, 1);
+            ChunkLoader.update(position);
+            assertLevelsOfDetail(position);
+        } finally {
+            ChunkLoader.setLevelOfDetailDistances(6, 3);
+        }
+        waitForSaves();
+    }
+
+    private static void assertLevelsOfDetail(Vector3f position) {
+        var center = Chunk.worldPosToChunkPos(position);
+        for (var chunk : chunksAround(position, 8, 3)) {
+            var pos = chunk.getChunkGridPos();
+            int distance = Math.max(Math.abs(pos.x - center.x), Math.abs(pos.z - center.z));
+            assertEquals(ChunkLoader.levelOfDetailFor(distance), chunk.getLevelOfDetail(), "chunk " + pos + " at distance " + distance);
+        }
+    }
+
+    // checks the chunks in the box around the position are loaded, and the ones in two rings around it aren't.
+    // unloaded chunks can stay in the map until their neighbors are unloaded too
+    private static void assertLoadArea(Vector3f position, int horizontal, int vertical) {
+        var center = Chunk.worldPosToChunkPos(position);
+        for (int x = center.x - horizontal - 2; x <= center.x + horizontal + 2; x++)
+        for (int y = center.y - vertical - 2; y <= center.y + vertical + 2; y++)
+        for (int z = center.z - horizontal - 2; z <= center.z + horizontal + 2; z++)
+        {
+            boolean inside = Math.abs(x - center.x) <= horizontal
+                          && Math.abs(y - center.y) <= vertical
+                          && Math.abs(z - center.z) <= horizontal;
+            var chunk = ChunkLoader.getChunkAt(x, y, z);
+            boolean loaded = chunk != null && chunk.getStatus() != Chunk.Status.NONE;
+            assertEquals(inside, loaded, "chunk " + x + " " + y + " " + z + (chunk == null ? "" : " " + chunk.getStatus()));
+        }
+    }
+
+    static void loadUntilIdle(Vector3f position) throws InterruptedException {
+        long deadline = System.nanoTime() + 120_000_000_000L;
+        int idle = 0;
+        while (idle < 20) { // some work only gets hinted once an earlier job finishes
+            assertTrue(System.nanoTime() < deadline, "the load area never finished loading");
+            int changed = ChunkLoader.update(position);
+            // nothing uploads the meshes here, so they stay queued in TerrainModelLoader
+            int queued = ChunkLoader.getQueueSize() - TerrainModelLoader.getQueueSize();
+            idle = (changed == 0 && queued == 0) ? idle + 1 : 0;
+            Thread.sleep(5);
+        }
+    }
+
+    static Chunk[] chunksAround(Vector3f position, int horizontal, int vertical) {
+        var center = Chunk.worldPosToChunkPos(position);
+        var chunks = new Chunk[(2*horizontal + 1) * (2*vertical + 1) * (2*horizontal + 1)];
+        int i = 0;
+        for (int x = center.x - horizontal; x <= center.x + horizontal; x++)
+        for (int y = center.y - vertical; y <= center.y + vertical; y++)
+        for (int z = center.z - horizontal; z <= center.z + horizontal; z++)
+        {
+            chunks[i++] = ChunkLoader.getChunkAt(x, y, z);
+        }
+        return chunks;
+    }
+}
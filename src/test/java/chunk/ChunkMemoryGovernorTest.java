@@ -0,0 +1,136 @@
+package chunk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// the pressure comes from mesh buffers taken from the pool, the heap and gpu budgets are too big to matter.
+// nothing else takes mesh buffers here, and without a gl context the gpu arena is empty
+class ChunkMemoryGovernorTest {
+
+    private static final long MESH_BUDGET = 1 << 20;
+    private static final long CHECK_INTERVAL = 2_000_000_001L;
+    private static final long SETTLE = 10_000_000_001L;
+
+    private static long now = 0; // carries on between tests, the governor remembers when it last checked
+
+    private final List<IntBuffer> taken = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MeshBufferPool.freeAll();
+        assertEquals(0, MeshBufferPool.getAllocatedBytes());
+        ChunkMemoryGovernor.setBudgets(Long.MAX_VALUE, MESH_BUDGET, Long.MAX_VALUE);
+        ChunkMemoryGovernor.setRadiusRange(4, 16);
+        ChunkLoader.setLoadRadius(16, ChunkLoader.MIN_VERTICAL_LOAD_RADIUS);
+        now += SETTLE;
+    }
+
+    @AfterEach
+    void tearDown() {
+        setPressure(0);
+    }
+
+    @Test
+    void shrinksByTheSquareRootAndGrowsOneRingAtATime() {
+        setPressure(4);
+        assertEquals(List.of(8, 4, 4), radiiAfterSettling(3)); // halved each time, then held at the minimum
+
+        setPressure(0);
+        assertEquals(List.of(5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 16), radiiAfterSettling(13));
+    }
+
+    @Test
+    void shrinksAtLeastOneRingOverBudget() {
+        setPressure(1.21f); // 16 / 1.1 and 14 / 1.1 round down
+        assertEquals(List.of(14, 12), radiiAfterSettling(2));
+
+        setPressure(1.01f); // the square root is too small to round down a whole ring
+        assertEquals(List.of(11, 10), radiiAfterSettling(2));
+    }
+
+    @Test
+    void onlyGrowsWellUnderBudget() {
+        setPressure(4);
+        radiiAfterSettling(1);
+
+        setPressure(0.8f);
+        assertEquals(List.of(8, 8), radiiAfterSettling(2));
+
+        setPressure(0.6f);
+        assertEquals(List.of(9), radiiAfterSettling(1));
+    }
+
+    @Test
+    void waitsForAGarbageCollectionAfterAChange() {
+        setPressure(4);
+        assertEquals(List.of(8), radiiAfterSettling(1));
+
+        long collections = getCollectionCount();
+        now += CHECK_INTERVAL;
+        ChunkMemoryGovernor.update(now);
+        assumeTrue(collections == getCollectionCount(), "a collection happened on its own");
+        assertEquals(8, ChunkLoader.getHorizontalLoadRadius());
+
+        System.gc();
+        now += CHECK_INTERVAL;
+        ChunkMemoryGovernor.update(now);
+        assertEquals(4, ChunkLoader.getHorizontalLoadRadius());
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        setPressure(4);
+        ChunkMemoryGovernor.setEnabled(false);
+        try {
+            assertEquals(List.of(16, 16), radiiAfterSettling(2));
+        } finally {
+            ChunkMemoryGovernor.setEnabled(true);
+        }
+    }
+
+    @Test
+    void rejectsBadRadiusRanges() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ChunkMemoryGovernor.setRadiusRange(ChunkLoader.MIN_HORIZONTAL_LOAD_RADIUS - 1, 8));
+        assertThrows(IllegalArgumentException.class, () -> ChunkMemoryGovernor.setRadiusRange(8, 7));
+    }
+
+    // the radius after each of `count` checks, each long enough after the last that a change is allowed
+    private static List<Integer> radiiAfterSettling(int count) {
+        var radii = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            now += SETTLE;
+            ChunkMemoryGovernor.update(now);
+            radii.add(ChunkLoader.getHorizontalLoadRadius());
+        }
+        return radii;
+    }
+
+    // takes mesh buffers until they fill `pressure` of the mesh buffer budget
+    private void setPressure(float pressure) {
+        for (var buffer : taken) MeshBufferPool.give(buffer);
+        taken.clear();
+        MeshBufferPool.freeAll();
+
+        int ints = (int) (pressure * MESH_BUDGET / Integer.BYTES);
+        if (ints > 0) taken.add(MeshBufferPool.take(ints));
+        assertEquals(pressure, ChunkMemoryGovernor.getPressure(), 0.001f);
+    }
+
+    private static long getCollectionCount() {
+        long count = 0;
+        for (var collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+}
@@ -0,0 +1,129 @@
+package chunk;
+
+import block.CardinalDirection;
+import block.DiagonalDirection;
+import org.joml.Matrix4f;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import static block.CardinalDirection.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+// the chunks are made by hand with the face connections set directly, nothing is generated
+class ChunkOcclusionCullerTest {
+
+    private static final int SIZE = 7;
+
+    private final Chunk[] chunks = new Chunk[SIZE * SIZE * SIZE];
+    private final ChunkOcclusionCuller culler = new ChunkOcclusionCuller();
+
+    ChunkOcclusionCullerTest() {
+        for (int x = 0; x < SIZE; x++)
+        for (int y = 0; y < SIZE; y++)
+        for (int z = 0; z < SIZE; z++)
+        {
+            chunks[index(x, y, z)] = new Chunk(new Vector3i(x, y, z));
+        }
+        for (var chunk : chunks) {
+            var pos = chunk.getChunkGridPos();
+            for (int dir = 0; dir < DiagonalDirection.COUNT; dir++) {
+                var offset = DiagonalDirection.offsets[dir];
+                var neighbor = get(pos.x + offset.x, pos.y + offset.y, pos.z + offset.z);
+                if (neighbor != null) chunk.setNeighbor(neighbor, dir);
+            }
+        }
+    }
+
+    @Test
+    void seesEverythingInTheOpen() {
+        setAll(ChunkFaceConnectivity.ALL);
+        culler.update(get(3, 3, 3), null);
+        assertEquals(chunks.length, culler.getVisibleCount());
+    }
+
+    // the chunks around the camera's chunk can be seen, their faces towards it, but nothing past them
+    @Test
+    void buriedChunksAreCulled() {
+        setAll(ChunkFaceConnectivity.NONE);
+        culler.update(get(3, 3, 3), null);
+
+        assertEquals(7, culler.getVisibleCount());
+        for (int face = 0; face < CardinalDirection.COUNT; face++) {
+            var offset = CardinalDirection.offsets[face];
+            assertTrue(culler.isVisible(get(3 + offset.x, 3 + offset.y, 3 + offset.z)));
+        }
+        assertFalse(culler.isVisible(get(5, 3, 3)));
+        assertFalse(culler.isVisible(get(4, 4, 3)));
+    }
+
+    @Test
+    void chunksSeenThroughATunnelAreKept() {
+        setAll(ChunkFaceConnectivity.NONE);
+        for (int x = 3; x < 6; x++) get(x, 3, 3).setFaceConnections(faces(LEFT, RIGHT));
+        culler.update(get(3, 3, 3), null);
+
+        for (int x = 3; x < SIZE; x++) assertTrue(culler.isVisible(get(x, 3, 3)), "chunk " + x + " along the tunnel");
+        // the walls of the tunnel don't lead anywhere
+        assertFalse(culler.isVisible(get(5, 4, 3)));
+        assertFalse(culler.isVisible(get(5, 3, 2)));
+        // the way the camera isn't looking through the tunnel is buried
+        assertFalse(culler.isVisible(get(1, 3, 3)));
+    }
+
+    // a tunnel that goes right and then back left comes back to chunks that are behind ground from the camera
+    @Test
+    void neverTurnsBack() {
+        setAll(ChunkFaceConnectivity.NONE);
+        get(4, 3, 3).setFaceConnections(faces(LEFT, BACK));
+        get(4, 3, 4).setFaceConnections(faces(FRONT, BACK));
+        get(4, 3, 5).setFaceConnections(faces(FRONT, LEFT));
+        get(3, 3, 5).setFaceConnections(faces(RIGHT, LEFT));
+        culler.update(get(3, 3, 3), null);
+
+        assertTrue(culler.isVisible(get(4, 3, 5)));
+        assertFalse(culler.isVisible(get(3, 3, 5)));
+    }
+
+    @Test
+    void skipsChunksOutsideTheFrustum() {
+        setAll(ChunkFaceConnectivity.ALL);
+        var frustumCuller = new ChunkFrustumCuller();
+        var projection = new Matrix4f().perspective((float) Math.toRadians(70), 16 / 9f, 0.1f, 1000f);
+        float center = 3.5f * Chunk.SIZE;
+        frustumCuller.update(projection, new Matrix4f().lookAt(center, center, center, center, center, -100, 0, 1, 0), 0, SIZE);
+        culler.update(get(3, 3, 3), frustumCuller);
+
+        assertTrue(culler.isVisible(get(3, 3, 0)), "straight ahead");
+        assertFalse(culler.isVisible(get(3, 3, 6)), "behind");
+    }
+
+    @Test
+    void findChunkWalksToTheTarget() {
+        assertSame(get(6, 0, 5), ChunkOcclusionCuller.findChunk(get(1, 4, 2), new Vector3i(6, 0, 5)));
+        assertNull(ChunkOcclusionCuller.findChunk(get(1, 4, 2), new Vector3i(9, 0, 5)));
+    }
+
+    private void setAll(long connections) {
+        for (var chunk : chunks) chunk.setFaceConnections(connections);
+    }
+
+    // every face in `faces` connecting to every other one and itself, like ChunkFaceConnectivity gives for a tunnel
+    private static long faces(int... faces) {
+        long connections = ChunkFaceConnectivity.NONE;
+        for (int from : faces)
+        for (int to : faces)
+        {
+            connections |= 1L << (from * CardinalDirection.COUNT + to);
+        }
+        return connections;
+    }
+
+    private Chunk get(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE) return null;
+        return chunks[index(x, y, z)];
+    }
+
+    private static int index(int x, int y, int z) {
+        return (x * SIZE + y) * SIZE + z;
+    }
+}
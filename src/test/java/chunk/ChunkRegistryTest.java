@@ -0,0 +1,159 @@
+package chunk;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkRegistryTest {
+
+    @Test
+    void putGetAndRemove() {
+        var registry = new ChunkRegistry(16);
+        var chunk = new Chunk(new Vector3i(1, -2, 3));
+
+        assertNull(registry.get(chunk.getKey()));
+        assertNull(registry.put(chunk));
+        assertSame(chunk, registry.get(Chunk.toKey(1, -2, 3)));
+        assertEquals(1, registry.size());
+
+        assertTrue(registry.remove(chunk));
+        assertFalse(registry.remove(chunk));
+        assertNull(registry.get(chunk.getKey()));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void putReplacesTheChunkWithTheSameKey() {
+        var registry = new ChunkRegistry(16);
+        var first = new Chunk(new Vector3i(5, 5, 5));
+        var second = new Chunk(new Vector3i(5, 5, 5));
+
+        registry.put(first);
+        assertSame(first, registry.put(second));
+        assertSame(second, registry.get(second.getKey()));
+        assertEquals(1, registry.size());
+
+        // the replaced chunk doesn't remove its successor
+        assertFalse(registry.remove(first));
+        assertSame(second, registry.get(second.getKey()));
+    }
+
+    @Test
+    void growsPastItsExpectedSize() {
+        var registry = new ChunkRegistry(4);
+        var chunks = new ArrayList<Chunk>();
+        for (int x = -10; x < 10; x++)
+        for (int z = -10; z < 10; z++)
+        {
+            var chunk = new Chunk(new Vector3i(x, 0, z));
+            chunks.add(chunk);
+            registry.put(chunk);
+        }
+
+        assertEquals(chunks.size(), registry.size());
+        for (var chunk : chunks) {
+            assertSame(chunk, registry.get(chunk.getKey()));
+        }
+        assertNull(registry.get(Chunk.toKey(10, 0, 10)));
+
+        var seen = new HashSet<Chunk>();
+        registry.forEach(seen::add);
+        assertEquals(new HashSet<>(chunks), seen);
+    }
+
+    @Test
+    void removingWhileIteratingIsFine() {
+        var registry = new ChunkRegistry(16);
+        for (int x = 0; x < 100; x++) registry.put(new Chunk(new Vector3i(x, 0, 0)));
+
+        registry.forEach(chunk -> {
+            if (chunk.getChunkGridPos().x % 2 == 0) registry.remove(chunk);
+        });
+        assertEquals(50, registry.size());
+        for (int x = 0; x < 100; x++) {
+            assertEquals(x % 2 == 1, registry.get(Chunk.toKey(x, 0, 0)) != null);
+        }
+    }
+
+    // one thread loads and unloads chunks in bursts, like ChunkLoader's update thread does when the player moves,
+    // while three others look chunks up. chunks that are never unloaded must always be found, and whatever is
+    // found must be the chunk that was asked for. the writer starts with a small table, so it rehashes under the readers
+    @Test
+    void concurrentLoadUnloadAndLookup() throws InterruptedException {
+        int count = 20_000, pinnedCount = 2000;
+        var pool = new Chunk[count];
+        for (int i = 0; i < count; i++) {
+            pool[i] = new Chunk(new Vector3i(i % 100 * 3 + 100_000, i / 100 % 20 * 3 - 5000, i / 2000 * 3 - 700_000));
+        }
+
+        var registry = new ChunkRegistry(16);
+        var model = new HashSet<Chunk>();
+        for (int i = 0; i < pinnedCount; i++) {
+            registry.put(pool[i]);
+            model.add(pool[i]);
+        }
+
+        var stop = new AtomicBoolean(false);
+        var errors = new AtomicLong();
+        var lookups = new AtomicLong();
+        var readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            int seed = t;
+            readers[t] = new Thread(() -> {
+                var random = new Random(seed);
+                while (!stop.get()) {
+                    var chunk = pool[random.nextInt(count)];
+                    var found = registry.get(chunk.getKey());
+                    if (found != null && found != chunk) errors.incrementAndGet();
+
+                    var pinned = pool[random.nextInt(pinnedCount)];
+                    if (registry.get(pinned.getKey()) != pinned) errors.incrementAndGet();
+
+                    // chunks that stay loaded are seen by a forEach running beside the writer, even through a rehash
+                    if (random.nextInt(10_000) == 0) {
+                        var seen = new HashSet<Chunk>();
+                        registry.forEach(seen::add);
+                        for (int i = 0; i < pinnedCount; i++) {
+                            if (!seen.contains(pool[i])) errors.incrementAndGet();
+                        }
+                    }
+                    lookups.addAndGet(2);
+                }
+            });
+            readers[t].start();
+        }
+
+        var random = new Random(42);
+        long end = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 500; i++) {
+                var chunk = pool[pinnedCount + random.nextInt(count - pinnedCount)];
+                if (random.nextBoolean()) {
+                    registry.put(chunk);
+                    model.add(chunk);
+                } else {
+                    assertEquals(model.remove(chunk), registry.remove(chunk));
+                }
+            }
+        }
+        stop.set(true);
+        for (var reader : readers) reader.join();
+
+        assertEquals(0, errors.get(), "bad lookups out of " + lookups.get());
+        assertTrue(lookups.get() > 0);
+        for (var chunk : pool) {
+            assertEquals(model.contains(chunk), registry.get(chunk.getKey()) == chunk);
+        }
+        assertEquals(model.size(), registry.size());
+        var seen = new HashSet<Chunk>();
+        registry.forEach(seen::add);
+        assertEquals(model, seen);
+    }
+}
@@ -0,0 +1,126 @@
+package chunk;
+
+import entity.EntityManager;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/** How soon the chunks around the player are ready, on a headless run of the chunk loader with 16 ms frames.
+ * Nothing is uploaded to GL, a chunk counts as ready once its mesh has been generated.
+ *
+ * First the time until the 5x3x5 chunks around the starting position are ready, then a flight in +x at a constant
+ * speed: every time the player enters a chunk, the delay until the 5x3x5 chunks 3 chunks ahead are ready.
+ * The terrain is seeded, so every run loads the same world.
+ *
+ * Chunks that leave the load area are saved to src/main/resources/world relative to the working directory,
+ * so the flight runs in its own jvm in an empty temporary directory.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.FlightBenchmark
+ * The speed in blocks per second and the length of the flight in seconds can be set with -Dspeed and -Dseconds. */
+public class FlightBenchmark {
+
+    private static final int FRAME_MILLIS = 16;
+    private static final float SPEED = Float.parseFloat(System.getProperty("speed", "6"));
+    private static final int SECONDS = Integer.getInteger("seconds", 30);
+    private static final Vector3f START = new Vector3f(1000, 105, 1000);
+    private static final int AHEAD = 3; // chunks
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            fly();
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("flight");
+        Files.createDirectories(directory.resolve("src/main/resources/world"));
+        try {
+            var process = new ProcessBuilder(
+                    System.getProperty("java.home") + "/bin/java",
+                    "-Xmx2g",
+                    "-Dorg.lwjgl.system.allocator=system",
+                    "-Dspeed=" + SPEED,
+                    "-Dseconds=" + SECONDS,
+                    "-cp", System.getProperty("java.class.path"),
+                    FlightBenchmark.class.getName(), "child")
+                    .directory(directory.toFile())
+                    .inheritIO()
+                    .start();
+            process.waitFor();
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void fly() throws InterruptedException {
+        var position = new Vector3f(START);
+        var direction = new Vector3f(1, 0, 0);
+
+        long start = System.nanoTime();
+        ChunkScheduler.setViewer(position, direction);
+        ChunkLoader.start(position);
+        while (!isReady(position, 0)) frame(position, direction);
+        System.out.printf("chunks around the start ready after %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+        int lastChunkX = Chunk.worldPosToChunkPos(position).x;
+        long enteredAt = System.nanoTime();
+        boolean waiting = true;
+        double totalDelay = 0, maxDelay = 0;
+        int ready = 0, late = 0;
+
+        long flightStart = System.nanoTime();
+        while (System.nanoTime() - flightStart < SECONDS * 1_000_000_000L) {
+            position.x += SPEED * FRAME_MILLIS / 1000f;
+            frame(position, direction);
+
+            int chunkX = Chunk.worldPosToChunkPos(position).x;
+            if (chunkX != lastChunkX) {
+                if (waiting) late++;
+                lastChunkX = chunkX;
+                enteredAt = System.nanoTime();
+                waiting = true;
+            }
+            if (waiting && isReady(position, AHEAD)) {
+                double delay = (System.nanoTime() - enteredAt) / 1e6;
+                totalDelay += delay;
+                maxDelay = Math.max(maxDelay, delay);
+                ready++;
+                waiting = false;
+            }
+        }
+
+        System.out.printf("flying %.0f blocks/s for %d s: %d rings %d chunks ahead ready, avg %.0f ms, max %.0f ms " +
+                "after entering a chunk, %d not ready before the next chunk%n",
+                SPEED, SECONDS, ready, AHEAD, ready == 0 ? 0 : totalDelay / ready, maxDelay, late);
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+
+    private static void frame(Vector3f position, Vector3f direction) throws InterruptedException {
+        EntityManager.update();
+        ChunkScheduler.setViewer(position, direction);
+        ChunkLoader.update(position);
+        Thread.sleep(FRAME_MILLIS);
+    }
+
+    /** Whether the 5x3x5 chunks around the one `ahead` chunks in front of the position have their meshes. */
+    private static boolean isReady(Vector3f position, int ahead) {
+        var center = Chunk.worldPosToChunkPos(position);
+        for (int dx = -2; dx <= 2; dx++)
+        for (int dy = -1; dy <= 1; dy++)
+        for (int dz = -2; dz <= 2; dz++)
+        {
+            var chunk = ChunkLoader.getChunkAt(new Vector3i(center.x + dx + ahead, center.y + dy, center.z + dz));
+            if (chunk == null || chunk.getStatus().urgency < Chunk.Status.MESH_GENERATED.urgency) return false;
+        }
+        return true;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package chunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Chunks lit per second on the LightMapGenerator thread pool, for different numbers of threads, and on one thread
+ * without the pool. The pool sizes itself from the number of processors, so every thread count is run in its own
+ * jvm that is told it has that many processors plus the two the pool leaves free.
+ *
+ * The world is a seeded 8x4x8 box of generated chunks, added top layer first like the loader does.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.LightBenchmark
+ * The thread counts can be set with -Dbench.options=-Dthreads=1,2,4,8, more threads than processors only shows what the pool costs. */
+public class LightBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3, ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            runRounds();
+            return;
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println(processors + " processors");
+        List<Integer> threadCounts = new ArrayList<>();
+        if (System.getProperty("threads") != null) {
+            for (String threads : System.getProperty("threads").split(",")) threadCounts.add(Integer.parseInt(threads));
+        } else {
+            for (int threads = 1; threads <= Math.max(1, processors - 2); threads *= 2) threadCounts.add(threads);
+            if (processors - 2 > threadCounts.get(threadCounts.size() - 1)) threadCounts.add(processors - 2);
+        }
+
+        for (int threads : threadCounts) {
+            var process = new ProcessBuilder(
+                    System.getProperty("java.home") + "/bin/java",
+                    "-XX:ActiveProcessorCount=" + (threads + 2),
+                    "-Dorg.lwjgl.system.allocator=system",
+                    "-cp", System.getProperty("java.class.path"),
+                    LightBenchmark.class.getName(), "child")
+                    .redirectErrorStream(true)
+                    .start();
+            for (String line : process.inputReader().lines().toList()) {
+                if (line.startsWith("result ")) System.out.println(line.substring("result ".length()));
+            }
+            process.waitFor();
+        }
+    }
+
+    private static void runRounds() throws InterruptedException {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 8, 4, 8);
+        var chunks = topDown(world);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            lightSerial(chunks);
+            lightPooled(chunks);
+        }
+
+        long serial = 0, pooled = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            serial += lightSerial(chunks);
+            pooled += lightPooled(chunks);
+        }
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        double serialRate = chunks.size() * ROUNDS / (serial / 1e9);
+        double pooledRate = chunks.size() * ROUNDS / (pooled / 1e9);
+        System.out.printf("result %2d threads: %6.0f chunks/s pooled, %6.0f chunks/s one at a time, %.2fx%n",
+                threads, pooledRate, serialRate, pooledRate / serialRate);
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+
+    private static long lightSerial(List<Chunk> chunks) {
+        clearLight(chunks);
+        long start = System.nanoTime();
+        for (var chunk : chunks) LightMapGenerator.loadChunk(chunk);
+        return System.nanoTime() - start;
+    }
+
+    private static long lightPooled(List<Chunk> chunks) throws InterruptedException {
+        clearLight(chunks);
+        long start = System.nanoTime();
+        for (var chunk : chunks) LightMapGenerator.addChunk(chunk);
+        while (LightMapGenerator.getQueueSize() > 0) Thread.sleep(1); // spinning would take the core from a worker
+        return System.nanoTime() - start;
+    }
+
+    private static List<Chunk> topDown(TestWorld world) {
+        var chunks = new ArrayList<Chunk>();
+        for (int y = world.sizeY - 1; y >= 0; y--)
+        for (int x = 0; x < world.sizeX; x++)
+        for (int z = 0; z < world.sizeZ; z++)
+        {
+            chunks.add(world.get(x, y, z));
+        }
+        return chunks;
+    }
+
+    private static void clearLight(List<Chunk> chunks) {
+        for (var chunk : chunks) chunk.setColours(new byte[BlockStorage.VOLUME]);
+    }
+}
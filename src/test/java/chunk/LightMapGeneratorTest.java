@@ -0,0 +1,184 @@
+package chunk;
+
+import block.Block;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LightMapGeneratorTest {
+
+    // lighting chunks on the thread pool has to give exactly the same light as lighting them one at a time
+    // in the order they were added, however the jobs overlap. the order is shuffled so there are plenty of
+    // neighbors queued right behind each other
+    @Test
+    void poolMatchesLightingOneAtATime() throws InterruptedException {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 6, 4, 6);
+        var chunks = world.getChunks();
+
+        for (long seed = 0; seed < 3; seed++) {
+            List<Chunk> order = new ArrayList<>(List.of(chunks));
+            Collections.shuffle(order, new Random(seed));
+
+            clearLight(chunks);
+            for (var chunk : order) LightMapGenerator.loadChunk(chunk);
+            var expected = new byte[chunks.length][];
+            for (int i = 0; i < chunks.length; i++) expected[i] = chunks[i].getColours().clone();
+
+            clearLight(chunks);
+            for (var chunk : order) LightMapGenerator.addChunk(chunk);
+            waitForPool();
+
+            for (int i = 0; i < chunks.length; i++) {
+                assertArrayEquals(expected[i], chunks[i].getColours(), "seed " + seed + " chunk " + chunks[i].getChunkGridPos());
+            }
+        }
+    }
+
+    // loadChunk runs on the calling thread, but still has to wait for the chunks added before it that overlap it,
+    // so mixing it in with the pool gives the same light as lighting everything one at a time
+    @Test
+    void loadChunkWaitsForEarlierChunks() throws InterruptedException {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 6, 4, 6);
+        var chunks = world.getChunks();
+
+        for (long seed = 0; seed < 3; seed++) {
+            List<Chunk> order = new ArrayList<>(List.of(chunks));
+            Collections.shuffle(order, new Random(seed));
+
+            clearLight(chunks);
+            for (var chunk : order) LightMapGenerator.loadChunk(chunk);
+            var expected = new byte[chunks.length][];
+            for (int i = 0; i < chunks.length; i++) expected[i] = chunks[i].getColours().clone();
+
+            clearLight(chunks);
+            for (int i = 0; i < order.size(); i++) {
+                if (i % 8 == 7) LightMapGenerator.loadChunk(order.get(i));
+                else LightMapGenerator.addChunk(order.get(i));
+            }
+            waitForPool();
+
+            for (int i = 0; i < chunks.length; i++) {
+                assertArrayEquals(expected[i], chunks[i].getColours(), "seed " + seed + " chunk " + chunks[i].getChunkGridPos());
+            }
+        }
+    }
+
+    // the light has to stay byte for byte what the single threaded propagation from before gave,
+    // in the loader's top down order and in a shuffled one
+    @Test
+    void poolMatchesTheOriginalPropagation() throws InterruptedException {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 6, 4, 6);
+        var chunks = world.getChunks();
+
+        var topDown = new ArrayList<Chunk>();
+        for (int y = world.sizeY - 1; y >= 0; y--)
+        for (int x = 0; x < world.sizeX; x++)
+        for (int z = 0; z < world.sizeZ; z++)
+        {
+            topDown.add(world.get(x, y, z));
+        }
+        var shuffled = new ArrayList<>(topDown);
+        Collections.shuffle(shuffled, new Random(1));
+
+        for (var order : List.of(topDown, shuffled)) {
+            clearLight(chunks);
+            for (var chunk : order) OriginalLightMapGenerator.loadChunk(chunk);
+            var expected = new byte[chunks.length][];
+            for (int i = 0; i < chunks.length; i++) expected[i] = chunks[i].getColours().clone();
+
+            clearLight(chunks);
+            for (var chunk : order) LightMapGenerator.addChunk(chunk);
+            waitForPool();
+
+            String name = order == topDown ? "top down" : "shuffled";
+            for (int i = 0; i < chunks.length; i++) {
+                assertArrayEquals(expected[i], chunks[i].getColours(), name + ", chunk " + chunks[i].getChunkGridPos());
+            }
+        }
+    }
+
+    // changing blocks one at a time has to give the same light as lighting the changed world from scratch.
+    // the shaft goes down through more chunks than the 3x3x3 around the top one, so covering it has to darken
+    // chunks below the ones updateBlock starts with.
+    // lighting from scratch doesn't bring light up into a chunk from the one below, or sideways into a chunk lit
+    // before the one it comes from, so the ground is flat and the other changes are kept inside one chunk
+    @Test
+    void updatingBlocksMatchesRelighting() {
+        var origin = new Vector3i(30, -2, 30);
+        int ground = (origin.y + 5) * Chunk.SIZE + 4;
+        var world = TestWorld.generate(origin, 3, 7, 3).flatten(ground).light();
+        int x = (origin.x + 1) * Chunk.SIZE + Chunk.SIZE / 2;
+        int z = (origin.z + 1) * Chunk.SIZE + Chunk.SIZE / 2;
+        int bottom = (origin.y + 1) * Chunk.SIZE + 1;
+
+        for (int y = ground - 1; y >= bottom; y--) setBlock(world, x, y, z, Block.AIR);
+        assertMatchesRelighting(world, "after digging the shaft");
+        setBlock(world, x, ground - 1, z, Block.STONE);
+        assertMatchesRelighting(world, "after covering the shaft");
+        setBlock(world, x, ground - 1, z, Block.AIR);
+        assertMatchesRelighting(world, "after opening the shaft again");
+
+        // around the top of the shaft, in the chunk's rows 1 to 12
+        var random = new Random(1);
+        for (int i = 1; i <= 200; i++) {
+            int bx = x + random.nextInt(5) - 2, by = ground - 3 + random.nextInt(12), bz = z + random.nextInt(5) - 2;
+            setBlock(world, bx, by, bz, random.nextBoolean() ? Block.STONE : Block.AIR);
+            if (i % 50 == 0) assertMatchesRelighting(world, "after " + i + " random changes");
+        }
+    }
+
+    private static byte getBlock(TestWorld world, int x, int y, int z) {
+        var chunk = world.getAt(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS);
+        return chunk.getBlock(x & (Chunk.SIZE - 1), y & (Chunk.SIZE - 1), z & (Chunk.SIZE - 1));
+    }
+
+    // the way ChunkLoader.setBlockAt does it
+    private static void setBlock(TestWorld world, int x, int y, int z, Block block) {
+        var chunk = world.getAt(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS);
+        var blockPos = Chunk.worldPosToBlockPos(x, y, z);
+        chunk.setBlockSafe(blockPos, block.getID());
+        LightMapGenerator.updateBlock(chunk, blockPos.x, blockPos.y, blockPos.z);
+    }
+
+    // only the blocks light can pass through, the light inside solid blocks is never shown
+    private static void assertMatchesRelighting(TestWorld world, String when) {
+        var chunks = world.getChunks();
+        var updated = new byte[chunks.length][];
+        for (int i = 0; i < chunks.length; i++) updated[i] = chunks[i].getColours();
+
+        clearLight(chunks);
+        world.light();
+        for (int i = 0; i < chunks.length; i++) {
+            var relit = chunks[i].getColours();
+            var blocks = chunks[i].getBlockStorage();
+            for (int j = 0; j < BlockStorage.VOLUME; j++) {
+                if (!Block.getBlock(blocks.get(j)).getHasTransparentFace()) continue;
+                int expected = Chunk.getSky(relit[j]), actual = Chunk.getSky(updated[i][j]);
+                if (expected != actual) {
+                    fail(when + ", chunk " + chunks[i].getChunkGridPos() + " block " + j + " has light " + actual
+                            + " instead of " + expected);
+                }
+            }
+        }
+        // carry on from the updated light, so mistakes add up instead of being wiped out
+        for (int i = 0; i < chunks.length; i++) chunks[i].setColours(updated[i]);
+    }
+
+    private static void waitForPool() throws InterruptedException {
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (LightMapGenerator.getQueueSize() > 0) {
+            assertTrue(System.nanoTime() < deadline, "the lighting queue never emptied");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void clearLight(Chunk[] chunks) {
+        for (var chunk : chunks) chunk.setColours(new byte[BlockStorage.VOLUME]);
+    }
+}
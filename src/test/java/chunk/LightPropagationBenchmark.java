@@ -0,0 +1,95 @@
+package chunk;
+
+import block.Block;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** How many light search nodes per second LightMapGenerator gets through on one thread, and how much it allocates.
+ * A node is one block put in the queue of a breadth first search, see {@link LightMapGenerator#getQueuedNodeCount}.
+ *
+ * Two kinds of work on a seeded 8x4x8 box of generated chunks: lighting every chunk from scratch, top layer first
+ * like the loader does, and digging out the top block of random columns and putting it back, which goes through the
+ * incremental {@link LightMapGenerator#updateBlock} like the player does.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.LightPropagationBenchmark */
+public class LightPropagationBenchmark {
+
+    private static final long SEED = Long.getLong("seed", 42);
+    private static final int EDITS = 2000;
+    private static final int WARMUP_ROUNDS = 3, ROUNDS = 5;
+
+    public static void main(String[] args) {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 8, 4, 8);
+        var chunks = topDown(world);
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long lightNodes = 0, lightNanos = 0, lightBytes = 0, editNodes = 0, editNanos = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            for (var chunk : chunks) chunk.setColours(new byte[BlockStorage.VOLUME]);
+            long nodes = LightMapGenerator.getQueuedNodeCount();
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (var chunk : chunks) LightMapGenerator.loadChunk(chunk);
+            long lightTime = System.nanoTime() - start;
+            long lightAllocated = threads.getThreadAllocatedBytes(thread) - allocated;
+            long lightCount = LightMapGenerator.getQueuedNodeCount() - nodes;
+
+            var random = new Random(SEED + round);
+            nodes = LightMapGenerator.getQueuedNodeCount();
+            start = System.nanoTime();
+            for (int i = 0; i < EDITS; i++) digAndRefill(world, random);
+            long editTime = System.nanoTime() - start;
+            long editCount = LightMapGenerator.getQueuedNodeCount() - nodes;
+
+            if (round < WARMUP_ROUNDS) continue;
+            lightNodes += lightCount;
+            lightNanos += lightTime;
+            lightBytes += lightAllocated;
+            editNodes += editCount;
+            editNanos += editTime;
+        }
+
+        System.out.printf("lighting %d chunks: %.1f M nodes/s, %.0f nodes per chunk, %.0f chunks/s, %d bytes allocated per chunk%n",
+                chunks.size(), lightNodes / (lightNanos / 1e3), lightNodes / (double) (chunks.size() * ROUNDS),
+                chunks.size() * ROUNDS / (lightNanos / 1e9), lightBytes / (chunks.size() * ROUNDS));
+        System.out.printf("digging and refilling %d blocks: %.1f M nodes/s, %.0f nodes per block, %.1f us per block%n",
+                EDITS, editNodes / (editNanos / 1e3), editNodes / (double) (EDITS * ROUNDS),
+                editNanos / 1e3 / (EDITS * ROUNDS));
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+
+    /** Digs out the highest block of a random column away from the edges of the world, then puts it back. */
+    private static void digAndRefill(TestWorld world, Random random) {
+        int cx = 1 + random.nextInt(world.sizeX - 2), cz = 1 + random.nextInt(world.sizeZ - 2);
+        int x = random.nextInt(Chunk.SIZE), z = random.nextInt(Chunk.SIZE);
+        for (int cy = world.sizeY - 1; cy >= 0; cy--) {
+            var chunk = world.get(cx, cy, cz);
+            for (int y = Chunk.SIZE - 1; y >= 0; y--) {
+                byte block = chunk.getBlock(x, y, z);
+                if (block == Block.AIR.getID()) continue;
+
+                chunk.setBlock(x, y, z, Block.AIR.getID());
+                LightMapGenerator.updateBlock(chunk, x, y, z);
+                chunk.setBlock(x, y, z, block);
+                LightMapGenerator.updateBlock(chunk, x, y, z);
+                return;
+            }
+        }
+    }
+
+    private static List<Chunk> topDown(TestWorld world) {
+        var chunks = new ArrayList<Chunk>();
+        for (int y = world.sizeY - 1; y >= 0; y--)
+        for (int x = 0; x < world.sizeX; x++)
+        for (int z = 0; z < world.sizeZ; z++)
+        {
+            chunks.add(world.get(x, y, z));
+        }
+        return chunks;
+    }
+}
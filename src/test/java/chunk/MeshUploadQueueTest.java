@@ -0,0 +1,124 @@
+package chunk;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the queue is driven through a fake backend, there's no opengl here
+class MeshUploadQueueTest {
+
+    private final FakeBackend backend = new FakeBackend();
+    private final MeshUploadQueue queue = new MeshUploadQueue(backend);
+
+    @Test
+    void uploadsInOrderUntilTheBudgetIsUsed() {
+        var chunks = add(400, 400, 400, 400, 400);
+
+        assertEquals(800, queue.process(1000));
+        assertEquals(List.of(chunks[0], chunks[1]), backend.uploaded);
+        assertEquals(800, queue.process(1000));
+        assertEquals(400, queue.process(1000));
+        assertEquals(List.of(chunks), backend.uploaded);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void fillsTheBudgetExactly() {
+        add(600, 400, 1);
+        assertEquals(1000, queue.process(1000));
+        assertEquals(1, queue.size());
+    }
+
+    // otherwise a mesh bigger than the budget would never go
+    @Test
+    void firstUploadOfAFrameAlwaysGoes() {
+        var chunks = add(5000, 100);
+
+        assertEquals(5000, queue.process(1000));
+        assertEquals(List.of(chunks[0]), backend.uploaded);
+        assertEquals(100, queue.process(1000));
+    }
+
+    @Test
+    void backsOffWhenTheBackendHasNoRoom() {
+        var chunks = add(300, 300, 300);
+        backend.room = 500;
+
+        assertEquals(300, queue.process(1000));
+        assertEquals(0, queue.process(1000), "no room left, not even for the first upload of the frame");
+        assertEquals(2, queue.size());
+
+        backend.room = 1000; // the gpu is done with the earlier uploads
+        assertEquals(600, queue.process(1000));
+        assertEquals(List.of(chunks), backend.uploaded);
+    }
+
+    // a smaller mesh behind the one that has to wait doesn't go first
+    @Test
+    void keepsTheOrderWhenBackingOff() {
+        var chunks = add(800, 100);
+        backend.room = 500;
+
+        assertEquals(0, queue.process(1000));
+        assertTrue(backend.uploaded.isEmpty());
+
+        backend.room = 1000;
+        queue.process(1000);
+        assertEquals(List.of(chunks), backend.uploaded);
+    }
+
+    @Test
+    void endsEveryFrame() {
+        queue.process(1000);
+        add(5000, 5000);
+        queue.process(1000);
+        backend.room = 0;
+        queue.process(1000);
+        assertEquals(3, backend.frames);
+    }
+
+    // queues chunks with meshes of these sizes in bytes
+    private Chunk[] add(int... sizes) {
+        var chunks = new Chunk[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            chunks[i] = new Chunk(new Vector3i(backend.sizes.size(), 0, 0));
+            backend.sizes.put(chunks[i], sizes[i]);
+            queue.add(chunks[i]);
+        }
+        return chunks;
+    }
+
+    private static class FakeBackend implements MeshUploadQueue.Backend {
+        final Map<Chunk, Integer> sizes = new HashMap<>();
+        final List<Chunk> uploaded = new ArrayList<>();
+        int room = Integer.MAX_VALUE; // bytes the staging memory can take before the gpu has read it
+        int frames = 0;
+
+        @Override
+        public int getUploadSize(Chunk chunk) {
+            return sizes.get(chunk);
+        }
+
+        @Override
+        public boolean canUpload(int bytes) {
+            return bytes <= room;
+        }
+
+        @Override
+        public void upload(Chunk chunk) {
+            uploaded.add(chunk);
+            room -= sizes.get(chunk);
+        }
+
+        @Override
+        public void endFrame() {
+            frames++;
+        }
+    }
+}
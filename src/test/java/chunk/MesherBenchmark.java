@@ -0,0 +1,48 @@
+package chunk;
+
+import java.util.ArrayList;
+
+/** How long the greedy mesher takes per chunk, and how many quads it makes.
+ * The chunks are the inner ones of a seeded, lit 6x4x6 box of generated terrain, so all of their neighbors exist.
+ * Only the mesh data is made, nothing is uploaded.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.MesherBenchmark */
+public class MesherBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20, ROUNDS = 20;
+
+    public static void main(String[] args) {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 6, 4, 6).light();
+        var chunks = new ArrayList<Chunk>();
+        for (int x = 1; x < world.sizeX - 1; x++)
+        for (int y = 1; y < world.sizeY - 1; y++)
+        for (int z = 1; z < world.sizeZ - 1; z++)
+        {
+            chunks.add(world.get(x, y, z));
+        }
+
+        long quads = 0, nanos = 0, slowest = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long roundQuads = 0, roundNanos = 0, roundSlowest = 0;
+            for (var chunk : chunks) {
+                long start = System.nanoTime();
+                var model = TerrainModelGenerator.generateModelData(chunk);
+                long time = System.nanoTime() - start;
+                roundNanos += time;
+                roundSlowest = Math.max(roundSlowest, time);
+                roundQuads += model.getSize() / (TerrainVertex.INTS_PER_VERTEX * 4);
+                model.release();
+            }
+
+            if (round < WARMUP_ROUNDS) continue;
+            quads += roundQuads;
+            nanos += roundNanos;
+            slowest = Math.max(slowest, roundSlowest);
+        }
+
+        int meshed = chunks.size() * ROUNDS;
+        System.out.printf("%d chunks: %.3f ms per chunk, slowest %.3f ms, %.0f chunks/s, %d quads per chunk%n",
+                chunks.size(), nanos / 1e6 / meshed, slowest / 1e6, meshed / (nanos / 1e9), quads / meshed);
+        System.exit(0); // the generator threads would keep the jvm running
+    }
+}
@@ -0,0 +1,128 @@
+package chunk;
+
+import block.Block;
+import block.CardinalDirection;
+import org.junit.jupiter.api.Test;
+import render.QuadIndexBuffer;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TerrainVertexTest {
+
+    @Test
+    void positionKeepsEveryValue() {
+        int max = Chunk.SIZE; // a face on the far side of the chunk is at 32
+        for (int x = 0; x <= max; x++)
+        for (int y = 0; y <= max; y++)
+        for (int z = 0; z <= max; z++)
+        for (int u = 0; u <= max; u++)
+        for (int v = 0; v <= max; v++)
+        {
+            int position = TerrainVertex.packPosition(x, y, z, u, v);
+            if (TerrainVertex.unpackX(position) != x || TerrainVertex.unpackY(position) != y
+                    || TerrainVertex.unpackZ(position) != z || TerrainVertex.unpackU(position) != u
+                    || TerrainVertex.unpackV(position) != v) {
+                fail("position " + x + " " + y + " " + z + " uv " + u + " " + v);
+            }
+        }
+    }
+
+    @Test
+    void dataKeepsEveryValue() {
+        for (int layer = 0; layer < 4096; layer++)
+        for (int light = 0; light < 256; light++)
+        for (int direction = 0; direction < CardinalDirection.COUNT; direction++)
+        {
+            int data = TerrainVertex.packData(layer, (byte) light, direction);
+            if (TerrainVertex.unpackLayer(data) != layer
+                    || TerrainVertex.unpackBlockLight(data) != Chunk.getBlock((byte) light)
+                    || TerrainVertex.unpackSkyLight(data) != Chunk.getSky((byte) light)
+                    || TerrainVertex.unpackDirection(data) != direction) {
+                fail("layer " + layer + " light " + light + " direction " + direction);
+            }
+        }
+    }
+
+    // every vertex the mesher makes for a piece of generated world, at every level of detail, has to unpack into
+    // values that pack back into the same ints, with the layer of a real texture and the direction it was sorted under
+    @Test
+    void everyGeneratedVertexRoundTrips() {
+        var world = TestWorld.generate(TestWorld.DEFAULT_ORIGIN, 4, 4, 4).light();
+        var layers = textureLayers();
+        int checkedQuads = 0;
+
+        for (int lod = 0; lod <= 3; lod++) // up to ChunkLoader.MAX_LEVEL_OF_DETAIL
+        for (int x = 1; x <= 2; x++)
+        for (int y = 1; y <= 2; y++)
+        for (int z = 1; z <= 2; z++)
+        {
+            var chunk = world.get(x, y, z);
+            chunk.setLevelOfDetail(lod);
+            var model = TerrainModelGenerator.generateModelData(chunk);
+            chunk.setLevelOfDetail(0);
+            if (model.getSize() == 0) continue;
+
+            var vertices = model.getVertices();
+            int quadInts = QuadIndexBuffer.VERTICES_PER_QUAD * TerrainVertex.INTS_PER_VERTEX;
+            int alphaQuads = model.positionsIndices[0] / QuadIndexBuffer.INDICES_PER_QUAD;
+            assertEquals(0, model.getSize() % quadInts);
+
+            for (int quad = 0; quad < model.getSize() / quadInts; quad++) {
+                int direction = quad < alphaQuads ? -1 : directionOf(model, quad);
+                int firstData = vertices.get(quad * quadInts + 1);
+                int minU = Integer.MAX_VALUE, minV = Integer.MAX_VALUE;
+
+                for (int vertex = 0; vertex < QuadIndexBuffer.VERTICES_PER_QUAD; vertex++) {
+                    int position = vertices.get(quad * quadInts + vertex * TerrainVertex.INTS_PER_VERTEX);
+                    int data = vertices.get(quad * quadInts + vertex * TerrainVertex.INTS_PER_VERTEX + 1);
+                    String where = "lod " + lod + " chunk " + chunk.getChunkGridPos() + " quad " + quad + " vertex " + vertex;
+
+                    int px = TerrainVertex.unpackX(position), py = TerrainVertex.unpackY(position), pz = TerrainVertex.unpackZ(position);
+                    int u = TerrainVertex.unpackU(position), v = TerrainVertex.unpackV(position);
+                    assertEquals(position, TerrainVertex.packPosition(px, py, pz, u, v), where);
+                    assertTrue(px <= Chunk.SIZE && py <= Chunk.SIZE && pz <= Chunk.SIZE, where);
+                    assertTrue(u <= Chunk.SIZE && v <= Chunk.SIZE, where);
+                    minU = Math.min(minU, u);
+                    minV = Math.min(minV, v);
+
+                    int layer = TerrainVertex.unpackLayer(data);
+                    byte light = (byte) (TerrainVertex.unpackBlockLight(data) << 4 | TerrainVertex.unpackSkyLight(data));
+                    assertEquals(data, TerrainVertex.packData(layer, light, TerrainVertex.unpackDirection(data)), where);
+                    assertEquals(firstData, data, "the whole face has one layer, light and direction, " + where);
+                    assertTrue(layers.contains(layer), "layer " + layer + ", " + where);
+                    if (direction != -1) assertEquals(direction, TerrainVertex.unpackDirection(data), where);
+                }
+
+                assertEquals(0, minU, "textures start at the quad's corner");
+                assertEquals(0, minV, "textures start at the quad's corner");
+                checkedQuads++;
+            }
+            model.release();
+        }
+
+        assertTrue(checkedQuads > 10_000, "only " + checkedQuads + " quads, the world should have more");
+    }
+
+    // the direction whose part of the mesh the quad is in, see ChunkModelDataComponent.positionsIndices
+    private static int directionOf(ChunkModelDataComponent model, int quad) {
+        int index = quad * QuadIndexBuffer.INDICES_PER_QUAD;
+        int direction = 0;
+        while (direction + 1 < CardinalDirection.COUNT && model.positionsIndices[direction + 1] <= index) direction++;
+        return direction;
+    }
+
+    private static HashSet<Integer> textureLayers() {
+        var layers = new HashSet<Integer>();
+        for (int id = Byte.MIN_VALUE; id <= Byte.MAX_VALUE; id++) {
+            var block = Block.getBlock((byte) id);
+            if (block == null) continue;
+            for (int dir = 0; dir < CardinalDirection.COUNT; dir++) {
+                var face = block.getFace(dir);
+                if (face != null && face.getTextureCoords().length > 2) layers.add((int) face.getTextureCoords()[2]);
+            }
+        }
+        return layers;
+    }
+}
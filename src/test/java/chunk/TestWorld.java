@@ -0,0 +1,116 @@
+package chunk;
+
+import block.Block;
+import block.DiagonalDirection;
+import entity.EntityManager;
+import org.joml.Vector3i;
+
+/** A box of chunks made by the real terrain and structure generators, linked to their neighbors,
+ * for tests and benchmarks. The generators are seeded, so the same box always gets the same blocks.
+ * Chunks only hold weak references to their neighbors, so keep the world around while using its chunks. */
+class TestWorld {
+
+    /** Somewhere with hills, water, caves and trees. */
+    static final Vector3i DEFAULT_ORIGIN = new Vector3i(30, 1, 30);
+
+    final Vector3i origin;
+    final int sizeX, sizeY, sizeZ;
+    private final Chunk[] chunks;
+
+    private TestWorld(Vector3i origin, int sizeX, int sizeY, int sizeZ) {
+        this.origin = new Vector3i(origin);
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.chunks = new Chunk[sizeX * sizeY * sizeZ];
+    }
+
+    /** Generates the blocks of a box of chunks starting at `origin`, in chunk grid coordinates. */
+    static TestWorld generate(Vector3i origin, int sizeX, int sizeY, int sizeZ) {
+        var world = new TestWorld(origin, sizeX, sizeY, sizeZ);
+        for (int x = 0; x < sizeX; x++)
+        for (int y = 0; y < sizeY; y++)
+        for (int z = 0; z < sizeZ; z++)
+        {
+            world.chunks[world.index(x, y, z)] = new Chunk(new Vector3i(origin).add(x, y, z));
+        }
+
+        for (var chunk : world.chunks) {
+            var pos = chunk.getChunkGridPos();
+            for (int dir = 0; dir < DiagonalDirection.COUNT; dir++) {
+                var offset = DiagonalDirection.offsets[dir];
+                var neighbor = world.getAt(pos.x + offset.x, pos.y + offset.y, pos.z + offset.z);
+                if (neighbor != null) chunk.setNeighbor(neighbor, dir);
+            }
+        }
+
+        // structures reach into the neighbors, so all the terrain has to be there first,
+        // and the chunks on the outside don't get any, they would reach past the world
+        for (var chunk : world.chunks) TerrainGenerator.loadChunk(chunk);
+        for (int x = 0; x < sizeX; x++)
+        for (int y = 0; y < sizeY; y++)
+        for (int z = 0; z < sizeZ; z++)
+        {
+            var chunk = world.get(x, y, z);
+            boolean outside = x == 0 || y == 0 || z == 0 || x == sizeX - 1 || y == sizeY - 1 || z == sizeZ - 1;
+            if (!outside) {
+                StructureGenerator.loadChunk(chunk);
+            } else {
+                EntityManager.removeComponent(chunk, TerrainMapDataComponent.class);
+                chunk.setStatus(Chunk.Status.BLOCKS_GENERATED);
+            }
+        }
+        return world;
+    }
+
+    /** Replaces the blocks with stone below the world height `groundY` and air from there up,
+     * for tests that need to know exactly where light can go. */
+    TestWorld flatten(int groundY) {
+        for (var chunk : chunks) {
+            int bottom = chunk.getChunkGridPos().y * Chunk.SIZE;
+            var blocks = new byte[BlockStorage.VOLUME];
+            for (int y = 0; y < Chunk.SIZE && bottom + y < groundY; y++)
+            for (int z = 0; z < Chunk.SIZE; z++)
+            for (int x = 0; x < Chunk.SIZE; x++)
+            {
+                blocks[Chunk.toIndex(x, y, z)] = Block.STONE.getID();
+            }
+            chunk.setBlocks(blocks);
+            chunk.setIsAirChunk(bottom >= groundY);
+        }
+        return this;
+    }
+
+    /** Lights every chunk on the calling thread, top layer first, like the loader does. */
+    TestWorld light() {
+        for (int y = sizeY - 1; y >= 0; y--)
+        for (int x = 0; x < sizeX; x++)
+        for (int z = 0; z < sizeZ; z++)
+        {
+            LightMapGenerator.loadChunk(get(x, y, z));
+        }
+        return this;
+    }
+
+    /** The chunk at `x, y, z` from the origin. */
+    Chunk get(int x, int y, int z) {
+        return chunks[index(x, y, z)];
+    }
+
+    /** The chunk at chunk grid position `x, y, z`, or null if it's outside the world. */
+    Chunk getAt(int x, int y, int z) {
+        x -= origin.x;
+        y -= origin.y;
+        z -= origin.z;
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) return null;
+        return get(x, y, z);
+    }
+
+    Chunk[] getChunks() {
+        return chunks;
+    }
+
+    private int index(int x, int y, int z) {
+        return (x * sizeY + y) * sizeZ + z;
+    }
+}
@@ -0,0 +1,116 @@
+package chunk;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** What a ChunkLoader.update costs the main thread when there is little or nothing to do, at different load radii.
+ *
+ * Stalled: terrain generation is stopped, so every chunk stays waiting for its blocks, like a world that is still far
+ * from loaded. The update is timed with the player standing still, and with the player stepping back and forth
+ * over a chunk border, which loads and unloads a slice of chunks and redoes the level of detail every step.
+ * Loaded: the whole world is generated first, then the update is timed with the player standing still.
+ *
+ * Every case runs in its own jvm, since stopping a generator can't be undone.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=chunk.UpdateBenchmark
+ * The radii can be set with -Dradii=12,32,48 and the loaded world's radius with -DloadedRadius=12. */
+public class UpdateBenchmark {
+
+    private static final Vector3f START = new Vector3f(1000, 105, 1000);
+    private static final int WARMUP_UPDATES = 200, UPDATES = 1000, STEPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            int radius = Integer.parseInt(args[1]);
+            if (args[0].equals("stalled")) stalled(radius);
+            else loaded(radius);
+            System.exit(0); // the generator threads would keep the jvm running
+        }
+
+        List<String[]> cases = new ArrayList<>();
+        for (String radius : System.getProperty("radii", "12,32,48").split(",")) cases.add(new String[]{"stalled", radius});
+        cases.add(new String[]{"loaded", System.getProperty("loadedRadius", "12")});
+
+        for (String[] arguments : cases) {
+            var process = new ProcessBuilder(
+                    System.getProperty("java.home") + "/bin/java",
+                    "-Xmx2g",
+                    "-Dorg.lwjgl.system.allocator=system",
+                    "-cp", System.getProperty("java.class.path"),
+                    UpdateBenchmark.class.getName(), arguments[0], arguments[1])
+                    .redirectErrorStream(true)
+                    .start();
+            process.inputReader().lines()
+                    .filter(line -> line.startsWith("result "))
+                    .forEach(line -> System.out.println(line.substring("result ".length())));
+            process.waitFor();
+        }
+    }
+
+    private static void stalled(int radius) {
+        TerrainGenerator.stop(); // nothing gets past terrain generation, so no chunk can ever move on
+        var position = new Vector3f(START);
+        start(position, radius);
+        for (int i = 0; i < WARMUP_UPDATES; i++) ChunkLoader.update(position);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++) ChunkLoader.update(position);
+        long standing = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < STEPS; i++) {
+            position.x += (i % 2 == 0 ? 1 : -1) * Chunk.SIZE;
+            ChunkLoader.update(position);
+        }
+        long stepping = System.nanoTime() - start;
+
+        System.out.printf("result radius %d, %d chunks, generation stalled: %.1f us per update standing still, " +
+                "%.1f us per update stepping over a chunk border%n",
+                radius, countChunks(radius), standing / 1e3 / UPDATES, stepping / 1e3 / STEPS);
+    }
+
+    private static void loaded(int radius) {
+        var position = new Vector3f(START);
+        start(position, radius);
+        long loadStart = System.nanoTime();
+        int idle = 0;
+        while (idle < 50) { // some work only gets hinted once an earlier job finishes
+            int changed = ChunkLoader.update(position);
+            // nothing uploads the meshes here, so they stay queued in TerrainModelLoader
+            int queued = ChunkLoader.getQueueSize() - TerrainModelLoader.getQueueSize();
+            idle = (changed == 0 && queued == 0) ? idle + 1 : 0;
+            sleep(16);
+        }
+        long loadTime = System.nanoTime() - loadStart;
+        for (int i = 0; i < WARMUP_UPDATES; i++) ChunkLoader.update(position);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++) ChunkLoader.update(position);
+        long standing = System.nanoTime() - start;
+
+        System.out.printf("result radius %d, %d chunks, loaded in %.0f s: %.1f us per update standing still%n",
+                radius, countChunks(radius), loadTime / 1e9, standing / 1e3 / UPDATES);
+    }
+
+    private static void start(Vector3f position, int radius) {
+        ChunkLoader.setLoadRadius(radius, ChunkLoader.getVerticalLoadRadius());
+        ChunkScheduler.setViewer(position, new Vector3f(1, 0, 0));
+        ChunkLoader.start(position);
+    }
+
+    // the box ChunkLoader.start fills
+    private static int countChunks(int radius) {
+        int vertical = ChunkLoader.getVerticalLoadRadius();
+        return (2*radius + 1) * (2*vertical + 1) * (2*radius + 1);
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
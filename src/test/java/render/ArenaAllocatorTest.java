@@ -0,0 +1,137 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArenaAllocatorTest {
+
+    @Test
+    void allocatesFromTheStartUntilFull() {
+        var arena = new ArenaAllocator(100);
+        assertEquals(0, arena.allocate(40));
+        assertEquals(40, arena.allocate(60));
+        assertEquals(-1, arena.allocate(1));
+        assertEquals(100, arena.getUsed());
+        assertEquals(0, arena.getFree());
+    }
+
+    @Test
+    void rejectsEmptyAllocationsAndUnknownFrees() {
+        var arena = new ArenaAllocator(100);
+        assertThrows(IllegalArgumentException.class, () -> arena.allocate(0));
+        assertThrows(IllegalArgumentException.class, () -> arena.free(10));
+    }
+
+    @Test
+    void takesTheSmallestFreeRangeThatFits() {
+        var arena = new ArenaAllocator(100);
+        int a = arena.allocate(30);
+        arena.allocate(10);
+        int c = arena.allocate(10);
+        arena.allocate(50);
+        arena.free(a); // 30 free at 0
+        arena.free(c); // 10 free at 40
+
+        assertEquals(40, arena.allocate(10));
+        assertEquals(0, arena.allocate(20));
+    }
+
+    @Test
+    void mergesFreedNeighbors() {
+        var arena = new ArenaAllocator(90);
+        int a = arena.allocate(30);
+        int b = arena.allocate(30);
+        int c = arena.allocate(30);
+
+        arena.free(a);
+        arena.free(c);
+        assertEquals(30, arena.getLargestFree());
+        arena.free(b);
+        assertEquals(90, arena.getLargestFree());
+        assertEquals(0, arena.getFragmentation());
+        assertEquals(0, arena.allocate(90));
+    }
+
+    @Test
+    void growAddsToTheFreeRangeAtTheEnd() {
+        var arena = new ArenaAllocator(50);
+        arena.allocate(40);
+        arena.grow(100);
+        assertEquals(100, arena.getCapacity());
+        assertEquals(60, arena.getLargestFree());
+        assertEquals(40, arena.allocate(60));
+
+        arena.grow(80); // never shrinks
+        assertEquals(100, arena.getCapacity());
+    }
+
+    @Test
+    void compactPacksAllocationsInOrder() {
+        var arena = new ArenaAllocator(100);
+        int a = arena.allocate(10);
+        int b = arena.allocate(20);
+        int c = arena.allocate(30);
+        int d = arena.allocate(40);
+        arena.free(a);
+        arena.free(c);
+
+        var moves = arena.compact();
+        assertEquals(2, moves.size());
+        assertEquals(new ArenaAllocator.Move(b, 0, 20), moves.get(0));
+        assertEquals(new ArenaAllocator.Move(d, 20, 40), moves.get(1));
+        assertEquals(40, arena.getLargestFree());
+        assertEquals(0, arena.getFragmentation());
+
+        // the moved allocations can be freed at their new offsets
+        arena.free(0);
+        arena.free(20);
+        assertEquals(0, arena.getUsed());
+        assertEquals(100, arena.getLargestFree());
+    }
+
+    @Test
+    void randomChurnKeepsTheBookkeepingConsistent() {
+        var random = new Random(1234);
+        var arena = new ArenaAllocator(10_000);
+        var live = new HashMap<Integer, Integer>(); // offset -> size
+
+        for (int step = 0; step < 20_000; step++) {
+            if (!live.isEmpty() && random.nextInt(3) == 0) {
+                var offsets = new ArrayList<>(live.keySet());
+                int offset = offsets.get(random.nextInt(offsets.size()));
+                arena.free(offset);
+                live.remove(offset);
+            } else {
+                int size = 1 + random.nextInt(200);
+                int offset = arena.allocate(size);
+                if (offset == -1) {
+                    assertTrue(arena.getLargestFree() < size);
+                    continue;
+                }
+                for (var entry : live.entrySet()) {
+                    assertTrue(offset + size <= entry.getKey() || entry.getKey() + entry.getValue() <= offset,
+                            "overlapping allocations at step " + step);
+                }
+                live.put(offset, size);
+            }
+
+            if (step % 1000 == 999) {
+                var moved = new HashMap<Integer, Integer>();
+                for (var move : arena.compact()) {
+                    assertEquals(live.get(move.from()), move.size());
+                    moved.put(move.to(), move.size());
+                }
+                live = moved;
+                assertEquals(0, arena.getFragmentation());
+            }
+
+            assertEquals(live.values().stream().mapToInt(Integer::intValue).sum(), arena.getUsed());
+            assertEquals(live.size(), arena.getAllocationCount());
+        }
+    }
+}
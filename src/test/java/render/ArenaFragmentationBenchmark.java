@@ -0,0 +1,156 @@
+package render;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/** How fragmented the chunk mesh arena gets while the player walks around, and what compacting and growing cost.
+ * Uses the same policy as ChunkMeshArena.makeRoom, but only the bookkeeping, no gpu.
+ *
+ * A square of chunk columns around the player is kept loaded. Every step the player moves one chunk on a seeded
+ * random walk, the chunks it leaves behind are freed and the ones it walks into are allocated, and a few loaded
+ * chunks are remeshed with a different size, like block edits and level of detail changes do.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=render.ArenaFragmentationBenchmark */
+public class ArenaFragmentationBenchmark {
+
+    private static final int RADIUS = Integer.getInteger("radius", 12);
+    private static final int COLUMN_HEIGHT = 8;
+    private static final int STEPS = Integer.getInteger("steps", 4000);
+    private static final int REMESHES_PER_STEP = 5;
+    private static final long SEED = Long.getLong("seed", 42);
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final float COMPACT_FRAGMENTATION = 0.5f;
+
+    private static ArenaAllocator arena;
+    private static final HashMap<Long, Integer> offsets = new HashMap<>(); // chunk -> offset
+    private static int compactions = 0, grows = 0;
+    private static long verticesCopied = 0;
+    private static long allocations = 0, allocateNanos = 0;
+    private static long frees = 0, freeNanos = 0;
+
+    public static void main(String[] args) {
+        var random = new Random(SEED);
+        arena = new ArenaAllocator(INITIAL_CAPACITY);
+
+        int px = 0, pz = 0;
+        for (int x = -RADIUS; x <= RADIUS; x++)
+        for (int z = -RADIUS; z <= RADIUS; z++)
+            loadColumn(x, z, random);
+
+        int dx = 1, dz = 0;
+        int peakUsed = 0;
+        double fragmentationSum = 0;
+        float maxFragmentation = 0;
+        for (int step = 0; step < STEPS; step++) {
+            if (random.nextInt(20) == 0) {
+                int dir = random.nextInt(4);
+                dx = dir == 0 ? 1 : dir == 1 ? -1 : 0;
+                dz = dir == 2 ? 1 : dir == 3 ? -1 : 0;
+            }
+
+            // columns on the trailing edge go, columns on the leading edge come
+            for (int i = -RADIUS; i <= RADIUS; i++) {
+                if (dx != 0) {
+                    unloadColumn(px - dx * RADIUS, pz + i);
+                    loadColumn(px + dx * (RADIUS + 1), pz + i, random);
+                } else {
+                    unloadColumn(px + i, pz - dz * RADIUS);
+                    loadColumn(px + i, pz + dz * (RADIUS + 1), random);
+                }
+            }
+            px += dx;
+            pz += dz;
+
+            for (int i = 0; i < REMESHES_PER_STEP; i++) {
+                int x = px - RADIUS + random.nextInt(2 * RADIUS + 1);
+                int z = pz - RADIUS + random.nextInt(2 * RADIUS + 1);
+                long chunk = key(x, random.nextInt(COLUMN_HEIGHT), z);
+                free(chunk);
+                allocate(chunk, meshSize(random));
+            }
+
+            peakUsed = Math.max(peakUsed, arena.getUsed());
+            fragmentationSum += arena.getFragmentation();
+            maxFragmentation = Math.max(maxFragmentation, arena.getFragmentation());
+        }
+
+        System.out.printf("%d steps, %d chunks loaded, seed %d%n", STEPS, (2 * RADIUS + 1) * (2 * RADIUS + 1) * COLUMN_HEIGHT, SEED);
+        System.out.printf("capacity %d vertices, peak used %d (%.0f%%)%n",
+                arena.getCapacity(), peakUsed, 100.0 * peakUsed / arena.getCapacity());
+        System.out.printf("fragmentation average %.2f, max %.2f%n", fragmentationSum / STEPS, maxFragmentation);
+        System.out.printf("%d compactions, %d grows, %.1f vertices copied per step%n",
+                compactions, grows, verticesCopied / (double) STEPS);
+        System.out.printf("allocate %.0f ns, free %.0f ns%n",
+                allocateNanos / (double) allocations, freeNanos / (double) frees);
+    }
+
+    private static void loadColumn(int x, int z, Random random) {
+        for (int y = 0; y < COLUMN_HEIGHT; y++) {
+            allocate(key(x, y, z), meshSize(random));
+        }
+    }
+
+    private static void unloadColumn(int x, int z) {
+        for (int y = 0; y < COLUMN_HEIGHT; y++) {
+            free(key(x, y, z));
+        }
+    }
+
+    // vertices of a chunk mesh: a lot of chunks are all air or all stone, the rest spread around a few thousand quads
+    private static int meshSize(Random random) {
+        if (random.nextInt(10) < 4) return 0;
+        double quads = Math.exp(7 + random.nextGaussian() * 0.8);
+        return 4 * Math.max(1, (int) quads);
+    }
+
+    private static void allocate(long chunk, int size) {
+        if (size == 0) return;
+
+        long start = System.nanoTime();
+        int offset = arena.allocate(size);
+        allocateNanos += System.nanoTime() - start;
+        allocations++;
+
+        if (offset == -1) {
+            makeRoom(size);
+            offset = arena.allocate(size);
+        }
+        offsets.put(chunk, offset);
+    }
+
+    private static void free(long chunk) {
+        Integer offset = offsets.remove(chunk);
+        if (offset == null) return;
+
+        long start = System.nanoTime();
+        arena.free(offset);
+        freeNanos += System.nanoTime() - start;
+        frees++;
+    }
+
+    // the same as ChunkMeshArena.makeRoom
+    private static void makeRoom(int size) {
+        int capacity = arena.getCapacity();
+        boolean compactOnly = arena.getFree() >= size && arena.getFragmentation() >= COMPACT_FRAGMENTATION;
+        if (!compactOnly) {
+            capacity *= 2;
+            while (capacity - arena.getUsed() < size) capacity *= 2;
+            grows++;
+        } else {
+            compactions++;
+        }
+
+        arena.grow(capacity);
+        var moved = new HashMap<Integer, Integer>();
+        for (var move : arena.compact()) {
+            moved.put(move.from(), move.to());
+        }
+        offsets.replaceAll((chunk, offset) -> moved.get(offset));
+        verticesCopied += arena.getUsed(); // every mesh is copied into the new buffer
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | ((long) z & 0x1FFFFF);
+    }
+}
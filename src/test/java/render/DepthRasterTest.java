@@ -0,0 +1,140 @@
+package render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepthRasterTest {
+
+    private static final Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(70), 16 / 9f, 0.1f, 1000f);
+    private static final Matrix4f view = new Matrix4f().lookAt(0, 0, 0, 0, 0, -1, 0, 1, 0); // looking down -z
+
+    private DepthRaster raster;
+
+    @BeforeEach
+    void setUp() {
+        raster = new DepthRaster(256, 144);
+        raster.clear(projection, view);
+    }
+
+    @Test
+    void nothingIsOccludedByAnEmptyBuffer() {
+        assertFalse(raster.isOccluded(-1, -1, -50, 1, 1, -48));
+        for (int y = 0; y < raster.getHeight(); y++)
+        for (int x = 0; x < raster.getWidth(); x++)
+            assertEquals(Float.POSITIVE_INFINITY, raster.getDepth(x, y));
+    }
+
+    @Test
+    void wallHidesWhatsBehindIt() {
+        raster.addOccluder(-50, -50, -21, 50, 50, -20);
+
+        assertTrue(raster.isOccluded(-2, -2, -40, 2, 2, -36), "behind the wall");
+        assertFalse(raster.isOccluded(-2, -2, -12, 2, 2, -8), "in front of the wall");
+        assertFalse(raster.isOccluded(-2, -2, -22, 2, 2, -10), "sticking out of the wall");
+
+        // the middle of the screen is covered, at about the distance of the wall
+        float depth = raster.getDepth(raster.getWidth() / 2, raster.getHeight() / 2);
+        assertTrue(depth >= 20 && depth <= 21, "depth " + depth);
+    }
+
+    @Test
+    void smallOccluderDoesntHideABiggerBox() {
+        raster.addOccluder(-1, -1, -11, 1, 1, -10);
+
+        assertTrue(raster.isOccluded(-0.2f, -0.2f, -40, 0.2f, 0.2f, -39), "right behind it");
+        assertFalse(raster.isOccluded(-10, -10, -40, 10, 10, -39), "much wider than it");
+        assertFalse(raster.isOccluded(10, -0.2f, -40, 10.4f, 0.2f, -39), "off to the side");
+    }
+
+    @Test
+    void boxesCrossingTheNearPlaneAreIgnored() {
+        // a box around the camera would cover everything, but it isn't drawn
+        raster.addOccluder(-5, -5, -5, 5, 5, 5);
+        assertEquals(Float.POSITIVE_INFINITY, raster.getDepth(raster.getWidth() / 2, raster.getHeight() / 2));
+
+        raster.addOccluder(-50, -50, -21, 50, 50, -20);
+        assertFalse(raster.isOccluded(-1, -1, -30, 1, 1, 5), "reaches behind the camera");
+    }
+
+    @Test
+    void clearForgetsTheOccluders() {
+        raster.addOccluder(-50, -50, -21, 50, 50, -20);
+        raster.clear(projection, view);
+        assertFalse(raster.isOccluded(-2, -2, -40, 2, 2, -36));
+    }
+
+    // whatever it says is occluded has to really be hidden: rays from the camera to the corners and the center
+    // of an occluded box all have to hit an occluder before they get to the box
+    @Test
+    void neverHidesAVisibleBox() {
+        var random = new Random(99);
+        int occludedCount = 0;
+
+        for (int scene = 0; scene < 50; scene++) {
+            raster.clear(projection, view);
+            var occluders = new ArrayList<float[]>();
+            for (int i = 0; i < 20; i++) {
+                var box = randomBox(random, 2, 12);
+                occluders.add(box);
+                raster.addOccluder(box[0], box[1], box[2], box[3], box[4], box[5]);
+            }
+
+            for (int i = 0; i < 200; i++) {
+                var box = randomBox(random, 0.5f, 4);
+                if (!raster.isOccluded(box[0], box[1], box[2], box[3], box[4], box[5])) continue;
+                occludedCount++;
+
+                for (int c = 0; c < 9; c++) {
+                    float x = c == 8 ? (box[0] + box[3]) / 2 : (c & 1) == 0 ? box[0] : box[3];
+                    float y = c == 8 ? (box[1] + box[4]) / 2 : (c & 2) == 0 ? box[1] : box[4];
+                    float z = c == 8 ? (box[2] + box[5]) / 2 : (c & 4) == 0 ? box[2] : box[5];
+                    if (!isOnScreen(x, y, z)) continue; // the parts off screen are for frustum culling
+                    assertTrue(isBlocked(occluders, x, y, z), "scene " + scene + " box " + i + " point " + c);
+                }
+            }
+        }
+        assertTrue(occludedCount > 100, "the scenes should hide some boxes, only " + occludedCount);
+    }
+
+    private static float[] randomBox(Random random, float minSize, float maxSize) {
+        float x = random.nextFloat() * 60 - 30, y = random.nextFloat() * 30 - 15, z = -10 - random.nextFloat() * 60;
+        float sx = minSize + random.nextFloat() * (maxSize - minSize);
+        float sy = minSize + random.nextFloat() * (maxSize - minSize);
+        float sz = minSize + random.nextFloat() * (maxSize - minSize);
+        return new float[] { x, y, z, x + sx, y + sy, z + sz };
+    }
+
+    private static boolean isOnScreen(float x, float y, float z) {
+        var clip = new Matrix4f(projection).mul(view).transform(new Vector4f(x, y, z, 1));
+        return clip.w > 0 && Math.abs(clip.x) <= clip.w && Math.abs(clip.y) <= clip.w;
+    }
+
+    // true if the segment from the camera at the origin to the point goes through an occluder on the way
+    private static boolean isBlocked(ArrayList<float[]> occluders, float x, float y, float z) {
+        for (var box : occluders) {
+            float enter = 0, exit = 0.999f; // stop just short of the point
+            float[] dir = { x, y, z };
+            boolean hit = true;
+            for (int axis = 0; axis < 3 && hit; axis++) {
+                float min = box[axis], max = box[axis + 3];
+                if (dir[axis] == 0) {
+                    hit = min <= 0 && 0 <= max;
+                    continue;
+                }
+                float t0 = min / dir[axis], t1 = max / dir[axis];
+                enter = Math.max(enter, Math.min(t0, t1));
+                exit = Math.min(exit, Math.max(t0, t1));
+                hit = enter <= exit;
+            }
+            if (hit) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,204 @@
+package render;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.opengl.GL30;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GLStateTest {
+
+    /** Writes down every call, and keeps the state OpenGL would be in after them. */
+    static class RecordingBackend implements GLState.Backend {
+        final List<String> calls = new ArrayList<>();
+        final Map<String, Object> state = new HashMap<>();
+        int activeUnit = 0;
+
+        private void record(String call, String key, Object value) {
+            calls.add(call);
+            state.put(key, value);
+        }
+
+        @Override public void useProgram(int program) { record("useProgram " + program, "program", program); }
+        @Override public void bindVertexArray(int vao) { record("bindVertexArray " + vao, "vao", vao); }
+        @Override public void activeTexture(int unit) { activeUnit = unit; calls.add("activeTexture " + unit); }
+        @Override public void bindTexture(int target, int texture) {
+            record("bindTexture " + target + " " + texture, "texture " + activeUnit + " " + target, texture);
+        }
+        @Override public void setEnabled(int capability, boolean enabled) {
+            record("setEnabled " + capability + " " + enabled, "enabled " + capability, enabled);
+        }
+        @Override public void blendFunc(int source, int destination) {
+            record("blendFunc " + source + " " + destination, "blendFunc", source + " " + destination);
+        }
+        @Override public void depthMask(boolean write) { record("depthMask " + write, "depthMask", write); }
+        @Override public void colorMask(boolean r, boolean g, boolean b, boolean a) {
+            record("colorMask " + r + g + b + a, "colorMask", "" + r + g + b + a);
+        }
+        @Override public void cullFace(int face) { record("cullFace " + face, "cullFace", face); }
+        @Override public void stencilMask(int mask) { record("stencilMask " + mask, "stencilMask", mask); }
+        @Override public void stencilFunc(int function, int reference, int mask) {
+            record("stencilFunc " + function + " " + reference + " " + mask, "stencilFunc", function + " " + reference + " " + mask);
+        }
+        @Override public void stencilOp(int fail, int depthFail, int pass) {
+            record("stencilOp " + fail + " " + depthFail + " " + pass, "stencilOp", fail + " " + depthFail + " " + pass);
+        }
+    }
+
+    private RecordingBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        backend = new RecordingBackend();
+        GLState.setBackend(backend);
+        GLState.resetCounters();
+    }
+
+    @AfterEach
+    void tearDown() {
+        GLState.setBackend(new GLState.OpenGLBackend());
+    }
+
+    @Test
+    void repeatedCallsAreSkipped() {
+        GLState.useProgram(3);
+        GLState.useProgram(3);
+        GLState.enable(GL30.GL_DEPTH_TEST);
+        GLState.enable(GL30.GL_DEPTH_TEST);
+        GLState.disable(GL30.GL_DEPTH_TEST);
+        GLState.blendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.blendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
+
+        assertEquals(List.of(
+            "useProgram 3",
+            "setEnabled " + GL30.GL_DEPTH_TEST + " true",
+            "setEnabled " + GL30.GL_DEPTH_TEST + " false",
+            "blendFunc " + GL30.GL_SRC_ALPHA + " " + GL30.GL_ONE_MINUS_SRC_ALPHA
+        ), backend.calls);
+        assertEquals(4, GLState.getIssuedCalls());
+        assertEquals(3, GLState.getElidedCalls());
+    }
+
+    @Test
+    void firstCallIsAlwaysMade() {
+        // -1 is every bit of a stencil mask, it must not be taken for the unknown state
+        GLState.stencilMask(-1);
+        GLState.stencilMask(-1);
+        GLState.useProgram(0);
+        assertEquals(List.of("stencilMask -1", "useProgram 0"), backend.calls);
+    }
+
+    @Test
+    void texturesAreTrackedPerUnitAndTarget() {
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D, 5);
+        GLState.bindTexture(1, GL30.GL_TEXTURE_2D, 5);
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D, 5);
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, 5);
+
+        assertEquals(List.of(
+            "activeTexture 0",
+            "bindTexture " + GL30.GL_TEXTURE_2D + " 5",
+            "activeTexture 1",
+            "bindTexture " + GL30.GL_TEXTURE_2D + " 5",
+            "activeTexture 0",
+            "bindTexture " + GL30.GL_TEXTURE_2D_ARRAY + " 5"
+        ), backend.calls);
+    }
+
+    @Test
+    void bindingWithoutAUnitUsesTheActiveOne() {
+        GLState.bindTexture(2, GL30.GL_TEXTURE_2D, 7);
+        GLState.bindTexture(GL30.GL_TEXTURE_2D, 7);
+        GLState.bindTexture(GL30.GL_TEXTURE_2D, 8);
+        assertEquals(List.of(
+            "activeTexture 2",
+            "bindTexture " + GL30.GL_TEXTURE_2D + " 7",
+            "bindTexture " + GL30.GL_TEXTURE_2D + " 8"
+        ), backend.calls);
+    }
+
+    @Test
+    void untrackedStateIsAlwaysSet() {
+        GLState.enable(GL30.GL_SCISSOR_TEST);
+        GLState.enable(GL30.GL_SCISSOR_TEST);
+        GLState.bindTexture(0, GL30.GL_TEXTURE_3D, 4);
+        GLState.bindTexture(0, GL30.GL_TEXTURE_3D, 4);
+        assertEquals(5, backend.calls.size()); // both enables, one active texture and both binds
+    }
+
+    @Test
+    void deletedIdsAreForgotten() {
+        GLState.useProgram(3);
+        GLState.programDeleted(3);
+        GLState.useProgram(3);
+
+        GLState.bindVertexArray(4);
+        GLState.vertexArrayDeleted(4);
+        GLState.bindVertexArray(4);
+
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D, 9);
+        GLState.bindTexture(1, GL30.GL_TEXTURE_2D, 9);
+        GLState.textureDeleted(9);
+        GLState.bindTexture(1, GL30.GL_TEXTURE_2D, 9);
+
+        assertEquals(2, backend.calls.stream().filter(call -> call.equals("useProgram 3")).count());
+        assertEquals(2, backend.calls.stream().filter(call -> call.equals("bindVertexArray 4")).count());
+        assertEquals(3, backend.calls.stream().filter(call -> call.startsWith("bindTexture")).count());
+    }
+
+    @Test
+    void newBackendStartsUnknown() {
+        GLState.useProgram(3);
+        var other = new RecordingBackend();
+        GLState.setBackend(other);
+        GLState.useProgram(3);
+        assertEquals(List.of("useProgram 3"), other.calls);
+    }
+
+    // whatever gets skipped, OpenGL has to end up in the same state as if every call had been made
+    @Test
+    void skippingNeverChangesTheResult() {
+        var random = new Random(3);
+        var direct = new RecordingBackend();
+        int[] capabilities = { GL30.GL_BLEND, GL30.GL_DEPTH_TEST, GL30.GL_CULL_FACE, GL30.GL_STENCIL_TEST, GL30.GL_SCISSOR_TEST };
+        int[] targets = { GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY };
+
+        for (int i = 0; i < 100_000; i++) {
+            int a = random.nextInt(3), b = random.nextInt(3), c = random.nextInt(3);
+            switch (random.nextInt(13)) {
+                case 0 -> { GLState.useProgram(a); direct.useProgram(a); }
+                case 1 -> { GLState.bindVertexArray(a); direct.bindVertexArray(a); }
+                case 2 -> {
+                    int target = targets[b % 2];
+                    GLState.bindTexture(a, target, c);
+                    direct.activeTexture(a);
+                    direct.bindTexture(target, c);
+                }
+                case 3 -> {
+                    int capability = capabilities[random.nextInt(capabilities.length)];
+                    GLState.setEnabled(capability, a == 0);
+                    direct.setEnabled(capability, a == 0);
+                }
+                case 4 -> { GLState.blendFunc(a, b); direct.blendFunc(a, b); }
+                case 5 -> { GLState.depthMask(a == 0); direct.depthMask(a == 0); }
+                case 6 -> { GLState.colorMask(a == 0, b == 0, c == 0, true); direct.colorMask(a == 0, b == 0, c == 0, true); }
+                case 7 -> { GLState.cullFace(a); direct.cullFace(a); }
+                case 8 -> { GLState.stencilMask(a - 1); direct.stencilMask(a - 1); }
+                case 9 -> { GLState.stencilFunc(a, b, c); direct.stencilFunc(a, b, c); }
+                case 10 -> { GLState.stencilOp(a, b, c); direct.stencilOp(a, b, c); }
+                case 11 -> { GLState.programDeleted(a); GLState.vertexArrayDeleted(b); }
+                case 12 -> GLState.textureDeleted(a);
+            }
+        }
+
+        assertEquals(direct.state, backend.state);
+        assertTrue(backend.calls.size() < direct.calls.size(), "should skip some calls");
+    }
+}
@@ -0,0 +1,88 @@
+package render;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceMatricesTest {
+
+    // every entry different, so a mixed up row and column shows
+    private static Matrix4f matrix(int instance) {
+        var matrix = new Matrix4f();
+        for (int column = 0; column < 4; column++)
+        for (int row = 0; row < 4; row++)
+        {
+            matrix.set(column, row, instance * 100 + column * 4 + row);
+        }
+        return matrix;
+    }
+
+    private static void assertHolds(InstanceMatrices matrices, int... instances) {
+        var buffer = matrices.getBuffer();
+        assertEquals(0, buffer.position());
+        assertEquals(instances.length * InstanceMatrices.FLOATS_PER_MATRIX, buffer.limit());
+        for (int i = 0; i < instances.length; i++)
+        for (int column = 0; column < 4; column++)
+        for (int row = 0; row < 4; row++)
+        {
+            int offset = i * InstanceMatrices.FLOATS_PER_MATRIX + column * 4 + row;
+            assertEquals(instances[i] * 100 + column * 4 + row, buffer.get(offset), "matrix " + i + " column " + column + " row " + row);
+        }
+    }
+
+    @Test
+    void packsColumnByColumn() {
+        var matrices = new InstanceMatrices(4);
+        for (int i = 0; i < 3; i++) matrices.add(matrix(i));
+
+        assertEquals(3, matrices.size());
+        assertHolds(matrices, 0, 1, 2);
+    }
+
+    // a mat4 attribute reads the translation from the last column
+    @Test
+    void translationIsInTheLastColumn() {
+        var matrices = new InstanceMatrices(2);
+        matrices.add(new Matrix4f());
+        matrices.add(new Matrix4f().translation(5, 6, 7));
+
+        var buffer = matrices.getBuffer();
+        assertEquals(5, buffer.get(16 + 12));
+        assertEquals(6, buffer.get(16 + 13));
+        assertEquals(7, buffer.get(16 + 14));
+        assertEquals(1, buffer.get(16 + 15));
+    }
+
+    @Test
+    void growingKeepsTheEarlierMatrices() {
+        var matrices = new InstanceMatrices(2);
+        for (int i = 0; i < 9; i++) matrices.add(matrix(i));
+
+        assertEquals(9, matrices.size());
+        assertHolds(matrices, 0, 1, 2, 3, 4, 5, 6, 7, 8);
+    }
+
+    @Test
+    void zeroCapacityStillGrows() {
+        var matrices = new InstanceMatrices(0);
+        matrices.add(matrix(1));
+        matrices.add(matrix(2));
+        assertHolds(matrices, 1, 2);
+    }
+
+    @Test
+    void clearReusesTheBuffer() {
+        var matrices = new InstanceMatrices(4);
+        for (int i = 0; i < 3; i++) matrices.add(matrix(i));
+        var buffer = matrices.getBuffer();
+
+        matrices.clear();
+        assertEquals(0, matrices.size());
+        assertEquals(0, matrices.getBuffer().limit());
+
+        matrices.add(matrix(7));
+        assertSame(buffer, matrices.getBuffer());
+        assertHolds(matrices, 7);
+    }
+}
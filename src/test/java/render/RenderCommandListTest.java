@@ -0,0 +1,116 @@
+package render;
+
+import entity.Entity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// models need an opengl context, so the draws are added by their keys without one and told apart by their entities
+class RenderCommandListTest {
+
+    private record Draw(int shader, int texture, int vao, Entity entity) {}
+
+    private final RenderCommandList list = new RenderCommandList();
+    private final Map<Entity, Draw> draws = new HashMap<>();
+
+    @Test
+    void sortsByShaderThenTextureThenVaoKeepingTheOrderOfEqualDraws() {
+        var a = add(2, 1, 1);
+        var b = add(1, 2, 1);
+        var c = add(1, 1, 2);
+        var d = add(1, 1, 1);
+        var e = add(2, 1, 1);
+        var f = add(1, 1, 1);
+        var g = add(1, 2, 1);
+
+        assertEquals(List.of(d, f, c, b, g, a, e), execute());
+    }
+
+    @Test
+    void onlyChangesStateWhenItHasTo() {
+        add(1, 1, 1);
+        add(2, 1, 1);
+        add(1, 2, 1);
+        add(1, 1, 2);
+        add(1, 1, 1);
+        add(2, 1, 1);
+        add(1, 2, 2);
+        // sorted: 111 111 112 121 122 211 211
+        execute();
+
+        assertEquals(2, list.getShaderChanges());
+        assertEquals(3, list.getTextureChanges(), "the textures are bound again after the shader changes");
+        assertEquals(5, list.getVaoChanges());
+        assertEquals(7, list.getDrawCount());
+    }
+
+    // the radix sort skips the bytes that are the same for every draw, and the list grows past its first arrays
+    @Test
+    void matchesAStableSortOfManyDraws() {
+        var random = new Random(3);
+        var expected = new ArrayList<Draw>();
+        for (int i = 0; i < 5000; i++) {
+            var entity = add(random.nextInt(1 << 16), random.nextInt(5) << 20 | random.nextInt(3), random.nextInt(1 << 24));
+            expected.add(draws.get(entity));
+        }
+        expected.sort(Comparator.comparingInt(Draw::shader).thenComparingInt(Draw::texture).thenComparingInt(Draw::vao));
+
+        var order = execute();
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).entity, order.get(i), "draw " + i);
+        }
+    }
+
+    // keys too big for their bits in the sort key still get their own state changes
+    @Test
+    void comparesTheFullKeysForStateChanges() {
+        add(1, 1, 1);
+        add(1 + (1 << 16), 1, 1);
+        execute();
+        assertEquals(2, list.getShaderChanges());
+    }
+
+    @Test
+    void clearingStartsAnEmptyList() {
+        add(1, 1, 1);
+        add(2, 2, 2);
+        execute();
+        list.clear();
+        list.resetCounters();
+        assertEquals(0, list.size());
+
+        var e = add(3, 3, 3);
+        assertEquals(List.of(e), execute());
+        assertEquals(1, list.getShaderChanges());
+        assertEquals(1, list.getDrawCount());
+    }
+
+    private Entity add(int shader, int texture, int vao) {
+        var entity = new Entity();
+        draws.put(entity, new Draw(shader, texture, vao, entity));
+        list.add(shader, texture, vao, null, entity);
+        return entity;
+    }
+
+    // sorts and executes the list, returns the entities in the order they were drawn
+    private List<Entity> execute() {
+        var drawn = new ArrayList<Entity>();
+        list.sort();
+        int vertices = list.execute(new NoOpRenderBackend() {
+            @Override
+            public int draw(Model model, Entity entity) {
+                drawn.add(entity);
+                return 3;
+            }
+        });
+        assertEquals(3 * drawn.size(), vertices);
+        return drawn;
+    }
+}
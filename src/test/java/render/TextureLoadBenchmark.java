@@ -0,0 +1,105 @@
+package render;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/** How long the main thread spends getting the four array textures Main loads ready for upload, each start in a
+ * fresh jvm, the way a real start would be.
+ *
+ * Before: every png decoded on the main thread one after another, like the Texture constructor used to.
+ * First start: TextureLoader decodes them and builds their mip chains on its workers, and fills the cache.
+ * Later starts: TextureLoader reads them back from the cache.
+ *
+ * Only the part that doesn't need OpenGL is measured: the decoding used to be followed by glGenerateMipmap, which
+ * the mip chains replace, and the preloads overlap with creating the window, neither of which happens here.
+ * The starts run in an empty temporary directory with copies of the pngs, so the cache starts out empty.
+ *
+ * Run with: mvn -P bench test-compile exec:exec -Dbench=render.TextureLoadBenchmark */
+public class TextureLoadBenchmark {
+
+    private static final String[] PATHS = {
+            "src/main/resources/blocks_array.png",
+            "src/main/resources/items_array.png",
+            "src/main/resources/cat_array.png",
+            "src/main/resources/ui_array.png",
+    };
+    private static final int[] TILE_HEIGHTS = {16, 16, 64, 16};
+    private static final int STARTS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            MemoryUtil.memFree(MemoryUtil.memAlloc(1)); // the game has lwjgl loaded long before, for glfw
+            long start = System.nanoTime();
+            if (args[0].equals("before")) decodeOnMainThread();
+            else loadThroughTextureLoader();
+            System.out.printf("result %.1f%n", (System.nanoTime() - start) / 1e6);
+            System.exit(0); // the loader threads would keep the jvm running
+        }
+
+        Path directory = Files.createTempDirectory("textures");
+        try {
+            Files.createDirectories(directory.resolve("src/main/resources"));
+            for (String path : PATHS) Files.copy(Path.of(path), directory.resolve(path));
+
+            String before = "", first = "", later = "";
+            for (int i = 0; i < STARTS; i++) {
+                deleteRecursively(directory.resolve("src/main/resources/cache"));
+                before += " " + start(directory, "before");
+                first += " " + start(directory, "after");
+                later += " " + start(directory, "after");
+            }
+            System.out.println("ms per start, " + STARTS + " starts each");
+            System.out.println("before, decoded on the main thread:" + before);
+            System.out.println("first start, decoded and mipmapped:" + first);
+            System.out.println("later starts, from the cache:      " + later);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static String start(Path directory, String mode) throws Exception {
+        var process = new ProcessBuilder(
+                System.getProperty("java.home") + "/bin/java",
+                "-Dorg.lwjgl.system.allocator=system",
+                "-cp", System.getProperty("java.class.path"),
+                TextureLoadBenchmark.class.getName(), mode)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .start();
+        String result = "?";
+        for (String line : process.inputReader().lines().toList()) {
+            if (line.startsWith("result ")) result = line.substring("result ".length());
+        }
+        process.waitFor();
+        return result;
+    }
+
+    private static void decodeOnMainThread() throws IOException {
+        for (String path : PATHS) {
+            try (var fis = new FileInputStream(path)) {
+                var decoder = new PNGDecoder(fis);
+                var buffer = BufferUtils.createByteBuffer(4 * decoder.getWidth() * decoder.getHeight());
+                decoder.decode(buffer, decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
+            }
+        }
+    }
+
+    private static void loadThroughTextureLoader() {
+        for (int i = 0; i < PATHS.length; i++) TextureLoader.preload(PATHS[i], TILE_HEIGHTS[i]);
+        for (int i = 0; i < PATHS.length; i++) TextureLoader.take(PATHS[i], TILE_HEIGHTS[i]).free();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}